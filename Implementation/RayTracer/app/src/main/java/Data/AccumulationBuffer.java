@@ -0,0 +1,98 @@
+package Data;
+
+import Tracing.Accumulation;
+import Tracing.TraceFormat;
+
+/**
+ * Two textures holding the running average of a progressive render (rgba32f unless a smaller TraceFormat is asked for).
+ * Every frame the compute shader reads the average of the previous frames from one texture
+ * and writes the new average into the other one, afterwards the two are swapped.
+ * The textures come from the RenderTargetPool and go back to it on release.
+ */
+
+public class AccumulationBuffer {
+
+    private final RenderTargetPool pool;
+    private final TraceFormat format;
+    private final int[] textures = new int[2];
+    private final Accumulation accumulation = new Accumulation();
+    private int width;
+    private int height;
+
+    // Index of the texture that holds the newest average
+    private int current;
+
+    public AccumulationBuffer(RenderTargetPool pool) {
+        this(pool, TraceFormat.RGBA32F);
+    }
+
+    public AccumulationBuffer(RenderTargetPool pool, TraceFormat format) {
+        this.pool = pool;
+        this.format = format;
+    }
+
+    // Starts the next frame, returns its frame index (0 = the average starts over)
+    public int nextFrame(float[] invertedViewProjectionMatrix, int width, int height, boolean sceneChanged) {
+        if (width != this.width || height != this.height) {
+            allocate(width, height);
+        }
+
+        current = 1 - current;
+        return accumulation.nextFrame(invertedViewProjectionMatrix, width, height, sceneChanged);
+    }
+
+    // Returns true if the camera or the size changed since the last frame
+    public boolean isOutdated(float[] invertedViewProjectionMatrix, int width, int height) {
+        return accumulation.isOutdated(invertedViewProjectionMatrix, width, height);
+    }
+
+    // True if the current frame starts over only because the camera moved, the old average can then be reprojected
+    public boolean isReprojectable() {
+        return accumulation.isReprojectable();
+    }
+
+    public int getFrameIndex() {
+        return accumulation.getFrameIndex();
+    }
+
+    // The texture that is written this frame and holds the newest average afterwards
+    public int getTargetTexture() {
+        return textures[current];
+    }
+
+    // The texture that holds the average of the previous frames
+    public int getAverageTexture() {
+        return textures[1 - current];
+    }
+
+    public TraceFormat getFormat() {
+        return format;
+    }
+
+    public void reset() {
+        accumulation.reset();
+    }
+
+    // Gives the textures back to the pool, the next frame acquires new ones
+    public void release() {
+        if (textures[0] != 0) {
+            pool.release(textures[0]);
+            pool.release(textures[1]);
+            textures[0] = 0;
+            textures[1] = 0;
+        }
+        width = 0;
+        height = 0;
+    }
+
+    private void allocate(int width, int height) {
+        release();
+
+        textures[0] = pool.acquire(width, height, TraceFormats.getTextureFormat(format));
+        textures[1] = pool.acquire(width, height, TraceFormats.getTextureFormat(format));
+
+        this.width = width;
+        this.height = height;
+        accumulation.reset();
+    }
+}
@@ -0,0 +1,39 @@
+package Data;
+
+import static android.opengl.GLES20.GL_NEAREST;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
+import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
+import static android.opengl.GLES20.glBindTexture;
+import static android.opengl.GLES20.glDeleteTextures;
+import static android.opengl.GLES20.glGenTextures;
+import static android.opengl.GLES20.glTexParameteri;
+import static android.opengl.GLES30.glTexStorage2D;
+
+public class GLES31Facade implements GLFacade {
+
+    private final int[] textures = new int[1];
+
+    @Override
+    public int createTexture(int width, int height, int format) {
+        glGenTextures(1, textures, 0);
+        if (textures[0] == 0) {
+            throw new RuntimeException("Could not create a new texture.");
+        }
+
+        glBindTexture(GL_TEXTURE_2D, textures[0]);
+        glTexStorage2D(GL_TEXTURE_2D, 1, format, width, height);
+        // The targets are read texel by texel, rgba32f and r32ui aren't filterable in GLES 3 (rgba16f would be)
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        return textures[0];
+    }
+
+    @Override
+    public void deleteTexture(int texture) {
+        textures[0] = texture;
+        glDeleteTextures(1, textures, 0);
+    }
+}
@@ -0,0 +1,13 @@
+package Data;
+
+/**
+ * The few GL calls that resource managers like the RenderTargetPool need.
+ * Going through this interface instead of GLES31 directly keeps their bookkeeping testable without a GL context.
+ */
+
+public interface GLFacade {
+    // Creates a texture with immutable storage of one level, returns its id
+    int createTexture(int width, int height, int format);
+
+    void deleteTexture(int texture);
+}
@@ -0,0 +1,78 @@
+package Data;
+
+import static android.opengl.GLES30.GL_RGBA16F;
+
+/**
+ * The two rgba16f guide textures of the denoiser that the compute shader writes along with the image
+ * (see GuideBuffer for their content). The albedo is rewritten every frame, so one texture is enough.
+ * The normals and distances are swapped every frame like the AccumulationBuffer, the reprojection after a camera move
+ * needs the ones of the previous frame. The textures come from the RenderTargetPool and go back to it on release.
+ */
+
+public class GuideTextures {
+
+    private final RenderTargetPool pool;
+    private final int[] normalDepthTextures = new int[2];
+    private int albedoTexture;
+    private int width;
+    private int height;
+
+    // Index of the normal depth texture that is written this frame
+    private int current;
+
+    public GuideTextures(RenderTargetPool pool) {
+        this.pool = pool;
+    }
+
+    // Makes sure the textures have the size of the traced image
+    public void resize(int width, int height) {
+        if (width == this.width && height == this.height) {
+            return;
+        }
+
+        release();
+        normalDepthTextures[0] = pool.acquire(width, height, GL_RGBA16F);
+        normalDepthTextures[1] = pool.acquire(width, height, GL_RGBA16F);
+        albedoTexture = pool.acquire(width, height, GL_RGBA16F);
+        this.width = width;
+        this.height = height;
+    }
+
+    // Called whenever a new frame starts, the normals and distances of the last one become the previous ones
+    public void swap() {
+        current = 1 - current;
+    }
+
+    public int getNormalDepthTexture() {
+        return normalDepthTextures[current];
+    }
+
+    public int getPreviousNormalDepthTexture() {
+        return normalDepthTextures[1 - current];
+    }
+
+    public int getAlbedoTexture() {
+        return albedoTexture;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void release() {
+        if (normalDepthTextures[0] != 0) {
+            pool.release(normalDepthTextures[0]);
+            pool.release(normalDepthTextures[1]);
+            pool.release(albedoTexture);
+            normalDepthTextures[0] = 0;
+            normalDepthTextures[1] = 0;
+            albedoTexture = 0;
+        }
+        width = 0;
+        height = 0;
+    }
+}
@@ -0,0 +1,119 @@
+package Data;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of textures with immutable storage that are used as render targets (trace output, accumulation, ...).
+ * Targets are keyed by (width, height, format) and only allocated if no free target with the same key exists,
+ * so switching scenes reuses the textures of the previous scene instead of creating new ones.
+ * A resize frees all targets of the old surface size: free ones immediately, the ones in use once they are released.
+ */
+
+public class RenderTargetPool {
+
+    private static final class RenderTarget {
+        final int texture;
+        final int width;
+        final int height;
+        final int format;
+        // Targets that were allocated before the last resize are deleted instead of being reused
+        final int generation;
+        boolean inUse;
+
+        RenderTarget(int texture, int width, int height, int format, int generation) {
+            this.texture = texture;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.generation = generation;
+        }
+    }
+
+    private final GLFacade gl;
+    private final ArrayList<RenderTarget> targets = new ArrayList<>();
+    private int generation;
+    private int surfaceWidth;
+    private int surfaceHeight;
+
+    public RenderTargetPool(GLFacade gl) {
+        this.gl = gl;
+    }
+
+    // Returns the texture of a free target with the given key, a new one is only allocated if there is none
+    public int acquire(int width, int height, int format) {
+        for (RenderTarget target : targets) {
+            if (!target.inUse && target.width == width && target.height == height && target.format == format) {
+                target.inUse = true;
+                return target.texture;
+            }
+        }
+
+        RenderTarget target = new RenderTarget(gl.createTexture(width, height, format), width, height, format, generation);
+        target.inUse = true;
+        targets.add(target);
+        return target.texture;
+    }
+
+    // Gives the texture back to the pool, it stays allocated for the next acquire unless the surface was resized since
+    public void release(int texture) {
+        for (int i = 0; i < targets.size(); i++) {
+            RenderTarget target = targets.get(i);
+            if (target.texture == texture) {
+                if (!target.inUse) {
+                    throw new RuntimeException("Render target " + texture + " was released twice.");
+                }
+
+                if (target.generation != generation) {
+                    gl.deleteTexture(target.texture);
+                    targets.remove(i);
+                } else {
+                    target.inUse = false;
+                }
+                return;
+            }
+        }
+
+        throw new RuntimeException("Render target " + texture + " does not belong to this pool.");
+    }
+
+    // Called whenever the surface changes, targets of the old size are not needed anymore
+    public void resize(int width, int height) {
+        if (width == surfaceWidth && height == surfaceHeight) {
+            return;
+        }
+
+        surfaceWidth = width;
+        surfaceHeight = height;
+        invalidate();
+    }
+
+    // Frees all targets like a resize does, used when the traced size changes without a new surface
+    public void invalidate() {
+        generation++;
+        trim();
+    }
+
+    // Deletes all targets that are not in use
+    public void trim() {
+        for (int i = targets.size() - 1; i >= 0; i--) {
+            if (!targets.get(i).inUse) {
+                gl.deleteTexture(targets.get(i).texture);
+                targets.remove(i);
+            }
+        }
+    }
+
+    public int getAllocatedCount() {
+        return targets.size();
+    }
+
+    public int getInUseCount() {
+        int count = 0;
+        for (RenderTarget target : targets) {
+            if (target.inUse) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
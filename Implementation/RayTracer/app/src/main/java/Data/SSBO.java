@@ -0,0 +1,99 @@
+package Data;
+
+import java.nio.ByteBuffer;
+
+import static android.opengl.GLES20.GL_DYNAMIC_DRAW;
+import static android.opengl.GLES20.glBindBuffer;
+import static android.opengl.GLES20.glBufferData;
+import static android.opengl.GLES20.glBufferSubData;
+import static android.opengl.GLES20.glDeleteBuffers;
+import static android.opengl.GLES20.glGenBuffers;
+import static android.opengl.GLES30.glBindBufferBase;
+import static android.opengl.GLES31.GL_SHADER_STORAGE_BUFFER;
+
+/**
+ * Shader storage buffer that mirrors a direct ByteBuffer on the gpu.
+ * The gpu storage is only reallocated when the ByteBuffer outgrows it,
+ * otherwise just the dirty ranges are transferred with glBufferSubData.
+ */
+
+public class SSBO {
+
+    private final int bufferID;
+    private int capacity;
+
+    public SSBO() {
+        final int buffers[] = new int[1];
+        glGenBuffers(buffers.length, buffers, 0);
+
+        if(buffers[0] == 0) {
+            throw new RuntimeException("Could not create a new shader storage buffer object.");
+        }
+        bufferID = buffers[0];
+    }
+
+    // Uploads the whole ByteBuffer if the gpu storage is too small, otherwise only the dirty ranges
+    public void update(ByteBuffer data, DirtyRanges dirtyRanges) {
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, bufferID);
+
+        if (data.capacity() > capacity) {
+            capacity = data.capacity();
+            data.clear();
+            glBufferData(GL_SHADER_STORAGE_BUFFER, capacity, data, GL_DYNAMIC_DRAW);
+        } else {
+            for (int i = 0; i < dirtyRanges.getCount(); i++) {
+                final int start = dirtyRanges.getStart(i);
+                final int end = dirtyRanges.getEnd(i);
+                data.limit(end).position(start);
+                glBufferSubData(GL_SHADER_STORAGE_BUFFER, start, end - start, data);
+            }
+            data.clear();
+        }
+
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    // Replaces the contents with the first size bytes of data (reallocates if the gpu storage is too small)
+    public void setData(ByteBuffer data, int size) {
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, bufferID);
+
+        data.limit(size).position(0);
+        if (size > capacity) {
+            capacity = size;
+            glBufferData(GL_SHADER_STORAGE_BUFFER, size, data, GL_DYNAMIC_DRAW);
+        } else {
+            glBufferSubData(GL_SHADER_STORAGE_BUFFER, 0, size, data);
+        }
+        data.clear();
+
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    // Makes sure the buffer holds at least size bytes, for buffers that only the gpu writes (their contents are undefined)
+    public void allocate(int size) {
+        if (size > capacity) {
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, bufferID);
+            capacity = size;
+            glBufferData(GL_SHADER_STORAGE_BUFFER, size, null, GL_DYNAMIC_DRAW);
+            glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        }
+    }
+
+    // Makes the buffer available to the shader block with the given binding point
+    public void bind(int binding) {
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, binding, bufferID);
+    }
+
+    public void delete() {
+        glDeleteBuffers(1, new int[]{bufferID}, 0);
+        capacity = 0;
+    }
+
+    public int getBufferID() {
+        return bufferID;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
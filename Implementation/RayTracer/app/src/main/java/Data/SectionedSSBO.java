@@ -0,0 +1,91 @@
+package Data;
+
+import java.nio.ByteBuffer;
+
+import static android.opengl.GLES20.glBindBuffer;
+import static android.opengl.GLES20.glBufferSubData;
+import static android.opengl.GLES31.GL_SHADER_STORAGE_BUFFER;
+
+/**
+ * Shader storage buffer that holds several arrays one after the other, so that they only take up one shader storage block
+ * (GLES 3.1 only guarantees 4 per compute shader). Every section is updated like an SSBO of its own: only the dirty ranges
+ * are transferred, unless a section outgrew its space, then all sections are laid out again and uploaded whole.
+ */
+
+public class SectionedSSBO {
+
+    // Sections start at a multiple of this, the shader reads them as rows of ivec4s
+    public static final int ROW_BYTES = 16;
+
+    private final SSBO buffer = new SSBO();
+    private final ByteBuffer[] data;
+    private final DirtyRanges[] dirtyRanges;
+    private final int[] offsets;
+    private final int[] capacities;
+
+    public SectionedSSBO(int sectionCount) {
+        data = new ByteBuffer[sectionCount];
+        dirtyRanges = new DirtyRanges[sectionCount];
+        offsets = new int[sectionCount];
+        capacities = new int[sectionCount];
+    }
+
+    // The contents of a section for the next upload, the ByteBuffer may be a new one after it grew
+    public void set(int section, ByteBuffer sectionData, DirtyRanges sectionDirtyRanges) {
+        data[section] = sectionData;
+        dirtyRanges[section] = sectionDirtyRanges;
+    }
+
+    // Uploads the dirty ranges of all sections, returns true if the sections were laid out again (their offsets changed)
+    public boolean upload() {
+        boolean grown = false;
+        for (int section = 0; section < data.length; section++) {
+            grown |= data[section].capacity() > capacities[section];
+        }
+
+        if (grown) {
+            // Sections only grow, so the whole buffer does too
+            int size = 0;
+            for (int section = 0; section < data.length; section++) {
+                offsets[section] = size;
+                capacities[section] = (data[section].capacity() + ROW_BYTES - 1) / ROW_BYTES * ROW_BYTES;
+                size += capacities[section];
+            }
+            buffer.allocate(size);
+        }
+
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, buffer.getBufferID());
+        for (int section = 0; section < data.length; section++) {
+            final ByteBuffer sectionData = data[section];
+            if (grown) {
+                sectionData.clear();
+                glBufferSubData(GL_SHADER_STORAGE_BUFFER, offsets[section], sectionData.capacity(), sectionData);
+            } else {
+                final DirtyRanges ranges = dirtyRanges[section];
+                for (int i = 0; i < ranges.getCount(); i++) {
+                    final int start = ranges.getStart(i);
+                    final int end = ranges.getEnd(i);
+                    sectionData.limit(end).position(start);
+                    glBufferSubData(GL_SHADER_STORAGE_BUFFER, offsets[section] + start, end - start, sectionData);
+                }
+            }
+            sectionData.clear();
+        }
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+
+        return grown;
+    }
+
+    // First row of the section in the buffer
+    public int getRowOffset(int section) {
+        return offsets[section] / ROW_BYTES;
+    }
+
+    public void bind(int binding) {
+        buffer.bind(binding);
+    }
+
+    public void delete() {
+        buffer.delete();
+    }
+}
@@ -0,0 +1,146 @@
+package Data;
+
+import Util.FrameTimings;
+import Util.FrameTimings.Stage;
+
+import static android.opengl.GLES20.GL_EXTENSIONS;
+import static android.opengl.GLES20.glGetIntegerv;
+import static android.opengl.GLES20.glGetString;
+import static android.opengl.GLES30.GL_QUERY_RESULT;
+import static android.opengl.GLES30.GL_QUERY_RESULT_AVAILABLE;
+import static android.opengl.GLES30.glBeginQuery;
+import static android.opengl.GLES30.glDeleteQueries;
+import static android.opengl.GLES30.glEndQuery;
+import static android.opengl.GLES30.glGenQueries;
+import static android.opengl.GLES30.glGetQueryObjectuiv;
+
+/**
+ * Measures the stages of a frame on the cpu (System.nanoTime) and, if EXT_disjoint_timer_query is supported, on the gpu.
+ * Gpu results are only available a few frames later, so every stage has a small ring of queries that is polled once per frame.
+ * Only one time elapsed query can be active at a time, stages must not be nested.
+ * A stage can be tagged with the amount of work it did (e.g. pixels), the gpu times of tagged stages are also summed
+ * up with their work until the owner of the stage takes them.
+ */
+
+public class StageTimer {
+
+    // EXT_disjoint_timer_query, the constants are not part of the GLES classes
+    private static final String DISJOINT_TIMER_QUERY_EXTENSION = "GL_EXT_disjoint_timer_query";
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+    // Frames a query result may take before its slot is needed again
+    private static final int QUERIES_PER_STAGE = 4;
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final FrameTimings timings;
+    private final boolean gpuTimersSupported;
+
+    private final long[] cpuStartTimes = new long[STAGES.length];
+    private final int[] queries = new int[STAGES.length * QUERIES_PER_STAGE];
+    private final boolean[] pending = new boolean[STAGES.length * QUERIES_PER_STAGE];
+    private final int[] work = new int[STAGES.length * QUERIES_PER_STAGE];
+    private final int[] nextSlots = new int[STAGES.length];
+    // Gpu time and work of the tagged results that arrived since the last take
+    private final long[] completedNanos = new long[STAGES.length];
+    private final int[] completedWork = new int[STAGES.length];
+    // Query that is currently measuring (-1 = none)
+    private int activeQuery = -1;
+    private final int[] result = new int[1];
+
+    public StageTimer(FrameTimings timings) {
+        this.timings = timings;
+
+        String extensions = glGetString(GL_EXTENSIONS);
+        gpuTimersSupported = extensions != null && extensions.contains(DISJOINT_TIMER_QUERY_EXTENSION);
+        if (gpuTimersSupported) {
+            glGenQueries(queries.length, queries, 0);
+        }
+    }
+
+    public void begin(Stage stage) {
+        cpuStartTimes[stage.ordinal()] = System.nanoTime();
+
+        if (gpuTimersSupported && activeQuery < 0) {
+            int query = stage.ordinal() * QUERIES_PER_STAGE + nextSlots[stage.ordinal()];
+            // The gpu is more than QUERIES_PER_STAGE frames behind, this sample is skipped
+            if (!pending[query]) {
+                glBeginQuery(GL_TIME_ELAPSED_EXT, queries[query]);
+                activeQuery = query;
+            }
+        }
+    }
+
+    public void end(Stage stage) {
+        end(stage, 0);
+    }
+
+    // The work is reported along with the gpu time of this stage once it is available
+    public void end(Stage stage, int stageWork) {
+        timings.recordCpu(stage, System.nanoTime() - cpuStartTimes[stage.ordinal()]);
+
+        if (activeQuery >= 0 && activeQuery / QUERIES_PER_STAGE == stage.ordinal()) {
+            glEndQuery(GL_TIME_ELAPSED_EXT);
+            pending[activeQuery] = true;
+            work[activeQuery] = stageWork;
+            nextSlots[stage.ordinal()] = (nextSlots[stage.ordinal()] + 1) % QUERIES_PER_STAGE;
+            activeQuery = -1;
+        }
+    }
+
+    // Collects the gpu times that became available since the last call (once per frame)
+    public void poll() {
+        if (!gpuTimersSupported) {
+            return;
+        }
+
+        // A disjoint operation (e.g. frequency change) makes all results that are in flight meaningless
+        glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+        boolean disjoint = result[0] != 0;
+
+        for (int query = 0; query < queries.length; query++) {
+            if (!pending[query]) {
+                continue;
+            }
+
+            glGetQueryObjectuiv(queries[query], GL_QUERY_RESULT_AVAILABLE, result, 0);
+            if (result[0] != 0) {
+                glGetQueryObjectuiv(queries[query], GL_QUERY_RESULT, result, 0);
+                if (!disjoint) {
+                    int stage = query / QUERIES_PER_STAGE;
+                    long nanos = result[0] & 0xFFFFFFFFL;
+                    timings.recordGpu(STAGES[stage], nanos);
+                    if (work[query] > 0) {
+                        completedNanos[stage] += nanos;
+                        completedWork[stage] += work[query];
+                    }
+                }
+                pending[query] = false;
+            }
+        }
+    }
+
+    // Work of the tagged results of the stage since the last take, read it before takeCompletedNanos
+    public int getCompletedWork(Stage stage) {
+        return completedWork[stage.ordinal()];
+    }
+
+    // Gpu time of the tagged results of the stage since the last take, starts the sums over
+    public long takeCompletedNanos(Stage stage) {
+        long nanos = completedNanos[stage.ordinal()];
+        completedNanos[stage.ordinal()] = 0;
+        completedWork[stage.ordinal()] = 0;
+        return nanos;
+    }
+
+    public boolean isGpuTimersSupported() {
+        return gpuTimersSupported;
+    }
+
+    public void delete() {
+        if (gpuTimersSupported) {
+            glDeleteQueries(queries.length, queries, 0);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package Data;
+
+import Tracing.TraceFormat;
+
+import static android.opengl.GLES30.GL_R32UI;
+import static android.opengl.GLES30.GL_RGBA16F;
+import static android.opengl.GLES30.GL_RGBA32F;
+
+/**
+ * Texture formats of the TraceFormats, they are also the formats the textures are bound to image units with.
+ */
+
+public final class TraceFormats {
+
+    private TraceFormats() {
+    }
+
+    public static int getTextureFormat(TraceFormat format) {
+        switch (format) {
+            case RGBA16F:
+                return GL_RGBA16F;
+            case R11G11B10F:
+                // GLES 3.1 can't store R11F_G11F_B10F images, the shaders pack the colour into a uint themselves
+                return GL_R32UI;
+            default:
+                return GL_RGBA32F;
+        }
+    }
+}
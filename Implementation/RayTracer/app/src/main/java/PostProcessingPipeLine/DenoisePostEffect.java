@@ -0,0 +1,76 @@
+package PostProcessingPipeLine;
+
+import Data.GuideTextures;
+import Programs.DenoiseShaderProgram;
+import Tracing.TraceFormat;
+import Util.FrameTimings.Stage;
+import Util.StateManager;
+
+import static android.opengl.GLES31.GL_SHADER_IMAGE_ACCESS_BARRIER_BIT;
+import static android.opengl.GLES31.GL_TEXTURE_FETCH_BARRIER_BIT;
+import static android.opengl.GLES31.glMemoryBarrier;
+
+/**
+ * Runs the iterations of the a-trous denoiser as a pass of the PostProcessingGraph.
+ * The iterations ping pong between the output and one scratch target of the pool, the input is never written
+ * because it can be the traced image that the accumulation of the next frame still needs. See AtrousDenoiser for the CPU reference.
+ * The first iteration reads the input in its format, so every pair of input and target format has its own program.
+ */
+
+public class DenoisePostEffect implements PassEffect {
+
+    private static final int FORMAT_COUNT = TraceFormat.values().length;
+
+    // Indexed by input format * FORMAT_COUNT + output format, created on first use
+    private final DenoiseShaderProgram[] programs = new DenoiseShaderProgram[FORMAT_COUNT * FORMAT_COUNT];
+
+    // No iteration is needed once enough frames were averaged
+    @Override
+    public boolean isActive(PostFrame frame) {
+        return AtrousDenoiser.iterations(frame.getSampleCount()) > 0;
+    }
+
+    @Override
+    public void render(PostFrame frame, int input, int output) {
+        StateManager.getStageTimer().begin(Stage.DENOISE);
+
+        int sampleCount = frame.getSampleCount();
+        int iterations = AtrousDenoiser.iterations(sampleCount);
+        GuideTextures guideTextures = frame.getGuideTextures();
+        TraceFormat targetFormat = frame.getTargetFormat();
+        int scratch = iterations > 1 ? frame.acquireTarget(targetFormat) : 0;
+
+        int source = input;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            // Only the first iteration reads the input, the others read the targets (the program changes at most once)
+            DenoiseShaderProgram program = getProgram(iteration == 0 ? frame.getFormat(input) : targetFormat, targetFormat);
+            if (iteration <= 1) {
+                program.useProgram();
+            }
+
+            // Counted from the back, so that the last iteration writes the output
+            int target = (iterations - 1 - iteration) % 2 == 0 ? output : scratch;
+            program.dispatch(source, target, guideTextures.getNormalDepthTexture(), guideTextures.getAlbedoTexture(),
+                    frame.getWidth(), frame.getHeight(), 1 << iteration, AtrousDenoiser.colorPhi(sampleCount, iteration));
+            // The next iteration reads the image that was just written
+            glMemoryBarrier(GL_SHADER_IMAGE_ACCESS_BARRIER_BIT);
+            source = target;
+        }
+
+        if (scratch != 0) {
+            frame.releaseTarget(scratch);
+        }
+
+        // The result is sampled as a texture by the next full screen pass
+        glMemoryBarrier(GL_TEXTURE_FETCH_BARRIER_BIT);
+        StateManager.getStageTimer().end(Stage.DENOISE);
+    }
+
+    private DenoiseShaderProgram getProgram(TraceFormat inputFormat, TraceFormat outputFormat) {
+        int index = inputFormat.ordinal() * FORMAT_COUNT + outputFormat.ordinal();
+        if (programs[index] == null) {
+            programs[index] = new DenoiseShaderProgram(StateManager.getContext(), inputFormat, outputFormat);
+        }
+        return programs[index];
+    }
+}
@@ -1,34 +1,58 @@
 package PostProcessingPipeLine;
 
-import android.util.Log;
-
-import Data.FBO;
 import Data.VAO;
+import Util.StateManager;
 
+import static android.opengl.GLES20.GL_COLOR_ATTACHMENT0;
 import static android.opengl.GLES20.GL_COLOR_BUFFER_BIT;
 import static android.opengl.GLES20.GL_DEPTH_BUFFER_BIT;
-import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
+import static android.opengl.GLES20.GL_FRAMEBUFFER;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+import static android.opengl.GLES20.glBindFramebuffer;
 import static android.opengl.GLES20.glClear;
-import static android.opengl.GLES20.glDrawArrays;
+import static android.opengl.GLES20.glDeleteFramebuffers;
+import static android.opengl.GLES20.glFramebufferTexture2D;
+import static android.opengl.GLES20.glGenFramebuffers;
+import static android.opengl.GLES20.glViewport;
+
+/**
+ * Draws full screen quads to the screen or into a texture. All textures share one framebuffer object that only
+ * gets a new colour attachment, so the pooled targets of the post effects don't need a framebuffer of their own.
+ */
 
 public class ImageRenderer {
 
-    private FBO fbo;
-
-    protected ImageRenderer(int width, int height) {
-        this.fbo = new FBO(width, height, FBO.NONE);
-    }
+    private final int[] frameBuffer = new int[1];
 
     protected ImageRenderer() {}
 
-    protected void renderQuad(VAO vao) {
-        if (fbo != null) {
-            fbo.bindFrameBuffer();
+    // A texture of 0 draws to the screen, other textures are completely overwritten
+    protected void renderQuad(VAO vao, int texture, int width, int height) {
+        if (texture == 0) {
+            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+            vao.drawVertices();
+            return;
         }
-        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+
+        if (frameBuffer[0] == 0) {
+            glGenFramebuffers(1, frameBuffer, 0);
+            if (frameBuffer[0] == 0) {
+                throw new RuntimeException("Could not create a new framebuffer object.");
+            }
+        }
+
+        glBindFramebuffer(GL_FRAMEBUFFER, frameBuffer[0]);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texture, 0);
+        glViewport(0, 0, width, height);
         vao.drawVertices();
-        if (fbo != null) {
-            fbo.unbindFrameBuffer();
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        glViewport(0, 0, StateManager.getWidth(), StateManager.getHeight());
+    }
+
+    protected void delete() {
+        if (frameBuffer[0] != 0) {
+            glDeleteFramebuffers(1, frameBuffer, 0);
+            frameBuffer[0] = 0;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,11 @@
+package PostProcessingPipeLine;
+
+/**
+ * Effect with a pass of its own, it reads the neighbourhood of a pixel or needs iterations (the denoiser).
+ */
+
+public interface PassEffect extends PostEffect {
+
+    // Renders input into output, both have the size of the frame
+    void render(PostFrame frame, int input, int output);
+}
@@ -0,0 +1,16 @@
+package PostProcessingPipeLine;
+
+import Programs.ToScreenShaderProgram;
+
+/**
+ * Effect that only looks at its own pixel, it runs inside the next full screen pass of the PostProcessingGraph.
+ */
+
+public interface PixelEffect extends PostEffect {
+
+    // Define that enables the effect in to_screen_fragment_shader
+    String getDefine();
+
+    // Sets the uniforms of the effect, the program is already in use
+    void setUniforms(ToScreenShaderProgram program);
+}
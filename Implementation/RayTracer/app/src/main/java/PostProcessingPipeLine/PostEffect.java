@@ -0,0 +1,12 @@
+package PostProcessingPipeLine;
+
+/**
+ * One step of the PostProcessingGraph. Effects either have a pass of their own (PassEffect) or only look at their own
+ * pixel (PixelEffect), those are not rendered on their own but fused into the next full screen pass through a define.
+ */
+
+public interface PostEffect {
+
+    // Inactive effects are skipped for the frame (the denoiser once enough frames were averaged)
+    boolean isActive(PostFrame frame);
+}
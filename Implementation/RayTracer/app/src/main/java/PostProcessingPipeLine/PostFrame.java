@@ -0,0 +1,77 @@
+package PostProcessingPipeLine;
+
+import Data.GuideTextures;
+import Data.RenderTargetPool;
+import Data.TraceFormats;
+import Tracing.TraceFormat;
+
+/**
+ * What the effects of one PostProcessingGraph frame need to know. Scratch targets are taken from the pool
+ * and have to be given back before the effect returns, so the next pass can reuse them.
+ */
+
+public class PostFrame {
+
+    private final RenderTargetPool pool;
+    private GuideTextures guideTextures;
+    private int sceneTexture;
+    private TraceFormat traceFormat;
+    private int width;
+    private int height;
+    private int sampleCount;
+
+    public PostFrame(RenderTargetPool pool) {
+        this.pool = pool;
+    }
+
+    // The frame object is reused, it only gets the values of the new frame
+    public void set(int sceneTexture, TraceFormat traceFormat, int width, int height, int sampleCount, GuideTextures guideTextures) {
+        this.sceneTexture = sceneTexture;
+        this.traceFormat = traceFormat;
+        this.width = width;
+        this.height = height;
+        this.sampleCount = sampleCount;
+        this.guideTextures = guideTextures;
+    }
+
+    // Target with the size of the frame
+    public int acquireTarget(TraceFormat format) {
+        return pool.acquire(width, height, TraceFormats.getTextureFormat(format));
+    }
+
+    // Format of the targets between the passes: full precision for a full precision trace, otherwise half floats
+    // (a packed trace isn't packed again, the passes can't render into r32ui)
+    public TraceFormat getTargetFormat() {
+        return traceFormat == TraceFormat.RGBA32F ? TraceFormat.RGBA32F : TraceFormat.RGBA16F;
+    }
+
+    // Format of the scene texture or of a target of this frame
+    public TraceFormat getFormat(int texture) {
+        return texture == sceneTexture ? traceFormat : getTargetFormat();
+    }
+
+    // The traced image, it is only read
+    public int getSceneTexture() {
+        return sceneTexture;
+    }
+
+    public void releaseTarget(int texture) {
+        pool.release(texture);
+    }
+
+    public GuideTextures getGuideTextures() {
+        return guideTextures;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+}
@@ -0,0 +1,112 @@
+package PostProcessingPipeLine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configurable chain of PostEffects between the traced image and the screen.
+ * Adjacent per pixel effects are fused into one full screen pass, the last run of them into the pass that upscales
+ * the image to the screen. Every pass renders into a target of the RenderTargetPool that is given back as soon as
+ * the following pass has read it, so a chain of any length ping pongs between two targets (plus the scratch target
+ * an effect needs for itself) and the pool hands the same textures out again every frame.
+ * Without colour renderable float targets the full screen pass can only draw to the screen, per pixel effects in front
+ * of a pass then run after it, in the pass to the screen.
+ */
+
+public class PostProcessingGraph {
+
+    public interface FullScreenPass {
+        // Draws input into output (0 is the screen) and applies the fused per pixel effects on the way
+        void draw(PostFrame frame, int input, int output, List<PixelEffect> fused);
+
+        // False if the pass can only draw to the screen
+        boolean canDrawToTargets();
+    }
+
+    private final ArrayList<PostEffect> effects = new ArrayList<>();
+    private final ArrayList<PixelEffect> fused = new ArrayList<>();
+    private final FullScreenPass fullScreenPass;
+    private int passCount;
+    private int fusedCount;
+
+    public PostProcessingGraph(FullScreenPass fullScreenPass) {
+        this.fullScreenPass = fullScreenPass;
+    }
+
+    // Every effect has to be either a PassEffect or a PixelEffect
+    public PostProcessingGraph add(PostEffect effect) {
+        if ((effect instanceof PassEffect) == (effect instanceof PixelEffect)) {
+            throw new IllegalArgumentException(effect.getClass().getSimpleName() + " has to be either a PassEffect or a PixelEffect.");
+        }
+        effects.add(effect);
+        return this;
+    }
+
+    public void clear() {
+        effects.clear();
+    }
+
+    // Runs the active effects on the scene texture of the frame and draws the result to the screen
+    public void render(PostFrame frame) {
+        int sceneTexture = frame.getSceneTexture();
+        passCount = 0;
+        fusedCount = 0;
+        fused.clear();
+
+        int input = sceneTexture;
+        for (int i = 0; i < effects.size(); i++) {
+            PostEffect effect = effects.get(i);
+            if (!effect.isActive(frame)) {
+                continue;
+            }
+
+            if (effect instanceof PixelEffect) {
+                fused.add((PixelEffect) effect);
+                continue;
+            }
+
+            // Per pixel effects in front of a pass of their own need a full screen pass into a target
+            if (!fused.isEmpty() && fullScreenPass.canDrawToTargets()) {
+                int output = frame.acquireTarget(frame.getTargetFormat());
+                draw(frame, input, output);
+                input = advance(frame, sceneTexture, input, output);
+            }
+
+            int output = frame.acquireTarget(frame.getTargetFormat());
+            ((PassEffect) effect).render(frame, input, output);
+            passCount++;
+            input = advance(frame, sceneTexture, input, output);
+        }
+
+        // The remaining per pixel effects run in the pass that upscales the image to the screen
+        draw(frame, input, 0);
+        if (input != sceneTexture) {
+            frame.releaseTarget(input);
+        }
+    }
+
+    private void draw(PostFrame frame, int input, int output) {
+        fullScreenPass.draw(frame, input, output, fused);
+        fusedCount += fused.size();
+        passCount++;
+        fused.clear();
+    }
+
+    // Nothing reads the input after this pass, so its target can be handed to the next one
+    private static int advance(PostFrame frame, int sceneTexture, int input, int output) {
+        if (input != sceneTexture) {
+            frame.releaseTarget(input);
+        }
+        return output;
+    }
+
+    // Passes of the last frame, including the one to the screen
+    public int getPassCount() {
+        return passCount;
+    }
+
+    // Per pixel effects of the last frame that ran inside a full screen pass instead of a pass of their own
+    public int getFusedCount() {
+        return fusedCount;
+    }
+}
@@ -1,16 +1,51 @@
 package PostProcessingPipeLine;
 
+import Data.GuideTextures;
+import Tracing.TraceFormat;
 import Util.StateManager;
 
+/**
+ * Entry point of the post processing: the scenes configure the chain of effects once and render it every frame.
+ */
+
 public class Processing {
 
+    private static PostProcessingGraph graph;
+    private static PostFrame frame;
     private static ToScreenPostEffect toScreenPostEffect;
 
+    // The default chain denoises the traced image and tonemaps it in the pass that upscales it to the screen
     public static void init() {
+        init(new DenoisePostEffect(), new TonemapPostEffect(TonemapPostEffect.DEFAULT_EXPOSURE));
+    }
+
+    // Effects run in the given order, the image is upscaled to the screen after the last one
+    // Every effect has to be a PassEffect or a PixelEffect
+    public static void init(PostEffect... effects) {
         toScreenPostEffect = new ToScreenPostEffect();
+        graph = new PostProcessingGraph(toScreenPostEffect);
+        for (PostEffect effect : effects) {
+            graph.add(effect);
+        }
+        frame = new PostFrame(StateManager.getRenderTargetPool());
+    }
+
+    // Runs the chain on the traced image (between the trace dispatches and the next frame) and draws it to the screen
+    // The targets between the passes follow the precision of the traced image
+    public static void render(int sceneColourTexture, TraceFormat traceFormat, GuideTextures guideTextures, int sampleCount) {
+        frame.set(sceneColourTexture, traceFormat, guideTextures.getWidth(), guideTextures.getHeight(), sampleCount, guideTextures);
+        graph.render(frame);
+    }
+
+    public static PostProcessingGraph getGraph() {
+        return graph;
     }
 
-    public static void postToScreen(int sceneColourTexture) {
-        toScreenPostEffect.render(sceneColourTexture);
+    // The targets of the effects are back in the pool after every frame, only the framebuffer object is deleted
+    public static void release() {
+        if (toScreenPostEffect != null) {
+            toScreenPostEffect.release();
+            toScreenPostEffect = null;
+        }
     }
 }
@@ -1,28 +1,97 @@
 package PostProcessingPipeLine;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
 import Data.VAO;
+import Util.FrameTimings.Stage;
 import Util.StateManager;
 import Programs.ToScreenShaderProgram;
+import Tracing.TraceFormat;
 
-public class ToScreenPostEffect {
+import static android.opengl.GLES20.GL_EXTENSIONS;
+import static android.opengl.GLES20.glGetString;
 
-    private static final float[] VERTEX_DATA = {-1f, 1f, -1f, -1f, 1f, 1f, 1f, -1f};
+/**
+ * The full screen pass of the PostProcessingGraph: upscales its input to the screen (or copies it into a target)
+ * and applies the fused per pixel effects. Every set of fused effects and every input format is its own variant
+ * of the to screen program.
+ */
 
-    private static VAO vao;
+public class ToScreenPostEffect implements PostProcessingGraph.FullScreenPass {
+
+    private static final float[] VERTEX_DATA = {-1f, 1f, -1f, -1f, 1f, 1f, 1f, -1f};
 
-    private ImageRenderer imageRenderer;
-    private ToScreenShaderProgram toScreenShaderProgram;
+    private final VAO vao;
+    private final ImageRenderer imageRenderer;
+    // Every define gets a bit of the key of the program variants, the input format is in the bits above them
+    private static final int FORMAT_SHIFT = 16;
+    private final HashMap<String, Integer> defineBits = new HashMap<>();
+    private final HashMap<Integer, ToScreenShaderProgram> programs = new HashMap<>();
+    // Float textures are only colour renderable with this extension
+    private final boolean floatTargets;
 
     public ToScreenPostEffect() {
-        toScreenShaderProgram = new ToScreenShaderProgram(StateManager.getContext());
         imageRenderer = new ImageRenderer();
-
         vao = new VAO(VERTEX_DATA);
+
+        String extensions = glGetString(GL_EXTENSIONS);
+        floatTargets = extensions != null && extensions.contains("GL_EXT_color_buffer_float");
+    }
+
+    @Override
+    public void draw(PostFrame frame, int input, int output, List<PixelEffect> fused) {
+        ToScreenShaderProgram program = getProgram(frame.getFormat(input), fused);
+        program.useProgram();
+        program.setUniforms(input);
+        for (int i = 0; i < fused.size(); i++) {
+            fused.get(i).setUniforms(program);
+        }
+
+        if (output == 0) {
+            StateManager.getStageTimer().begin(Stage.POST_TO_SCREEN);
+            imageRenderer.renderQuad(vao, 0, 0, 0);
+            StateManager.getStageTimer().end(Stage.POST_TO_SCREEN);
+        } else {
+            imageRenderer.renderQuad(vao, output, frame.getWidth(), frame.getHeight());
+        }
+    }
+
+    // The targets are float textures, the graph only asks for them if they are colour renderable
+    @Override
+    public boolean canDrawToTargets() {
+        return floatTargets;
     }
 
-    public void render(int texture) {
-        toScreenShaderProgram.useProgram();
-        toScreenShaderProgram.setUniforms(texture);
-        imageRenderer.renderQuad(vao);
+    public void release() {
+        imageRenderer.delete();
+    }
+
+    private ToScreenShaderProgram getProgram(TraceFormat inputFormat, List<PixelEffect> fused) {
+        int key = inputFormat.ordinal() << FORMAT_SHIFT;
+        for (int i = 0; i < fused.size(); i++) {
+            String define = fused.get(i).getDefine();
+            Integer bit = defineBits.get(define);
+            if (bit == null) {
+                bit = 1 << defineBits.size();
+                defineBits.put(define, bit);
+            }
+            key |= bit;
+        }
+
+        ToScreenShaderProgram program = programs.get(key);
+        if (program == null) {
+            Map<String, Object> defines = new TreeMap<>();
+            for (int i = 0; i < fused.size(); i++) {
+                defines.put(fused.get(i).getDefine(), 1);
+            }
+            // The order of the TraceFormats matches the FORMAT_ defines of the shader
+            defines.put("INPUT_FORMAT", inputFormat.ordinal());
+            program = new ToScreenShaderProgram(StateManager.getContext(), defines);
+            programs.put(key, program);
+        }
+        return program;
     }
 }
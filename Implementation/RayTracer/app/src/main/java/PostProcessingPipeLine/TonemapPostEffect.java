@@ -0,0 +1,43 @@
+package PostProcessingPipeLine;
+
+import Programs.ToScreenShaderProgram;
+
+import static android.opengl.GLES20.glUniform1f;
+
+/**
+ * Maps the linear traced radiance with an exposure and a filmic curve into the displayable range.
+ * Per pixel, so it never gets a pass of its own but runs inside the next full screen pass.
+ */
+
+public class TonemapPostEffect implements PixelEffect {
+
+    public static final float DEFAULT_EXPOSURE = 1f;
+
+    private float exposure;
+
+    public TonemapPostEffect(float exposure) {
+        setExposure(exposure);
+    }
+
+    public void setExposure(float exposure) {
+        if (exposure <= 0f) {
+            throw new IllegalArgumentException("Exposure has to be positive: " + exposure);
+        }
+        this.exposure = exposure;
+    }
+
+    @Override
+    public boolean isActive(PostFrame frame) {
+        return true;
+    }
+
+    @Override
+    public String getDefine() {
+        return "TONEMAP";
+    }
+
+    @Override
+    public void setUniforms(ToScreenShaderProgram program) {
+        glUniform1f(program.getExposureLocation(), exposure);
+    }
+}
@@ -5,10 +5,32 @@ import android.opengl.Matrix;
 
 import com.example.raytracer.R;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
-
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import Data.AccumulationBuffer;
+import Data.GuideTextures;
+import Data.SSBO;
+import Data.SectionedSSBO;
+import Data.StageTimer;
+import Data.ScenePacker;
+import Data.TraceFormats;
 import Objects.Cube;
+import Objects.Mesh;
 import Objects.Sphere;
+import Tracing.Bvh;
+import Tracing.PathTracer;
+import Tracing.Reprojection;
+import Tracing.TileScheduler;
+import Tracing.TraceFormat;
+import Util.FrameTimings.Stage;
+import Util.StateManager;
+import Tracing.TraceScene;
 
 import static android.opengl.GLES20.GL_BLEND;
 import static android.opengl.GLES20.GL_DEPTH_TEST;
@@ -18,19 +40,27 @@ import static android.opengl.GLES20.glActiveTexture;
 import static android.opengl.GLES20.glBindTexture;
 import static android.opengl.GLES20.glDisable;
 import static android.opengl.GLES20.glGetUniformLocation;
-import static android.opengl.GLES20.glUniform1f;
 import static android.opengl.GLES20.glUniform1i;
+import static android.opengl.GLES20.glUniform1iv;
+import static android.opengl.GLES20.glUniform2i;
 import static android.opengl.GLES20.glUniform3f;
-import static android.opengl.GLES20.glUniform3fv;
 import static android.opengl.GLES20.glUniformMatrix4fv;
 import static android.opengl.GLES20.glUseProgram;
-import static android.opengl.GLES30.GL_RGBA32F;
-import static android.opengl.GLES30.glTexStorage2D;
+import static android.opengl.GLES30.GL_RGBA16F;
+import static android.opengl.GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static android.opengl.GLES30.GL_TIMEOUT_EXPIRED;
+import static android.opengl.GLES30.glClientWaitSync;
+import static android.opengl.GLES30.glDeleteSync;
+import static android.opengl.GLES30.glFenceSync;
 import static android.opengl.GLES31.GL_SHADER_IMAGE_ACCESS_BARRIER_BIT;
+import static android.opengl.GLES31.GL_TEXTURE_FETCH_BARRIER_BIT;
+import static android.opengl.GLES31.GL_READ_ONLY;
 import static android.opengl.GLES31.GL_WRITE_ONLY;
 import static android.opengl.GLES31.glBindImageTexture;
 import static android.opengl.GLES31.glDispatchCompute;
 import static android.opengl.GLES31.glMemoryBarrier;
+import static Util.Constants.NANOS_PER_SEC;
+import static Util.Constants.TARGET_FPS;
 
 /**
  * Created by Andreas on 24.04.2020.
@@ -38,68 +68,213 @@ import static android.opengl.GLES31.glMemoryBarrier;
 
 public class ComputeShaderProgram extends ShaderProgram {
 
+    // Local work group size, injected into the shader (tiles have to be a multiple of it)
+    public static final int WORK_GROUP_SIZE = 8;
+
     // The following constants have to have the same value in the shader
-    private static final int CUBE_COUNT = 3;
-    private static final int SPHERE_COUNT = 7;
+    private static final int BVH_BINDING = 0;
+    private static final int SCENE_BINDING = 1;
+    private static final int SECTION_CUBES = 0;
+    private static final int SECTION_SPHERES = 1;
+    private static final int SECTION_MATERIALS = 2;
+    private static final int SECTION_VERTICES = 3;
+    private static final int SECTION_TRIANGLES = 4;
+    private static final int SECTION_COUNT = 5;
+    // Storage blocks of the megakernel (the bvh and the scene), GLES 3.1 guarantees 4
+    public static final int STORAGE_BLOCKS = 2;
+
+    // left bottom, right bottom, left top, right top corner of the screen in device coordinates
+    private static final float[] CORNERS = {-1, -1, 0, 1, +1, -1, 0, 1, -1, +1, 0, 1, +1, +1, 0, 1};
+    private static final float[] ORIGIN = {0f, 0f, 0f, 1f};
+
+    // Reused every frame so that starting a frame creates no garbage
+    private final float[] cameraPosition = new float[4];
+    private final float[] rays = new float[16];
 
     // Uniform locations
-    private final int uTextureUnitLocation;
     private final int uCameraPositionLocation;
     private final int uRay00Location;
     private final int uRay10Location;
     private final int uRay01Location;
     private final int uRay11Location;
-    private final int[] uCubeMinArrayLocation;
-    private final int[] uCubeMaxArrayLocation;
-    private final int[] uCubeColorArrayLocation;
-    private final int[] uCubeMaterialArrayLocation;
-    private final int[] uCubeParameter0ArrayLocation;
-    private final int[] uSphereCenterArrayLocation;
-    private final int[] uSphereRadiusArrayLocation;
-    private final int[] uSphereColorArrayLocation;
-    private final int[] uSphereMaterialArrayLocation;
-    private final int[] uSphereParameter0ArrayLocation;
-
-    public ComputeShaderProgram(Context context) {
-        super(context, R.raw.compute_shader);
+    private final int uFrameIndexLocation;
+    private final int uTileOffsetLocation;
+    private final int uReprojectLocation;
+    private final int uPreviousNormalDepthLocation;
+    private final int uPreviousViewProjectionLocation;
+    private final int uPreviousCameraPositionLocation;
+    private final int uSceneOffsetsLocation;
+    private final int uPrimitiveReferenceOffsetLocation;
+
+    // Camera of the last frame, the first frame after a camera move reprojects its average
+    private final Reprojection reprojection = new Reprojection();
+
+    // Splits every frame into tiles, only the tiles that fit into the frame budget are traced per draw call
+    private final TileScheduler tileScheduler = new TileScheduler();
+    // Fence behind the dispatches of the last draw call, only used if the gpu can't time them (0 = none)
+    private long dispatchFence;
+    // The texture that holds the newest image to show and the number of samples per pixel that it averages
+    private int resultTexture;
+    private int resultSampleCount;
+    private final int multiSamplingCount;
+    // Format of the traced image and its average
+    private final TraceFormat traceFormat;
+
+    // Shader storage buffers of the scene and its bvh, the nodes and the primitive references share one buffer
+    private final ScenePacker scenePacker = new ScenePacker();
+    private final SectionedSSBO sceneBuffer;
+    private final SSBO bvhBuffer;
+    private Bvh bvh;
+    private ByteBuffer bvhData;
+    // First row of every scene array and of the primitive references (the shader reads ivec4 rows)
+    private final int[] sceneOffsets = new int[SECTION_COUNT];
+    private int primitiveReferenceOffset;
+
+    // Traces the tiles in stages instead of the megakernel if it was asked for and the device supports it
+    private final WavefrontShaderProgram wavefront;
+
+    public ComputeShaderProgram(Context context, int multiSamplingCount) {
+        this(context, PathTracer.MAX_BOUNCES, multiSamplingCount);
+    }
+
+    public ComputeShaderProgram(Context context, int maxBounces, int multiSamplingCount) {
+        this(context, maxBounces, PathTracer.ROULETTE_MIN_BOUNCES, multiSamplingCount);
+    }
+
+    // Paths end by russian roulette after rouletteMinBounces bounces at the earliest, maxBounces turns it off
+    public ComputeShaderProgram(Context context, int maxBounces, int rouletteMinBounces, int multiSamplingCount) {
+        this(context, maxBounces, rouletteMinBounces, multiSamplingCount, false);
+    }
+
+    // wavefront traces the tiles with the WavefrontShaderProgram (falls back to the megakernel on devices with less than 4 storage blocks)
+    public ComputeShaderProgram(Context context, int maxBounces, int rouletteMinBounces, int multiSamplingCount, boolean wavefront) {
+        this(context, maxBounces, rouletteMinBounces, multiSamplingCount, wavefront, TraceFormat.RGBA32F);
+    }
+
+    // traceFormat has to be the format of the AccumulationBuffer, smaller formats trade precision for bandwidth
+    public ComputeShaderProgram(Context context, int maxBounces, int rouletteMinBounces, int multiSamplingCount, boolean wavefront, TraceFormat traceFormat) {
+        super(context, R.raw.compute_shader, defines(maxBounces, rouletteMinBounces, multiSamplingCount, traceFormat));
+        this.multiSamplingCount = multiSamplingCount;
+        this.traceFormat = traceFormat;
+        this.wavefront = wavefront && WavefrontShaderProgram.isSupported()
+                ? new WavefrontShaderProgram(context, defines(maxBounces, rouletteMinBounces, multiSamplingCount, traceFormat), maxBounces, multiSamplingCount)
+                : null;
 
         // Retrieve uniform locations for the shader program
-        uTextureUnitLocation = glGetUniformLocation(program, U_FRAME_BUFFER);
         uCameraPositionLocation = glGetUniformLocation(program, "u_CameraPosition");
         uRay00Location = glGetUniformLocation(program, "u_Ray00");
         uRay10Location = glGetUniformLocation(program, "u_Ray10");
         uRay01Location = glGetUniformLocation(program, "u_Ray01");
         uRay11Location = glGetUniformLocation(program, "u_Ray11");
+        uFrameIndexLocation = glGetUniformLocation(program, U_FRAME_INDEX);
+        uTileOffsetLocation = glGetUniformLocation(program, U_TILE_OFFSET);
+        uReprojectLocation = glGetUniformLocation(program, "u_Reproject");
+        uPreviousNormalDepthLocation = glGetUniformLocation(program, "u_PreviousNormalDepth");
+        uPreviousViewProjectionLocation = glGetUniformLocation(program, "u_PreviousViewProjection");
+        uPreviousCameraPositionLocation = glGetUniformLocation(program, "u_PreviousCameraPosition");
+        uSceneOffsetsLocation = glGetUniformLocation(program, "u_SceneOffsets");
+        uPrimitiveReferenceOffsetLocation = glGetUniformLocation(program, "u_PrimitiveReferenceOffset");
+
+        sceneBuffer = new SectionedSSBO(SECTION_COUNT);
+        bvhBuffer = new SSBO();
+    }
+
+    // Traces the next tiles of the progressive render into the accumulation buffer (as many as fit into the frame budget)
+    // The guides of the denoiser are written along with it
+    public void setUniforms(AccumulationBuffer accumulationBuffer, GuideTextures guideTextures, int width, int height, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, ArrayList<Cube> cubeList, ArrayList<Sphere> sphereList) {
+        setUniforms(accumulationBuffer, guideTextures, width, height, invertedViewProjectionMatrix, invertedViewMatrix, cubeList, sphereList, Collections.<Mesh>emptyList());
+    }
+
+    public void setUniforms(AccumulationBuffer accumulationBuffer, GuideTextures guideTextures, int width, int height, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, ArrayList<Cube> cubeList, ArrayList<Sphere> sphereList, List<Mesh> meshList) {
+        if (accumulationBuffer.getFormat() != traceFormat) {
+            throw new IllegalArgumentException("The accumulation buffer is " + accumulationBuffer.getFormat() + " but the shader stores " + traceFormat);
+        }
+        StageTimer stageTimer = StateManager.getStageTimer();
+
+        // Camera and scene changes are only picked up between frames, so that all tiles of a frame see the same state
+        stageTimer.begin(Stage.UPLOAD);
+        if (tileScheduler.isFrameComplete()) {
+            guideTextures.resize(width, height);
+            guideTextures.swap();
+            startFrame(accumulationBuffer, width, height, invertedViewProjectionMatrix, invertedViewMatrix, cubeList, sphereList, meshList);
+        }
+
+        bvhBuffer.bind(BVH_BINDING);
+        sceneBuffer.bind(SCENE_BINDING);
+
+        // Bind the new average to image unit 0 and the average of the previous frames to image unit 1
+        int imageFormat = TraceFormats.getTextureFormat(traceFormat);
+        glBindImageTexture(0, accumulationBuffer.getTargetTexture(), 0, false, 0, GL_WRITE_ONLY, imageFormat);
+        glBindImageTexture(1, accumulationBuffer.getAverageTexture(), 0, false, 0, GL_READ_ONLY, imageFormat);
+        // The guides of the newest camera rays go to image units 2 and 3
+        glBindImageTexture(2, guideTextures.getNormalDepthTexture(), 0, false, 0, GL_WRITE_ONLY, GL_RGBA16F);
+        glBindImageTexture(3, guideTextures.getAlbedoTexture(), 0, false, 0, GL_WRITE_ONLY, GL_RGBA16F);
+        // The normals and distances of the previous frame are sampled from texture unit 0
+        glActiveTexture(GL_TEXTURE0);
+        glBindTexture(GL_TEXTURE_2D, guideTextures.getPreviousNormalDepthTexture());
+        glUniform1i(uPreviousNormalDepthLocation, 0);
+        stageTimer.end(Stage.UPLOAD);
+
+        // The tile count of this draw call is based on earlier ones, the gpu is never waited for
+        updateTileBudget(stageTimer);
+
+        stageTimer.begin(Stage.DISPATCH);
+        int pixels = 0;
+        int tiles = tileScheduler.getTilesForBudget();
+        for (int i = 0; i < tiles; i++) {
+            int tile = tileScheduler.nextTile();
+            int tileWidth = tileScheduler.getTileWidth(tile);
+            int tileHeight = tileScheduler.getTileHeight(tile);
+
+            if (wavefront != null) {
+                wavefront.traceTile(tileScheduler.getTileX(tile), tileScheduler.getTileY(tile), tileWidth, tileHeight);
+            } else {
+                glUniform2i(uTileOffsetLocation, tileScheduler.getTileX(tile), tileScheduler.getTileY(tile));
+
+                // Starts/Invokes the compute shader, partial tiles get a rounded up number of work groups (the shader skips the pixels outside of the image)
+                glDispatchCompute((tileWidth + WORK_GROUP_SIZE - 1) / WORK_GROUP_SIZE, (tileHeight + WORK_GROUP_SIZE - 1) / WORK_GROUP_SIZE, 1);
+            }
+            pixels += tileWidth * tileHeight;
+        }
+        // The stages leave their own program in use
+        if (wavefront != null) {
+            glUseProgram(program);
+        }
+        stageTimer.end(Stage.DISPATCH, pixels);
+        if (!stageTimer.isGpuTimersSupported()) {
+            dispatchFence = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        }
 
-        uCubeMinArrayLocation = new int[CUBE_COUNT];
-        uCubeMaxArrayLocation = new int[CUBE_COUNT];
-        uCubeColorArrayLocation = new int[CUBE_COUNT];
-        uCubeMaterialArrayLocation = new int[CUBE_COUNT];
-        uCubeParameter0ArrayLocation = new int[CUBE_COUNT];
-        uSphereCenterArrayLocation = new int[SPHERE_COUNT];
-        uSphereRadiusArrayLocation = new int[SPHERE_COUNT];
-        uSphereColorArrayLocation = new int[SPHERE_COUNT];
-        uSphereMaterialArrayLocation = new int[SPHERE_COUNT];
-        uSphereParameter0ArrayLocation = new int[SPHERE_COUNT];
-
-        for(int i=0;i<CUBE_COUNT;i++) {
-            uCubeMinArrayLocation[i] = glGetUniformLocation(program, "cubeMinArray"+"["+i+"]");
-            uCubeMaxArrayLocation[i] = glGetUniformLocation(program, "cubeMaxArray"+"["+i+"]");
-            uCubeColorArrayLocation[i] = glGetUniformLocation(program, "cubeColorArray"+"["+i+"]");
-            uCubeMaterialArrayLocation[i] = glGetUniformLocation(program, "cubeMaterialArray"+"["+i+"]");
-            uCubeParameter0ArrayLocation[i] = glGetUniformLocation(program, "cubeParameter0Array"+"["+i+"]");
+        // Update textures that have been written on and will be read soon (the frameBuffer - textureID)
+        // The normals and distances are sampled by the reprojection of the next frame
+        stageTimer.begin(Stage.BARRIER);
+        glMemoryBarrier(GL_SHADER_IMAGE_ACCESS_BARRIER_BIT | GL_TEXTURE_FETCH_BARRIER_BIT);
+        stageTimer.end(Stage.BARRIER);
+
+        // An unfinished frame is only shown if there is no complete average to show instead
+        if (tileScheduler.isFrameComplete() || accumulationBuffer.getFrameIndex() == 0) {
+            resultTexture = accumulationBuffer.getTargetTexture();
+            resultSampleCount = (accumulationBuffer.getFrameIndex() + 1) * multiSamplingCount;
+        } else {
+            resultTexture = accumulationBuffer.getAverageTexture();
+            resultSampleCount = accumulationBuffer.getFrameIndex() * multiSamplingCount;
         }
+    }
 
-        for(int i=0;i<SPHERE_COUNT;i++) {
-            uSphereCenterArrayLocation[i] = glGetUniformLocation(program, "sphereCenterArray"+"["+i+"]");
-            uSphereRadiusArrayLocation[i] = glGetUniformLocation(program, "sphereRadiusArray"+"["+i+"]");
-            uSphereColorArrayLocation[i] = glGetUniformLocation(program, "sphereColorArray"+"["+i+"]");
-            uSphereMaterialArrayLocation[i] = glGetUniformLocation(program, "sphereMaterialArray"+"["+i+"]");
-            uSphereParameter0ArrayLocation[i] = glGetUniformLocation(program, "sphereParameter0Array"+"["+i+"]");
+    private void updateTileBudget(StageTimer stageTimer) {
+        if (stageTimer.isGpuTimersSupported()) {
+            // Gpu times of the dispatches that became available since the last draw call
+            int pixels = stageTimer.getCompletedWork(Stage.DISPATCH);
+            tileScheduler.recordTime(pixels, stageTimer.takeCompletedNanos(Stage.DISPATCH));
+        } else if (dispatchFence != 0) {
+            // Polled without a timeout, an unsignaled fence means the last tiles are still running
+            tileScheduler.recordGpuBusy(glClientWaitSync(dispatchFence, 0, 0) == GL_TIMEOUT_EXPIRED);
+            glDeleteSync(dispatchFence);
+            dispatchFence = 0;
         }
     }
 
-    public void setUniforms(int textureID, int width, int height, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, ArrayList<Cube> cubeList, ArrayList<Sphere> sphereList) {
+    private void startFrame(AccumulationBuffer accumulationBuffer, int width, int height, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, ArrayList<Cube> cubeList, ArrayList<Sphere> sphereList, List<Mesh> meshList) {
         // The following camera and ray calculations are done once per frame
         // If they were in the shader, the would be calculated once per ray (!)
         // Also having them in the java code means that the cpu can do the calculations
@@ -107,98 +282,149 @@ public class ComputeShaderProgram extends ShaderProgram {
         // (Ray tracing is way more gpu than cpu demanding so this will increase the performance)
 
         // Initializing the camera
-        float[] cameraPosition = new float[4];
-        Matrix.multiplyMV(cameraPosition, 0, invertedViewMatrix, 0, new float[]{0f, 0f, 0f, 1f}, 0);
-
-        // The four corner rays are defined as vec4s so that mat4 multiplication and perspective divide (dividing by w component) is possible (Note: these are device coordinates (screen coordinates) with 1 as w)
-        float[] ray00 = new float[]{-1, -1, 0, 1};// left, bottom
-        float[] ray10 = new float[]{+1, -1, 0, 1};// right, bottom
-        float[] ray01 = new float[]{-1, +1, 0, 1};// left, top
-        float[] ray11 = new float[]{+1, +1, 0, 1};// right, top
-
-        float[][] rayArray = new float[][]{ray00, ray10, ray01, ray11};
-
-        // From clipping (device/screen) space to world space
-        for(float[] ray : rayArray) {
-            Matrix.multiplyMV(ray, 0, invertedViewProjectionMatrix, 0, ray, 0);
-            ray[0] = (ray[0] / ray[3]) - cameraPosition[0];
-            ray[1] = (ray[1] / ray[3]) - cameraPosition[1];
-            ray[2] = (ray[2] / ray[3]) - cameraPosition[2];
-            ray[3] = 1f;
+        Matrix.multiplyMV(cameraPosition, 0, invertedViewMatrix, 0, ORIGIN, 0);
+
+        // The four corner rays are vec4s so that mat4 multiplication and perspective divide (dividing by w component) is possible (Note: these are device coordinates (screen coordinates) with 1 as w)
+        for (int i = 0; i < 4; i++) {
+            // From clipping (device/screen) space to world space
+            Matrix.multiplyMV(rays, i * 4, invertedViewProjectionMatrix, 0, CORNERS, i * 4);
+            rays[i * 4] = (rays[i * 4] / rays[i * 4 + 3]) - cameraPosition[0];
+            rays[i * 4 + 1] = (rays[i * 4 + 1] / rays[i * 4 + 3]) - cameraPosition[1];
+            rays[i * 4 + 2] = (rays[i * 4 + 2] / rays[i * 4 + 3]) - cameraPosition[2];
+            rays[i * 4 + 3] = 1f;
         }
 
         // Pass the camera position into the shader program
         glUniform3f(uCameraPositionLocation, cameraPosition[0], cameraPosition[1], cameraPosition[2]);
 
         // Pass the four corner rays into the shader program
-        glUniform3f(uRay00Location, ray00[0], ray00[1], ray00[2]);
-        glUniform3f(uRay10Location, ray10[0], ray10[1], ray10[2]);
-        glUniform3f(uRay01Location, ray01[0], ray01[1], ray01[2]);
-        glUniform3f(uRay11Location, ray11[0], ray11[1], ray11[2]);
-
-        // Pass the cubes into the shader program
-        for(int i=0;i<CUBE_COUNT;i++) {
-            if(i<cubeList.size()){
-                glUniform3f(uCubeMinArrayLocation[i], cubeList.get(i).getMin().x, cubeList.get(i).getMin().y, cubeList.get(i).getMin().z);
-                glUniform3f(uCubeMaxArrayLocation[i], cubeList.get(i).getMax().x, cubeList.get(i).getMax().y, cubeList.get(i).getMax().z);
-                glUniform3f(uCubeColorArrayLocation[i], cubeList.get(i).getColor().x, cubeList.get(i).getColor().y, cubeList.get(i).getColor().z);
-                if(cubeList.get(i).getMaterial() == Cube.Material.DIFFUSE) {
-                    glUniform1i(uCubeMaterialArrayLocation[i], 0);
-                } else if(cubeList.get(i).getMaterial() == Cube.Material.METAL) {
-                    glUniform1i(uCubeMaterialArrayLocation[i], 1);
-                }
-                glUniform1f(uCubeParameter0ArrayLocation[i], cubeList.get(i).getParameter0());
-            } else {
-                glUniform3f(uCubeMinArrayLocation[i], 0, 0, 0);
-                glUniform3f(uCubeMaxArrayLocation[i], 0, 0, 0);
-                glUniform3f(uCubeColorArrayLocation[i], 0, 0, 0);
-                glUniform1i(uCubeMaterialArrayLocation[i], 0);
-                glUniform1f(uCubeParameter0ArrayLocation[i], 0f);
-            }
+        glUniform3f(uRay00Location, rays[0], rays[1], rays[2]);
+        glUniform3f(uRay10Location, rays[4], rays[5], rays[6]);
+        glUniform3f(uRay01Location, rays[8], rays[9], rays[10]);
+        glUniform3f(uRay11Location, rays[12], rays[13], rays[14]);
+
+        // Pass the cubes, spheres, meshes and their bvh into the shader program (only changes are uploaded)
+        boolean sceneChanged = updateScene(cubeList, sphereList, meshList);
+        glUniform1iv(uSceneOffsetsLocation, SECTION_COUNT, sceneOffsets, 0);
+        glUniform1i(uPrimitiveReferenceOffsetLocation, primitiveReferenceOffset);
+
+        // The average starts over whenever the camera or the scene changed
+        int frameIndex = accumulationBuffer.nextFrame(invertedViewProjectionMatrix, width, height, sceneChanged);
+        glUniform1i(uFrameIndexLocation, frameIndex);
+
+        // If only the camera moved, the new average starts with the reprojected old one
+        glUniform1i(uReprojectLocation, accumulationBuffer.isReprojectable() ? 1 : 0);
+        glUniformMatrix4fv(uPreviousViewProjectionLocation, 1, false, reprojection.getPreviousViewProjectionMatrix(), 0);
+        float[] previousCameraPosition = reprojection.getPreviousCameraPosition();
+        glUniform3f(uPreviousCameraPositionLocation, previousCameraPosition[0], previousCameraPosition[1], previousCameraPosition[2]);
+        if (wavefront != null) {
+            wavefront.startFrame(cameraPosition, rays, frameIndex, accumulationBuffer.isReprojectable(), reprojection.getPreviousViewProjectionMatrix(), previousCameraPosition);
+            wavefront.resize(tileScheduler.getTileSize());
+            wavefront.setSceneOffsets(sceneOffsets, primitiveReferenceOffset);
         }
+        reprojection.setPreviousCamera(invertedViewProjectionMatrix, cameraPosition);
 
-        // Pass the spheres into the shader program
-        for(int i=0;i<SPHERE_COUNT;i++) {
-            if(i<sphereList.size()){
-                glUniform3f(uSphereCenterArrayLocation[i], sphereList.get(i).getCenter().x, sphereList.get(i).getCenter().y, sphereList.get(i).getCenter().z);
-                glUniform1f(uSphereRadiusArrayLocation[i], sphereList.get(i).getRadius());
-                glUniform3f(uSphereColorArrayLocation[i], sphereList.get(i).getColor().x, sphereList.get(i).getColor().y, sphereList.get(i).getColor().z);
-                if(sphereList.get(i).getMaterial() == Sphere.Material.DIFFUSE) {
-                    glUniform1i(uSphereMaterialArrayLocation[i], 0);
-                } else if(sphereList.get(i).getMaterial() == Sphere.Material.METAL) {
-                    glUniform1i(uSphereMaterialArrayLocation[i], 1);
-                }
-                glUniform1f(uSphereParameter0ArrayLocation[i], sphereList.get(i).getParameter0());
-            } else {
-                glUniform3f(uSphereCenterArrayLocation[i], 0, 0, 0);
-                glUniform1f(uSphereRadiusArrayLocation[i], 0);
-                glUniform3f(uSphereColorArrayLocation[i], 0, 0, 0);
-                glUniform1i(uSphereMaterialArrayLocation[i], 0);
-                glUniform1f(uSphereParameter0ArrayLocation[i], 0f);
+        tileScheduler.startFrame(width, height);
+    }
+
+    // Constants of the shader variant, every combination is compiled once
+    private static Map<String, Object> defines(int maxBounces, int rouletteMinBounces, int multiSamplingCount, TraceFormat traceFormat) {
+        Map<String, Object> defines = new TreeMap<>();
+        defines.put("MAX_BOUNCES", maxBounces);
+        defines.put("ROULETTE_MIN_BOUNCES", rouletteMinBounces);
+        defines.put("MULTI_SAMPLING_COUNT", multiSamplingCount);
+        defines.put("WORK_GROUP_SIZE", WORK_GROUP_SIZE);
+        defines.put("BVH_STACK_SIZE", Bvh.STACK_SIZE);
+        defines.put("PRIMITIVE_CUBE", Bvh.PRIMITIVE_CUBE);
+        defines.put("PRIMITIVE_SPHERE", Bvh.PRIMITIVE_SPHERE);
+        defines.put("PRIMITIVE_TRIANGLE", Bvh.PRIMITIVE_TRIANGLE);
+        defines.put("PRIMITIVE_TYPE_BITS", Bvh.PRIMITIVE_TYPE_BITS);
+        defines.put("TRIANGLE_EPSILON", PathTracer.TRIANGLE_EPSILON);
+        defines.put("MAX_HISTORY", Reprojection.MAX_HISTORY);
+        defines.put("DEPTH_TOLERANCE", Reprojection.DEPTH_TOLERANCE);
+        defines.put("MIN_NORMAL_DOT", Reprojection.MIN_NORMAL_DOT);
+        defines.put("TRACE_FORMAT", traceFormat.ordinal());
+        return defines;
+    }
+
+    // Returns true if anything in the scene changed since the last frame
+    private boolean updateScene(ArrayList<Cube> cubeList, ArrayList<Sphere> sphereList, List<Mesh> meshList) {
+        scenePacker.pack(cubeList, sphereList, meshList);
+        boolean changed = scenePacker.isChanged();
+
+        sceneBuffer.set(SECTION_CUBES, scenePacker.getCubeData(), scenePacker.getCubeRanges());
+        sceneBuffer.set(SECTION_SPHERES, scenePacker.getSphereData(), scenePacker.getSphereRanges());
+        sceneBuffer.set(SECTION_MATERIALS, scenePacker.getMaterialData(), scenePacker.getMaterialRanges());
+        sceneBuffer.set(SECTION_VERTICES, scenePacker.getVertexData(), scenePacker.getVertexRanges());
+        sceneBuffer.set(SECTION_TRIANGLES, scenePacker.getTriangleData(), scenePacker.getTriangleRanges());
+        if (sceneBuffer.upload()) {
+            for (int section = 0; section < SECTION_COUNT; section++) {
+                sceneOffsets[section] = sceneBuffer.getRowOffset(section);
             }
         }
 
-        // Tell the texture uniform sampler to use this texture in the shader by
-        // telling it to read from texture unit 0
-        glUniform1i(uTextureUnitLocation, 0);
+        // The bvh only depends on the bounds, material changes don't touch it and moved objects only refit it
+        // (a build allocates the whole tree, that is left to scene changes that add or remove objects)
+        if (bvh == null || scenePacker.isTopologyChanged()) {
+            bvh = Bvh.build(new TraceScene(cubeList, sphereList, meshList));
+            updateBvh(true);
+        } else if (scenePacker.isGeometryChanged()) {
+            bvh.refit(cubeList, sphereList);
+            updateBvh(false);
+        }
 
-        // Set the active texture unit to texture unit 0
-        glActiveTexture(GL_TEXTURE0);
+        scenePacker.clearDirty();
+        return changed;
+    }
 
-        // Bind the texture to the target GL_TEXTURE_2D
-        glBindTexture(GL_TEXTURE_2D, textureID);
+    // A refit only changes the node bounds, the primitive references behind them stay the same
+    private void updateBvh(boolean rebuilt) {
+        // The root node is always there, so the buffer is never empty
+        int nodeBytes = bvh.getNodeCount() * Bvh.BYTES_PER_NODE;
+        int bytes = nodeBytes + bvh.getPrimitiveCount() * Bvh.BYTES_PER_PRIMITIVE_REFERENCE;
+        // The buffer is only reallocated when the bvh outgrows it
+        if (bvhData == null || bvhData.capacity() < bytes) {
+            bvhData = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+        bvhData.clear();
+        bvh.writeNodes(bvhData);
+        if (!rebuilt) {
+            bvhBuffer.setData(bvhData, nodeBytes);
+            return;
+        }
 
-        // Defining a texture images properties so that the shader can read it properly
-        glTexStorage2D(GL_TEXTURE_2D,1, GL_RGBA32F, width, height);
+        // Nodes are 32 bytes, so the references start at a row of the shader
+        bvh.writePrimitiveReferences(bvhData);
+        bvhBuffer.setData(bvhData, bytes);
+        primitiveReferenceOffset = nodeBytes / SectionedSSBO.ROW_BYTES;
+    }
 
-        // Bind level 0 of the texture to image unit 0
-        glBindImageTexture(0, textureID, 0, false, 0, GL_WRITE_ONLY, GL_RGBA32F);
+    // Time in milliseconds that the gpu may spend on tracing per draw call
+    public void setFrameBudget(float milliseconds) {
+        tileScheduler.setBudgetMilliseconds(milliseconds);
+    }
 
-        // Starts/Invokes the compute shader, the number of work groups HAS TO BE divided by the work group size specified in the shader layout declaration
-        glDispatchCompute(width/8, height/8, 1);
+    // True if all tiles of the current frame were traced
+    public boolean isFrameComplete() {
+        return tileScheduler.isFrameComplete();
+    }
 
-        // Update textures that have been written on and will be read soon (the frameBuffer - textureID)
-        glMemoryBarrier(GL_SHADER_IMAGE_ACCESS_BARRIER_BIT);
+    // Estimated gpu time of tracing a complete frame, < 0 until the first gpu times or fences came back
+    public long getFrameGpuNanos() {
+        // Draw calls are paced by vsync, without timers a fence that signaled in time means the tiles fit into one interval
+        return tileScheduler.getImageNanos((long) (NANOS_PER_SEC / TARGET_FPS));
+    }
+
+    public int getResultTexture() {
+        return resultTexture;
+    }
+
+    public int getResultSampleCount() {
+        return resultSampleCount;
+    }
+
+    public TraceFormat getTraceFormat() {
+        return traceFormat;
     }
 
     public void useProgram() {
@@ -0,0 +1,85 @@
+package Programs;
+
+import android.content.Context;
+
+import com.example.raytracer.R;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import Data.TraceFormats;
+import PostProcessingPipeLine.AtrousDenoiser;
+import Tracing.TraceFormat;
+
+import static android.opengl.GLES20.glGetUniformLocation;
+import static android.opengl.GLES20.glUniform1f;
+import static android.opengl.GLES20.glUniform1i;
+import static android.opengl.GLES20.glUseProgram;
+import static android.opengl.GLES30.GL_RGBA16F;
+import static android.opengl.GLES31.GL_READ_ONLY;
+import static android.opengl.GLES31.GL_WRITE_ONLY;
+import static android.opengl.GLES31.glBindImageTexture;
+import static android.opengl.GLES31.glDispatchCompute;
+
+/**
+ * One iteration of the a-trous denoiser (atrous_denoise.glsl) per dispatch.
+ */
+
+public class DenoiseShaderProgram extends ShaderProgram {
+
+    private static final int WORK_GROUP_SIZE = ComputeShaderProgram.WORK_GROUP_SIZE;
+
+    // Uniform locations
+    private final int uStepSizeLocation;
+    private final int uColorPhiLocation;
+    private final int inputFormat;
+    private final int outputFormat;
+
+    public DenoiseShaderProgram(Context context) {
+        this(context, TraceFormat.RGBA32F, TraceFormat.RGBA32F);
+    }
+
+    // The output can't be packed
+    public DenoiseShaderProgram(Context context, TraceFormat inputFormat, TraceFormat outputFormat) {
+        super(context, R.raw.atrous_denoise, defines(inputFormat, outputFormat));
+        if (outputFormat.isPacked()) {
+            throw new IllegalArgumentException("The denoiser can't write " + outputFormat);
+        }
+        this.inputFormat = TraceFormats.getTextureFormat(inputFormat);
+        this.outputFormat = TraceFormats.getTextureFormat(outputFormat);
+
+        // Retrieve uniform locations for the shader program
+        uStepSizeLocation = glGetUniformLocation(program, "u_StepSize");
+        uColorPhiLocation = glGetUniformLocation(program, "u_ColorPhi");
+    }
+
+    // Filters inputTexture into outputTexture (all textures have the same size)
+    public void dispatch(int inputTexture, int outputTexture, int normalDepthTexture, int albedoTexture, int width, int height, int stepSize, float colorPhi) {
+        glBindImageTexture(0, inputTexture, 0, false, 0, GL_READ_ONLY, inputFormat);
+        glBindImageTexture(1, outputTexture, 0, false, 0, GL_WRITE_ONLY, outputFormat);
+        glBindImageTexture(2, normalDepthTexture, 0, false, 0, GL_READ_ONLY, GL_RGBA16F);
+        glBindImageTexture(3, albedoTexture, 0, false, 0, GL_READ_ONLY, GL_RGBA16F);
+
+        glUniform1i(uStepSizeLocation, stepSize);
+        glUniform1f(uColorPhiLocation, colorPhi);
+
+        glDispatchCompute((width + WORK_GROUP_SIZE - 1) / WORK_GROUP_SIZE, (height + WORK_GROUP_SIZE - 1) / WORK_GROUP_SIZE, 1);
+    }
+
+    public void useProgram() {
+        // Set the current OpenGL shader program to this program
+        glUseProgram(program);
+    }
+
+    private static Map<String, Object> defines(TraceFormat inputFormat, TraceFormat outputFormat) {
+        Map<String, Object> defines = new TreeMap<>();
+        defines.put("NORMAL_PHI", AtrousDenoiser.NORMAL_PHI);
+        defines.put("DEPTH_PHI", AtrousDenoiser.DEPTH_PHI);
+        defines.put("ALBEDO_PHI", AtrousDenoiser.ALBEDO_PHI);
+        defines.put("WORK_GROUP_SIZE", WORK_GROUP_SIZE);
+        // The order of the TraceFormats matches the FORMAT_ defines of the shader
+        defines.put("INPUT_FORMAT", inputFormat.ordinal());
+        defines.put("OUTPUT_FORMAT", outputFormat.ordinal());
+        return defines;
+    }
+}
@@ -2,8 +2,10 @@ package Programs;
 
 import android.content.Context;
 
-import Util.ShaderHelper;
-import Util.TextResourceReader;
+import java.util.Collections;
+import java.util.Map;
+
+import Util.ShaderCache;
 
 /**
  * Created by Andreas on 24.04.2020.
@@ -27,6 +29,8 @@ public class ShaderProgram {
     protected static final String U_FRAME_BUFFER = "u_FrameBuffer";
     protected static final String U_INVERTED_VIEW_PROJECTION_MATRIX = "u_InvertedViewProjectionMatrix";
     protected static final String U_CAMERA_POSITION = "u_CameraPosition";
+    protected static final String U_FRAME_INDEX = "u_FrameIndex";
+    protected static final String U_TILE_OFFSET = "u_TileOffset";
 
     // Attribute constants
     protected static final String A_POSITION = "a_Position";
@@ -38,12 +42,20 @@ public class ShaderProgram {
     protected final int program;
 
     protected ShaderProgram(Context context, int vertexShaderResourceID, int fragmentShaderResourceID) {
-        // Compile the shaders and link the program
-        program = ShaderHelper.buildProgram(TextResourceReader.readTextFileFromResource(context, vertexShaderResourceID), TextResourceReader.readTextFileFromResource(context, fragmentShaderResourceID));
+        this(context, vertexShaderResourceID, fragmentShaderResourceID, Collections.<String, Object>emptyMap());
+    }
+
+    protected ShaderProgram(Context context, int vertexShaderResourceID, int fragmentShaderResourceID, Map<String, ?> defines) {
+        // Compile the shaders and link the program (only if this variant wasn't built before)
+        program = ShaderCache.getProgram(context, vertexShaderResourceID, fragmentShaderResourceID, defines);
     }
 
     protected ShaderProgram(Context context, int computeShaderResourceID) {
-        // Compile the shader and link the program
-        program = ShaderHelper.buildProgram(TextResourceReader.readTextFileFromResource(context, computeShaderResourceID));
+        this(context, computeShaderResourceID, Collections.<String, Object>emptyMap());
+    }
+
+    protected ShaderProgram(Context context, int computeShaderResourceID, Map<String, ?> defines) {
+        // Compile the shader and link the program (only if this variant wasn't built before)
+        program = ShaderCache.getProgram(context, computeShaderResourceID, defines);
     }
 }
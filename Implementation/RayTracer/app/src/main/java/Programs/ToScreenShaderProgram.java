@@ -4,6 +4,9 @@ import android.content.Context;
 
 import com.example.raytracer.R;
 
+import java.util.Collections;
+import java.util.Map;
+
 import static android.opengl.GLES20.GL_BLEND;
 import static android.opengl.GLES20.GL_DEPTH_TEST;
 import static android.opengl.GLES20.GL_SCISSOR_TEST;
@@ -25,12 +28,20 @@ public class ToScreenShaderProgram extends ShaderProgram {
 
     // Uniform Locations
     private final int uTextureUnitLocation;
+    // Uniforms of the fused post effects, -1 in variants without the effect
+    private final int uExposureLocation;
 
     public ToScreenShaderProgram(Context context) {
-        super(context, R.raw.to_screen_vertex_shader, R.raw.to_screen_fragment_shader);
+        this(context, Collections.<String, Object>emptyMap());
+    }
+
+    // The defines enable the fused per pixel effects
+    public ToScreenShaderProgram(Context context, Map<String, ?> defines) {
+        super(context, R.raw.to_screen_vertex_shader, R.raw.to_screen_fragment_shader, defines);
 
         // Retrieve uniform locations for the shader program
         uTextureUnitLocation = glGetUniformLocation(program, U_TEXTURE_UNIT);
+        uExposureLocation = glGetUniformLocation(program, "u_Exposure");
     }
 
     public void setUniforms(int textureID) {
@@ -45,6 +56,10 @@ public class ToScreenShaderProgram extends ShaderProgram {
         glUniform1i(uTextureUnitLocation, 0);
     }
 
+    public int getExposureLocation() {
+        return uExposureLocation;
+    }
+
     public void useProgram() {
         glEnable(GL_DEPTH_TEST); // CAREFUL: disable while rendering gui (so that two gui objects with transparency can be placed on top of each other)
         glEnable(GL_SCISSOR_TEST);
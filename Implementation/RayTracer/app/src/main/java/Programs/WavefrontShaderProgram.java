@@ -0,0 +1,272 @@
+package Programs;
+
+import android.content.Context;
+
+import com.example.raytracer.R;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import Data.SSBO;
+
+import static android.opengl.GLES20.glGetIntegerv;
+import static android.opengl.GLES20.glGetUniformLocation;
+import static android.opengl.GLES20.glBindBuffer;
+import static android.opengl.GLES20.glUseProgram;
+import static android.opengl.GLES31.GL_COMMAND_BARRIER_BIT;
+import static android.opengl.GLES31.GL_DISPATCH_INDIRECT_BUFFER;
+import static android.opengl.GLES31.GL_MAX_COMPUTE_SHADER_STORAGE_BLOCKS;
+import static android.opengl.GLES31.GL_SHADER_STORAGE_BARRIER_BIT;
+import static android.opengl.GLES31.glDispatchCompute;
+import static android.opengl.GLES31.glDispatchComputeIndirect;
+import static android.opengl.GLES31.glMemoryBarrier;
+import static android.opengl.GLES31.glProgramUniform1i;
+import static android.opengl.GLES31.glProgramUniform1iv;
+import static android.opengl.GLES31.glProgramUniform2i;
+import static android.opengl.GLES31.glProgramUniform3f;
+import static android.opengl.GLES31.glProgramUniformMatrix4fv;
+
+/**
+ * Wavefront version of the ComputeShaderProgram: a tile is traced by a chain of small dispatches instead of one megakernel,
+ *
+ * generate -> [prepare -> extend -> prepare -> shade diffuse + shade metal] * MAX_BOUNCES -> accumulate
+ *
+ * Every stage is a variant of compute_shader.glsl (WAVEFRONT_STAGE), the paths of the tile live in a storage buffer and the
+ * stages hand them on in queues. Extend and shade only dispatch the live paths of their queue (glDispatchComputeIndirect,
+ * the work groups are counted by the prepare stage), so the gpu never waits for the cpu to read a queue length back.
+ * See WavefrontTracer for the CPU twin and the lane occupancy compared to the megakernel.
+ */
+
+public class WavefrontShaderProgram {
+
+    // The following constants have to have the same value in the shader
+    private static final int PATH_BINDING = 2;
+    private static final int QUEUE_BINDING = 3;
+    // Bytes of the path struct in std430 layout (11 rows of 16 bytes)
+    public static final int PATH_BYTES = 176;
+    // Work group size of the queue stages
+    public static final int QUEUE_GROUP_SIZE = 64;
+
+    private static final int STAGE_GENERATE = 1;
+    private static final int STAGE_EXTEND = 2;
+    private static final int STAGE_SHADE = 3;
+    private static final int STAGE_PREPARE = 4;
+    private static final int STAGE_ACCUMULATE = 5;
+
+    private static final int QUEUE_RAYS_A = 0;
+    private static final int QUEUE_DIFFUSE = 1;
+    private static final int QUEUE_METAL = 2;
+    private static final int QUEUE_RAYS_B = 3;
+    private static final int QUEUE_COUNT = 4;
+    // Queue lengths followed by the dispatch arguments (3 uints) of every queue
+    private static final int DISPATCH_ARGUMENTS_OFFSET = QUEUE_COUNT * 4;
+    private static final int QUEUE_HEADER_BYTES = DISPATCH_ARGUMENTS_OFFSET + QUEUE_COUNT * 3 * 4;
+
+    // Scene blocks of the megakernel plus the paths and the queues
+    private static final int REQUIRED_STORAGE_BLOCKS = ComputeShaderProgram.STORAGE_BLOCKS + 2;
+
+    private final int maxBounces;
+    private final int multiSamplingCount;
+    private final Stage generate;
+    private final Stage extend;
+    private final Stage shadeDiffuse;
+    private final Stage shadeMetal;
+    private final Stage prepare;
+    private final Stage accumulate;
+    private final Stage[] stages;
+
+    private final SSBO pathBuffer = new SSBO();
+    private final SSBO queueBuffer = new SSBO();
+    private int queueCapacity;
+
+    // One variant of the compute shader with its uniform locations
+    private static final class Stage extends ShaderProgram {
+        final int uCameraPositionLocation;
+        final int uRay00Location;
+        final int uRay10Location;
+        final int uRay01Location;
+        final int uRay11Location;
+        final int uFrameIndexLocation;
+        final int uTileOffsetLocation;
+        final int uTileWidthLocation;
+        final int uBounceLocation;
+        final int uInputQueueLocation;
+        final int uOutputQueueLocation;
+        final int uQueueCapacityLocation;
+        final int uResetQueuesLocation;
+        final int uReprojectLocation;
+        final int uPreviousNormalDepthLocation;
+        final int uPreviousViewProjectionLocation;
+        final int uPreviousCameraPositionLocation;
+        final int uSceneOffsetsLocation;
+        final int uPrimitiveReferenceOffsetLocation;
+
+        Stage(Context context, Map<String, Object> defines) {
+            super(context, R.raw.compute_shader, defines);
+
+            uCameraPositionLocation = glGetUniformLocation(program, U_CAMERA_POSITION);
+            uRay00Location = glGetUniformLocation(program, "u_Ray00");
+            uRay10Location = glGetUniformLocation(program, "u_Ray10");
+            uRay01Location = glGetUniformLocation(program, "u_Ray01");
+            uRay11Location = glGetUniformLocation(program, "u_Ray11");
+            uFrameIndexLocation = glGetUniformLocation(program, U_FRAME_INDEX);
+            uTileOffsetLocation = glGetUniformLocation(program, U_TILE_OFFSET);
+            uTileWidthLocation = glGetUniformLocation(program, "u_TileWidth");
+            uBounceLocation = glGetUniformLocation(program, "u_Bounce");
+            uInputQueueLocation = glGetUniformLocation(program, "u_InputQueue");
+            uOutputQueueLocation = glGetUniformLocation(program, "u_OutputQueue");
+            uQueueCapacityLocation = glGetUniformLocation(program, "u_QueueCapacity");
+            uResetQueuesLocation = glGetUniformLocation(program, "u_ResetQueues");
+            uReprojectLocation = glGetUniformLocation(program, "u_Reproject");
+            uPreviousNormalDepthLocation = glGetUniformLocation(program, "u_PreviousNormalDepth");
+            uPreviousViewProjectionLocation = glGetUniformLocation(program, "u_PreviousViewProjection");
+            uPreviousCameraPositionLocation = glGetUniformLocation(program, "u_PreviousCameraPosition");
+            uSceneOffsetsLocation = glGetUniformLocation(program, "u_SceneOffsets");
+            uPrimitiveReferenceOffsetLocation = glGetUniformLocation(program, "u_PrimitiveReferenceOffset");
+        }
+    }
+
+    // defines are the ones of the megakernel, every stage adds its own
+    public WavefrontShaderProgram(Context context, Map<String, Object> defines, int maxBounces, int multiSamplingCount) {
+        this.maxBounces = maxBounces;
+        this.multiSamplingCount = multiSamplingCount;
+
+        generate = new Stage(context, stageDefines(defines, STAGE_GENERATE, 0));
+        extend = new Stage(context, stageDefines(defines, STAGE_EXTEND, 0));
+        shadeDiffuse = new Stage(context, stageDefines(defines, STAGE_SHADE, 0));
+        shadeMetal = new Stage(context, stageDefines(defines, STAGE_SHADE, 1));
+        prepare = new Stage(context, stageDefines(defines, STAGE_PREPARE, 0));
+        accumulate = new Stage(context, stageDefines(defines, STAGE_ACCUMULATE, 0));
+        stages = new Stage[]{generate, extend, shadeDiffuse, shadeMetal, prepare, accumulate};
+    }
+
+    // The extend stage needs the 2 scene blocks and the 2 blocks of the paths and queues, GLES 3.1 guarantees 4
+    public static boolean isSupported() {
+        int[] blocks = new int[1];
+        glGetIntegerv(GL_MAX_COMPUTE_SHADER_STORAGE_BLOCKS, blocks, 0);
+        return blocks[0] >= REQUIRED_STORAGE_BLOCKS;
+    }
+
+    private static Map<String, Object> stageDefines(Map<String, Object> defines, int stage, int material) {
+        Map<String, Object> stageDefines = new TreeMap<>(defines);
+        stageDefines.put("WAVEFRONT_STAGE", stage);
+        stageDefines.put("SHADE_MATERIAL", material);
+        stageDefines.put("QUEUE_GROUP_SIZE", QUEUE_GROUP_SIZE);
+        stageDefines.put("QUEUE_RAYS_A", QUEUE_RAYS_A);
+        stageDefines.put("QUEUE_DIFFUSE", QUEUE_DIFFUSE);
+        stageDefines.put("QUEUE_METAL", QUEUE_METAL);
+        stageDefines.put("QUEUE_RAYS_B", QUEUE_RAYS_B);
+        stageDefines.put("QUEUE_COUNT", QUEUE_COUNT);
+        return stageDefines;
+    }
+
+    // Same uniforms as ComputeShaderProgram.startFrame, set on every stage that uses them (the others have location -1)
+    public void startFrame(float[] cameraPosition, float[] rays, int frameIndex, boolean reproject, float[] previousViewProjectionMatrix, float[] previousCameraPosition) {
+        for (Stage stage : stages) {
+            glProgramUniform3f(stage.program, stage.uCameraPositionLocation, cameraPosition[0], cameraPosition[1], cameraPosition[2]);
+            glProgramUniform3f(stage.program, stage.uRay00Location, rays[0], rays[1], rays[2]);
+            glProgramUniform3f(stage.program, stage.uRay10Location, rays[4], rays[5], rays[6]);
+            glProgramUniform3f(stage.program, stage.uRay01Location, rays[8], rays[9], rays[10]);
+            glProgramUniform3f(stage.program, stage.uRay11Location, rays[12], rays[13], rays[14]);
+            glProgramUniform1i(stage.program, stage.uFrameIndexLocation, frameIndex);
+            glProgramUniform1i(stage.program, stage.uReprojectLocation, reproject ? 1 : 0);
+            glProgramUniform1i(stage.program, stage.uPreviousNormalDepthLocation, 0);
+            glProgramUniformMatrix4fv(stage.program, stage.uPreviousViewProjectionLocation, 1, false, previousViewProjectionMatrix, 0);
+            glProgramUniform3f(stage.program, stage.uPreviousCameraPositionLocation, previousCameraPosition[0], previousCameraPosition[1], previousCameraPosition[2]);
+        }
+    }
+
+    // Rows at which the scene arrays and the primitive references start, see ComputeShaderProgram.updateScene
+    public void setSceneOffsets(int[] sceneOffsets, int primitiveReferenceOffset) {
+        for (Stage stage : stages) {
+            glProgramUniform1iv(stage.program, stage.uSceneOffsetsLocation, sceneOffsets.length, sceneOffsets, 0);
+            glProgramUniform1i(stage.program, stage.uPrimitiveReferenceOffsetLocation, primitiveReferenceOffset);
+        }
+    }
+
+    // Paths and queues for tiles of up to tileSize x tileSize pixels
+    public void resize(int tileSize) {
+        int capacity = tileSize * tileSize * multiSamplingCount;
+        if (capacity == queueCapacity) {
+            return;
+        }
+        queueCapacity = capacity;
+        pathBuffer.allocate(capacity * PATH_BYTES);
+        queueBuffer.allocate(QUEUE_HEADER_BYTES + QUEUE_COUNT * capacity * 4);
+        for (Stage stage : stages) {
+            glProgramUniform1i(stage.program, stage.uQueueCapacityLocation, capacity);
+        }
+    }
+
+    // Traces one tile, the images and the scene buffers have to be bound like for the megakernel
+    // Leaves another program in use
+    public void traceTile(int tileX, int tileY, int tileWidth, int tileHeight) {
+        pathBuffer.bind(PATH_BINDING);
+        queueBuffer.bind(QUEUE_BINDING);
+        glBindBuffer(GL_DISPATCH_INDIRECT_BUFFER, queueBuffer.getBufferID());
+        final int groupsX = (tileWidth + ComputeShaderProgram.WORK_GROUP_SIZE - 1) / ComputeShaderProgram.WORK_GROUP_SIZE;
+        final int groupsY = (tileHeight + ComputeShaderProgram.WORK_GROUP_SIZE - 1) / ComputeShaderProgram.WORK_GROUP_SIZE;
+
+        // All queues start empty, then every sample of every pixel becomes a path of the first ray queue
+        runPrepare((1 << QUEUE_COUNT) - 1);
+        glUseProgram(generate.program);
+        glProgramUniform2i(generate.program, generate.uTileOffsetLocation, tileX, tileY);
+        glProgramUniform1i(generate.program, generate.uTileWidthLocation, tileWidth);
+        glProgramUniform1i(generate.program, generate.uOutputQueueLocation, QUEUE_RAYS_A);
+        glDispatchCompute(groupsX, groupsY, 1);
+
+        int rays = QUEUE_RAYS_A;
+        int nextRays = QUEUE_RAYS_B;
+        for (int bounce = 0; bounce < maxBounces; bounce++) {
+            // Extend the rays, the material queues and the next ray queue start empty
+            glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT);
+            runPrepare((1 << QUEUE_DIFFUSE) | (1 << QUEUE_METAL) | (1 << nextRays));
+            glUseProgram(extend.program);
+            glProgramUniform1i(extend.program, extend.uBounceLocation, bounce);
+            glProgramUniform1i(extend.program, extend.uInputQueueLocation, rays);
+            dispatchQueue(rays);
+
+            // Shade both materials, their survivors are the rays of the next bounce
+            glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT);
+            runPrepare(0);
+            shade(shadeDiffuse, QUEUE_DIFFUSE, nextRays, bounce);
+            shade(shadeMetal, QUEUE_METAL, nextRays, bounce);
+
+            int swap = rays;
+            rays = nextRays;
+            nextRays = swap;
+        }
+
+        glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT);
+        glUseProgram(accumulate.program);
+        glProgramUniform2i(accumulate.program, accumulate.uTileOffsetLocation, tileX, tileY);
+        glProgramUniform1i(accumulate.program, accumulate.uTileWidthLocation, tileWidth);
+        glDispatchCompute(groupsX, groupsY, 1);
+    }
+
+    private void shade(Stage stage, int inputQueue, int outputQueue, int bounce) {
+        glUseProgram(stage.program);
+        glProgramUniform1i(stage.program, stage.uBounceLocation, bounce);
+        glProgramUniform1i(stage.program, stage.uInputQueueLocation, inputQueue);
+        glProgramUniform1i(stage.program, stage.uOutputQueueLocation, outputQueue);
+        dispatchQueue(inputQueue);
+    }
+
+    // Counts the work groups of all queues and empties the queues of resetQueues (bit mask)
+    private void runPrepare(int resetQueues) {
+        glUseProgram(prepare.program);
+        glProgramUniform1i(prepare.program, prepare.uResetQueuesLocation, resetQueues);
+        glDispatchCompute(1, 1, 1);
+        // The queue lengths are read by the next stage, the work groups by the indirect dispatch
+        glMemoryBarrier(GL_SHADER_STORAGE_BARRIER_BIT | GL_COMMAND_BARRIER_BIT);
+    }
+
+    private void dispatchQueue(int queue) {
+        glDispatchComputeIndirect(DISPATCH_ARGUMENTS_OFFSET + queue * 3 * 4);
+    }
+
+    public void delete() {
+        pathBuffer.delete();
+        queueBuffer.delete();
+    }
+}
@@ -0,0 +1,240 @@
+package Scenes;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import Data.AccumulationBuffer;
+import Data.GuideTextures;
+import Data.MeshLoader;
+import Data.SceneFile;
+import Data.TriangleMesh;
+import Objects.Camera;
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import PostProcessingPipeLine.Processing;
+import Programs.ComputeShaderProgram;
+import Tracing.PathTracer;
+import Util.TouchAccumulator;
+
+import Util.StateManager;
+
+import static Util.MatrixHelper.perspectiveM;
+import static android.opengl.GLES20.GL_ONE_MINUS_SRC_ALPHA;
+import static android.opengl.GLES20.GL_SCISSOR_TEST;
+import static android.opengl.GLES20.GL_SRC_ALPHA;
+import static android.opengl.GLES20.glBlendFunc;
+import static android.opengl.GLES20.glEnable;
+import static android.opengl.GLES20.glScissor;
+import static android.opengl.GLES20.glViewport;
+import static android.opengl.Matrix.invertM;
+import static android.opengl.Matrix.multiplyMM;
+
+/**
+ * Created by Andreas on 11.05.2020.
+ * A scene whose camera and objects come from a scene file in the assets (see SceneFile for the formats).
+ */
+
+public class FileScene implements Scene {
+
+    // Multi Sampling Anti Aliasing (higher = better quality / slower)
+    private static final int MSAA = 1;
+
+    // Matrix to create 3D effect and fit to screen
+    private final float[] projectionMatrix = new float[16];
+    // Inverted view matrix = camera position
+    private final float[] invertedViewMatrix = new float[16];
+    // Matrices to hold multiplication results
+    private final float[] viewProjectionMatrix = new float[16];
+    // Matrix that is inverted and can therefor be used to map 2D touch points to a line in 3D
+    private final float[] invertedViewProjectionMatrix = new float[16];
+
+    // Path of the scene file in the assets, the file is only read on the first activation
+    private final String assetPath;
+    private SceneFile sceneFile;
+    // Triangles of the meshes of the scene file, they never change and are kept across activations
+    private TriangleMesh[] meshTriangles;
+
+    // Camera
+    private Camera camera;
+
+    // FrameBuffer (the running average of the progressive render)
+    private AccumulationBuffer accumulationBuffer;
+    // Normals, depths and albedos of the primary hits, they guide the denoiser
+    private GuideTextures guideTextures;
+
+    // Cubes
+    private ArrayList<Cube> cubeList;
+
+    // Spheres
+    private ArrayList<Sphere> sphereList;
+
+    // Meshes
+    private ArrayList<Mesh> meshList;
+
+    // Shader
+    private ComputeShaderProgram computeProgram;
+
+    public FileScene(String assetPath) {
+        this.assetPath = assetPath;
+    }
+
+    @Override
+    public void onSurfaceCreated(Context context) {
+        if (sceneFile == null) {
+            sceneFile = load(context, assetPath);
+            meshTriangles = loadMeshes(context, assetPath, sceneFile);
+        }
+
+        // Camera
+        camera = sceneFile.createCamera();
+
+        // FrameBuffer (textures that the scene will be written to, taken from the shared pool on the first frame)
+        accumulationBuffer = new AccumulationBuffer(StateManager.getRenderTargetPool(), StateManager.getTraceFormat());
+        guideTextures = new GuideTextures(StateManager.getRenderTargetPool());
+
+        // Cubes & Spheres (every activation starts with the objects as they are in the file)
+        cubeList = sceneFile.createCubes();
+        sphereList = sceneFile.createSpheres();
+        meshList = new ArrayList<>();
+        for (int i = 0; i < meshTriangles.length; i++) {
+            meshList.add(sceneFile.createMesh(i, meshTriangles[i]));
+        }
+
+        // Shader
+        computeProgram = new ComputeShaderProgram(context, PathTracer.MAX_BOUNCES, PathTracer.ROULETTE_MIN_BOUNCES, MSAA, false, accumulationBuffer.getFormat());
+
+
+        // PostProcessing
+        // The chain of post effects takes its targets from the pool every frame and draws the result to the screen
+        // With MSAA = 1 the first frames are noisy, the denoiser smooths them until enough frames were averaged
+        Processing.init();
+    }
+
+    @Override
+    public void onSurfaceChanged(int width, int height) {
+        // Set the OpenGL viewport to fill the entire surface
+        glViewport(0, 0, width, height);
+
+        // Don't render anything outside the visible window
+        glScissor(0, 0, width, height);
+        glEnable(GL_SCISSOR_TEST);
+
+        // Don't render color when using textures with transparency
+        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+
+        // Set up a projection matrix
+        perspectiveM(projectionMatrix, 60, (float) width / (float) height, 1f, 20f);
+    }
+
+    @Override
+    public void onDrawFrame() {
+        // Add all the important matrices together into viewProjectionMatrix
+        multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, camera.getViewMatrix(), 0);
+
+        // Create the inverted view projection matrix
+        invertM(invertedViewProjectionMatrix, 0, viewProjectionMatrix, 0);
+
+        // Create the inverted viewMatrix
+        invertM(invertedViewMatrix, 0, camera.getViewMatrix(), 0);
+
+        computeProgram.useProgram();
+
+        computeProgram.setUniforms(accumulationBuffer, guideTextures, StateManager.getTraceWidth(), StateManager.getTraceHeight(), invertedViewProjectionMatrix, invertedViewMatrix, cubeList, sphereList, meshList);
+
+        Processing.render(computeProgram.getResultTexture(), computeProgram.getTraceFormat(), guideTextures, computeProgram.getResultSampleCount());
+    }
+
+    @Override
+    public boolean isFrameComplete() {
+        return computeProgram.isFrameComplete();
+    }
+
+    @Override
+    public int getFrameIndex() {
+        return accumulationBuffer.getFrameIndex();
+    }
+
+    @Override
+    public long getFrameGpuNanos() {
+        return computeProgram.getFrameGpuNanos();
+    }
+
+    @Override
+    public void handleTouchPress(float normalizedX, float normalizedY) {
+
+    }
+
+    @Override
+    public void handleCameraInput(TouchAccumulator.Deltas deltas) {
+        if (deltas.panX != 0f || deltas.panY != 0f) {
+            camera.translate(deltas.panX, deltas.panY);
+        }
+        if (deltas.rotateX != 0f) {
+            camera.rotate(deltas.rotateX, 1, 0, 0);
+        }
+        if (deltas.rotateY != 0f) {
+            camera.rotate(deltas.rotateY, 0, 1, 0);
+        }
+        if (deltas.hasScale()) {
+            camera.scale(deltas.scale);
+        }
+    }
+
+    @Override
+    public void handleTouchRelease(float normalizedX, float normalizedY) {
+
+    }
+
+    @Override
+    public void onReload() {
+
+    }
+
+    @Override
+    public void onDeactivated() {
+        accumulationBuffer.release();
+        guideTextures.release();
+        Processing.release();
+    }
+
+    private static SceneFile load(Context context, String assetPath) {
+        try {
+            if (assetPath.endsWith(SceneFile.BINARY_EXTENSION)) {
+                // Binary scenes are stored uncompressed in the apk (noCompress in build.gradle), so they can be mapped directly
+                try (AssetFileDescriptor descriptor = context.getAssets().openFd(assetPath);
+                     FileInputStream inputStream = descriptor.createInputStream()) {
+                    return SceneFile.readBinary(inputStream.getChannel(), descriptor.getStartOffset(), descriptor.getLength());
+                }
+            }
+            try (Reader reader = new InputStreamReader(context.getAssets().open(assetPath), "UTF-8")) {
+                return SceneFile.readText(reader);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not load scene " + assetPath, e);
+        }
+    }
+
+    // The mesh paths are relative to the directory of the scene file
+    private static TriangleMesh[] loadMeshes(Context context, String assetPath, SceneFile sceneFile) {
+        String directory = assetPath.substring(0, assetPath.lastIndexOf('/') + 1);
+        TriangleMesh[] meshTriangles = new TriangleMesh[sceneFile.meshCount];
+
+        for (int i = 0; i < sceneFile.meshCount; i++) {
+            String meshPath = directory + sceneFile.meshPaths[i];
+            try (InputStream inputStream = context.getAssets().open(meshPath)) {
+                meshTriangles[i] = MeshLoader.read(inputStream, meshPath);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not load mesh " + meshPath, e);
+            }
+        }
+        return meshTriangles;
+    }
+}
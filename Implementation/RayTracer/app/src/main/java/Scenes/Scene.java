@@ -2,7 +2,7 @@ package Scenes;
 
 import android.content.Context;
 
-import Util.Direction;
+import Util.TouchAccumulator;
 
 /**
  * Created by Andreas on 11.05.2020.
@@ -15,16 +15,24 @@ public interface Scene {
 
     void onDrawFrame();
 
-    void handleTouchPress(float normalizedX, float normalizedY);
+    // True if the last onDrawFrame finished an image (a frame can be traced over several draw calls)
+    boolean isFrameComplete();
+
+    // Number of frames that were averaged before the current one (0 = the image starts over)
+    int getFrameIndex();
 
-    //    void handleTouchDrag(float normalizedX, float normalizedY, float normalizedX1, float normalizedY1);
-//    void handleTouchDrag(float normalizedX, int normalizedY, int normalizedX1);
-    void handleTouchDrag(Direction direction);
+    // Estimated gpu time of tracing a complete image at the current trace size (< 0 = not measured yet)
+    long getFrameGpuNanos();
+
+    void handleTouchPress(float normalizedX, float normalizedY);
 
     void handleTouchRelease(float normalizedX, float normalizedY);
 
-    void handleScale(float scaleFactor);
-    void handleRotation(float angle, int x, int y);
+    // All touch input since the last frame as one camera update (called on the gl thread before onDrawFrame)
+    void handleCameraInput(TouchAccumulator.Deltas deltas);
 
     void onReload();
+
+    // Called before another scene becomes active, shared resources like render targets have to be given back
+    void onDeactivated();
 }
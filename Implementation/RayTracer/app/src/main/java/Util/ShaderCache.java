@@ -0,0 +1,119 @@
+package Util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import Data.ProgramBinaryStore;
+import Data.ProgramBinaryStore.ProgramBinary;
+
+import static android.opengl.GLES20.GL_RENDERER;
+import static android.opengl.GLES20.GL_VENDOR;
+import static android.opengl.GLES20.GL_VERSION;
+import static android.opengl.GLES20.glGetString;
+
+/**
+ * Compiled shader programs of the current GL context, keyed by their variant (resources and defines).
+ * Scenes that need a variant that was already built (e.g. after a scene switch) get the same program again
+ * instead of compiling the shader another time.
+ * The linked binaries are also kept on disk, so later starts of the app load them instead of compiling.
+ */
+
+public class ShaderCache {
+    private static final String TAG = "ShaderCache";
+    private static final String BINARY_DIRECTORY = "program_binaries";
+
+    private static final HashMap<String, Integer> programs = new HashMap<>();
+
+    private static ProgramBinaryStore binaryStore;
+    private static String driver = "";
+
+    // Called for every new GL context, the programs of an old context can't be reused
+    public static void init(Context context) {
+        programs.clear();
+        // The code cache is cleared by the system when the app is updated
+        binaryStore = new ProgramBinaryStore(new File(context.getCodeCacheDir(), BINARY_DIRECTORY));
+        driver = glGetString(GL_VENDOR) + "|" + glGetString(GL_RENDERER) + "|" + glGetString(GL_VERSION);
+    }
+
+    public static int getProgram(Context context, int computeShaderResourceID, Map<String, ?> defines) {
+        String key = ShaderPreprocessor.variantKey(String.valueOf(computeShaderResourceID), defines);
+        Integer program = programs.get(key);
+        if (program == null) {
+            String source = TextResourceReader.readTextFileFromResource(context, computeShaderResourceID, defines);
+            String binaryKey = ProgramBinaryStore.key(driver, source);
+
+            program = loadBinary(binaryKey);
+            if (program == 0) {
+                program = ShaderHelper.buildProgram(source);
+                storeBinary(binaryKey, program);
+            }
+            programs.put(key, program);
+        }
+        return program;
+    }
+
+    public static int getProgram(Context context, int vertexShaderResourceID, int fragmentShaderResourceID, Map<String, ?> defines) {
+        String key = ShaderPreprocessor.variantKey(vertexShaderResourceID + "+" + fragmentShaderResourceID, defines);
+        Integer program = programs.get(key);
+        if (program == null) {
+            String vertexSource = TextResourceReader.readTextFileFromResource(context, vertexShaderResourceID, defines);
+            String fragmentSource = TextResourceReader.readTextFileFromResource(context, fragmentShaderResourceID, defines);
+            String binaryKey = ProgramBinaryStore.key(driver, vertexSource, fragmentSource);
+
+            program = loadBinary(binaryKey);
+            if (program == 0) {
+                program = ShaderHelper.buildProgram(vertexSource, fragmentSource);
+                storeBinary(binaryKey, program);
+            }
+            programs.put(key, program);
+        }
+        return program;
+    }
+
+    // The programs belong to the old context, which deletes them together with itself
+    public static void clear() {
+        programs.clear();
+    }
+
+    private static int loadBinary(String binaryKey) {
+        if (binaryStore == null) {
+            return 0;
+        }
+
+        ProgramBinary binary = binaryStore.load(binaryKey);
+        if (binary == null) {
+            return 0;
+        }
+
+        int program = ShaderHelper.loadProgramBinary(binary);
+        if (program == 0) {
+            // Rejected by the driver, compiling replaces it
+            binaryStore.remove(binaryKey);
+        }
+        return program;
+    }
+
+    private static void storeBinary(String binaryKey, int program) {
+        if (binaryStore == null || program == 0) {
+            return;
+        }
+
+        ProgramBinary binary = ShaderHelper.getProgramBinary(program);
+        if (binary == null) {
+            return;
+        }
+
+        // A missing binary only costs the compilation on the next start
+        try {
+            binaryStore.store(binaryKey, binary);
+        } catch (RuntimeException e) {
+            if (LoggerConfig.ON) {
+                Log.w(TAG, "Could not store program binary", e);
+            }
+        }
+    }
+}
@@ -2,8 +2,13 @@ package Util;
 
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+
+import Data.ProgramBinaryStore.ProgramBinary;
+
 import static android.opengl.GLES20.GL_COMPILE_STATUS;
 import static android.opengl.GLES20.GL_FRAGMENT_SHADER;
+import static android.opengl.GLES20.GL_TRUE;
 import static android.opengl.GLES20.GL_LINK_STATUS;
 import static android.opengl.GLES20.GL_VALIDATE_STATUS;
 import static android.opengl.GLES20.GL_VERTEX_SHADER;
@@ -20,6 +25,11 @@ import static android.opengl.GLES20.glGetShaderiv;
 import static android.opengl.GLES20.glLinkProgram;
 import static android.opengl.GLES20.glShaderSource;
 import static android.opengl.GLES20.glValidateProgram;
+import static android.opengl.GLES30.GL_PROGRAM_BINARY_LENGTH;
+import static android.opengl.GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT;
+import static android.opengl.GLES30.glGetProgramBinary;
+import static android.opengl.GLES30.glProgramBinary;
+import static android.opengl.GLES30.glProgramParameteri;
 import static android.opengl.GLES31.GL_COMPUTE_SHADER;
 
 /**
@@ -57,18 +67,14 @@ public class ShaderHelper {
         final int[] compileStatus = new int[1];
         glGetShaderiv(shaderObjectID, GL_COMPILE_STATUS, compileStatus, 0);
 
-        if (LoggerConfig.ON) {
-            // Print the shader info log to the Android log output
-            Log.v(TAG, "Results of compiling source:" + "\n" + shaderCode + "\n" + glGetShaderInfoLog(shaderObjectID));
-        }
-
         if (compileStatus[0] == 0) {
-            // If it failed, delete the shader object
-            glDeleteShader(shaderObjectID);
-
             if (LoggerConfig.ON) {
-                Log.w(TAG, "Compilation of shader failed");
+                // Print the source and the shader info log to the Android log output
+                Log.w(TAG, "Compilation of shader failed:" + "\n" + shaderCode + "\n" + glGetShaderInfoLog(shaderObjectID));
             }
+
+            // If it failed, delete the shader object
+            glDeleteShader(shaderObjectID);
             return 0;
         }
         return shaderObjectID;
@@ -87,6 +93,8 @@ public class ShaderHelper {
         glAttachShader(programObjectID, vertexShaderID);
         glAttachShader(programObjectID, fragmentShaderID);
 
+        // Allows glGetProgramBinary, so the next start can skip compiling
+        glProgramParameteri(programObjectID, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
         glLinkProgram(programObjectID);
 
         final int[] linkStatus = new int[1];
@@ -120,6 +128,8 @@ public class ShaderHelper {
 
         glAttachShader(programObjectID, computeShaderID);
 
+        // Allows glGetProgramBinary, so the next start can skip compiling
+        glProgramParameteri(programObjectID, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
         glLinkProgram(programObjectID);
 
         final int[] linkStatus = new int[1];
@@ -141,6 +151,52 @@ public class ShaderHelper {
         return programObjectID;
     }
 
+    // Returns 0 if the driver rejects the binary (e.g. after a driver update), the program has to be compiled then
+    public static int loadProgramBinary(ProgramBinary binary) {
+        final int programObjectID = glCreateProgram();
+
+        if (programObjectID == 0) {
+            if (LoggerConfig.ON) {
+                Log.w(TAG, "Could not create new program");
+            }
+            return 0;
+        }
+
+        glProgramBinary(programObjectID, binary.format, ByteBuffer.wrap(binary.data), binary.data.length);
+
+        final int[] linkStatus = new int[1];
+        glGetProgramiv(programObjectID, GL_LINK_STATUS, linkStatus, 0);
+
+        if (linkStatus[0] == 0) {
+            glDeleteProgram(programObjectID);
+            if (LoggerConfig.ON) {
+                Log.w(TAG, "Program binary was rejected");
+            }
+            return 0;
+        }
+        return programObjectID;
+    }
+
+    // Returns null if the driver doesn't provide a binary for the program
+    public static ProgramBinary getProgramBinary(int programObjectID) {
+        final int[] length = new int[1];
+        glGetProgramiv(programObjectID, GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) {
+            return null;
+        }
+
+        final int[] format = new int[1];
+        final ByteBuffer data = ByteBuffer.allocate(length[0]);
+        glGetProgramBinary(programObjectID, length[0], length, 0, format, 0, data);
+        if (length[0] <= 0) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length[0]];
+        data.get(bytes);
+        return new ProgramBinary(format[0], bytes);
+    }
+
     public static boolean validateProgram(int programObjectID) {
         glValidateProgram(programObjectID);
 
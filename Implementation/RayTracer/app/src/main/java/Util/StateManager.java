@@ -3,11 +3,16 @@ package Util;
 import android.content.Context;
 
 import java.util.ArrayList;
+
+import Data.RenderTargetPool;
+import Data.StageTimer;
+import Scenes.FileScene;
 import Scenes.Scene;
-import Scenes.SceneA;
-import Scenes.SceneC;
-import Scenes.SceneB;
-import Scenes.SceneD;
+import Tracing.ResolutionController;
+import Tracing.TraceFormat;
+
+import static Util.Constants.NANOS_PER_SEC;
+import static Util.Constants.TARGET_FPS;
 
 /**
  * Created by Andreas on 11.05.2020.
@@ -26,6 +31,19 @@ public class StateManager {
     private static Context context;
     private static int width, height;
 
+    // Render targets shared by all scenes (belongs to the current GL context)
+    private static RenderTargetPool renderTargetPool;
+
+    // Picks the traced resolution (a scale of the surface size) from the measured frame times
+    private static ResolutionController resolutionController;
+
+    // Timings of the frame stages, the stage timer belongs to the current GL context
+    private static FrameTimings frameTimings;
+    private static StageTimer stageTimer;
+
+    // Storage of the traced image, smaller formats trade precision for bandwidth (picked per device, see QuantizationReport)
+    private static TraceFormat traceFormat = TraceFormat.RGBA32F;
+
     public static boolean isLoaded = false;
 
     public static void load(int firstSceneIndex, Context newContext) {
@@ -34,11 +52,13 @@ public class StateManager {
         activeSceneIndex = firstSceneIndex;
         context = newContext;
         isLoaded = true;
+        resolutionController = new ResolutionController((long) (NANOS_PER_SEC / TARGET_FPS));
+        frameTimings = new FrameTimings();
 
-        sceneList.add(new SceneA());    // 0
-        sceneList.add(new SceneB());    // 1
-        sceneList.add(new SceneC());    // 2
-        sceneList.add(new SceneD());    // 3
+        sceneList.add(new FileScene("scenes/scene_a.scene"));    // 0
+        sceneList.add(new FileScene("scenes/scene_b.scene"));    // 1
+        sceneList.add(new FileScene("scenes/scene_c.scene"));    // 2
+        sceneList.add(new FileScene("scenes/scene_d.scene"));    // 3
     }
 
     public static void loadDimensions(int newWidth, int newHeight) {
@@ -46,7 +66,22 @@ public class StateManager {
         height = newHeight;
     }
 
+    // Textures of the old context are gone, so the old pool is dropped without deleting anything
+    public static void loadRenderTargetPool(RenderTargetPool newRenderTargetPool) {
+        renderTargetPool = newRenderTargetPool;
+    }
+
+    public static void loadStageTimer(StageTimer newStageTimer) {
+        stageTimer = newStageTimer;
+    }
+
+    // Scenes pick the format up when they are activated, MainActivity sets it from TraceFormatPolicy
+    public static void setTraceFormat(TraceFormat newTraceFormat) {
+        traceFormat = newTraceFormat;
+    }
+
     public static void setActiveSceneIndex(int newActiveLevel) {
+        sceneList.get(activeSceneIndex).onDeactivated();
         timerList.clear();
         sceneList.get(newActiveLevel).onSurfaceCreated(context);
         sceneList.get(newActiveLevel).onSurfaceChanged(width, height);
@@ -68,6 +103,16 @@ public class StateManager {
         }
     }
 
+    // Running timers animate the scene, so it can't stop rendering
+    public static boolean hasRunningTimers() {
+        for(Timer timer : timerList) {
+            if (timer.isRunning()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static Scene getActiveScene() {
         return sceneList.get(activeSceneIndex);
     }
@@ -76,6 +121,10 @@ public class StateManager {
         return activeSceneIndex;
     }
 
+    public static RenderTargetPool getRenderTargetPool() {
+        return renderTargetPool;
+    }
+
     public static Context getContext() {
         return context;
     }
@@ -87,4 +136,29 @@ public class StateManager {
     public static int getHeight() {
         return height;
     }
+
+    public static FrameTimings getFrameTimings() {
+        return frameTimings;
+    }
+
+    public static StageTimer getStageTimer() {
+        return stageTimer;
+    }
+
+    public static TraceFormat getTraceFormat() {
+        return traceFormat;
+    }
+
+    public static ResolutionController getResolutionController() {
+        return resolutionController;
+    }
+
+    // Size of the image that is traced, it is upscaled to the surface size when it is drawn
+    public static int getTraceWidth() {
+        return resolutionController.scaleSize(width);
+    }
+
+    public static int getTraceHeight() {
+        return resolutionController.scaleSize(height);
+    }
 }
@@ -7,6 +7,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Map;
 
 /**
  * Created by Andreas on 23.04.2020.
@@ -37,4 +38,9 @@ public class TextResourceReader {
 
         return body.toString();
     }
+
+    // Reads a shader and injects the defines of its variant (see ShaderPreprocessor)
+    public static String readTextFileFromResource(Context context, int resourceID, Map<String, ?> defines) {
+        return ShaderPreprocessor.process(readTextFileFromResource(context, resourceID), defines);
+    }
 }
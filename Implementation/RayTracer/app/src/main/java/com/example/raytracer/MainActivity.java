@@ -30,12 +30,17 @@ import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.constraintlayout.widget.ConstraintSet;
 import androidx.constraintlayout.widget.ConstraintLayout.LayoutParams;
 
+import Tracing.TraceFormat;
+import Tracing.TraceFormatPolicy;
+import Util.FrameScheduler;
 import Util.StateManager;
 
 // Auf Top level import geändert
 public class MainActivity extends Activity {
 
     private static final String TAG = "Raytracer";
+    // Optional launch extra that overrides the trace format of the device (e.g. --es traceFormat RGBA16F)
+    private static final String EXTRA_TRACE_FORMAT = "traceFormat";
 
     private final float mMinScale = 0.5f;
     private final float mMaxScale = 2.5f;
@@ -64,6 +69,7 @@ public class MainActivity extends Activity {
         if (!StateManager.isLoaded) {
             StateManager.load(3, this); //TODO CHANGE BACK
         }
+        chooseTraceFormat(displayMetrics);
 
         final ConstraintSet set = new ConstraintSet();
         final ConstraintLayout cl = new ConstraintLayout(this);
@@ -138,6 +144,21 @@ public class MainActivity extends Activity {
         super.onDestroy();
     }
 
+    // The traced image is at most as large as the screen, its accumulation has to fit into the memory of the device
+    private void chooseTraceFormat(DisplayMetrics displayMetrics) {
+        ActivityManager am = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        TraceFormat preference = null;
+        try {
+            preference = TraceFormatPolicy.parsePreference(getIntent().getStringExtra(EXTRA_TRACE_FORMAT));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, e.getMessage());
+        }
+
+        long pixels = (long) displayMetrics.widthPixels * displayMetrics.heightPixels;
+        StateManager.setTraceFormat(TraceFormatPolicy.choose(preference, pixels,
+                TraceFormatPolicy.getMemoryBudget(am.getMemoryClass()), FrameScheduler.CONVERGED_FRAME_COUNT));
+    }
+
     private boolean detectOpenGLES31() {
         ActivityManager am = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
         ConfigurationInfo info = am.getDeviceConfigurationInfo();
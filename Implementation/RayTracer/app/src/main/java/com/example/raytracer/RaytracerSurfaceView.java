@@ -7,20 +7,28 @@ import android.opengl.GLSurfaceView;
 import android.util.Log;
 import android.util.DisplayMetrics;
 
+import android.view.Choreographer;
 import android.view.View;
 import android.view.DragEvent;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 
 import Util.CurrentEvent;
-import Util.Direction;
+import Util.FrameScheduler;
+import Util.TouchAccumulator;
+
+import static Util.Constants.NANOS_PER_SEC;
+import static Util.Constants.TARGET_FPS;
 
 //import com.example.raytracer.Renderer;
 
 @SuppressLint("ViewConstructor")
-public class RaytracerSurfaceView extends GLSurfaceView {
+public class RaytracerSurfaceView extends GLSurfaceView implements Choreographer.FrameCallback {
     private static final String TAG = "Raytracer";
     private static final int INVALID_POINTER_ID = -1;
+    // Camera movement per density independent pixel of a drag (about the old fixed steps of 0.08 and 5 degrees per move event)
+    private static final float PAN_PER_DP = 0.008f;
+    private static final float DEGREES_PER_DP = 0.5f;
 
     private final ScaleGestureDetector scaleDetector;
     private final float mMinScale = 0.5f;
@@ -31,6 +39,12 @@ public class RaytracerSurfaceView extends GLSurfaceView {
     // multiple coordinates for multitouch
     private float mScaleFactor = 1f;
     private com.example.raytracer.Renderer mRenderer;
+    // Decides on which vsync a frame is rendered, nothing is rendered once the image has converged
+    private final FrameScheduler mFrameScheduler;
+    // Only touched on the ui thread
+    private boolean mVsyncCallbackPosted;
+    // Written by the touch events, drained by the renderer once per frame
+    private final TouchAccumulator mTouchAccumulator = new TouchAccumulator();
 
     private long mFPS;
     private float mPreviousX;
@@ -48,7 +62,13 @@ public class RaytracerSurfaceView extends GLSurfaceView {
         // Fullscreen-Mode
         setSystemUiVisibility(View.SYSTEM_UI_FLAG_FULLSCREEN | View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION);
         // Assign the renderer
-        setRenderer(mRenderer = new com.example.raytracer.Renderer(ctx));
+        mFrameScheduler = new FrameScheduler((long) (NANOS_PER_SEC / TARGET_FPS));
+        setRenderer(mRenderer = new com.example.raytracer.Renderer(ctx, mFrameScheduler, mTouchAccumulator));
+        // Frames are requested on vsync by doFrame instead of rendering continuously
+        setRenderMode(RENDERMODE_WHEN_DIRTY);
+        // Changes are reported on the gl thread, the vsync callbacks have to be posted on the ui thread
+        mFrameScheduler.setWakeUpListener(() -> post(this::startVsyncCallbacks));
+        startVsyncCallbacks();
 
         scaleDetector = new ScaleGestureDetector(ctx, new ScaleListener());
         mDensity = metrics.density;
@@ -79,53 +99,41 @@ public class RaytracerSurfaceView extends GLSurfaceView {
 //                mActivePointerId2 = e.getPointerId(1);
 //                Log.i(TAG, "Action down: " + e.getPointerCount());
                 mMode = CurrentEvent.PAN;
-                mPreviousX = e.getX();
-                mPreviousY = e.getY();
+                mActivePointerId = e.getPointerId(0);
+                resetPreviousPosition(e, 0);
                 break;
             }
             case MotionEvent.ACTION_POINTER_DOWN: {
                 // Fired when 1 Pointer is on the screen and one gets added or 2 pointer
                 mMode = CurrentEvent.ROTATE;
+                // The first pointer stays down, the next delta starts where it is now and not where the pan ended
+                resetPreviousPosition(e, e.findPointerIndex(mActivePointerId));
                 break;
             }
             case MotionEvent.ACTION_MOVE: {
-                if (!scaleDetector.isInProgress()) {
-                    final float x = e.getX(0);
-                    final float y = e.getY(0);
+                final int index = e.findPointerIndex(mActivePointerId);
+                if (index >= 0 && !scaleDetector.isInProgress()) {
+                    final float x = e.getX(index);
+                    final float y = e.getY(index);
 //                    Log.i(TAG, "c: " + x + " " + y);
 
-                    final float deltaX = (x - mPreviousX); //  / mDensity / 2f;
-                    final float deltaY = (y - mPreviousY); // / mDensity / 2f;
+                    final float deltaX = (x - mPreviousX) / mDensity;
+                    final float deltaY = (y - mPreviousY) / mDensity;
                     mPreviousX = x;
                     mPreviousY = y;
 
-                    final boolean sideMov = Math.abs(deltaX) > Math.abs(deltaY);
+                    // The deltas only add up here, the renderer applies them once per frame
+                    // Only the first event after a drain has to wake the rendering up
                     if (mMode == CurrentEvent.PAN) {
-                        if (sideMov) {
-                            // Right, Left
-                            final Direction d = deltaX > 0 ? Direction.LEFT : Direction.RIGHT;
-                            queueEvent(() -> mRenderer.handleTouchDrag(d));
-                        } else {
-                            // Up, Down
-                            queueEvent(() -> {
-                                final Direction d = deltaY > 0 ? Direction.UP : Direction.DOWN;
-                                mRenderer.handleTouchDrag(d);
-                            });
+                        if (mTouchAccumulator.addPan(deltaX * PAN_PER_DP, -deltaY * PAN_PER_DP)) {
+                            mFrameScheduler.markDirty();
                         }
                         break;
                     }
 
                     if (mMode == CurrentEvent.ROTATE) {
-                        if (sideMov) {
-                            // Right, Left
-                            final float angle = deltaX > 0 ? 5f : -5f;
-                            queueEvent(() -> mRenderer.handleRotation(angle, 0, 1));
-                        } else {
-                            // Up, Down
-                            queueEvent(() -> {
-                                final float angle = deltaY > 0 ? 5f : -5f;
-                                mRenderer.handleRotation(angle, 1, 0);
-                            });
+                        if (mTouchAccumulator.addRotation(deltaY * DEGREES_PER_DP, deltaX * DEGREES_PER_DP)) {
+                            mFrameScheduler.markDirty();
                         }
                         break;
                     }
@@ -141,6 +149,11 @@ public class RaytracerSurfaceView extends GLSurfaceView {
                 // Fired when 2 Pointer are on the screen and one gets removed
                 mMode = CurrentEvent.NONE;
 //                Log.i(TAG, "Pointer up: " + e.getPointerCount());
+                // Continue with a pointer that stays down, otherwise the lifted one would make the camera jump
+                if (e.getPointerId(p) == mActivePointerId) {
+                    mActivePointerId = e.getPointerId(p == 0 ? 1 : 0);
+                }
+                resetPreviousPosition(e, e.findPointerIndex(mActivePointerId));
                 break;
             }
             case MotionEvent.ACTION_CANCEL: {
@@ -152,8 +165,37 @@ public class RaytracerSurfaceView extends GLSurfaceView {
         return true;
     }
 
+    private void resetPreviousPosition(MotionEvent e, int pointerIndex) {
+        if (pointerIndex < 0) {
+            return;
+        }
+        mPreviousX = e.getX(pointerIndex);
+        mPreviousY = e.getY(pointerIndex);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mVsyncCallbackPosted = false;
+        if (mFrameScheduler.onVsync(frameTimeNanos)) {
+            requestRender();
+        }
+        // Stop listening to vsync while idle, the wake up listener starts it again
+        if (!mFrameScheduler.isIdle()) {
+            startVsyncCallbacks();
+        }
+    }
+
+    private void startVsyncCallbacks() {
+        if (!mVsyncCallbackPosted) {
+            mVsyncCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
     public void scale(float scaleFactor) {
-        queueEvent(() -> mRenderer.handleScale(scaleFactor));
+        if (mTouchAccumulator.setScale(scaleFactor)) {
+            mFrameScheduler.markDirty();
+        }
     }
 
     @Override
@@ -189,7 +231,7 @@ public class RaytracerSurfaceView extends GLSurfaceView {
             mScaleFactor *= detector.getScaleFactor();
             // Don't let the object get too small or too large.
             mScaleFactor = Math.max(mMinScale, Math.min(mScaleFactor, mMaxScale));
-            queueEvent(() -> mRenderer.handleScale(mScaleFactor));
+            scale(mScaleFactor);
             // requestRender();
             return true;
         }
@@ -7,8 +7,13 @@ import android.util.Log;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-import Util.Direction;
+import Data.GLES31Facade;
+import Data.RenderTargetPool;
+import Data.StageTimer;
+import Util.FrameScheduler;
+import Util.ShaderCache;
 import Util.StateManager;
+import Util.TouchAccumulator;
 
 import static Util.Constants.NANOS_PER_SEC;
 import static Util.Constants.TARGET_FPS;
@@ -23,84 +28,97 @@ public class Renderer implements GLSurfaceView.Renderer {
 
     private Context context;
 
-    private long overTimeInNano;
+    private final FrameScheduler frameScheduler;
+    // Touch input of the ui thread, applied once per frame
+    private final TouchAccumulator touchAccumulator;
+    private final TouchAccumulator.Deltas touchDeltas = new TouchAccumulator.Deltas();
+    // Frames of the last full second
     private int mFPS = 0;
+    private int mFrameCount = 0;
     private long mLastTime;
 
     public Renderer(Context context) {
+        this(context, new FrameScheduler((long) (NANOS_PER_SEC / TARGET_FPS)));
+    }
+
+    public Renderer(Context context, FrameScheduler frameScheduler) {
+        this(context, frameScheduler, new TouchAccumulator());
+    }
+
+    public Renderer(Context context, FrameScheduler frameScheduler, TouchAccumulator touchAccumulator) {
         this.context = context;
+        this.frameScheduler = frameScheduler;
+        this.touchAccumulator = touchAccumulator;
     }
 
     @Override
     public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
+        // Called for every new GL context, render targets and programs of an old context can't be reused
+        ShaderCache.init(context);
+        StateManager.loadRenderTargetPool(new RenderTargetPool(new GLES31Facade()));
+        StateManager.loadStageTimer(new StageTimer(StateManager.getFrameTimings()));
         StateManager.getActiveScene().onSurfaceCreated(context);
     }
 
     @Override
     public void onSurfaceChanged(GL10 glUnused, int width, int height) {
         StateManager.loadDimensions(width, height);
+        StateManager.getRenderTargetPool().resize(width, height);
 
         StateManager.getActiveScene().onSurfaceChanged(width, height);
+        frameScheduler.markDirty();
     }
 
     @Override
     public void onDrawFrame(GL10 glUnused) {
-        long startTimeInNano = System.nanoTime();
+        // Changes from here on are drawn by this frame, later ones by the next
+        frameScheduler.onFrameStarted();
+
+        // Gpu times of earlier frames
+        StateManager.getStageTimer().poll();
+
+        // However many touch events came in, the camera moves once per frame
+        if (touchAccumulator.drain(touchDeltas)) {
+            StateManager.getActiveScene().handleCameraInput(touchDeltas);
+        }
 
         StateManager.updateAllTimers();
         StateManager.getActiveScene().onDrawFrame();
 
-        long endTimeInNano = System.nanoTime();
-        long timeElapsedInNano = endTimeInNano-startTimeInNano;
+        // The traced resolution follows the gpu time a complete image takes, the cpu doesn't wait for the gpu anymore
+        long frameGpuNanos = StateManager.getActiveScene().getFrameGpuNanos();
+        if (StateManager.getActiveScene().isFrameComplete() && frameGpuNanos >= 0) {
+            if (StateManager.getResolutionController().update(frameGpuNanos)) {
+                // Render targets of the old trace size are not needed anymore
+                StateManager.getRenderTargetPool().invalidate();
+            }
+        }
 
-        mFPS++;
+        mFrameCount++;
         long currentTime = System.currentTimeMillis();
         if (currentTime - mLastTime >= 1000) {
-            mFPS = 0;
+            mFPS = mFrameCount;
+            mFrameCount = 0;
             mLastTime = currentTime;
         }
 
-
-        if((1.0/TARGET_FPS)>timeElapsedInNano/NANOS_PER_SEC) {
-            long waitTimeInNano = (long)((1.0/TARGET_FPS*NANOS_PER_SEC)-(timeElapsedInNano));
-
-            try {
-                if(waitTimeInNano<NANOS_PER_SEC && overTimeInNano<NANOS_PER_SEC && waitTimeInNano>overTimeInNano) {
-                    Thread.sleep((waitTimeInNano - overTimeInNano)/1000000, (int)((waitTimeInNano - overTimeInNano)%1000000));
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            overTimeInNano = 0;
-        } else {
-            overTimeInNano = (long)(((timeElapsedInNano) - (1.0/TARGET_FPS)*NANOS_PER_SEC));
-        }
+        // Frames are paced by the vsync callbacks of the surface view, once the image has converged they stop.
+        // Input that came in after the drain only woke up the scheduler once, the image can't count as converged before it is drawn
+        boolean changing = StateManager.hasRunningTimers() || touchAccumulator.isPending();
+        frameScheduler.onFrameRendered(StateManager.getActiveScene().isFrameComplete(), StateManager.getActiveScene().getFrameIndex(), changing);
     }
 
     public int getFPS() {
         return mFPS;
     }
 
-    public void handleScale(float scaleFactor){
-        StateManager.getActiveScene().handleScale(scaleFactor);
-    }
-
-    public void handleRotation(float angle, int x, int y){
-        StateManager.getActiveScene().handleRotation(angle, x, y);
-    }
-
     public void handleTouchPress(float normalizedX, float normalizedY) {
         StateManager.getActiveScene().handleTouchPress(normalizedX, normalizedY);
+        frameScheduler.markDirty();
     }
 
-    public void handleTouchDrag(Direction direction) {
-        StateManager.getActiveScene().handleTouchDrag(direction);
-    }
-//    public void handleTouchDrag(float normalizedX, float normalizedY, float normalizedX1, float normalizedY1) {
-//        StateManager.getActiveScene().handleTouchDrag(normalizedX, normalizedY, normalizedX1, normalizedY1);
-//    }
-
     public void handleTouchRelease(float normalizedX, float normalizedY) {
         StateManager.getActiveScene().handleTouchRelease(normalizedX, normalizedY);
+        frameScheduler.markDirty();
     }
 }
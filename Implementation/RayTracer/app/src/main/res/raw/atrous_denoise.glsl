@@ -0,0 +1,112 @@
+#version 310 es
+
+//DEBUG_NAME: atrous_denoise.glsl
+
+// One iteration of the edge avoiding a-trous wavelet filter, see AtrousDenoiser.java for the CPU reference
+// The defines marked with (injected) are replaced by the values of DenoiseShaderProgram, the values here are only defaults
+
+// Edge stopping parameters (injected from AtrousDenoiser.java)
+#define NORMAL_PHI 64.0
+#define DEPTH_PHI 0.005
+#define ALBEDO_PHI 0.02
+
+// Defining the local work group size of the compute shader (injected)
+#define WORK_GROUP_SIZE 8
+layout (local_size_x = WORK_GROUP_SIZE, local_size_y = WORK_GROUP_SIZE) in;
+
+// Formats of the input and the output, see TraceFormat.java (injected)
+// The traced image can be in any format, the images of the iterations are never packed
+#define FORMAT_RGBA32F 0
+#define FORMAT_RGBA16F 1
+#define FORMAT_R11G11B10F 2
+#define INPUT_FORMAT FORMAT_RGBA32F
+#define OUTPUT_FORMAT FORMAT_RGBA32F
+
+// The image of the previous iteration (or the traced image) and the output of this iteration
+#if INPUT_FORMAT == FORMAT_R11G11B10F
+layout(r32ui, binding = 0) uniform highp readonly uimage2D u_Input;
+#elif INPUT_FORMAT == FORMAT_RGBA16F
+layout(rgba16f, binding = 0) uniform highp readonly image2D u_Input;
+#else
+layout(rgba32f, binding = 0) uniform highp readonly image2D u_Input;
+#endif
+#if OUTPUT_FORMAT == FORMAT_RGBA16F
+layout(rgba16f, binding = 1) uniform highp writeonly image2D u_Output;
+#else
+layout(rgba32f, binding = 1) uniform highp writeonly image2D u_Output;
+#endif
+
+// Guides written by compute_shader.glsl
+layout(rgba16f, binding = 2) uniform mediump readonly image2D u_NormalDepth;
+layout(rgba16f, binding = 3) uniform mediump readonly image2D u_Albedo;
+
+// Distance between the taps (2^iteration)
+uniform int u_StepSize;
+
+// Tolerated squared color difference of this iteration (AtrousDenoiser.colorPhi)
+uniform float u_ColorPhi;
+
+// 1D B3 spline weights of the taps at distance 0, 1 and 2
+const float KERNEL[3] = float[3](3.0 / 8.0, 1.0 / 4.0, 1.0 / 16.0);
+
+#if INPUT_FORMAT == FORMAT_R11G11B10F
+// Same layout as packR11G11B10 in compute_shader.glsl
+vec3 loadInput(ivec2 position) {
+    uint bits = imageLoad(u_Input, position).r;
+    uint r = (bits & 0x7FFu) << 4;
+    uint g = ((bits >> 11) & 0x7FFu) << 4;
+    uint b = ((bits >> 22) & 0x3FFu) << 5;
+    return vec3(unpackHalf2x16(r | (g << 16)), unpackHalf2x16(b).x);
+}
+#else
+vec3 loadInput(ivec2 position) {
+    return imageLoad(u_Input, position).rgb;
+}
+#endif
+
+void main(void) {
+    ivec2 position = ivec2(gl_GlobalInvocationID.xy);
+    ivec2 size = imageSize(u_Output);
+
+    if (position.x >= size.x || position.y >= size.y) {
+        return;
+    }
+
+    vec3 color = loadInput(position);
+    vec4 normalDepth = imageLoad(u_NormalDepth, position);
+    vec3 albedo = imageLoad(u_Albedo, position).rgb;
+    float depthTolerance = DEPTH_PHI * normalDepth.w * float(u_StepSize);
+
+    vec3 sum = vec3(0.0);
+    float weightSum = 0.0;
+
+    for (int dy = -2; dy <= 2; dy++) {
+        for (int dx = -2; dx <= 2; dx++) {
+            ivec2 tap = position + ivec2(dx, dy) * u_StepSize;
+            if (tap.x < 0 || tap.y < 0 || tap.x >= size.x || tap.y >= size.y) {
+                continue;
+            }
+
+            vec3 tapColor = loadInput(tap);
+            vec4 tapNormalDepth = imageLoad(u_NormalDepth, tap);
+            vec3 tapAlbedo = imageLoad(u_Albedo, tap).rgb;
+
+            vec3 colorDelta = tapColor - color;
+            float colorWeight = exp(-dot(colorDelta, colorDelta) / u_ColorPhi);
+            float normalWeight = pow(max(0.0, dot(normalDepth.xyz, tapNormalDepth.xyz)), NORMAL_PHI);
+            float depthWeight = exp(-abs(tapNormalDepth.w - normalDepth.w) / depthTolerance);
+            vec3 albedoDelta = tapAlbedo - albedo;
+            float albedoWeight = exp(-dot(albedoDelta, albedoDelta) / ALBEDO_PHI);
+
+            float weight = KERNEL[abs(dx)] * KERNEL[abs(dy)] * colorWeight * normalWeight * depthWeight * albedoWeight;
+            sum += tapColor * weight;
+            weightSum += weight;
+        }
+    }
+
+    // The sky has no normal, its pixels (and pixels without similar neighbours) keep their color
+    if (weightSum > 0.0) {
+        color = sum / weightSum;
+    }
+    imageStore(u_Output, position, vec4(color, 1.0));
+}
@@ -2,30 +2,119 @@
 
 //DEBUG_NAME: compute_shader.glsl
 
-// Defining the number of cubes and spheres in the scene
-// Must match the count numbers in ComputeShaderProgram.java
-#define CUBE_COUNT 3
-#define SPHERE_COUNT 7
-
 // Defining the maximum bounds of the scene
 #define MAX_SCENE_BOUNDS 1000.0
 
-// Defining the maximum amount of bounces of the ray
+// The defines marked with (injected) are replaced by the values of ComputeShaderProgram, the values here are only defaults
+
+// Defining the maximum amount of bounces of the ray (injected)
 #define MAX_BOUNCES 10
 
+// Bounces that every path makes before russian roulette may end it, MAX_BOUNCES turns it off (injected)
+#define ROULETTE_MIN_BOUNCES 3
+
 // Defining how far the scattered rays can randomly spray (with 0 being no random behaviour at all)
 #define SPRAY_CONTROL 1.0
 
-// Defining how often the scene will be rendered (before being averaged)
+// Defining how often the scene will be rendered (before being averaged) (injected)
 #define MULTI_SAMPLING_COUNT 5
 
-// Defining the local work group size of the compute shader (must be a power of two)
-layout (local_size_x = 8, local_size_y = 8) in;
+// Defining the size of the bvh traversal stack and the primitive types of the bvh references (injected from Bvh.java)
+#define BVH_STACK_SIZE 32
+#define PRIMITIVE_CUBE 0
+#define PRIMITIVE_SPHERE 1
+#define PRIMITIVE_TRIANGLE 2
+#define PRIMITIVE_TYPE_BITS 2
+
+// Guards the triangle intersection against parallel rays and self intersections after a bounce (injected from PathTracer.java)
+#define TRIANGLE_EPSILON 0.000001
+
+// Temporal reprojection after camera moves, the frames of history a pixel keeps at most, the tolerated depth error
+// and the smallest tolerated cosine between the current and the previous normal (injected from Reprojection.java)
+#define MAX_HISTORY 8.0
+#define DEPTH_TOLERANCE 0.01
+#define MIN_NORMAL_DOT 0.9
+
+// Defining the local work group size of the compute shader (must be a power of two) (injected)
+#define WORK_GROUP_SIZE 8
+
+// Storage of the traced image and its average, see TraceFormat.java (injected)
+#define FORMAT_RGBA32F 0
+#define FORMAT_RGBA16F 1
+#define FORMAT_R11G11B10F 2
+#define TRACE_FORMAT FORMAT_RGBA32F
+
+// The stage of the wavefront path tracer that this variant runs, the megakernel traces whole paths in one go (injected)
+// See WavefrontShaderProgram.java for the order of the stages and WavefrontTracer.java for the CPU twin
+#define WAVEFRONT_STAGE 0
+#define STAGE_MEGAKERNEL 0
+#define STAGE_GENERATE 1
+#define STAGE_EXTEND 2
+#define STAGE_SHADE 3
+#define STAGE_PREPARE 4
+#define STAGE_ACCUMULATE 5
+
+// Material type of the paths that a shade stage variant shades (injected)
+#define SHADE_MATERIAL 0
+
+// Size of the one dimensional work groups of the stages that run over a queue (injected)
+#define QUEUE_GROUP_SIZE 64
+
+// The queues of the queue buffer, the two ray queues take turns as the input of extend and the output of shade (injected)
+#define QUEUE_RAYS_A 0
+#define QUEUE_DIFFUSE 1
+#define QUEUE_METAL 2
+#define QUEUE_RAYS_B 3
+#define QUEUE_COUNT 4
+
+#if WAVEFRONT_STAGE == STAGE_EXTEND || WAVEFRONT_STAGE == STAGE_SHADE || WAVEFRONT_STAGE == STAGE_PREPARE
+layout (local_size_x = QUEUE_GROUP_SIZE) in;
+#else
+layout (local_size_x = WORK_GROUP_SIZE, local_size_y = WORK_GROUP_SIZE) in;
+#endif
 
 // Getting the uniform location of the framebuffer and setting its uniform value to 0
-// rgba32f sets the image format qualifier for the image2D to rgba 32bit floating point
+// The image format qualifier has to match the TRACE_FORMAT of the textures (packed colours are uints, see packR11G11B10)
 // This image2D represents the framebuffer that this shader will right to
+// The running average of all previous frames (same size as the framebuffer)
+// GLES 3.1 only allows read and write access on r32f images, therefore the two images are swapped every frame
+#if TRACE_FORMAT == FORMAT_R11G11B10F
+layout(r32ui, binding = 0) uniform highp writeonly uimage2D u_FrameBuffer;
+layout(r32ui, binding = 1) uniform highp readonly uimage2D u_AccumulationBuffer;
+#elif TRACE_FORMAT == FORMAT_RGBA16F
+layout(rgba16f, binding = 0) uniform highp writeonly image2D u_FrameBuffer;
+layout(rgba16f, binding = 1) uniform highp readonly image2D u_AccumulationBuffer;
+#else
 layout(rgba32f, binding = 0) uniform highp writeonly image2D u_FrameBuffer;
+layout(rgba32f, binding = 1) uniform highp readonly image2D u_AccumulationBuffer;
+#endif
+
+// Guides of the denoiser (see GuideBuffer.java): normal and camera distance of the primary hit, and its material color
+// Together with the two images above these are the 4 image units that GLES 3.1 guarantees for compute shaders
+layout(rgba16f, binding = 2) uniform mediump writeonly image2D u_NormalDepth;
+layout(rgba16f, binding = 3) uniform mediump writeonly image2D u_Albedo;
+
+// Number of frames that were already averaged in u_AccumulationBuffer (0 = start a new average)
+uniform int u_FrameIndex;
+
+// Set on the first frame after a camera move, u_AccumulationBuffer then still holds the average of the previous camera
+// All image units are in use, so the normals and distances of the previous camera are read through a sampler
+uniform int u_Reproject;
+uniform highp sampler2D u_PreviousNormalDepth;
+uniform mat4 u_PreviousViewProjection;
+uniform vec3 u_PreviousCameraPosition;
+
+// Position of the tile that is traced by this dispatch (a frame is traced in several dispatches)
+uniform ivec2 u_TileOffset;
+
+// Wavefront stages: width of the tile (its pixels are numbered row by row), the bounce of extend and shade,
+// the queues that a stage reads and appends to, the entries per queue and the queues that prepare empties (bit mask)
+uniform int u_TileWidth;
+uniform int u_Bounce;
+uniform int u_InputQueue;
+uniform int u_OutputQueue;
+uniform int u_QueueCapacity;
+uniform int u_ResetQueues;
 
 // The camera position
 uniform vec3 u_CameraPosition;
@@ -36,21 +125,50 @@ uniform vec3 u_Ray10;
 uniform vec3 u_Ray01;
 uniform vec3 u_Ray11;
 
-// The cube properties
-uniform vec3 cubeMinArray[CUBE_COUNT];
-uniform vec3 cubeMaxArray[CUBE_COUNT];
-uniform vec3 cubeColorArray[CUBE_COUNT];
-uniform int cubeMaterialArray[CUBE_COUNT];
-uniform float cubeParameter0Array[CUBE_COUNT];
+// ----- STRUCTS -----
+// Node of the bounding volume hierarchy (see Bvh.java for the layout)
+// Inner nodes have count == 0, their left child is the next node and leftOrFirst is the index of the right child
+// Leaves reference count primitives starting at index leftOrFirst of the primitive references
+struct bvhNode {
+    vec3 boundsMin;
+    int leftOrFirst;
+    vec3 boundsMax;
+    int count;
+};
 
-// The sphere properties
-uniform vec3 sphereCenterArray[SPHERE_COUNT];
-uniform float sphereRadiusArray[SPHERE_COUNT];
-uniform vec3 sphereColorArray[SPHERE_COUNT];
-uniform int sphereMaterialArray[SPHERE_COUNT];
-uniform float sphereParameter0Array[SPHERE_COUNT];
+// Axis aligned cube (see ScenePacker.java for the layout of the scene structs)
+struct cube {
+    vec3 boundsMin;
+    int materialIndex;
+    vec3 boundsMax;
+};
+
+struct sphere {
+    vec3 center;
+    float radius;
+    int materialIndex;
+};
+
+// Vertex of a mesh, a normal of (0, 0, 0) means that the face normal is used
+struct vertex {
+    vec3 position;
+    vec3 normal;
+};
+
+// Triangle of a mesh, the vertex indices point into the vertices array (shared by all meshes)
+struct triangle {
+    ivec3 vertexIndices;
+    int materialIndex;
+};
+
+// type: 0 = diffuse, 1 = metal
+// parameter0: diffuse = attenuation, metal = reflectivity
+struct material {
+    vec3 color;
+    int type;
+    float parameter0;
+};
 
-// ----- STRUCTS -----
 // Ray defined by it's origin and it's direction
 struct ray {
     vec3 origin;
@@ -59,150 +177,625 @@ struct ray {
 
 // Intersection hit information of hit objects
 struct hitInfo {
-    int arrayIndex;// index of the hit object (can be used to access the uniform arrays)
+    int arrayIndex;// index of the hit object (can be used to access the cubes, spheres or triangles array)
     float t;// distance from origin to the point where we enter the object
     vec3 p;// point where the object is first hit (enter, not leave)
     vec3 normal;// normal vector on the object
 };
 
+// State of one path of the wavefront stages, the locals of trace() (WavefrontShaderProgram.PATH_BYTES has to match)
+// Paths are numbered pixel of the tile * MULTI_SAMPLING_COUNT + sample
+struct path {
+    vec3 origin;
+    vec3 direction;
+    int sampleIndex;
+    vec3 color;
+    float previousParameter0;
+    vec3 attenuation;
+    float rouletteWeight;
+    vec3 estimate;
+    uint rngState;
+    vec3 value;
+    uint rouletteState;
+    vec3 hitPoint;// hit of the last extend
+    int materialIndex;
+    vec3 hitNormal;
+    vec4 normalDepth;// guides of the primary hit
+    vec3 albedo;
+    vec3 result;// color of the finished path
+};
+
+// GLES 3.1 only guarantees 4 storage blocks per compute shader, so the bvh and the scene arrays share two blocks.
+// The structs are read as rows of ivec4 (floats through intBitsToFloat) by the get functions below
+// The bvh nodes in depth-first order (the root is the first node, two rows per node), followed by the primitive references
+// from row u_PrimitiveReferenceOffset on (four per row)
+// Every reference is (index << PRIMITIVE_TYPE_BITS) | type with index pointing into the cubes, spheres or triangles array
+layout(std430, binding = 0) readonly buffer Bvh {
+    ivec4 bvhData[];
+};
+uniform int u_PrimitiveReferenceOffset;
+
+// The scene arrays one after the other (see SectionedSSBO.java), u_SceneOffsets holds the first row of every array
+// The number of objects is only limited by the buffer size
+#define SECTION_CUBES 0
+#define SECTION_SPHERES 1
+#define SECTION_MATERIALS 2
+#define SECTION_VERTICES 3
+#define SECTION_TRIANGLES 4
+#define SECTION_COUNT 5
+layout(std430, binding = 1) readonly buffer Scene {
+    ivec4 sceneData[];
+};
+uniform int u_SceneOffsets[SECTION_COUNT];
+
+#if WAVEFRONT_STAGE != STAGE_MEGAKERNEL
+// The paths of the tile that is traced
+layout(std430, binding = 2) buffer Paths {
+    path paths[];
+};
+
+// The queues of path numbers, their lengths and the work groups to dispatch for every queue (glDispatchComputeIndirect)
+// Queue q holds the entries [q * u_QueueCapacity, q * u_QueueCapacity + queueCounts[q])
+layout(std430, binding = 3) buffer Queues {
+    uint queueCounts[QUEUE_COUNT];
+    uint dispatchArguments[QUEUE_COUNT * 3];
+    uint queueEntries[];
+};
+#endif
+
+// ----- BUFFER ACCESS -----
+bvhNode getBvhNode(int i) {
+    ivec4 a = bvhData[i * 2];
+    ivec4 b = bvhData[i * 2 + 1];
+    return bvhNode(intBitsToFloat(a.xyz), a.w, intBitsToFloat(b.xyz), b.w);
+}
+
+int getPrimitiveReference(int i) {
+    return bvhData[u_PrimitiveReferenceOffset + (i >> 2)][i & 3];
+}
+
+cube getCube(int i) {
+    int row = u_SceneOffsets[SECTION_CUBES] + i * 2;
+    ivec4 a = sceneData[row];
+    ivec4 b = sceneData[row + 1];
+    return cube(intBitsToFloat(a.xyz), a.w, intBitsToFloat(b.xyz));
+}
+
+sphere getSphere(int i) {
+    int row = u_SceneOffsets[SECTION_SPHERES] + i * 2;
+    ivec4 a = sceneData[row];
+    return sphere(intBitsToFloat(a.xyz), intBitsToFloat(a.w), sceneData[row + 1].x);
+}
+
+material getMaterial(int i) {
+    int row = u_SceneOffsets[SECTION_MATERIALS] + i * 2;
+    ivec4 a = sceneData[row];
+    return material(intBitsToFloat(a.xyz), a.w, intBitsToFloat(sceneData[row + 1].x));
+}
+
+vertex getVertex(int i) {
+    int row = u_SceneOffsets[SECTION_VERTICES] + i * 2;
+    return vertex(intBitsToFloat(sceneData[row].xyz), intBitsToFloat(sceneData[row + 1].xyz));
+}
+
+triangle getTriangle(int i) {
+    ivec4 a = sceneData[u_SceneOffsets[SECTION_TRIANGLES] + i];
+    return triangle(a.xyz, a.w);
+}
+
 // ----- FUNCTION DECLERATIONS -----
 // Glsl works similar to c, so one has to declare functions like so or put them above the main method
-vec3 trace(ray cameraRay, int sampleIndex);
-bool intersectSceneCubes(ray cameraRay, out hitInfo info);
+vec3 trace(ray cameraRay, int sampleIndex, uint pixelSeed, out vec4 normalDepth, out vec3 albedo);
+bool intersectScene(ray cameraRay, out hitInfo cubeInfo, out hitInfo sphereInfo, out hitInfo triangleInfo);
+float intersectNode(ray cameraRay, vec3 inverseDirection, int nodeIndex, float closestT);
 vec2 intersectCube(ray cameraRay, int i);
-bool intersectSceneSpheres(ray cameraRay, out hitInfo info);
+vec3 getCubeNormal(hitInfo info);
 float intersectSphere(ray cameraRay, int i);
+float intersectTriangle(ray cameraRay, int i, float closestT);
+vec3 getTriangleNormal(hitInfo info, vec3 direction);
 vec3 getPointFromRay(ray cameraRay, float t);
-vec3 getRandomPoint(vec3 p, int sampleIndex);
-float squaredLength(vec3 p);
-float drand(vec2 co);
+vec3 getRandomPoint(int sampleIndex, uvec3 scramble);
+uint pcgHash(uint value);
+uint nextRandom(inout uint state);
+uint sobol(uint index, int dimension, uint scramble);
+vec3 sampleUnitBall(vec3 u);
+float reproject(vec3 point, vec3 normal, ivec2 size, out vec3 history);
+vec3 getCameraRayDirection(ivec2 pixel, ivec2 size);
+void storePixel(ivec2 pixel, ivec2 size, vec3 color, vec3 direction, vec4 normalDepth, vec3 albedo);
+vec4 loadAverage(ivec2 pixel);
+void storeAverage(ivec2 pixel, vec4 average);
+uint packR11G11B10(vec3 color);
+vec3 unpackR11G11B10(uint bits);
 
 // ----- MAIN -----
+#if WAVEFRONT_STAGE == STAGE_MEGAKERNEL
 // The main function (shader program entry point)
 void main(void) {
-    ivec2 shaderDomainPosition = ivec2(gl_GlobalInvocationID.xy);
+    ivec2 shaderDomainPosition = ivec2(gl_GlobalInvocationID.xy) + u_TileOffset;
     ivec2 size = imageSize(u_FrameBuffer);
 
-    // mix performs a linear interpolation between param 1 and 2 using param 3 as weight
-    // therefore we "move" from left to right, and top to bottom through all of the available texels
-    // and calculate a direction ray for each of them -> the current shader invocation knows where to shoot the current ray
-    vec2 position = vec2(shaderDomainPosition) / vec2(size.x, size.y);
-    vec3 direction = mix(mix(u_Ray00, u_Ray01, position.y), mix(u_Ray10, u_Ray11, position.y), position.x);
+    // Work groups of partial tiles reach over the border of the image
+    if (shaderDomainPosition.x >= size.x || shaderDomainPosition.y >= size.y) {
+        return;
+    }
+
+    vec3 direction = getCameraRayDirection(shaderDomainPosition, size);
 
     ray cameraRay;
     cameraRay.origin = u_CameraPosition;
     cameraRay.direction = direction;
 
     vec3 color;
+    // All samples share the camera ray and therefore the primary hit, every trace writes the same guides
+    vec4 normalDepth;
+    vec3 albedo;
+
+    // Seed of the random numbers of this pixel (see Sampler.java)
+    uint pixelSeed = pcgHash(uint(shaderDomainPosition.x) ^ pcgHash(uint(shaderDomainPosition.y)));
+
+    for (int i = 0; i < MULTI_SAMPLING_COUNT; i++) {
+        color += trace(cameraRay, i, pixelSeed, normalDepth, albedo);
+    }
+    color /= float(MULTI_SAMPLING_COUNT);
+
+    storePixel(shaderDomainPosition, size, color, direction, normalDepth, albedo);
+}
+#endif
+
+// mix performs a linear interpolation between param 1 and 2 using param 3 as weight
+// therefore we "move" from left to right, and top to bottom through all of the available texels
+// and calculate a direction ray for each of them -> the current shader invocation knows where to shoot the current ray
+// Frame 0 shoots through the pixel corner, the following frames through different points inside the pixel (R2 sequence)
+vec3 getCameraRayDirection(ivec2 pixel, ivec2 size) {
+    vec2 jitter = fract(float(u_FrameIndex) * vec2(0.7548776662, 0.5698402910));
+    vec2 position = (vec2(pixel) + jitter) / vec2(size.x, size.y);
+    return mix(mix(u_Ray00, u_Ray01, position.y), mix(u_Ray10, u_Ray11, position.y), position.x);
+}
+
+// Blend the new samples into the running average, its alpha holds the number of frames it contains
+// The first frame after a camera move starts with the reprojected average of the previous camera (the sky needs no history)
+void storePixel(ivec2 pixel, ivec2 size, vec3 color, vec3 direction, vec4 normalDepth, vec3 albedo) {
+    float historyLength = 0.0;
+    vec3 history;
+    if (u_FrameIndex > 0) {
+        vec4 average = loadAverage(pixel);
+        history = average.rgb;
+        historyLength = average.a;
+    } else if (u_Reproject != 0 && normalDepth.w < MAX_SCENE_BOUNDS) {
+        historyLength = reproject(u_CameraPosition + normalize(direction) * normalDepth.w, normalDepth.xyz, size, history);
+    }
+    if (historyLength > 0.0) {
+        color = mix(history, color, 1.0 / (historyLength + 1.0));
+    }
+
+    storeAverage(pixel, vec4(color, historyLength + 1.0));
+    imageStore(u_NormalDepth, pixel, normalDepth);
+    imageStore(u_Albedo, pixel, vec4(albedo, 1));
+}
+
+// The average of the previous frames with its history length in alpha
+// Packed averages have no alpha: their history is the frame index, and a reprojected one counts as MAX_HISTORY frames
+vec4 loadAverage(ivec2 pixel) {
+#if TRACE_FORMAT == FORMAT_R11G11B10F
+    float historyLength = u_FrameIndex > 0 ? float(u_FrameIndex) : MAX_HISTORY;
+    return vec4(unpackR11G11B10(imageLoad(u_AccumulationBuffer, pixel).r), historyLength);
+#else
+    return imageLoad(u_AccumulationBuffer, pixel);
+#endif
+}
+
+void storeAverage(ivec2 pixel, vec4 average) {
+#if TRACE_FORMAT == FORMAT_R11G11B10F
+    imageStore(u_FrameBuffer, pixel, uvec4(packR11G11B10(average.rgb), 0u, 0u, 0u));
+#else
+    imageStore(u_FrameBuffer, pixel, average);
+#endif
+}
+
+// R11G11B10F in a uint (red in the low bits), the channels are half floats without sign and with 6, 6 and 5 bits of mantissa
+// Rounds to nearest and clamps to the largest finite value, see TraceFormat.java for the CPU twin
+uint packR11G11B10(vec3 color) {
+    uint rg = packHalf2x16(max(color.rg, 0.0));
+    uint b = packHalf2x16(vec2(max(color.b, 0.0), 0.0));
+    uint r11 = min(((rg & 0xFFFFu) + 8u) >> 4, 0x7BFu);
+    uint g11 = min(((rg >> 16) + 8u) >> 4, 0x7BFu);
+    uint b10 = min(((b & 0xFFFFu) + 16u) >> 5, 0x3DFu);
+    return r11 | (g11 << 11) | (b10 << 22);
+}
+
+vec3 unpackR11G11B10(uint bits) {
+    uint r = (bits & 0x7FFu) << 4;
+    uint g = ((bits >> 11) & 0x7FFu) << 4;
+    uint b = ((bits >> 22) & 0x3FFu) << 5;
+    return vec3(unpackHalf2x16(r | (g << 16)), unpackHalf2x16(b).x);
+}
+
+// ----- WAVEFRONT STAGES -----
+// The paths of a tile go through generate -> extend -> shade (one variant per material) -> extend -> ... -> accumulate,
+// every stage runs one step for all paths of its queue, so the lanes of a wave all run the same code.
+// Finished paths are left out of the queues by compactQueue, so later bounces only dispatch the live paths.
+#if WAVEFRONT_STAGE == STAGE_EXTEND || WAVEFRONT_STAGE == STAGE_SHADE
+// Entries that the lanes of the work group append to the two queues of a stage, and the start of the group in each queue
+shared uvec2 compactionOffsets[QUEUE_GROUP_SIZE];
+shared uvec2 compactionBase;
+
+// Prefix sum stream compaction in shared memory, run by the first lane between two barriers
+// (GLSL ES 3.1 only allows barrier() directly in main and outside of any control flow, so the scan can't be a loop of barriers)
+// Turns the appended counts of the lanes into their offsets and reserves the space of the whole group with one atomicAdd per queue
+void compactQueue(ivec2 queues) {
+    uvec2 sum = uvec2(0u);
+    for (int lane = 0; lane < QUEUE_GROUP_SIZE; lane++) {
+        uvec2 count = compactionOffsets[lane];
+        compactionOffsets[lane] = sum;
+        sum += count;
+    }
+    compactionBase.x = sum.x > 0u ? atomicAdd(queueCounts[queues.x], sum.x) : 0u;
+    compactionBase.y = queues.y >= 0 && sum.y > 0u ? atomicAdd(queueCounts[queues.y], sum.y) : 0u;
+}
+
+// Writes the path into the queues that the lane appended to, after compactQueue
+void appendToQueues(uint pathIndex, uvec2 appended, ivec2 queues) {
+    uvec2 position = compactionBase + compactionOffsets[gl_LocalInvocationIndex];
+    if (appended.x != 0u) {
+        queueEntries[uint(queues.x * u_QueueCapacity) + position.x] = pathIndex;
+    }
+    if (appended.y != 0u) {
+        queueEntries[uint(queues.y * u_QueueCapacity) + position.y] = pathIndex;
+    }
+}
+
+// The last value of the path (see trace()), the path takes no further part in the stages
+void finishPath(inout path currentPath) {
+    currentPath.result = currentPath.estimate + currentPath.rouletteWeight * (currentPath.color * currentPath.attenuation - currentPath.value);
+}
+#endif
+
+#if WAVEFRONT_STAGE == STAGE_GENERATE
+// One camera ray per pixel of the tile, every sample becomes a path of the first ray queue
+void main(void) {
+    ivec2 shaderDomainPosition = ivec2(gl_GlobalInvocationID.xy) + u_TileOffset;
+    ivec2 size = imageSize(u_FrameBuffer);
+    if (shaderDomainPosition.x >= size.x || shaderDomainPosition.y >= size.y || int(gl_GlobalInvocationID.x) >= u_TileWidth) {
+        return;
+    }
+
+    uint pixelSeed = pcgHash(uint(shaderDomainPosition.x) ^ pcgHash(uint(shaderDomainPosition.y)));
+    int firstPath = (int(gl_GlobalInvocationID.y) * u_TileWidth + int(gl_GlobalInvocationID.x)) * MULTI_SAMPLING_COUNT;
+    uint queueStart = atomicAdd(queueCounts[u_OutputQueue], uint(MULTI_SAMPLING_COUNT));
+
+    path newPath;
+    newPath.origin = u_CameraPosition;
+    newPath.direction = getCameraRayDirection(shaderDomainPosition, size);
+    newPath.color = vec3(0.0);
+    newPath.previousParameter0 = -1.0;
+    newPath.attenuation = vec3(1.0);
+    newPath.rouletteWeight = 1.0;
+    newPath.estimate = vec3(0.0);
+    newPath.rngState = pixelSeed;
+    newPath.value = vec3(0.0);
+    newPath.normalDepth = vec4(0.0, 0.0, 0.0, MAX_SCENE_BOUNDS);
+    newPath.albedo = vec3(0.0);
+    newPath.result = vec3(0.0);
+
+    for (int i = 0; i < MULTI_SAMPLING_COUNT; i++) {
+        newPath.sampleIndex = i;
+        newPath.rouletteState = pcgHash(pixelSeed ^ pcgHash(uint(u_FrameIndex * MULTI_SAMPLING_COUNT + i)));
+        paths[firstPath + i] = newPath;
+        queueEntries[uint(u_OutputQueue * u_QueueCapacity) + queueStart + uint(i)] = uint(firstPath + i);
+    }
+}
+#endif
+
+#if WAVEFRONT_STAGE == STAGE_EXTEND
+// Intersects the rays of the input queue with the scene and sorts the paths into the diffuse and the metal queue
+// The sky, lights and ties end the path here (see trace() for why they can't change it any more)
+void main(void) {
+    uint entry = gl_GlobalInvocationID.x;
+    uint pathIndex = 0u;
+    uvec2 appended = uvec2(0u);
+
+    if (entry < queueCounts[u_InputQueue]) {
+        pathIndex = queueEntries[uint(u_InputQueue * u_QueueCapacity) + entry];
+        path currentPath = paths[pathIndex];
+
+        hitInfo cubeHitInfo;
+        hitInfo sphereHitInfo;
+        hitInfo triangleHitInfo;
+        bool hitSomething = intersectScene(ray(currentPath.origin, currentPath.direction), cubeHitInfo, sphereHitInfo, triangleHitInfo);
+
+        vec3 primarySkyColor = vec3(1.0, 1.0, 1.0);
+        vec3 secondarySkyColor = vec3(0.1, 0.5, 0.8);
+        vec3 unit_direction = normalize(currentPath.direction);
+        vec3 skyColor = (1.0 - unit_direction.y) * primarySkyColor + unit_direction.y * secondarySkyColor;
+
+        if (!hitSomething) {
+            if (u_Bounce == 0) {
+                currentPath.albedo = skyColor;
+                currentPath.result = skyColor;
+            } else {
+                // Metal was hit before, the megakernel misses the sky again in every remaining bounce and blends it in every time
+                if (currentPath.previousParameter0 != -1.0) {
+                    for (int bounce = u_Bounce; bounce < MAX_BOUNCES; bounce++) {
+                        currentPath.color = currentPath.color * (1.0 - currentPath.previousParameter0) + skyColor * currentPath.previousParameter0;
+                    }
+                }
+                finishPath(currentPath);
+            }
+        } else {
+            hitInfo hit;
+            int materialIndex = -1;
+            if (cubeHitInfo.t < sphereHitInfo.t && cubeHitInfo.t < triangleHitInfo.t) {
+                hit = cubeHitInfo;
+                materialIndex = getCube(cubeHitInfo.arrayIndex).materialIndex;
+            } else if (sphereHitInfo.t < cubeHitInfo.t && sphereHitInfo.t < triangleHitInfo.t) {
+                hit = sphereHitInfo;
+                materialIndex = getSphere(sphereHitInfo.arrayIndex).materialIndex;
+            } else if (triangleHitInfo.t < cubeHitInfo.t && triangleHitInfo.t < sphereHitInfo.t) {
+                hit = triangleHitInfo;
+                materialIndex = getTriangle(triangleHitInfo.arrayIndex).materialIndex;
+            }
+
+            if (materialIndex < 0) {
+                // two hits are exactly the same distance away, the megakernel leaves the ray untouched until the bounces run out
+                finishPath(currentPath);
+            } else {
+                material hitMaterial = getMaterial(materialIndex);
+                currentPath.hitPoint = hit.p;
+                currentPath.hitNormal = hit.normal;
+                currentPath.materialIndex = materialIndex;
+                if (u_Bounce == 0) {
+                    currentPath.normalDepth = vec4(hit.normal, hit.t * length(currentPath.direction));
+                    currentPath.albedo = hitMaterial.color;
+                }
+
+                if (hitMaterial.type == 0) {
+                    appended.x = 1u;
+                } else if (hitMaterial.type == 1) {
+                    appended.y = 1u;
+                } else {
+                    // Other materials don't scatter, the megakernel hits them again and again without changing the path
+                    if (u_Bounce == 0) {
+                        currentPath.color = hitMaterial.color;
+                    }
+                    finishPath(currentPath);
+                }
+            }
+        }
+
+        paths[pathIndex] = currentPath;
+    }
+
+    compactionOffsets[gl_LocalInvocationIndex] = appended;
+    memoryBarrierShared();
+    barrier();
+    if (gl_LocalInvocationIndex == 0u) {
+        compactQueue(ivec2(QUEUE_DIFFUSE, QUEUE_METAL));
+    }
+    memoryBarrierShared();
+    barrier();
+    appendToQueues(pathIndex, appended, ivec2(QUEUE_DIFFUSE, QUEUE_METAL));
+}
+#endif
+
+#if WAVEFRONT_STAGE == STAGE_SHADE
+// Shades the paths of the queue of SHADE_MATERIAL (the same steps as trace()) and scatters their rays
+// The paths that survive the roulette and have bounces left are appended to the output ray queue
+void main(void) {
+    uint entry = gl_GlobalInvocationID.x;
+    uint pathIndex = 0u;
+    uvec2 appended = uvec2(0u);
+
+    if (entry < queueCounts[u_InputQueue]) {
+        pathIndex = queueEntries[uint(u_InputQueue * u_QueueCapacity) + entry];
+        path currentPath = paths[pathIndex];
+        material hitMaterial = getMaterial(currentPath.materialIndex);
+
+        // Every bounce gets its own scramble of the sample sequence, the same one for all samples of the pixel
+        uvec3 scramble = uvec3(nextRandom(currentPath.rngState), nextRandom(currentPath.rngState), nextRandom(currentPath.rngState));
+
+        if (u_Bounce == 0) {
+            currentPath.color = hitMaterial.color;
+#if SHADE_MATERIAL == 1
+            currentPath.previousParameter0 = hitMaterial.parameter0;
+#endif
+        } else if (currentPath.previousParameter0 != -1.0) {
+            currentPath.color = (currentPath.color * (1.0 - currentPath.previousParameter0) + hitMaterial.color * currentPath.previousParameter0);
+#if SHADE_MATERIAL == 0
+            currentPath.attenuation *= 1.0 - hitMaterial.parameter0;
+            currentPath.previousParameter0 = -1.0;
+#else
+            currentPath.previousParameter0 *= hitMaterial.parameter0;
+#endif
+        }
+#if SHADE_MATERIAL == 0
+        else {
+            currentPath.attenuation *= hitMaterial.parameter0;
+        }
+
+        vec3 scatteredPoint = currentPath.hitPoint + currentPath.hitNormal + getRandomPoint(currentPath.sampleIndex, scramble);
+        currentPath.direction = scatteredPoint - currentPath.hitPoint;
+#else
+        vec3 incomingDirection = (currentPath.hitPoint - currentPath.origin);
+        currentPath.direction = incomingDirection - 2.0 * dot(incomingDirection, currentPath.hitNormal) * currentPath.hitNormal;
+#endif
+        currentPath.origin = currentPath.hitPoint;
+
+        appended.x = 1u;
+        if (u_Bounce + 1 >= ROULETTE_MIN_BOUNCES && u_Bounce + 1 < MAX_BOUNCES) {
+            currentPath.estimate += currentPath.rouletteWeight * (currentPath.color * currentPath.attenuation - currentPath.value);
+            currentPath.value = currentPath.color * currentPath.attenuation;
+
+            vec3 value = currentPath.value;
+            float survival = min(1.0, currentPath.rouletteWeight * max(max(value.r, max(value.g, value.b)), currentPath.previousParameter0 * currentPath.attenuation.r));
+            if (float(nextRandom(currentPath.rouletteState) >> 8u) * (1.0 / 16777216.0) >= survival) {
+                currentPath.result = currentPath.estimate;
+                appended.x = 0u;
+            } else {
+                currentPath.rouletteWeight /= survival;
+            }
+        }
+
+        // The path ran out of bounces
+        if (u_Bounce + 1 == MAX_BOUNCES && appended.x != 0u) {
+            finishPath(currentPath);
+            appended.x = 0u;
+        }
 
+        paths[pathIndex] = currentPath;
+    }
+
+    compactionOffsets[gl_LocalInvocationIndex] = appended;
+    memoryBarrierShared();
+    barrier();
+    if (gl_LocalInvocationIndex == 0u) {
+        compactQueue(ivec2(u_OutputQueue, -1));
+    }
+    memoryBarrierShared();
+    barrier();
+    appendToQueues(pathIndex, appended, ivec2(u_OutputQueue, -1));
+}
+#endif
+
+#if WAVEFRONT_STAGE == STAGE_PREPARE
+// Turns the queue lengths into the work groups of the next indirect dispatches and empties the queues of u_ResetQueues
+void main(void) {
+    uint queue = gl_LocalInvocationIndex;
+    if (queue < uint(QUEUE_COUNT)) {
+        dispatchArguments[queue * 3u] = (queueCounts[queue] + uint(QUEUE_GROUP_SIZE - 1)) / uint(QUEUE_GROUP_SIZE);
+        dispatchArguments[queue * 3u + 1u] = 1u;
+        dispatchArguments[queue * 3u + 2u] = 1u;
+        if ((u_ResetQueues & (1 << queue)) != 0) {
+            queueCounts[queue] = 0u;
+        }
+    }
+}
+#endif
+
+#if WAVEFRONT_STAGE == STAGE_ACCUMULATE
+// Averages the samples of every pixel of the tile and blends them into the average like the megakernel
+void main(void) {
+    ivec2 shaderDomainPosition = ivec2(gl_GlobalInvocationID.xy) + u_TileOffset;
+    ivec2 size = imageSize(u_FrameBuffer);
+    if (shaderDomainPosition.x >= size.x || shaderDomainPosition.y >= size.y || int(gl_GlobalInvocationID.x) >= u_TileWidth) {
+        return;
+    }
+
+    int firstPath = (int(gl_GlobalInvocationID.y) * u_TileWidth + int(gl_GlobalInvocationID.x)) * MULTI_SAMPLING_COUNT;
+    vec3 color = vec3(0.0);
     for (int i = 0; i < MULTI_SAMPLING_COUNT; i++) {
-        color += trace(cameraRay, i);
+        color += paths[firstPath + i].result;
     }
     color /= float(MULTI_SAMPLING_COUNT);
 
-    imageStore(u_FrameBuffer, shaderDomainPosition, vec4(color, 1));
+    storePixel(shaderDomainPosition, size, color, getCameraRayDirection(shaderDomainPosition, size), paths[firstPath].normalDepth, paths[firstPath].albedo);
 }
+#endif
 
 // The function computes the amount of light that a given ray contributes when perceived by the eye
 // So, any ray that will be used as input originates in the eye and goes through the framebuffer texel
 // that is being computed in the current shader invocation
 // If an object was hit it returns its color
 // If nothing was hit it returns an artificial sky color, depending on the rays direction height
-vec3 trace(ray cameraRay, int sampleIndex) {
+// The primary hit is also returned as the guides of the denoiser (a zero normal and MAX_SCENE_BOUNDS for the sky)
+// After ROULETTE_MIN_BOUNCES a path survives each bounce with a probability that follows its value (russian roulette).
+// A path is worth color * attenuation of its last bounce, so the estimate sums up how that value changed per bounce,
+// the changes after a survived roulette are divided by the survival probability to keep the average unbiased
+vec3 trace(ray cameraRay, int sampleIndex, uint pixelSeed, out vec4 normalDepth, out vec3 albedo) {
+    normalDepth = vec4(0.0, 0.0, 0.0, MAX_SCENE_BOUNDS);
+    albedo = vec3(0.0);
+
     vec3 color;
     vec3 attenuation = vec3(1.0, 1.0, 1.0);
 
+    vec3 estimate = vec3(0.0);
+    vec3 value = vec3(0.0);
+    float rouletteWeight = 1.0;
+    // Seeded per sample so that the roulette doesn't correlate with the scattered rays
+    uint rouletteState = pcgHash(pixelSeed ^ pcgHash(uint(u_FrameIndex * MULTI_SAMPLING_COUNT + sampleIndex)));
+
     ray scatteredRay = cameraRay;// starts with the camera ray but continues with the scattered rays
 
     float previousParameter0 = -1.0;
 
+    uint rngState = pixelSeed;
+
     // GLSL doesn't support recursion hence the following for loop is necessary
     for (int bounce = 0; bounce < MAX_BOUNCES; bounce++) {
+        // Every bounce gets its own scramble of the sample sequence, the same one for all samples of the pixel
+        uvec3 scramble = uvec3(nextRandom(rngState), nextRandom(rngState), nextRandom(rngState));
+
         hitInfo cubeHitInfo;
         hitInfo sphereHitInfo;
+        hitInfo triangleHitInfo;
 
-        cubeHitInfo.t = -1.0;
-        sphereHitInfo.t = -1.0;
-
-        bool hitSomething = false;
-
-        if (intersectSceneCubes(scatteredRay, cubeHitInfo)){
-            hitSomething = true;
-        }
-
-        if (intersectSceneSpheres(scatteredRay, sphereHitInfo)){
-            hitSomething = true;
-        }
+        bool hitSomething = intersectScene(scatteredRay, cubeHitInfo, sphereHitInfo, triangleHitInfo);
 
         if (hitSomething) {
             vec3 scatteredPoint;
+            hitInfo hit;
+            material hitMaterial;
+
+            // Missed kinds have t = MAX_SCENE_BOUNDS, so the nearest hit is the one with the smallest t
+            if (cubeHitInfo.t < sphereHitInfo.t && cubeHitInfo.t < triangleHitInfo.t) {
+                hit = cubeHitInfo;
+                hitMaterial = getMaterial(getCube(cubeHitInfo.arrayIndex).materialIndex);
+            } else if (sphereHitInfo.t < cubeHitInfo.t && sphereHitInfo.t < triangleHitInfo.t) {
+                hit = sphereHitInfo;
+                hitMaterial = getMaterial(getSphere(sphereHitInfo.arrayIndex).materialIndex);
+            } else if (triangleHitInfo.t < cubeHitInfo.t && triangleHitInfo.t < sphereHitInfo.t) {
+                hit = triangleHitInfo;
+                hitMaterial = getMaterial(getTriangle(triangleHitInfo.arrayIndex).materialIndex);
+            } else {
+                // two hits are exactly the same distance away, the ray is left untouched
+                continue;
+            }
 
-            if (((cubeHitInfo.t != -1.0 && sphereHitInfo.t != -1.0) && cubeHitInfo.t < sphereHitInfo.t) || (cubeHitInfo.t != -1.0 && sphereHitInfo.t == -1.0)){ //only cube hit or both hit but cube hit is closer
-                //first hit / color
-                if (bounce == 0){
-                    color = cubeColorArray[cubeHitInfo.arrayIndex];
-                    if (cubeMaterialArray[cubeHitInfo.arrayIndex] == 0) {
-                    } else if (cubeMaterialArray[cubeHitInfo.arrayIndex] == 1) { // Metal Material
-                        previousParameter0 = cubeParameter0Array[cubeHitInfo.arrayIndex];
-                    }
-                } else {
-                    if (cubeMaterialArray[cubeHitInfo.arrayIndex] == 0) { // Diffuse Material
-                        if (previousParameter0 != -1.0) {
-                            color = (color * (1.0 - previousParameter0) + cubeColorArray[cubeHitInfo.arrayIndex] * previousParameter0);
-                            attenuation *= 1.0 - cubeParameter0Array[cubeHitInfo.arrayIndex];
-                            previousParameter0 = -1.0;
-                        } else {
-                            attenuation *= cubeParameter0Array[cubeHitInfo.arrayIndex];
-                        }
-                    } else if (cubeMaterialArray[cubeHitInfo.arrayIndex] == 1) { // Metal Material
-                        if (previousParameter0 != -1.0) {
-                            color = (color * (1.0 - previousParameter0) + cubeColorArray[cubeHitInfo.arrayIndex] * previousParameter0);
-                            previousParameter0 *= cubeParameter0Array[cubeHitInfo.arrayIndex];
-                        }
-                    }
-                }
-
-                if (cubeMaterialArray[cubeHitInfo.arrayIndex] == 0) {
-                    scatteredPoint = cubeHitInfo.p + cubeHitInfo.normal + getRandomPoint(cubeHitInfo.p, sampleIndex);
-                    scatteredRay = ray(cubeHitInfo.p, scatteredPoint - cubeHitInfo.p);
-                } else if (cubeMaterialArray[cubeHitInfo.arrayIndex] == 1) {
-                    vec3 incomingDirection = (cubeHitInfo.p - scatteredRay.origin);
-                    vec3 reflectionDirection = incomingDirection - 2.0 * dot(incomingDirection, cubeHitInfo.normal) * cubeHitInfo.normal;
-                    scatteredRay = ray(cubeHitInfo.p, reflectionDirection);
+            //first hit / color
+            if (bounce == 0){
+                color = hitMaterial.color;
+                normalDepth = vec4(hit.normal, hit.t * length(cameraRay.direction));
+                albedo = hitMaterial.color;
+                if (hitMaterial.type == 0) {
+                } else if (hitMaterial.type == 1) { // Metal Material
+                    previousParameter0 = hitMaterial.parameter0;
                 }
-            } else if (((cubeHitInfo.t != -1.0 && sphereHitInfo.t != -1.0) && sphereHitInfo.t < cubeHitInfo.t) || (sphereHitInfo.t != -1.0 && cubeHitInfo.t == -1.0)){ //only sphere hit or both hit but sphere hit is closer
-                //first hit / color
-                if (bounce == 0){
-                    color = sphereColorArray[sphereHitInfo.arrayIndex];
-                    if (sphereMaterialArray[sphereHitInfo.arrayIndex] == 0) {
-                    } else if (sphereMaterialArray[sphereHitInfo.arrayIndex] == 1) { // Metal Material
-                        previousParameter0 = sphereParameter0Array[sphereHitInfo.arrayIndex];
+            } else {
+                if (hitMaterial.type == 0) { // Diffuse Material
+                    if (previousParameter0 != -1.0) {
+                        color = (color * (1.0 - previousParameter0) + hitMaterial.color * previousParameter0);
+                        attenuation *= 1.0 - hitMaterial.parameter0;
+                        previousParameter0 = -1.0;
+                    } else {
+                        attenuation *= hitMaterial.parameter0;
                     }
-                } else {
-                    if (sphereMaterialArray[sphereHitInfo.arrayIndex] == 0) { // Diffuse Material
-                        if (previousParameter0 != -1.0) {
-                            color = (color * (1.0 - previousParameter0) + sphereColorArray[sphereHitInfo.arrayIndex] * previousParameter0);
-                            attenuation *= 1.0 - sphereParameter0Array[sphereHitInfo.arrayIndex];
-                            previousParameter0 = -1.0;
-                        } else {
-                            attenuation *= sphereParameter0Array[sphereHitInfo.arrayIndex];
-                        }
-                    } else if (sphereMaterialArray[sphereHitInfo.arrayIndex] == 1) { // Metal Material
-                        if (previousParameter0 != -1.0) {
-                            color = (color * (1.0 - previousParameter0) + sphereColorArray[sphereHitInfo.arrayIndex] * previousParameter0);
-                            previousParameter0 *= sphereParameter0Array[sphereHitInfo.arrayIndex];
-                        }
+                } else if (hitMaterial.type == 1) { // Metal Material
+                    if (previousParameter0 != -1.0) {
+                        color = (color * (1.0 - previousParameter0) + hitMaterial.color * previousParameter0);
+                        previousParameter0 *= hitMaterial.parameter0;
                     }
                 }
+            }
 
-                if (sphereMaterialArray[sphereHitInfo.arrayIndex] == 0) {
-                    scatteredPoint = sphereHitInfo.p + sphereHitInfo.normal + getRandomPoint(sphereHitInfo.p, sampleIndex);
-                    scatteredRay = ray(sphereHitInfo.p, scatteredPoint - sphereHitInfo.p);
-                } else if (sphereMaterialArray[sphereHitInfo.arrayIndex] == 1) {
-                    vec3 incomingDirection = (sphereHitInfo.p - scatteredRay.origin);
-                    vec3 reflectionDirection = incomingDirection - 2.0 * dot(incomingDirection, sphereHitInfo.normal) * sphereHitInfo.normal;
-                    scatteredRay = ray(sphereHitInfo.p, reflectionDirection);
+            if (hitMaterial.type == 0) {
+                scatteredPoint = hit.p + hit.normal + getRandomPoint(sampleIndex, scramble);
+                scatteredRay = ray(hit.p, scatteredPoint - hit.p);
+            } else if (hitMaterial.type == 1) {
+                vec3 incomingDirection = (hit.p - scatteredRay.origin);
+                vec3 reflectionDirection = incomingDirection - 2.0 * dot(incomingDirection, hit.normal) * hit.normal;
+                scatteredRay = ray(hit.p, reflectionDirection);
+            }
+
+            if (bounce + 1 >= ROULETTE_MIN_BOUNCES && bounce + 1 < MAX_BOUNCES) {
+                estimate += rouletteWeight * (color * attenuation - value);
+                value = color * attenuation;
+
+                // The next bounces can't change the value by more than the value itself or the pending blend of a metal hit,
+                // weighted like the changes so that a survivor never adds more than about 1 to the estimate
+                float survival = min(1.0, rouletteWeight * max(max(value.r, max(value.g, value.b)), previousParameter0 * attenuation.r));
+                if (float(nextRandom(rouletteState) >> 8u) * (1.0 / 16777216.0) >= survival) {
+                    return estimate;
                 }
+                rouletteWeight /= survival;
             }
         } else {
             vec3 primarySkyColor = vec3(1.0, 1.0, 1.0);
@@ -213,6 +806,7 @@ vec3 trace(ray cameraRay, int sampleIndex) {
                 vec3 unit_direction = normalize(cameraRay.direction);
                 vec3 skyColor = (1.0 - unit_direction.y) * primarySkyColor + unit_direction.y * secondarySkyColor;
 
+                albedo = skyColor;
                 return skyColor;
             } else if (previousParameter0 != -1.0) { // Metal was hit before this sky hit
                 vec3 unit_direction = normalize(scatteredRay.direction);
@@ -225,62 +819,179 @@ vec3 trace(ray cameraRay, int sampleIndex) {
         }
     }
 
-    return color * attenuation;
+    return estimate + rouletteWeight * (color * attenuation - value);
 }
 
-// The function computes the nearest intersection with a cube
-// considering all cubes in the scene
-// The hitInfo struct is used to return the information as out parameter (function out, not shader out)
-bool intersectSceneCubes(ray cameraRay, out hitInfo info) {
-    bool intersectionFound = false;
-    info.t = MAX_SCENE_BOUNDS;// the value of closestHitPosition will be changed when a more close cube is hit (determines the closest cube -> every single ray has to use it's closest visible cube for it's pixel)
+// The function computes the nearest cube, sphere and triangle intersection by traversing the bvh
+// Nodes that lie behind the nearest hit found so far (of any kind) are skipped
+// If no object of a kind is hit, the t of the according hitInfo stays MAX_SCENE_BOUNDS
+// The hitInfo structs are used to return the information as out parameters (function out, not shader out)
+bool intersectScene(ray cameraRay, out hitInfo cubeInfo, out hitInfo sphereInfo, out hitInfo triangleInfo) {
+    cubeInfo.t = MAX_SCENE_BOUNDS;
+    sphereInfo.t = MAX_SCENE_BOUNDS;
+    triangleInfo.t = MAX_SCENE_BOUNDS;
+    bool cubeFound = false;
+    bool sphereFound = false;
+    bool triangleFound = false;
+
+    vec3 inverseDirection = 1.0 / cameraRay.direction;
+
+    // Node indices and their entry distances, the nearer child is always on top
+    int nodeStack[BVH_STACK_SIZE];
+    float nodeStackT[BVH_STACK_SIZE];
+    int stackSize = 0;
+
+    float rootT = intersectNode(cameraRay, inverseDirection, 0, MAX_SCENE_BOUNDS);
+    if (rootT < MAX_SCENE_BOUNDS) {
+        nodeStack[0] = 0;
+        nodeStackT[0] = rootT;
+        stackSize = 1;
+    }
 
-    for (int i = 0; i < CUBE_COUNT; i++) {
-        vec2 hitPosition = intersectCube(cameraRay, i);
+    while (stackSize > 0) {
+        stackSize--;
+        int nodeIndex = nodeStack[stackSize];
+        float closestT = min(min(cubeInfo.t, sphereInfo.t), triangleInfo.t);
+
+        // a closer hit was found after the node was pushed
+        if (nodeStackT[stackSize] >= closestT) {
+            continue;
+        }
+
+        bvhNode node = getBvhNode(nodeIndex);
+        int leftOrFirst = node.leftOrFirst;
+        int count = node.count;
+
+        if (count > 0) {
+            for (int i = leftOrFirst; i < leftOrFirst + count; i++) {
+                int reference = getPrimitiveReference(i);
+                int index = reference >> PRIMITIVE_TYPE_BITS;
+                int type = reference & ((1 << PRIMITIVE_TYPE_BITS) - 1);
+
+                if (type == PRIMITIVE_CUBE) {
+                    vec2 hitPosition = intersectCube(cameraRay, index);
+
+                    if (hitPosition.x > 0.0 && hitPosition.x < hitPosition.y && hitPosition.x < cubeInfo.t) { // see the last two lines of explanation comment of intersectCube
+                        cubeInfo.arrayIndex = index;
+                        cubeInfo.t = hitPosition.x;
+                        cubeFound = true;
+                    }
+                } else if (type == PRIMITIVE_TRIANGLE) {
+                    float hitDistance = intersectTriangle(cameraRay, index, triangleInfo.t);
 
-        if (hitPosition.x > 0.0 && hitPosition.x < hitPosition.y && hitPosition.x < info.t) { // see the last two lines of explanation comment of intersectCube
-            info.arrayIndex = i;
-            info.t = hitPosition.x;
+                    if (hitDistance != -1.0) {
+                        triangleInfo.arrayIndex = index;
+                        triangleInfo.t = hitDistance;
+                        triangleFound = true;
+                    }
+                } else {
+                    float hitDistance = intersectSphere(cameraRay, index);
 
-            intersectionFound = true;
+                    if (hitDistance > 0.0 && hitDistance < sphereInfo.t) {
+                        sphereInfo.arrayIndex = index;
+                        sphereInfo.t = hitDistance;
+                        sphereFound = true;
+                    }
+                }
+            }
+        } else {
+            int leftChild = nodeIndex + 1;
+            int rightChild = leftOrFirst;
+            float leftT = intersectNode(cameraRay, inverseDirection, leftChild, closestT);
+            float rightT = intersectNode(cameraRay, inverseDirection, rightChild, closestT);
+
+            // the farther child is pushed first so that the nearer one is visited first
+            bool leftFirst = leftT <= rightT;
+            int nearChild = leftFirst ? leftChild : rightChild;
+            int farChild = leftFirst ? rightChild : leftChild;
+            float nearT = leftFirst ? leftT : rightT;
+            float farT = leftFirst ? rightT : leftT;
+
+            if (farT < MAX_SCENE_BOUNDS) {
+                nodeStack[stackSize] = farChild;
+                nodeStackT[stackSize] = farT;
+                stackSize++;
+            }
+            if (nearT < MAX_SCENE_BOUNDS) {
+                nodeStack[stackSize] = nearChild;
+                nodeStackT[stackSize] = nearT;
+                stackSize++;
+            }
         }
     }
 
-    if (intersectionFound) {
-        // Normal-Calculation
-        info.p = getPointFromRay(cameraRay, info.t);
+    if (cubeFound) {
+        cubeInfo.p = getPointFromRay(cameraRay, cubeInfo.t);
+        cubeInfo.normal = getCubeNormal(cubeInfo);
+    }
 
-        vec3 cubeCenter = (cubeMinArray[info.arrayIndex] + cubeMaxArray[info.arrayIndex]) / 2.0;
-        vec3 posHitPoint = getPointFromRay(cameraRay, info.t) - cubeCenter;
+    if (sphereFound) {
+        sphereInfo.p = getPointFromRay(cameraRay, sphereInfo.t);
+        sphere hitSphere = getSphere(sphereInfo.arrayIndex);
+        sphereInfo.normal = ((sphereInfo.p - hitSphere.center) / hitSphere.radius);
+    }
 
-        float delta = 0.0001;// to make up for floating point precission errors
+    if (triangleFound) {
+        triangleInfo.p = getPointFromRay(cameraRay, triangleInfo.t);
+        triangleInfo.normal = getTriangleNormal(triangleInfo, cameraRay.direction);
+    }
 
-        float posXPlane = (cubeMaxArray[info.arrayIndex].x - cubeMinArray[info.arrayIndex].x) / 2.0;
-        if (posHitPoint.x >= posXPlane + delta || posHitPoint.x >= posXPlane - delta) {
-            info.normal = vec3(1.0, 0.0, 0.0);
-        }
-        if (posHitPoint.x <= -posXPlane + delta || posHitPoint.x <= -posXPlane - delta) {
-            info.normal = vec3(-1.0, 0.0, 0.0);
-        }
+    return cubeFound || sphereFound || triangleFound;
+}
 
-        float posYPlane = (cubeMaxArray[info.arrayIndex].y - cubeMinArray[info.arrayIndex].y) / 2.0;
-        if (posHitPoint.y >= posYPlane + delta || posHitPoint.y >= posYPlane - delta) {
-            info.normal = vec3(0.0, 1.0, 0.0);
-        }
-        if (posHitPoint.y <= -posYPlane + delta || posHitPoint.y <= -posYPlane - delta) {
-            info.normal = vec3(0.0, -1.0, 0.0);
-        }
+// Slab test of the ray against the bounds of a bvh node (same idea as intersectCube)
+// Returns the distance at which the ray enters the node
+// or MAX_SCENE_BOUNDS if the node is missed or lies behind closestT
+float intersectNode(ray cameraRay, vec3 inverseDirection, int nodeIndex, float closestT) {
+    bvhNode node = getBvhNode(nodeIndex);
+    vec3 tMin = (node.boundsMin - cameraRay.origin) * inverseDirection;
+    vec3 tMax = (node.boundsMax - cameraRay.origin) * inverseDirection;
+    vec3 t1 = min(tMin, tMax);
+    vec3 t2 = max(tMin, tMax);
+    float tNear = max(max(t1.x, t1.y), t1.z);
+    float tFar = min(min(t2.x, t2.y), t2.z);
+
+    if (tFar < max(tNear, 0.0) || tNear >= closestT) {
+        return MAX_SCENE_BOUNDS;
+    }
+    return tNear;
+}
 
-        float posZPlane = (cubeMaxArray[info.arrayIndex].z - cubeMinArray[info.arrayIndex].z) / 2.0;
-        if (posHitPoint.z >= posZPlane + delta || posHitPoint.z >= posZPlane - delta) {
-            info.normal = vec3(0.0, 0.0, 1.0);
-        }
-        if (posHitPoint.z <= -posZPlane + delta || posHitPoint.z <= -posZPlane - delta) {
-            info.normal = vec3(0.0, 0.0, -1.0);
-        }
+// Normal-Calculation for the hit point of a cube
+vec3 getCubeNormal(hitInfo info) {
+    vec3 normal = vec3(0.0, 0.0, 0.0);
+
+    cube hitCube = getCube(info.arrayIndex);
+    vec3 cubeCenter = (hitCube.boundsMin + hitCube.boundsMax) / 2.0;
+    vec3 posHitPoint = info.p - cubeCenter;
+
+    float delta = 0.0001;// to make up for floating point precission errors
+
+    float posXPlane = (hitCube.boundsMax.x - hitCube.boundsMin.x) / 2.0;
+    if (posHitPoint.x >= posXPlane + delta || posHitPoint.x >= posXPlane - delta) {
+        normal = vec3(1.0, 0.0, 0.0);
+    }
+    if (posHitPoint.x <= -posXPlane + delta || posHitPoint.x <= -posXPlane - delta) {
+        normal = vec3(-1.0, 0.0, 0.0);
+    }
+
+    float posYPlane = (hitCube.boundsMax.y - hitCube.boundsMin.y) / 2.0;
+    if (posHitPoint.y >= posYPlane + delta || posHitPoint.y >= posYPlane - delta) {
+        normal = vec3(0.0, 1.0, 0.0);
+    }
+    if (posHitPoint.y <= -posYPlane + delta || posHitPoint.y <= -posYPlane - delta) {
+        normal = vec3(0.0, -1.0, 0.0);
+    }
+
+    float posZPlane = (hitCube.boundsMax.z - hitCube.boundsMin.z) / 2.0;
+    if (posHitPoint.z >= posZPlane + delta || posHitPoint.z >= posZPlane - delta) {
+        normal = vec3(0.0, 0.0, 1.0);
+    }
+    if (posHitPoint.z <= -posZPlane + delta || posHitPoint.z <= -posZPlane - delta) {
+        normal = vec3(0.0, 0.0, -1.0);
     }
 
-    return intersectionFound;
+    return normal;
 }
 
 // Algorythm to test intersection with axis aligned 3D cubes
@@ -291,8 +1002,9 @@ bool intersectSceneCubes(ray cameraRay, out hitInfo info) {
 // If the ray does not hit the cube: tFar will be less than tNear
 // If the cube lies behind the ray: tNear will be negative
 vec2 intersectCube(ray cameraRay, int i) {
-    vec3 tMin = (cubeMinArray[i] - cameraRay.origin) / cameraRay.direction;// distance between ray origin and cube min
-    vec3 tMax = (cubeMaxArray[i] - cameraRay.origin) / cameraRay.direction;// distance between ray origin and cube max
+    cube testedCube = getCube(i);
+    vec3 tMin = (testedCube.boundsMin - cameraRay.origin) / cameraRay.direction;// distance between ray origin and cube min
+    vec3 tMax = (testedCube.boundsMax - cameraRay.origin) / cameraRay.direction;// distance between ray origin and cube max
     vec3 t1 = min(tMin, tMax);// let t1 be the smaller distance
     vec3 t2 = max(tMin, tMax);// let t2 be the bigger distance
     float tNear = max(max(t1.x, t1.y), t1.z);// calculate where the ray enters the cube
@@ -301,42 +1013,18 @@ vec2 intersectCube(ray cameraRay, int i) {
     return vec2(tNear, tFar);
 }
 
-// The function computes the nearest intersection with a sphere
-// considering all spheres in the scene
-// The hitInfo struct is used to return the information as out parameter (function out, not shader out)
-bool intersectSceneSpheres(ray cameraRay, out hitInfo info) {
-    info.t = MAX_SCENE_BOUNDS;// the value of closestHitPosition will be changed when a more close cube is hit (determines the closest cube -> every single ray has to use it's closest visible cube for it's pixel)
-    bool intersectionFound = false;
-
-    for (int i = 0; i < SPHERE_COUNT; i++) {
-        float hitDistance = intersectSphere(cameraRay, i);
-
-        if (hitDistance > 0.0 && hitDistance < info.t) {
-            info.arrayIndex = i;
-            info.t = hitDistance;
-            intersectionFound = true;
-        }
-    }
-
-    if (intersectionFound) {
-        info.p = getPointFromRay(cameraRay, float(info.t));
-        info.normal = ((info.p - sphereCenterArray[info.arrayIndex]) / sphereRadiusArray[info.arrayIndex]);
-    }
-
-    return intersectionFound;
-}
-
 // Algorythm to test intersection with spheres
 // The algorithm makes use of the "mitternachtsformel"
 // The function returns the distance from rayOrigin to the hitPoint at which the ray enters the sphere
 // If the ray does not hit the sphere: the discriminant will be negative and -1 will be returned
 // Attention: the function can return negative values other than -1.0
 float intersectSphere(ray cameraRay, int i) {
-    vec3 toOriginVec = cameraRay.origin - sphereCenterArray[i];
+    sphere testedSphere = getSphere(i);
+    vec3 toOriginVec = cameraRay.origin - testedSphere.center;
 
     float a = dot(cameraRay.direction, cameraRay.direction);
     float b = 2.0 * dot(toOriginVec, cameraRay.direction);
-    float c = dot(toOriginVec, toOriginVec) - sphereRadiusArray[i]*sphereRadiusArray[i];
+    float c = dot(toOriginVec, toOriginVec) - testedSphere.radius*testedSphere.radius;
     float discriminant = (b*b) - (4.0*a*c);
 
     if (discriminant < 0.0){
@@ -347,52 +1035,170 @@ float intersectSphere(ray cameraRay, int i) {
     }
 }
 
+// Moeller-Trumbore algorithm to test intersection with triangles (both sides are hit)
+// The function returns the distance from rayOrigin to the hit point if the triangle is hit in front of the origin
+// and closer than closestT, otherwise -1
+float intersectTriangle(ray cameraRay, int i, float closestT) {
+    ivec3 vertexIndices = getTriangle(i).vertexIndices;
+    vec3 a = getVertex(vertexIndices.x).position;
+    vec3 edge1 = getVertex(vertexIndices.y).position - a;
+    vec3 edge2 = getVertex(vertexIndices.z).position - a;
+
+    vec3 p = cross(cameraRay.direction, edge2);
+    float determinant = dot(edge1, p);
+
+    // the ray is parallel to the triangle
+    if (abs(determinant) < TRIANGLE_EPSILON) {
+        return -1.0;
+    }
+    float inverseDeterminant = 1.0 / determinant;
+
+    vec3 toOrigin = cameraRay.origin - a;
+    float u = dot(toOrigin, p) * inverseDeterminant;
+    if (u < 0.0 || u > 1.0) {
+        return -1.0;
+    }
+
+    vec3 q = cross(toOrigin, edge1);
+    float v = dot(cameraRay.direction, q) * inverseDeterminant;
+    if (v < 0.0 || u + v > 1.0) {
+        return -1.0;
+    }
+
+    float t = dot(edge2, q) * inverseDeterminant;
+    if (t > TRIANGLE_EPSILON && t < closestT) {
+        return t;
+    }
+    return -1.0;
+}
+
+// Normal-Calculation for the hit point of a triangle
+// The vertex normals are interpolated with the barycentric coordinates of the hit point,
+// meshes without normals get the face normal, the normal always faces against the ray
+vec3 getTriangleNormal(hitInfo info, vec3 direction) {
+    ivec3 vertexIndices = getTriangle(info.arrayIndex).vertexIndices;
+    vertex a = getVertex(vertexIndices.x);
+    vertex b = getVertex(vertexIndices.y);
+    vertex c = getVertex(vertexIndices.z);
+
+    vec3 edge1 = b.position - a.position;
+    vec3 edge2 = c.position - a.position;
+    vec3 toPoint = info.p - a.position;
+
+    float d00 = dot(edge1, edge1);
+    float d01 = dot(edge1, edge2);
+    float d11 = dot(edge2, edge2);
+    float d20 = dot(toPoint, edge1);
+    float d21 = dot(toPoint, edge2);
+    float denominator = d00 * d11 - d01 * d01;
+    float v = (d11 * d20 - d01 * d21) / denominator;
+    float w = (d00 * d21 - d01 * d20) / denominator;
+
+    vec3 normal = a.normal * (1.0 - v - w) + b.normal * v + c.normal * w;
+    if (length(normal) < TRIANGLE_EPSILON) {
+        normal = cross(edge1, edge2);
+    }
+    normal = normalize(normal);
+
+    return dot(normal, direction) > 0.0 ? -normal : normal;
+}
+
+// Looks up the hit point (with its normal) in the average of the previous camera, the rgb of its history is returned in history
+// Returns the number of frames the history is worth (0 = the previous pixel saw another surface or the point was outside of it)
+// See Reprojection.java for the CPU twin
+float reproject(vec3 point, vec3 normal, ivec2 size, out vec3 history) {
+    history = vec3(0.0);
+    vec4 clip = u_PreviousViewProjection * vec4(point, 1.0);
+    if (clip.w <= 0.0) {
+        return 0.0;
+    }
+
+    // The previous pixel whose samples cover the point (their jitter is spread over the whole pixel)
+    vec2 position = (clip.xy / clip.w * 0.5 + 0.5) * vec2(size);
+    if (any(lessThan(position, vec2(0.0))) || any(greaterThanEqual(position, vec2(size)))) {
+        return 0.0;
+    }
+    ivec2 previousPixel = ivec2(position);
+    vec4 previousNormalDepth = texelFetch(u_PreviousNormalDepth, previousPixel, 0);
+
+    // The distance to the surface that the previous pixel saw, along the normal, may be off by one pixel
+    vec3 delta = point - u_PreviousCameraPosition;
+    float cameraDistance = length(delta);
+    float depthError = abs(previousNormalDepth.w - cameraDistance) * abs(dot(delta, normal)) / (cameraDistance * cameraDistance);
+    float focalLength = length(vec3(u_PreviousViewProjection[0][1], u_PreviousViewProjection[1][1], u_PreviousViewProjection[2][1]));
+    float tolerance = DEPTH_TOLERANCE + 2.0 / (float(size.y) * focalLength);
+    if (depthError > tolerance || dot(normal, previousNormalDepth.xyz) < MIN_NORMAL_DOT) {
+        return 0.0;
+    }
+
+    vec4 average = loadAverage(previousPixel);
+    history = average.rgb;
+    return min(average.a, MAX_HISTORY) * (1.0 - depthError / tolerance);
+}
+
 //returns Point from Ray at certain distance t
 vec3 getPointFromRay(ray r, float t) {
     return r.origin + t * r.direction;
 }
 
-//to use instead of drand48 - returns pseudo random
-//returns a float from -1.0 to 1.0
-//relies on the sample index to be truly random from sample to sample
-float drand(vec2 co) {
-    float a = 2.0 * fract(sin(dot(co.xy, vec2(12.9898, 78.233))) * 43758.5453) - 1.0;
-    float s = a *(6.18278114200511 + a*a *(-38.026124606 + a * a * 53.392573080032137));
-    return fract(s * 43758.5453);
+// PCG hash of a 32 bit value (one step of the PCG generator, see Jarzynski and Olano, "Hash Functions for GPU Rendering")
+uint pcgHash(uint value) {
+    uint state = value * 747796405u + 2891336453u;
+    uint word = ((state >> ((state >> 28u) + 4u)) ^ state) * 277803737u;
+    return (word >> 22u) ^ word;
 }
 
-//to use instead of .squared_length
-float squaredLength(vec3 p) {
-    return p.x * p.x + p.y * p.y + p.z * p.z;
+// Advances the per pixel generator and returns the next random uint
+uint nextRandom(inout uint state) {
+    state = state * 747796405u + 2891336453u;
+    uint word = ((state >> ((state >> 28u) + 4u)) ^ state) * 277803737u;
+    return (word >> 22u) ^ word;
 }
 
-//return random vector with a length < 1; the vector is used as point
-//input p has no direct influence on the output - it is only used in drand()
-vec3 getRandomPoint(vec3 p, int sampleIndex) {
-    do {
-        p = 2.0 * vec3(drand(p.xz), drand(p.xy), drand(p.zy)) - vec3(1, 1, 1);//min -3 max 1
-    } while (squaredLength(p) >= 1.0);
-
-    float perSampleRandomizer = (drand(p.xz) + drand(p.xy) + drand(p.zy)) / 3.0;
-    float x;
-    float y;
-    float z;
+// Component dimension (0, 1 or 2) of sobol point index, xored with scramble (a random digital shift)
+// Dimension 0 is the van der Corput sequence, 1 and 2 use the direction numbers of Joe and Kuo
+// The loop only runs once per set bit position of index, so it is short for the first few thousand samples
+uint sobol(uint index, int dimension, uint scramble) {
+    uint result = scramble;
+    uint direction = 0x80000000u;
+    uint nextDirection = 0xC0000000u;
+
+    for (uint bits = index; bits != 0u; bits >>= 1u) {
+        if ((bits & 1u) != 0u) {
+            result ^= direction;
+        }
+        if (dimension == 0) {
+            direction >>= 1u;
+        } else if (dimension == 1) {
+            direction ^= direction >> 1u;
+        } else {
+            uint following = nextDirection ^ direction ^ (direction >> 2u);
+            direction = nextDirection;
+            nextDirection = following;
+        }
+    }
+    return result;
+}
 
-    if (sampleIndex > 0) {
-        for (int i = 0; i<sampleIndex; i++) {
-            perSampleRandomizer = drand(vec2(perSampleRandomizer*float(i/sampleIndex), perSampleRandomizer*float(sampleIndex/i)));
+// Uniform point in the unit ball from three uniform numbers in [0, 1), without a rejection loop:
+// a direction on the sphere scaled by the cube root of the third number
+vec3 sampleUnitBall(vec3 u) {
+    float z = 1.0 - 2.0 * u.x;
+    float ring = sqrt(max(0.0, 1.0 - z * z));
+    float angle = 6.28318530718 * u.y;
+    float radius = pow(u.z, 1.0 / 3.0);
+    return radius * vec3(ring * cos(angle), ring * sin(angle), z);
+}
 
-            if (i <= sampleIndex / 3 * 1) {
-                x = perSampleRandomizer;
-            } else if (i <= sampleIndex / 3 * 2) {
-                y = perSampleRandomizer;
-            } else if (i <= sampleIndex / 3 * 3) {
-                z = perSampleRandomizer;
-            }
-        }
+// Returns a random vector with a length <= 1, the vector is used as point
+// Sample sampleIndex of frame u_FrameIndex is point u_FrameIndex * MULTI_SAMPLING_COUNT + sampleIndex of the scrambled sobol sequence
+// so that the samples of all frames of a progressive render are stratified
+vec3 getRandomPoint(int sampleIndex, uvec3 scramble) {
+    uint sequenceIndex = uint(u_FrameIndex * MULTI_SAMPLING_COUNT + sampleIndex);
+    uvec3 bits = uvec3(sobol(sequenceIndex, 0, scramble.x), sobol(sequenceIndex, 1, scramble.y), sobol(sequenceIndex, 2, scramble.z));
 
-        p *= vec3(x-0.5, y-0.5, z-0.5);// all values should be random and between -0.5 and +0.5
-    }
+    // The upper 24 bits fit into a float exactly
+    vec3 p = sampleUnitBall(vec3(bits >> 8u) * (1.0 / 16777216.0));
 
     p *= SPRAY_CONTROL;
     return p;
@@ -4,11 +4,62 @@
 
 precision highp float;
 
+// Fused per pixel post effects (set by the PostProcessingGraph)
+#define TONEMAP 0
+
+// Format of the input, see TraceFormat.java (injected)
+#define FORMAT_RGBA32F 0
+#define FORMAT_RGBA16F 1
+#define FORMAT_R11G11B10F 2
+#define INPUT_FORMAT FORMAT_RGBA32F
+
 in vec2 v_TextureCoordinates;
 out vec4 fragmentColor;
 
+#if INPUT_FORMAT == FORMAT_R11G11B10F
+uniform highp usampler2D u_TextureUnit;
+
+// Same layout as packR11G11B10 in compute_shader.glsl
+vec3 fetch(ivec2 texel) {
+    uint bits = texelFetch(u_TextureUnit, texel, 0).r;
+    uint r = (bits & 0x7FFu) << 4;
+    uint g = ((bits >> 11) & 0x7FFu) << 4;
+    uint b = ((bits >> 22) & 0x3FFu) << 5;
+    return vec3(unpackHalf2x16(r | (g << 16)), unpackHalf2x16(b).x);
+}
+#else
 uniform sampler2D u_TextureUnit;
 
+vec3 fetch(ivec2 texel) {
+    return texelFetch(u_TextureUnit, texel, 0).rgb;
+}
+#endif
+uniform float u_Exposure;
+
+// Per pixel effects that run in this pass instead of a pass of their own
+vec3 applyEffects(vec3 color) {
+#if TONEMAP
+    // ACES filmic curve fitted by Narkowicz
+    color *= u_Exposure;
+    color = clamp((color * (2.51 * color + 0.03)) / (color * (2.43 * color + 0.59) + 0.14), 0.0, 1.0);
+#endif
+    return color;
+}
+
+// The traced image can be smaller than the screen
+// rgba32f and r32ui textures can't be filtered by the hardware, so the four nearest texels are interpolated here for every format
 void main(void){
-    fragmentColor = texture(u_TextureUnit, v_TextureCoordinates);
+    ivec2 size = textureSize(u_TextureUnit, 0);
+    vec2 position = v_TextureCoordinates * vec2(size) - 0.5;
+    ivec2 texel = ivec2(floor(position));
+    vec2 weight = position - floor(position);
+
+    ivec2 maxTexel = size - 1;
+    vec3 c00 = fetch(clamp(texel, ivec2(0), maxTexel));
+    vec3 c10 = fetch(clamp(texel + ivec2(1, 0), ivec2(0), maxTexel));
+    vec3 c01 = fetch(clamp(texel + ivec2(0, 1), ivec2(0), maxTexel));
+    vec3 c11 = fetch(clamp(texel + ivec2(1, 1), ivec2(0), maxTexel));
+
+    // The alpha of the traced image counts its frames, the screen gets an opaque colour
+    fragmentColor = vec4(applyEffects(mix(mix(c00, c10, weight.x), mix(c01, c11, weight.x), weight.y)), 1.0);
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package Data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class RenderTargetPoolTest {
+
+    // GL_RGBA32F and GL_RGBA16F, the values only matter as keys
+    private static final int FORMAT_A = 0x8814;
+    private static final int FORMAT_B = 0x881A;
+
+    private static class CountingGLFacade implements GLFacade {
+        int created;
+        final ArrayList<Integer> deleted = new ArrayList<>();
+
+        @Override
+        public int createTexture(int width, int height, int format) {
+            return ++created;
+        }
+
+        @Override
+        public void deleteTexture(int texture) {
+            deleted.add(texture);
+        }
+    }
+
+    @Test
+    public void releasedTargetsAreReusedForTheSameKey() {
+        CountingGLFacade gl = new CountingGLFacade();
+        RenderTargetPool pool = new RenderTargetPool(gl);
+        pool.resize(64, 32);
+
+        // First scene
+        int a = pool.acquire(64, 32, FORMAT_A);
+        int b = pool.acquire(64, 32, FORMAT_A);
+        assertNotEquals(a, b);
+        pool.release(a);
+        pool.release(b);
+
+        // Second scene gets the same textures back
+        int c = pool.acquire(64, 32, FORMAT_A);
+        int d = pool.acquire(64, 32, FORMAT_A);
+        assertEquals(2, gl.created);
+        assertEquals(2, pool.getInUseCount());
+        assertTrue((c == a && d == b) || (c == b && d == a));
+
+        // Other size or format needs a new target
+        pool.acquire(32, 32, FORMAT_A);
+        pool.acquire(64, 32, FORMAT_B);
+        assertEquals(4, gl.created);
+        assertEquals(4, pool.getAllocatedCount());
+        assertTrue(gl.deleted.isEmpty());
+    }
+
+    @Test
+    public void resizeFreesTargetsOfTheOldSize() {
+        CountingGLFacade gl = new CountingGLFacade();
+        RenderTargetPool pool = new RenderTargetPool(gl);
+        pool.resize(64, 32);
+
+        int free = pool.acquire(64, 32, FORMAT_A);
+        int used = pool.acquire(64, 32, FORMAT_A);
+        pool.release(free);
+
+        // Same size again changes nothing
+        pool.resize(64, 32);
+        assertEquals(2, pool.getAllocatedCount());
+
+        // Free target is deleted right away, the one in use once it comes back
+        pool.resize(32, 64);
+        assertEquals(1, gl.deleted.size());
+        assertEquals(free, (int) gl.deleted.get(0));
+        assertEquals(1, pool.getAllocatedCount());
+
+        pool.release(used);
+        assertEquals(2, gl.deleted.size());
+        assertEquals(0, pool.getAllocatedCount());
+
+        pool.acquire(32, 64, FORMAT_A);
+        assertEquals(3, gl.created);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void releasingTwiceThrows() {
+        RenderTargetPool pool = new RenderTargetPool(new CountingGLFacade());
+        int texture = pool.acquire(16, 16, FORMAT_A);
+        pool.release(texture);
+        pool.release(texture);
+    }
+}
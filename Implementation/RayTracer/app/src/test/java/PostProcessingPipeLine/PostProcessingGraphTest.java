@@ -0,0 +1,231 @@
+package PostProcessingPipeLine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import Data.GLFacade;
+import Data.RenderTargetPool;
+import Programs.ToScreenShaderProgram;
+import Tracing.TraceFormat;
+
+import static org.junit.Assert.*;
+
+public class PostProcessingGraphTest {
+
+    private static final int SCENE_TEXTURE = 1000;
+
+    private static class CountingGLFacade implements GLFacade {
+        int created;
+
+        @Override
+        public int createTexture(int width, int height, int format) {
+            return ++created;
+        }
+
+        @Override
+        public void deleteTexture(int texture) {
+        }
+    }
+
+    // Pass of its own that takes a scratch target like the denoiser
+    private static class DenoiseLikeEffect implements PassEffect {
+        final ArrayList<int[]> passes = new ArrayList<>();
+        boolean active = true;
+
+        @Override
+        public boolean isActive(PostFrame frame) {
+            return active;
+        }
+
+        @Override
+        public void render(PostFrame frame, int input, int output) {
+            int scratch = frame.acquireTarget(frame.getTargetFormat());
+            assertNotEquals(input, scratch);
+            assertNotEquals(output, scratch);
+            frame.releaseTarget(scratch);
+            passes.add(new int[]{input, output});
+        }
+    }
+
+    private static class PerPixelEffect implements PixelEffect {
+        final String define;
+
+        PerPixelEffect(String define) {
+            this.define = define;
+        }
+
+        @Override
+        public boolean isActive(PostFrame frame) {
+            return true;
+        }
+
+        @Override
+        public String getDefine() {
+            return define;
+        }
+
+        @Override
+        public void setUniforms(ToScreenShaderProgram program) {
+        }
+    }
+
+    private static class RecordingPass implements PostProcessingGraph.FullScreenPass {
+        final ArrayList<int[]> draws = new ArrayList<>();
+        final ArrayList<List<PixelEffect>> fused = new ArrayList<>();
+        boolean floatTargets = true;
+
+        @Override
+        public void draw(PostFrame frame, int input, int output, List<PixelEffect> effects) {
+            draws.add(new int[]{input, output});
+            fused.add(new ArrayList<>(effects));
+        }
+
+        @Override
+        public boolean canDrawToTargets() {
+            return floatTargets;
+        }
+    }
+
+    private static PostFrame frame(RenderTargetPool pool) {
+        return frame(pool, TraceFormat.RGBA32F);
+    }
+
+    private static PostFrame frame(RenderTargetPool pool, TraceFormat traceFormat) {
+        PostFrame frame = new PostFrame(pool);
+        frame.set(SCENE_TEXTURE, traceFormat, 64, 32, 1, null);
+        return frame;
+    }
+
+    @Test
+    public void perPixelEffectsAreFusedIntoTheScreenPass() {
+        CountingGLFacade gl = new CountingGLFacade();
+        RenderTargetPool pool = new RenderTargetPool(gl);
+        RecordingPass screen = new RecordingPass();
+        DenoiseLikeEffect denoise = new DenoiseLikeEffect();
+        PerPixelEffect tonemap = new PerPixelEffect("TONEMAP");
+        PerPixelEffect grade = new PerPixelEffect("GRADE");
+        PostProcessingGraph graph = new PostProcessingGraph(screen).add(denoise).add(tonemap).add(grade);
+
+        graph.render(frame(pool));
+
+        assertEquals(2, graph.getPassCount());
+        assertEquals(2, graph.getFusedCount());
+        assertEquals(1, screen.draws.size());
+        assertEquals(SCENE_TEXTURE, denoise.passes.get(0)[0]);
+        // The screen pass reads what the denoiser wrote and applies both effects
+        assertEquals(denoise.passes.get(0)[1], screen.draws.get(0)[0]);
+        assertEquals(0, screen.draws.get(0)[1]);
+        assertEquals(2, screen.fused.get(0).size());
+        assertSame(tonemap, screen.fused.get(0).get(0));
+        assertEquals(0, pool.getInUseCount());
+    }
+
+    @Test
+    public void longChainsPingPongBetweenPooledTargets() {
+        CountingGLFacade gl = new CountingGLFacade();
+        RenderTargetPool pool = new RenderTargetPool(gl);
+        RecordingPass screen = new RecordingPass();
+        PostProcessingGraph graph = new PostProcessingGraph(screen);
+        DenoiseLikeEffect[] effects = new DenoiseLikeEffect[6];
+        for (int i = 0; i < effects.length; i++) {
+            effects[i] = new DenoiseLikeEffect();
+            graph.add(effects[i]);
+        }
+
+        PostFrame frame = frame(pool);
+        graph.render(frame);
+
+        // Input, output and scratch of one pass are all that is ever alive
+        assertEquals(3, pool.getAllocatedCount());
+        assertEquals(0, pool.getInUseCount());
+        for (int i = 1; i < effects.length; i++) {
+            assertEquals(effects[i - 1].passes.get(0)[1], effects[i].passes.get(0)[0]);
+        }
+
+        // The next frames get the same textures back
+        graph.render(frame);
+        graph.render(frame);
+        assertEquals(3, gl.created);
+        assertEquals(0, pool.getInUseCount());
+    }
+
+    @Test
+    public void perPixelEffectsInFrontOfAPassGetAFullScreenPassOfTheirOwn() {
+        RenderTargetPool pool = new RenderTargetPool(new CountingGLFacade());
+        RecordingPass screen = new RecordingPass();
+        PerPixelEffect tonemap = new PerPixelEffect("TONEMAP");
+        DenoiseLikeEffect denoise = new DenoiseLikeEffect();
+        PostProcessingGraph graph = new PostProcessingGraph(screen).add(tonemap).add(denoise);
+
+        graph.render(frame(pool));
+
+        assertEquals(3, graph.getPassCount());
+        assertEquals(2, screen.draws.size());
+        assertEquals(SCENE_TEXTURE, screen.draws.get(0)[0]);
+        assertEquals(screen.draws.get(0)[1], denoise.passes.get(0)[0]);
+        assertEquals(1, screen.fused.get(0).size());
+        assertTrue(screen.fused.get(1).isEmpty());
+        assertEquals(0, pool.getInUseCount());
+    }
+
+    @Test
+    public void withoutFloatTargetsPerPixelEffectsMoveToTheScreenPass() {
+        RenderTargetPool pool = new RenderTargetPool(new CountingGLFacade());
+        RecordingPass screen = new RecordingPass();
+        screen.floatTargets = false;
+        PerPixelEffect tonemap = new PerPixelEffect("TONEMAP");
+        DenoiseLikeEffect denoise = new DenoiseLikeEffect();
+        PostProcessingGraph graph = new PostProcessingGraph(screen).add(tonemap).add(denoise);
+
+        graph.render(frame(pool));
+
+        // The denoiser reads the traced image, the tonemapping runs on the way to the screen
+        assertEquals(2, graph.getPassCount());
+        assertEquals(1, screen.draws.size());
+        assertEquals(SCENE_TEXTURE, denoise.passes.get(0)[0]);
+        assertEquals(0, screen.draws.get(0)[1]);
+        assertSame(tonemap, screen.fused.get(0).get(0));
+        assertEquals(0, pool.getInUseCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void effectsWithoutAKindAreRejected() {
+        new PostProcessingGraph(new RecordingPass()).add(new PostEffect() {
+            @Override
+            public boolean isActive(PostFrame frame) {
+                return true;
+            }
+        });
+    }
+
+    @Test
+    public void inactiveEffectsAreSkipped() {
+        CountingGLFacade gl = new CountingGLFacade();
+        RenderTargetPool pool = new RenderTargetPool(gl);
+        RecordingPass screen = new RecordingPass();
+        DenoiseLikeEffect denoise = new DenoiseLikeEffect();
+        denoise.active = false;
+        PostProcessingGraph graph = new PostProcessingGraph(screen).add(denoise);
+
+        graph.render(frame(pool));
+
+        assertTrue(denoise.passes.isEmpty());
+        assertEquals(SCENE_TEXTURE, screen.draws.get(0)[0]);
+        assertEquals(1, graph.getPassCount());
+        assertEquals(0, gl.created);
+    }
+
+    @Test
+    public void targetsFollowThePrecisionOfTheTrace() {
+        PostFrame full = frame(new RenderTargetPool(new CountingGLFacade()), TraceFormat.RGBA32F);
+        assertEquals(TraceFormat.RGBA32F, full.getTargetFormat());
+
+        // Packed traces can't be written by the passes, their targets are half floats
+        PostFrame packed = frame(new RenderTargetPool(new CountingGLFacade()), TraceFormat.R11G11B10F);
+        assertEquals(TraceFormat.RGBA16F, packed.getTargetFormat());
+        assertEquals(TraceFormat.R11G11B10F, packed.getFormat(SCENE_TEXTURE));
+        assertEquals(TraceFormat.RGBA16F, packed.getFormat(packed.acquireTarget(packed.getTargetFormat())));
+    }
+}
@@ -0,0 +1,98 @@
+package Data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Tracing.BenchmarkScenes;
+import Util.Geometry.Vector;
+
+/**
+ * The per frame packing of the scene into the ssbo buffers, parameterized by the number of primitives.
+ * An unchanged scene should cost next to nothing, one moved object only repacks that object.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScenePackerBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int primitiveCount;
+
+    private List<Cube> cubeList;
+    private List<Sphere> sphereList;
+    private List<Mesh> meshList;
+    private ScenePacker packer;
+    private float offset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        int count = Math.max(primitiveCount / 3, 1);
+        cubeList = BenchmarkScenes.cubes(random, count);
+        sphereList = BenchmarkScenes.spheres(random, count);
+        meshList = BenchmarkScenes.meshes(random, count);
+        packer = new ScenePacker();
+        packer.pack(cubeList, sphereList, meshList);
+    }
+
+    @Benchmark
+    public boolean unchanged() {
+        packer.pack(cubeList, sphereList, meshList);
+        boolean changed = packer.isChanged();
+        packer.clearDirty();
+        return changed;
+    }
+
+    @Benchmark
+    public boolean oneSphereMoved() {
+        Sphere sphere = sphereList.get(0);
+        sphere.setCenter(new Vector(sphere.getCenter().x, nextOffset(), sphere.getCenter().z));
+        packer.pack(cubeList, sphereList, meshList);
+        boolean changed = packer.isChanged();
+        packer.clearDirty();
+        return changed;
+    }
+
+    @Benchmark
+    public boolean everythingMoved() {
+        float y = nextOffset();
+        for (Sphere sphere : sphereList) {
+            sphere.setCenter(new Vector(sphere.getCenter().x, y, sphere.getCenter().z));
+        }
+        for (Cube cube : cubeList) {
+            cube.setColor(new Vector(y, 1, 1));
+        }
+        packer.pack(cubeList, sphereList, meshList);
+        boolean changed = packer.isChanged();
+        packer.clearDirty();
+        return changed;
+    }
+
+    // A fresh packer has to pack everything, including the triangles
+    @Benchmark
+    public ScenePacker firstFrame() {
+        ScenePacker firstPacker = new ScenePacker();
+        firstPacker.pack(cubeList, sphereList, meshList);
+        return firstPacker;
+    }
+
+    private float nextOffset() {
+        offset = offset > 1f ? 0f : offset + 0.01f;
+        return offset;
+    }
+}
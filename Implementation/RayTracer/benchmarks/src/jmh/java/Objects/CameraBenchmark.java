@@ -0,0 +1,79 @@
+package Objects;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import Util.Geometry.Point;
+
+import static Util.MatrixHelper.perspectiveM;
+import static Util.MatrixMath.invertM;
+import static Util.MatrixMath.multiplyMM;
+import static Util.MatrixMath.multiplyMV;
+
+/**
+ * Matrix work of one frame: camera updates from the touch handlers and the corner rays of ComputeShaderProgram.startFrame.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CameraBenchmark {
+
+    // Same values as ComputeShaderProgram
+    private static final float[] CORNERS = {-1, -1, 0, 1, +1, -1, 0, 1, -1, +1, 0, 1, +1, +1, 0, 1};
+    private static final float[] ORIGIN = {0f, 0f, 0f, 1f};
+
+    private final Camera camera = new Camera(new Point(0f, 2f, 6f), new Point(0f, 0f, 0f));
+    private final float[] projectionMatrix = new float[16];
+    private final float[] viewProjectionMatrix = new float[16];
+    private final float[] invertedViewProjectionMatrix = new float[16];
+    private final float[] invertedViewMatrix = new float[16];
+    private final float[] cameraPosition = new float[4];
+    private final float[] rays = new float[16];
+    private float angle;
+
+    // setLookAtM for the view matrix and its copy
+    @Benchmark
+    public float[] setPosition() {
+        angle += 0.01f;
+        camera.setPosition((float) Math.sin(angle) * 6f, 2f, (float) Math.cos(angle) * 6f);
+        return camera.getViewMatrix();
+    }
+
+    @Benchmark
+    public float[] rotate() {
+        camera.rotate(0.5f, 0f, 1f, 0f);
+        return camera.getViewMatrix();
+    }
+
+    @Benchmark
+    public float[] scale() {
+        camera.scale(1.01f);
+        return camera.getViewMatrix();
+    }
+
+    // The matrices of FileScene.onDrawFrame followed by the corner rays of startFrame
+    @Benchmark
+    public float[] frameMatrices() {
+        perspectiveM(projectionMatrix, 60f, 4f / 3f, 1f, 20f);
+        multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, camera.getViewMatrix(), 0);
+        invertM(invertedViewProjectionMatrix, 0, viewProjectionMatrix, 0);
+        invertM(invertedViewMatrix, 0, camera.getViewMatrix(), 0);
+
+        multiplyMV(cameraPosition, 0, invertedViewMatrix, 0, ORIGIN, 0);
+        for (int i = 0; i < 4; i++) {
+            multiplyMV(rays, i * 4, invertedViewProjectionMatrix, 0, CORNERS, i * 4);
+            rays[i * 4] = (rays[i * 4] / rays[i * 4 + 3]) - cameraPosition[0];
+            rays[i * 4 + 1] = (rays[i * 4 + 1] / rays[i * 4 + 3]) - cameraPosition[1];
+            rays[i * 4 + 2] = (rays[i * 4 + 2] / rays[i * 4 + 3]) - cameraPosition[2];
+            rays[i * 4 + 3] = 1f;
+        }
+        return rays;
+    }
+}
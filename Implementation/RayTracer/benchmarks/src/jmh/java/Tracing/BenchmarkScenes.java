@@ -0,0 +1,75 @@
+package Tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import Data.TriangleMesh;
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Util.Geometry.Vector;
+
+/**
+ * Random scenes and rays for the benchmarks, the same seed always gives the same scene.
+ * The primitives are spread over a cube of 16 units around the origin, the rays start inside of it.
+ */
+
+public class BenchmarkScenes {
+
+    public static final int RAY_COUNT = 1024;
+    private static final float SCENE_SIZE = 16.0f;
+
+    public static List<Cube> cubes(Random random, int count) {
+        List<Cube> cubeList = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Vector min = randomPoint(random);
+            float size = random.nextFloat() + 0.2f;
+            cubeList.add(new Cube(min, new Vector(min.x + size, min.y + size, min.z + size), new Vector(1, 1, 1), Cube.Material.DIFFUSE, 0.5f));
+        }
+        return cubeList;
+    }
+
+    public static List<Sphere> spheres(Random random, int count) {
+        List<Sphere> sphereList = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sphereList.add(new Sphere(randomPoint(random), random.nextFloat() * 0.5f + 0.1f, new Vector(1, 1, 1), Sphere.Material.METAL, 0.5f));
+        }
+        return sphereList;
+    }
+
+    // One mesh of count loose triangles
+    public static List<Mesh> meshes(Random random, int count) {
+        float[] positions = new float[count * 9];
+        int[] indices = new int[count * 3];
+        for (int i = 0; i < count; i++) {
+            Vector corner = randomPoint(random);
+            for (int k = 0; k < 9; k += 3) {
+                positions[i * 9 + k] = corner.x + random.nextFloat();
+                positions[i * 9 + k + 1] = corner.y + random.nextFloat();
+                positions[i * 9 + k + 2] = corner.z + random.nextFloat();
+            }
+            indices[i * 3] = i * 3;
+            indices[i * 3 + 1] = i * 3 + 1;
+            indices[i * 3 + 2] = i * 3 + 2;
+        }
+
+        List<Mesh> meshList = new ArrayList<>();
+        meshList.add(new Mesh(new TriangleMesh(count * 3, positions, new float[0], new float[0], count, indices), new Vector(1, 1, 1), Mesh.Material.DIFFUSE, 0.5f));
+        return meshList;
+    }
+
+    // Origins (3 floats each) followed by directions (3 floats each)
+    public static float[] rays(Random random) {
+        float[] rays = new float[RAY_COUNT * 6];
+        for (int i = 0; i < RAY_COUNT * 3; i++) {
+            rays[i] = (random.nextFloat() - 0.5f) * SCENE_SIZE;
+            rays[RAY_COUNT * 3 + i] = random.nextFloat() * 2.0f - 1.0f;
+        }
+        return rays;
+    }
+
+    private static Vector randomPoint(Random random) {
+        return new Vector((random.nextFloat() - 0.5f) * SCENE_SIZE, (random.nextFloat() - 0.5f) * SCENE_SIZE, (random.nextFloat() - 0.5f) * SCENE_SIZE);
+    }
+}
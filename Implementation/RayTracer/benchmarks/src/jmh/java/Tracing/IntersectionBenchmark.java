@@ -0,0 +1,162 @@
+package Tracing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static Tracing.BenchmarkScenes.RAY_COUNT;
+
+/**
+ * Intersection kernels of the PathTracer (the java twin of the compute shader).
+ * Every invocation shoots RAY_COUNT random rays, so the scores are per ray.
+ * The brute force loops test every primitive of one kind, like the shader did before the bvh.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IntersectionBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int primitiveCount;
+
+    private TraceScene scene;
+    private Bvh bvh;
+    private PathTracer bvhTracer;
+    private PathTracer bruteForceTracer;
+    private float[] rays;
+
+    private final PathTracer.HitInfo cubeInfo = new PathTracer.HitInfo();
+    private final PathTracer.HitInfo sphereInfo = new PathTracer.HitInfo();
+    private final PathTracer.HitInfo triangleInfo = new PathTracer.HitInfo();
+    private final float[] color = new float[4];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        // Every kind gets a third of the primitives
+        int count = Math.max(primitiveCount / 3, 1);
+        scene = new TraceScene(BenchmarkScenes.cubes(random, count), BenchmarkScenes.spheres(random, count), BenchmarkScenes.meshes(random, count));
+        bvh = Bvh.build(scene);
+        bvhTracer = new PathTracer(scene, bvh);
+        bruteForceTracer = new PathTracer(scene);
+        rays = BenchmarkScenes.rays(random);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public float cubes() {
+        float sum = 0.0f;
+        for (int r = 0; r < RAY_COUNT; r++) {
+            float closestT = PathTracer.MAX_SCENE_BOUNDS;
+            for (int i = 0; i < scene.cubeCount; i++) {
+                float t = bruteForceTracer.intersectCube(originX(r), originY(r), originZ(r), directionX(r), directionY(r), directionZ(r), i, closestT);
+                if (t > 0.0f && t < closestT) {
+                    closestT = t;
+                }
+            }
+            sum += closestT;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public float spheres() {
+        float sum = 0.0f;
+        for (int r = 0; r < RAY_COUNT; r++) {
+            float closestT = PathTracer.MAX_SCENE_BOUNDS;
+            for (int i = 0; i < scene.sphereCount; i++) {
+                float t = bruteForceTracer.intersectSphere(originX(r), originY(r), originZ(r), directionX(r), directionY(r), directionZ(r), i);
+                if (t > 0.0f && t < closestT) {
+                    closestT = t;
+                }
+            }
+            sum += closestT;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public float triangles() {
+        float sum = 0.0f;
+        for (int r = 0; r < RAY_COUNT; r++) {
+            float closestT = PathTracer.MAX_SCENE_BOUNDS;
+            for (int i = 0; i < scene.triangleCount; i++) {
+                float t = bruteForceTracer.intersectTriangle(originX(r), originY(r), originZ(r), directionX(r), directionY(r), directionZ(r), i, closestT);
+                if (t > 0.0f && t < closestT) {
+                    closestT = t;
+                }
+            }
+            sum += closestT;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public void sceneBruteForce(Blackhole blackhole) {
+        for (int r = 0; r < RAY_COUNT; r++) {
+            blackhole.consume(bruteForceTracer.intersectScene(originX(r), originY(r), originZ(r), directionX(r), directionY(r), directionZ(r), cubeInfo, sphereInfo, triangleInfo));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public void sceneBvh(Blackhole blackhole) {
+        for (int r = 0; r < RAY_COUNT; r++) {
+            blackhole.consume(bvhTracer.intersectScene(originX(r), originY(r), originZ(r), directionX(r), directionY(r), directionZ(r), cubeInfo, sphereInfo, triangleInfo));
+        }
+    }
+
+    // Full paths with bounces and MULTI_SAMPLING_COUNT samples
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public void tracePixel(Blackhole blackhole) {
+        for (int r = 0; r < RAY_COUNT; r++) {
+            bvhTracer.tracePixel(originX(r), originY(r), originZ(r), directionX(r), directionY(r), directionZ(r), color, 0);
+            blackhole.consume(color[0]);
+        }
+    }
+
+    @Benchmark
+    public Bvh buildBvh() {
+        return Bvh.build(scene);
+    }
+
+    private float originX(int r) {
+        return rays[r * 3];
+    }
+
+    private float originY(int r) {
+        return rays[r * 3 + 1];
+    }
+
+    private float originZ(int r) {
+        return rays[r * 3 + 2];
+    }
+
+    private float directionX(int r) {
+        return rays[(RAY_COUNT + r) * 3];
+    }
+
+    private float directionY(int r) {
+        return rays[(RAY_COUNT + r) * 3 + 1];
+    }
+
+    private float directionZ(int r) {
+        return rays[(RAY_COUNT + r) * 3 + 2];
+    }
+}
@@ -0,0 +1,85 @@
+package Tracing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Primary ray packets: ScalarPacketIntersector (one ray after the other) against VectorPacketIntersector.
+ * The rays are the camera rays of a 64x64 pixel block of the random scene, so neighbouring rays are coherent
+ * like in CpuRaytracer. Scores are per ray.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PacketBenchmark {
+
+    private static final int IMAGE_SIZE = 64;
+    private static final int RAY_COUNT = IMAGE_SIZE * IMAGE_SIZE;
+
+    @Param({"16", "256", "4096"})
+    public int primitiveCount;
+
+    private PacketIntersector scalar;
+    private PacketIntersector vector;
+    private RayPacket[] scalarPackets;
+    private RayPacket[] vectorPackets;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        int count = Math.max(primitiveCount / 3, 1);
+        TraceScene scene = new TraceScene(BenchmarkScenes.cubes(random, count), BenchmarkScenes.spheres(random, count), BenchmarkScenes.meshes(random, count));
+        Bvh bvh = Bvh.build(scene);
+        scalar = new ScalarPacketIntersector(scene, bvh);
+        vector = new VectorPacketIntersector(scene, bvh);
+        // Both get packets of the vector width so that they trace the same rays
+        scalarPackets = packets(vector.getPacketSize());
+        vectorPackets = packets(vector.getPacketSize());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public RayPacket[] scalarPackets() {
+        for (RayPacket packet : scalarPackets) {
+            scalar.intersect(packet);
+        }
+        return scalarPackets;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAY_COUNT)
+    public RayPacket[] vectorPackets() {
+        for (RayPacket packet : vectorPackets) {
+            vector.intersect(packet);
+        }
+        return vectorPackets;
+    }
+
+    // Rows of the block cut into packets, the camera sits behind the scene looking down -z with a 60 degree field of view
+    private static RayPacket[] packets(int packetSize) {
+        RayPacket[] packets = new RayPacket[RAY_COUNT / packetSize];
+        float halfWidth = (float) Math.tan(Math.toRadians(30.0));
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = new RayPacket(packetSize);
+            for (int lane = 0; lane < packetSize; lane++) {
+                int pixel = i * packetSize + lane;
+                float x = ((pixel % IMAGE_SIZE) + 0.5f) / IMAGE_SIZE * 2f - 1f;
+                float y = ((pixel / IMAGE_SIZE) + 0.5f) / IMAGE_SIZE * 2f - 1f;
+                packets[i].add(0f, 0f, 20f, x * halfWidth, y * halfWidth, -1f);
+            }
+        }
+        return packets;
+    }
+}
@@ -0,0 +1,93 @@
+package Tracing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import Util.MatrixHelper;
+import Util.MatrixMath;
+
+/**
+ * One frame of the random scene: the CpuRaytracer (every path from the camera to its end, like the megakernel)
+ * against the WavefrontTracer (stages over compacted queues). Both render the same image, scores are per pixel.
+ * The lane occupancy of both architectures is printed after the trial.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WavefrontBenchmark {
+
+    private static final int IMAGE_SIZE = 64;
+    private static final int PIXEL_COUNT = IMAGE_SIZE * IMAGE_SIZE;
+
+    @Param({"256", "4096"})
+    public int primitiveCount;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private TraceScene scene;
+    private Bvh bvh;
+    private CpuRaytracer megakernel;
+    private WavefrontTracer wavefront;
+    private final float[] frameBuffer = new float[PIXEL_COUNT * 4];
+    private final float[] invertedViewMatrix = new float[16];
+    private final float[] invertedViewProjectionMatrix = new float[16];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        int count = Math.max(primitiveCount / 3, 1);
+        scene = new TraceScene(BenchmarkScenes.cubes(random, count), BenchmarkScenes.spheres(random, count), BenchmarkScenes.meshes(random, count));
+        bvh = Bvh.build(scene);
+        pool = new ForkJoinPool(threads);
+        megakernel = new CpuRaytracer(pool, CpuRaytracer.DEFAULT_TILE_SIZE);
+        wavefront = new WavefrontTracer(pool, TileScheduler.DEFAULT_TILE_SIZE);
+
+        // The camera sits behind the scene looking down -z
+        MatrixMath.setIdentityM(invertedViewMatrix, 0);
+        invertedViewMatrix[14] = 20f;
+        float[] projectionMatrix = new float[16];
+        float[] invertedProjectionMatrix = new float[16];
+        MatrixHelper.perspectiveM(projectionMatrix, 60, 1f, 1f, 100f);
+        MatrixMath.invertM(invertedProjectionMatrix, 0, projectionMatrix, 0);
+        MatrixMath.multiplyMM(invertedViewProjectionMatrix, 0, invertedViewMatrix, 0, invertedProjectionMatrix, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        WavefrontTracer.Statistics statistics = wavefront.getStatistics();
+        if (statistics.getItems(WavefrontTracer.Stage.GENERATE) > 0) {
+            System.out.printf("%nlane occupancy: megakernel %.2f, wavefront %.2f%n", statistics.getMegakernelOccupancy(), statistics.getWavefrontOccupancy());
+        }
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXEL_COUNT)
+    public float[] megakernel() {
+        megakernel.render(frameBuffer, IMAGE_SIZE, IMAGE_SIZE, invertedViewProjectionMatrix, invertedViewMatrix, scene, bvh, 0);
+        return frameBuffer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXEL_COUNT)
+    public float[] wavefront() {
+        wavefront.render(frameBuffer, null, IMAGE_SIZE, IMAGE_SIZE, invertedViewProjectionMatrix, invertedViewMatrix, scene, bvh, 0);
+        return frameBuffer;
+    }
+}
@@ -0,0 +1,109 @@
+package Util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import Util.Geometry.Vector;
+
+/**
+ * Geometry.Vector (one immutable object per result) against the VectorMath functions on float arrays.
+ * Both sides do the same work on vectorCount vectors per invocation.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VectorBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int vectorCount;
+
+    private Vector[] vectors;
+    private float[] packed;
+    private float[] xs, ys, zs;
+    private float[] result;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        vectors = new Vector[vectorCount];
+        packed = new float[vectorCount * 3];
+        xs = new float[vectorCount];
+        ys = new float[vectorCount];
+        zs = new float[vectorCount];
+        result = new float[vectorCount * 3];
+
+        for (int i = 0; i < vectorCount; i++) {
+            float x = random.nextFloat() - 0.5f, y = random.nextFloat() - 0.5f, z = random.nextFloat() - 0.5f;
+            vectors[i] = new Vector(x, y, z);
+            VectorMath.set(packed, i * 3, x, y, z);
+            xs[i] = x;
+            ys[i] = y;
+            zs[i] = z;
+        }
+    }
+
+    // add, scale, cross, normalize and dot of neighbouring vectors, the usual mix of the shading code
+    @Benchmark
+    public float vectorObjects() {
+        float sum = 0.0f;
+        for (int i = 1; i < vectorCount; i++) {
+            Vector a = vectors[i - 1], b = vectors[i];
+            Vector cross = Vector.add(a, b.scale(0.5f)).crossProduct(b);
+            sum += cross.normalize().dotProduct(vectors[(i + 1) % vectorCount]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float vectorArrays() {
+        float sum = 0.0f;
+        for (int i = 1; i < vectorCount; i++) {
+            VectorMath.addScaled(result, 0, packed, (i - 1) * 3, packed, i * 3, 0.5f);
+            VectorMath.cross(result, 0, result, 0, packed, i * 3);
+            VectorMath.normalize(result, 0, result, 0);
+            sum += VectorMath.dot(result, 0, packed, (i + 1) % vectorCount * 3);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Vector[] normalizeObjects() {
+        Vector[] normalized = new Vector[vectorCount];
+        for (int i = 0; i < vectorCount; i++) {
+            normalized[i] = vectors[i].normalize();
+        }
+        return normalized;
+    }
+
+    @Benchmark
+    public float[] normalizeArrays() {
+        VectorMath.normalize(xs, ys, zs, 0, vectorCount);
+        return xs;
+    }
+
+    @Benchmark
+    public Vector[] rotateObjects() {
+        Vector[] rotated = new Vector[vectorCount];
+        for (int i = 0; i < vectorCount; i++) {
+            rotated[i] = vectors[i].rotate(0.1f, 0f, 1f, 0f);
+        }
+        return rotated;
+    }
+
+    @Benchmark
+    public float[] rotateArrays() {
+        VectorMath.rotate(xs, ys, zs, 0, vectorCount, 0.1f, 0f, 1f, 0f);
+        return xs;
+    }
+}
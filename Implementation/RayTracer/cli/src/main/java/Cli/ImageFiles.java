@@ -0,0 +1,74 @@
+package Cli;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Writes the rgba float frame buffers of the CpuRaytracer (row 0 is the bottom row) as image files.
+ * PNG is clamped to [0, 1] and quantized like the framebuffer on the screen, PFM keeps the float values.
+ */
+
+public class ImageFiles {
+
+    public static final String PNG_EXTENSION = ".png";
+    public static final String PFM_EXTENSION = ".pfm";
+
+    // Picks the format by the file extension
+    public static void write(File file, float[] frameBuffer, int width, int height) throws IOException {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(PNG_EXTENSION)) {
+            writePng(file, frameBuffer, width, height);
+        } else if (name.endsWith(PFM_EXTENSION)) {
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                writePfm(outputStream, frameBuffer, width, height);
+            }
+        } else {
+            throw new IOException("Unknown image format: " + file.getName() + " (use " + PNG_EXTENSION + " or " + PFM_EXTENSION + ")");
+        }
+    }
+
+    public static void writePng(File file, float[] frameBuffer, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int offset = (y * width + x) * 4;
+                row[x] = (toByte(frameBuffer[offset]) << 16) | (toByte(frameBuffer[offset + 1]) << 8) | toByte(frameBuffer[offset + 2]);
+            }
+            // Images start with the top row
+            image.setRGB(0, height - 1 - y, width, 1, row, 0, width);
+        }
+
+        if (!ImageIO.write(image, "png", file)) {
+            throw new IOException("No png writer available");
+        }
+    }
+
+    // Portable float map: text header, then little endian rgb floats starting with the bottom row (the same order as the frame buffer)
+    public static void writePfm(OutputStream outputStream, float[] frameBuffer, int width, int height) throws IOException {
+        outputStream.write(("PF\n" + width + " " + height + "\n-1.0\n").getBytes(Charset.forName("US-ASCII")));
+
+        ByteBuffer row = ByteBuffer.allocate(width * 3 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < height; y++) {
+            row.clear();
+            for (int x = 0; x < width; x++) {
+                int offset = (y * width + x) * 4;
+                row.putFloat(frameBuffer[offset]).putFloat(frameBuffer[offset + 1]).putFloat(frameBuffer[offset + 2]);
+            }
+            outputStream.write(row.array(), 0, row.position());
+        }
+    }
+
+    static int toByte(float value) {
+        return (int) (Math.min(Math.max(value, 0.0f), 1.0f) * 255.0f + 0.5f);
+    }
+}
@@ -0,0 +1,277 @@
+package Cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import Data.MeshLoader;
+import Data.SceneFile;
+import Objects.Camera;
+import Objects.Mesh;
+import PostProcessingPipeLine.AtrousDenoiser;
+import Tracing.Bvh;
+import Tracing.CpuRaytracer;
+import Tracing.GuideBuffer;
+import Tracing.PacketIntersector;
+import Tracing.PacketIntersectors;
+import Tracing.PathTracer;
+import Tracing.QuantizationReport;
+import Tracing.ScalarPacketIntersector;
+import Tracing.TraceScene;
+
+import static Util.MatrixHelper.perspectiveM;
+import static Util.MatrixMath.invertM;
+import static Util.MatrixMath.multiplyMM;
+
+/**
+ * Headless renderer: traces a scene file on the CPU and writes the image as PNG or PFM.
+ * The scene is either a path to a .scene/.scnb file or the name of one of the scenes of the app (e.g. scene_a).
+ * Every progressive frame adds MULTI_SAMPLING_COUNT samples per pixel, just like one frame on the device.
+ *
+ * Camera rays are intersected in packets, with the Vector API if the JVM was started with --add-modules jdk.incubator.vector.
+ * With --denoise on the result goes through the AtrousDenoiser, the CPU reference of the denoise pass of the app.
+ * --roulette sets the bounces before russian roulette may end a path, off traces every path to MAX_BOUNCES.
+ * With --quantization on the error of storing the image in every TraceFormat of the app is printed.
+ *
+ * Usage: RenderCli --scene scene_a [--width 800] [--height 600] [--spp 50] [--threads n] [--tile 16] [--packets simd|scalar] [--denoise on|off] [--roulette 3|off] [--quantization on|off] [--output render.png]
+ */
+
+public class RenderCli {
+
+    // Same projection as the scenes of the app
+    private static final float FIELD_OF_VIEW = 60f;
+    private static final float NEAR = 1f;
+    private static final float FAR = 20f;
+
+    // Directory of the app scenes on the classpath (the assets of the app, see build.gradle)
+    private static final String SCENE_RESOURCES = "scenes/";
+
+    static final String PACKETS_SIMD = "simd";
+    static final String PACKETS_SCALAR = "scalar";
+    static final String ON = "on";
+    static final String OFF = "off";
+
+    static final class Options {
+        String scene;
+        int width = 800;
+        int height = 600;
+        int samplesPerPixel = 50;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int tileSize = CpuRaytracer.DEFAULT_TILE_SIZE;
+        boolean simd = true;
+        boolean denoise = false;
+        boolean quantization = false;
+        int rouletteMinBounces = PathTracer.ROULETTE_MIN_BOUNCES;
+        File output = new File("render" + ImageFiles.PNG_EXTENSION);
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(2);
+            return;
+        }
+
+        try {
+            render(options);
+        } catch (IOException e) {
+            System.err.println("Render failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    static Options parse(String[] args) {
+        Options options = new Options();
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--help") || option.equals("-h")) {
+                throw new IllegalArgumentException("Renders a scene file on the CPU");
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+
+            switch (option) {
+                case "--scene":
+                    options.scene = value;
+                    break;
+                case "--width":
+                    options.width = parsePositive(option, value);
+                    break;
+                case "--height":
+                    options.height = parsePositive(option, value);
+                    break;
+                case "--spp":
+                    options.samplesPerPixel = parsePositive(option, value);
+                    break;
+                case "--threads":
+                    options.threads = parsePositive(option, value);
+                    break;
+                case "--tile":
+                    options.tileSize = parsePositive(option, value);
+                    break;
+                case "--packets":
+                    if (!value.equals(PACKETS_SIMD) && !value.equals(PACKETS_SCALAR)) {
+                        throw new IllegalArgumentException("--packets has to be " + PACKETS_SIMD + " or " + PACKETS_SCALAR + " but was " + value);
+                    }
+                    options.simd = value.equals(PACKETS_SIMD);
+                    break;
+                case "--denoise":
+                    if (!value.equals(ON) && !value.equals(OFF)) {
+                        throw new IllegalArgumentException("--denoise has to be " + ON + " or " + OFF + " but was " + value);
+                    }
+                    options.denoise = value.equals(ON);
+                    break;
+                case "--quantization":
+                    if (!value.equals(ON) && !value.equals(OFF)) {
+                        throw new IllegalArgumentException("--quantization has to be " + ON + " or " + OFF + " but was " + value);
+                    }
+                    options.quantization = value.equals(ON);
+                    break;
+                case "--roulette":
+                    options.rouletteMinBounces = value.equals(OFF) ? PathTracer.MAX_BOUNCES : parsePositive(option, value);
+                    break;
+                case "--output":
+                    options.output = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+
+        if (options.scene == null) {
+            throw new IllegalArgumentException("No scene given");
+        }
+        return options;
+    }
+
+    static void render(Options options) throws IOException {
+        SceneFile sceneFile;
+        List<Mesh> meshList;
+        File file = new File(options.scene);
+        if (file.isFile()) {
+            sceneFile = SceneFile.load(file);
+            meshList = sceneFile.loadMeshes(file.getAbsoluteFile().getParentFile());
+        } else {
+            sceneFile = loadResource(options.scene);
+            meshList = loadResourceMeshes(sceneFile);
+        }
+
+        float[] invertedViewProjectionMatrix = new float[16];
+        float[] invertedViewMatrix = new float[16];
+        setCamera(sceneFile.createCamera(), (float) options.width / (float) options.height, invertedViewProjectionMatrix, invertedViewMatrix);
+
+        TraceScene scene = new TraceScene(sceneFile, meshList);
+        Bvh bvh = Bvh.build(scene);
+        // Without the module simd falls back to scalar packets
+        boolean simd = options.simd && PacketIntersectors.isVectorApiAvailable();
+        PacketIntersector.Factory packetIntersectors = simd ? PacketIntersectors.best() : ScalarPacketIntersector.FACTORY;
+        ForkJoinPool pool = new ForkJoinPool(options.threads);
+        CpuRaytracer raytracer = new CpuRaytracer(pool, options.tileSize, packetIntersectors);
+        raytracer.setRouletteMinBounces(options.rouletteMinBounces);
+
+        // Every frame traces MULTI_SAMPLING_COUNT samples, the sample count is rounded up to whole frames
+        int frames = (options.samplesPerPixel + PathTracer.MULTI_SAMPLING_COUNT - 1) / PathTracer.MULTI_SAMPLING_COUNT;
+        float[] frameBuffer = new float[options.width * options.height * 4];
+        GuideBuffer guides = options.denoise ? new GuideBuffer(options.width, options.height) : null;
+
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            raytracer.render(frameBuffer, guides, options.width, options.height, invertedViewProjectionMatrix, invertedViewMatrix, scene, bvh, frame);
+        }
+        long nanoseconds = System.nanoTime() - start;
+        pool.shutdown();
+
+        if (options.denoise) {
+            new AtrousDenoiser(options.width, options.height).denoise(frameBuffer, guides, frames * PathTracer.MULTI_SAMPLING_COUNT, frameBuffer);
+        }
+
+        ImageFiles.write(options.output, frameBuffer, options.width, options.height);
+
+        double seconds = nanoseconds / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%s: %dx%d, %d spp, threads %d, tiles %d px, %s packets%s",
+                options.output.getPath(), options.width, options.height, frames * PathTracer.MULTI_SAMPLING_COUNT, options.threads, options.tileSize,
+                simd ? PACKETS_SIMD : PACKETS_SCALAR, options.denoise ? ", denoised" : ""));
+        System.out.println(String.format(Locale.ROOT, "%.3f s, %d rays, %.2f Mrays/s",
+                seconds, raytracer.getTracedRays(), raytracer.getTracedRays() / seconds / 1e6));
+
+        if (options.quantization) {
+            for (QuantizationReport report : QuantizationReport.measureAll(frameBuffer, options.width * options.height)) {
+                System.out.println(report);
+            }
+        }
+    }
+
+    // Same camera matrices as FileScene.onDrawFrame
+    static void setCamera(Camera camera, float aspect, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix) {
+        float[] projectionMatrix = new float[16];
+        float[] viewProjectionMatrix = new float[16];
+        perspectiveM(projectionMatrix, FIELD_OF_VIEW, aspect, NEAR, FAR);
+        multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, camera.getViewMatrix(), 0);
+        invertM(invertedViewProjectionMatrix, 0, viewProjectionMatrix, 0);
+        invertM(invertedViewMatrix, 0, camera.getViewMatrix(), 0);
+    }
+
+    private static SceneFile loadResource(String name) throws IOException {
+        String path = SCENE_RESOURCES + (name.endsWith(SceneFile.TEXT_EXTENSION) ? name : name + SceneFile.TEXT_EXTENSION);
+        InputStream inputStream = RenderCli.class.getClassLoader().getResourceAsStream(path);
+        if (inputStream == null) {
+            throw new IOException("No scene file or app scene named " + name);
+        }
+        try (Reader reader = new InputStreamReader(inputStream, "UTF-8")) {
+            return SceneFile.readText(reader);
+        }
+    }
+
+    private static List<Mesh> loadResourceMeshes(SceneFile sceneFile) throws IOException {
+        List<Mesh> meshList = new ArrayList<>();
+        for (int i = 0; i < sceneFile.meshCount; i++) {
+            String path = SCENE_RESOURCES + sceneFile.meshPaths[i];
+            InputStream inputStream = RenderCli.class.getClassLoader().getResourceAsStream(path);
+            if (inputStream == null) {
+                throw new IOException("Mesh not found: " + path);
+            }
+            try (InputStream meshStream = inputStream) {
+                meshList.add(sceneFile.createMesh(i, MeshLoader.read(meshStream, path)));
+            }
+        }
+        return meshList;
+    }
+
+    private static int parsePositive(String option, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException(option + " has to be a positive number but was " + value);
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: RenderCli --scene <file.scene|file.scnb|scene_a..scene_d> [options]");
+        System.err.println("  --width <pixels>     image width (default 800)");
+        System.err.println("  --height <pixels>    image height (default 600)");
+        System.err.println("  --spp <samples>      samples per pixel, rounded up to a multiple of " + PathTracer.MULTI_SAMPLING_COUNT + " (default 50)");
+        System.err.println("  --threads <count>    render threads (default: all cores)");
+        System.err.println("  --tile <pixels>      tile size (default " + CpuRaytracer.DEFAULT_TILE_SIZE + ")");
+        System.err.println("  --packets <mode>     " + PACKETS_SIMD + " (default, needs --add-modules " + PacketIntersectors.VECTOR_MODULE + ") or " + PACKETS_SCALAR);
+        System.err.println("  --denoise <on|off>   filters the result with the a-trous denoiser (default off)");
+        System.err.println("  --roulette <n|off>   bounces before russian roulette may end a path (default " + PathTracer.ROULETTE_MIN_BOUNCES + ")");
+        System.err.println("  --quantization <on|off> prints the error of every trace format of the app (default off)");
+        System.err.println("  --output <file>      .png or .pfm (default render.png)");
+    }
+}
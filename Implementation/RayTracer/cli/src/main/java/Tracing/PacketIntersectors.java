@@ -0,0 +1,20 @@
+package Tracing;
+
+/**
+ * Picks the packet intersector for CPU renders: the Vector API one if the jdk.incubator.vector module
+ * was added to the JVM (--add-modules jdk.incubator.vector), the scalar one otherwise.
+ * VectorPacketIntersector is only loaded after the check, so this class works on any JVM.
+ */
+
+public class PacketIntersectors {
+
+    public static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    public static boolean isVectorApiAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+
+    public static PacketIntersector.Factory best() {
+        return isVectorApiAvailable() ? VectorPacketIntersector.FACTORY : ScalarPacketIntersector.FACTORY;
+    }
+}
@@ -0,0 +1,242 @@
+package Tracing;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static Tracing.PathTracer.MAX_SCENE_BOUNDS;
+
+/**
+ * Packet traversal with the Vector API (jdk.incubator.vector), one vector lane per ray of the packet.
+ * The packet walks the bvh as a whole: a node is entered if any ray hits it before its nearest hit so far,
+ * and the slab tests of nodes and cubes and the sphere test run for all rays at once.
+ * Every lane does the same float operations in the same order as the scalar functions of PathTracer,
+ * so the nearest hit of every ray is bit for bit the one of PathTracer.intersectScene. Triangles are tested per ray.
+ * Only use it where the module is available, see PacketIntersectors.
+ */
+
+public class VectorPacketIntersector implements PacketIntersector {
+
+    // 8 floats with AVX2, 16 with AVX-512
+    static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public PacketIntersector create(TraceScene scene, Bvh bvh) {
+            return new VectorPacketIntersector(scene, bvh);
+        }
+    };
+
+    private final TraceScene scene;
+    private final float[] nodeBounds;
+    private final int[] nodeData;
+    private final int[] primitiveReferences;
+    // Scalar triangle test
+    private final PathTracer tracer;
+
+    private final int lanes = SPECIES.length();
+    private final int[] nodeStack = new int[Bvh.STACK_SIZE];
+    // Entry distances of the pushed nodes, one row of lanes per stack entry
+    private final float[] nodeStackT = new float[Bvh.STACK_SIZE * lanes];
+    private final float[] laneT = new float[lanes];
+
+    public VectorPacketIntersector(TraceScene scene, Bvh bvh) {
+        this.scene = scene;
+        this.nodeBounds = bvh.getNodeBounds();
+        this.nodeData = bvh.getNodeData();
+        this.primitiveReferences = bvh.getPrimitiveReferences();
+        this.tracer = new PathTracer(scene, bvh);
+    }
+
+    @Override
+    public int getPacketSize() {
+        return lanes;
+    }
+
+    @Override
+    public void intersect(RayPacket packet) {
+        if (packet.capacity < lanes) {
+            throw new IllegalArgumentException("Packets need a capacity of " + lanes + " rays but had " + packet.capacity);
+        }
+        final int size = packet.size;
+        // Unused lanes repeat the last ray, their results are never read
+        for (int lane = size; lane < lanes; lane++) {
+            packet.originX[lane] = packet.originX[size - 1];
+            packet.originY[lane] = packet.originY[size - 1];
+            packet.originZ[lane] = packet.originZ[size - 1];
+            packet.directionX[lane] = packet.directionX[size - 1];
+            packet.directionY[lane] = packet.directionY[size - 1];
+            packet.directionZ[lane] = packet.directionZ[size - 1];
+        }
+        for (int lane = 0; lane < lanes; lane++) {
+            packet.triangleT[lane] = MAX_SCENE_BOUNDS;
+        }
+
+        final FloatVector originX = FloatVector.fromArray(SPECIES, packet.originX, 0);
+        final FloatVector originY = FloatVector.fromArray(SPECIES, packet.originY, 0);
+        final FloatVector originZ = FloatVector.fromArray(SPECIES, packet.originZ, 0);
+        final FloatVector directionX = FloatVector.fromArray(SPECIES, packet.directionX, 0);
+        final FloatVector directionY = FloatVector.fromArray(SPECIES, packet.directionY, 0);
+        final FloatVector directionZ = FloatVector.fromArray(SPECIES, packet.directionZ, 0);
+        final FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+        final FloatVector inverseDirectionX = one.div(directionX);
+        final FloatVector inverseDirectionY = one.div(directionY);
+        final FloatVector inverseDirectionZ = one.div(directionZ);
+        // a of the sphere test is the same for all spheres
+        final FloatVector sphereA = directionX.mul(directionX).add(directionY.mul(directionY)).add(directionZ.mul(directionZ));
+
+        FloatVector cubeT = FloatVector.broadcast(SPECIES, MAX_SCENE_BOUNDS);
+        FloatVector sphereT = cubeT;
+        final FloatVector maxBounds = cubeT;
+
+        int stackSize = 0;
+        if (primitiveReferences.length > 0) {
+            final FloatVector rootT = intersectNode(originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ, 0, maxBounds);
+            if (rootT.compare(VectorOperators.LT, MAX_SCENE_BOUNDS).anyTrue()) {
+                nodeStack[stackSize] = 0;
+                rootT.intoArray(nodeStackT, stackSize++ * lanes);
+            }
+        }
+
+        while (stackSize > 0) {
+            final int node = nodeStack[--stackSize];
+            final FloatVector closestT = cubeT.min(sphereT).min(FloatVector.fromArray(SPECIES, packet.triangleT, 0));
+
+            // Rays that found a closer hit after the node was pushed are done with it
+            final VectorMask<Float> active = FloatVector.fromArray(SPECIES, nodeStackT, stackSize * lanes).compare(VectorOperators.LT, closestT);
+            if (!active.anyTrue()) {
+                continue;
+            }
+
+            final int leftOrFirst = nodeData[node * 2];
+            final int count = nodeData[node * 2 + 1];
+
+            if (count > 0) {
+                for (int i = leftOrFirst; i < leftOrFirst + count; i++) {
+                    final int reference = primitiveReferences[i];
+                    final int index = Bvh.primitiveIndex(reference);
+                    final int type = Bvh.primitiveType(reference);
+
+                    if (type == Bvh.PRIMITIVE_CUBE) {
+                        final FloatVector tNear = intersectCube(originX, originY, originZ, directionX, directionY, directionZ, index, cubeT);
+                        final VectorMask<Float> hit = tNear.compare(VectorOperators.NE, -1.0f).and(active);
+                        cubeT = cubeT.blend(tNear, hit);
+                        setIndex(packet.cubeIndex, hit, index);
+                    } else if (type == Bvh.PRIMITIVE_TRIANGLE) {
+                        intersectTriangles(packet, active, index);
+                    } else {
+                        final FloatVector hitDistance = intersectSphere(originX, originY, originZ, directionX, directionY, directionZ, sphereA, index);
+                        final VectorMask<Float> hit = hitDistance.compare(VectorOperators.GT, 0.0f).and(hitDistance.compare(VectorOperators.LT, sphereT)).and(active);
+                        sphereT = sphereT.blend(hitDistance, hit);
+                        setIndex(packet.sphereIndex, hit, index);
+                    }
+                }
+            } else {
+                final int leftChild = node + 1;
+                final int rightChild = leftOrFirst;
+                // Rays that are done with the node skip its children as well
+                final FloatVector nodeClosestT = closestT.blend(FloatVector.broadcast(SPECIES, Float.NEGATIVE_INFINITY), active.not());
+                final FloatVector leftT = intersectNode(originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ, leftChild, nodeClosestT);
+                final FloatVector rightT = intersectNode(originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ, rightChild, nodeClosestT);
+
+                // The child that some ray enters first is visited first
+                final boolean leftFirst = leftT.reduceLanes(VectorOperators.MIN) <= rightT.reduceLanes(VectorOperators.MIN);
+                final int nearChild = leftFirst ? leftChild : rightChild;
+                final int farChild = leftFirst ? rightChild : leftChild;
+                final FloatVector nearT = leftFirst ? leftT : rightT;
+                final FloatVector farT = leftFirst ? rightT : leftT;
+
+                if (farT.compare(VectorOperators.LT, MAX_SCENE_BOUNDS).anyTrue()) {
+                    nodeStack[stackSize] = farChild;
+                    farT.intoArray(nodeStackT, stackSize++ * lanes);
+                }
+                if (nearT.compare(VectorOperators.LT, MAX_SCENE_BOUNDS).anyTrue()) {
+                    nodeStack[stackSize] = nearChild;
+                    nearT.intoArray(nodeStackT, stackSize++ * lanes);
+                }
+            }
+        }
+
+        cubeT.intoArray(packet.cubeT, 0);
+        sphereT.intoArray(packet.sphereT, 0);
+    }
+
+    // PathTracer.intersectNode for all rays, lanes that miss the node or enter it behind closestT get MAX_SCENE_BOUNDS
+    private FloatVector intersectNode(FloatVector originX, FloatVector originY, FloatVector originZ,
+                                      FloatVector inverseDirectionX, FloatVector inverseDirectionY, FloatVector inverseDirectionZ, int node, FloatVector closestT) {
+        final int b = node * 6;
+        final FloatVector tMinX = FloatVector.broadcast(SPECIES, nodeBounds[b]).sub(originX).mul(inverseDirectionX);
+        final FloatVector tMinY = FloatVector.broadcast(SPECIES, nodeBounds[b + 1]).sub(originY).mul(inverseDirectionY);
+        final FloatVector tMinZ = FloatVector.broadcast(SPECIES, nodeBounds[b + 2]).sub(originZ).mul(inverseDirectionZ);
+        final FloatVector tMaxX = FloatVector.broadcast(SPECIES, nodeBounds[b + 3]).sub(originX).mul(inverseDirectionX);
+        final FloatVector tMaxY = FloatVector.broadcast(SPECIES, nodeBounds[b + 4]).sub(originY).mul(inverseDirectionY);
+        final FloatVector tMaxZ = FloatVector.broadcast(SPECIES, nodeBounds[b + 5]).sub(originZ).mul(inverseDirectionZ);
+
+        final FloatVector tNear = tMinX.min(tMaxX).max(tMinY.min(tMaxY)).max(tMinZ.min(tMaxZ));
+        final FloatVector tFar = tMinX.max(tMaxX).min(tMinY.max(tMaxY)).min(tMinZ.max(tMaxZ));
+
+        final VectorMask<Float> missed = tFar.compare(VectorOperators.LT, tNear.max(0.0f)).or(tNear.compare(VectorOperators.GE, closestT));
+        return tNear.blend(FloatVector.broadcast(SPECIES, MAX_SCENE_BOUNDS), missed);
+    }
+
+    // PathTracer.intersectCube for all rays: the entry distance if it is in front of the origin and closer than closestT, -1 otherwise
+    private FloatVector intersectCube(FloatVector originX, FloatVector originY, FloatVector originZ,
+                                      FloatVector directionX, FloatVector directionY, FloatVector directionZ, int i, FloatVector closestT) {
+        final int v = i * 3;
+        final FloatVector tMinX = FloatVector.broadcast(SPECIES, scene.cubeMin[v]).sub(originX).div(directionX);
+        final FloatVector tMinY = FloatVector.broadcast(SPECIES, scene.cubeMin[v + 1]).sub(originY).div(directionY);
+        final FloatVector tMinZ = FloatVector.broadcast(SPECIES, scene.cubeMin[v + 2]).sub(originZ).div(directionZ);
+        final FloatVector tMaxX = FloatVector.broadcast(SPECIES, scene.cubeMax[v]).sub(originX).div(directionX);
+        final FloatVector tMaxY = FloatVector.broadcast(SPECIES, scene.cubeMax[v + 1]).sub(originY).div(directionY);
+        final FloatVector tMaxZ = FloatVector.broadcast(SPECIES, scene.cubeMax[v + 2]).sub(originZ).div(directionZ);
+
+        final FloatVector tNear = tMinX.min(tMaxX).max(tMinY.min(tMaxY)).max(tMinZ.min(tMaxZ));
+        final FloatVector tFar = tMinX.max(tMaxX).min(tMinY.max(tMaxY)).min(tMinZ.max(tMaxZ));
+
+        final VectorMask<Float> hit = tNear.compare(VectorOperators.GT, 0.0f)
+                .and(tNear.compare(VectorOperators.LT, tFar))
+                .and(tNear.compare(VectorOperators.LT, closestT));
+        return FloatVector.broadcast(SPECIES, -1.0f).blend(tNear, hit);
+    }
+
+    // PathTracer.intersectSphere for all rays, misses are NaN instead of -1 (both fail the > 0 check of the caller)
+    private FloatVector intersectSphere(FloatVector originX, FloatVector originY, FloatVector originZ,
+                                        FloatVector directionX, FloatVector directionY, FloatVector directionZ, FloatVector a, int i) {
+        final int v = i * 3;
+        final FloatVector toOriginX = originX.sub(scene.sphereCenter[v]);
+        final FloatVector toOriginY = originY.sub(scene.sphereCenter[v + 1]);
+        final FloatVector toOriginZ = originZ.sub(scene.sphereCenter[v + 2]);
+        final float radius = scene.sphereRadius[i];
+
+        final FloatVector b = toOriginX.mul(directionX).add(toOriginY.mul(directionY)).add(toOriginZ.mul(directionZ)).mul(2.0f);
+        final FloatVector c = toOriginX.mul(toOriginX).add(toOriginY.mul(toOriginY)).add(toOriginZ.mul(toOriginZ)).sub(radius * radius);
+        final FloatVector discriminant = b.mul(b).sub(a.mul(4.0f).mul(c));
+
+        return b.neg().sub(discriminant.lanewise(VectorOperators.SQRT)).div(a.mul(2.0f));
+    }
+
+    // Triangles are only tested for the rays that are still active in the leaf
+    private void intersectTriangles(RayPacket packet, VectorMask<Float> active, int index) {
+        long lanesLeft = active.toLong();
+        while (lanesLeft != 0) {
+            final int lane = Long.numberOfTrailingZeros(lanesLeft);
+            lanesLeft &= lanesLeft - 1;
+
+            final float t = tracer.intersectTriangle(packet.originX[lane], packet.originY[lane], packet.originZ[lane],
+                    packet.directionX[lane], packet.directionY[lane], packet.directionZ[lane], index, packet.triangleT[lane]);
+            if (t != -1.0f) {
+                packet.triangleT[lane] = t;
+                packet.triangleIndex[lane] = index;
+            }
+        }
+    }
+
+    private static void setIndex(int[] indices, VectorMask<Float> hit, int index) {
+        long lanes = hit.toLong();
+        while (lanes != 0) {
+            indices[Long.numberOfTrailingZeros(lanes)] = index;
+            lanes &= lanes - 1;
+        }
+    }
+}
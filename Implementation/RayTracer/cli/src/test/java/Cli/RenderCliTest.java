@@ -0,0 +1,89 @@
+package Cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import javax.imageio.ImageIO;
+
+import Tracing.PathTracer;
+
+import static org.junit.Assert.*;
+
+public class RenderCliTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void optionsAreParsed() {
+        RenderCli.Options options = RenderCli.parse(new String[]{"--scene", "scene_b", "--width", "64", "--spp", "7", "--threads", "3", "--output", "out.pfm"});
+
+        assertEquals("scene_b", options.scene);
+        assertEquals(64, options.width);
+        assertEquals(600, options.height);
+        assertEquals(7, options.samplesPerPixel);
+        assertEquals(3, options.threads);
+        assertEquals("out.pfm", options.output.getName());
+
+        assertInvalid("--width", "64");
+        assertInvalid("--scene", "scene_a", "--tile", "0");
+        assertInvalid("--scene", "scene_a", "--bounces", "3");
+        assertInvalid("--scene", "scene_a", "--packets", "avx");
+        assertFalse(RenderCli.parse(new String[]{"--scene", "scene_a", "--packets", "scalar"}).simd);
+        assertInvalid("--scene", "scene_a", "--denoise", "yes");
+        assertTrue(RenderCli.parse(new String[]{"--scene", "scene_a", "--denoise", "on"}).denoise);
+        assertTrue(RenderCli.parse(new String[]{"--scene", "scene_a", "--quantization", "on"}).quantization);
+        assertInvalid("--scene", "scene_a", "--quantization", "1");
+        assertEquals(PathTracer.MAX_BOUNCES, RenderCli.parse(new String[]{"--scene", "scene_a", "--roulette", "off"}).rouletteMinBounces);
+        assertEquals(5, RenderCli.parse(new String[]{"--scene", "scene_a", "--roulette", "5"}).rouletteMinBounces);
+        assertInvalid("--scene", "scene_a", "--roulette", "0");
+        assertInvalid("--scene");
+    }
+
+    @Test
+    public void pfmKeepsFloatsAndRowOrder() throws IOException {
+        // 2x1 image, values above 1 survive
+        float[] frameBuffer = {2.5f, 0.5f, 0.25f, 1f, 0f, 1f, 0f, 1f};
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageFiles.writePfm(outputStream, frameBuffer, 2, 1);
+
+        byte[] bytes = outputStream.toByteArray();
+        String header = "PF\n2 1\n-1.0\n";
+        assertEquals(header, new String(bytes, 0, header.length(), Charset.forName("US-ASCII")));
+        ByteBuffer pixels = ByteBuffer.wrap(bytes, header.length(), bytes.length - header.length()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(2.5f, pixels.getFloat(), 0f);
+        assertEquals(0.5f, pixels.getFloat(), 0f);
+        assertEquals(0.25f, pixels.getFloat(), 0f);
+        assertEquals(0f, pixels.getFloat(), 0f);
+        assertEquals(1f, pixels.getFloat(), 0f);
+        assertEquals(0f, pixels.getFloat(), 0f);
+        assertFalse(pixels.hasRemaining());
+    }
+
+    @Test
+    public void appScenesRenderToPng() throws IOException {
+        RenderCli.Options options = RenderCli.parse(new String[]{"--scene", "scene_a", "--width", "24", "--height", "16", "--spp", "5", "--threads", "2", "--tile", "8"});
+        options.output = new File(folder.getRoot(), "scene_a" + ImageFiles.PNG_EXTENSION);
+
+        RenderCli.render(options);
+
+        assertTrue(options.output.length() > 0);
+        assertEquals(24, ImageIO.read(options.output).getWidth());
+    }
+
+    private static void assertInvalid(String... args) {
+        try {
+            RenderCli.parse(args);
+            fail("Options were accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package Tracing;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import Data.TriangleMesh;
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Util.Geometry.Vector;
+import Util.MatrixHelper;
+import Util.MatrixMath;
+
+import static org.junit.Assert.*;
+
+public class VectorPacketIntersectorTest {
+
+    @Before
+    public void requireVectorApi() {
+        Assume.assumeTrue(PacketIntersectors.isVectorApiAvailable());
+    }
+
+    @Test
+    public void packetHits_areTheScalarHits() {
+        Random random = new Random(7);
+        TraceScene scene = randomScene(random, 60);
+        Bvh bvh = Bvh.build(scene);
+        PacketIntersector scalar = new ScalarPacketIntersector(scene, bvh);
+        PacketIntersector vector = new VectorPacketIntersector(scene, bvh);
+        int lanes = vector.getPacketSize();
+        RayPacket scalarPacket = new RayPacket(lanes);
+        RayPacket vectorPacket = new RayPacket(lanes);
+
+        int hits = 0;
+        for (int packet = 0; packet < 500; packet++) {
+            scalarPacket.clear();
+            vectorPacket.clear();
+            // Every second packet is coherent (one origin, close directions), partial packets leave lanes unused
+            boolean coherent = packet % 2 == 0;
+            int size = 1 + random.nextInt(lanes);
+            float[] ray = randomRay(random);
+            for (int lane = 0; lane < size; lane++) {
+                if (!coherent) {
+                    ray = randomRay(random);
+                }
+                float spread = coherent ? lane * 0.01f : 0.0f;
+                scalarPacket.add(ray[0], ray[1], ray[2], ray[3] + spread, ray[4], ray[5]);
+                vectorPacket.add(ray[0], ray[1], ray[2], ray[3] + spread, ray[4], ray[5]);
+            }
+
+            scalar.intersect(scalarPacket);
+            vector.intersect(vectorPacket);
+
+            for (int lane = 0; lane < size; lane++) {
+                int kind = nearestKind(scalarPacket, lane);
+                assertEquals(kind, nearestKind(vectorPacket, lane));
+                if (kind == Bvh.PRIMITIVE_CUBE) {
+                    assertEquals(scalarPacket.cubeT[lane], vectorPacket.cubeT[lane], 0f);
+                    assertEquals(scalarPacket.cubeIndex[lane], vectorPacket.cubeIndex[lane]);
+                } else if (kind == Bvh.PRIMITIVE_SPHERE) {
+                    assertEquals(scalarPacket.sphereT[lane], vectorPacket.sphereT[lane], 0f);
+                    assertEquals(scalarPacket.sphereIndex[lane], vectorPacket.sphereIndex[lane]);
+                } else if (kind == Bvh.PRIMITIVE_TRIANGLE) {
+                    assertEquals(scalarPacket.triangleT[lane], vectorPacket.triangleT[lane], 0f);
+                    assertEquals(scalarPacket.triangleIndex[lane], vectorPacket.triangleIndex[lane]);
+                }
+                hits += kind >= 0 ? 1 : 0;
+            }
+        }
+        assertTrue("Too few hits to compare: " + hits, hits > 500);
+    }
+
+    @Test
+    public void packetRender_isTheScalarRender() {
+        TraceScene scene = randomScene(new Random(11), 30);
+        Bvh bvh = Bvh.build(scene);
+        int width = 37, height = 23;
+        // Camera in the origin looking down -z
+        float[] projectionMatrix = new float[16];
+        float[] invertedViewProjectionMatrix = new float[16];
+        float[] invertedViewMatrix = new float[16];
+        MatrixHelper.perspectiveM(projectionMatrix, 60f, (float) width / height, 1f, 20f);
+        MatrixMath.invertM(invertedViewProjectionMatrix, 0, projectionMatrix, 0);
+        MatrixMath.setIdentityM(invertedViewMatrix, 0);
+
+        float[] scalarImage = new float[width * height * 4];
+        float[] vectorImage = new float[width * height * 4];
+        ForkJoinPool pool = new ForkJoinPool(2);
+        for (int frame = 0; frame < 2; frame++) {
+            new CpuRaytracer(pool, 16, ScalarPacketIntersector.FACTORY).render(scalarImage, width, height, invertedViewProjectionMatrix, invertedViewMatrix, scene, bvh, frame);
+            new CpuRaytracer(pool, 16, VectorPacketIntersector.FACTORY).render(vectorImage, width, height, invertedViewProjectionMatrix, invertedViewMatrix, scene, bvh, frame);
+        }
+        pool.shutdown();
+
+        assertArrayEquals(scalarImage, vectorImage, 0f);
+    }
+
+    // The kind PathTracer.trace shades, -1 for the sky
+    private static int nearestKind(RayPacket packet, int lane) {
+        float cubeT = packet.cubeT[lane], sphereT = packet.sphereT[lane], triangleT = packet.triangleT[lane];
+        if (Math.min(Math.min(cubeT, sphereT), triangleT) >= PathTracer.MAX_SCENE_BOUNDS) {
+            return -1;
+        }
+        if (cubeT < sphereT && cubeT < triangleT) {
+            return Bvh.PRIMITIVE_CUBE;
+        }
+        return sphereT < triangleT ? Bvh.PRIMITIVE_SPHERE : Bvh.PRIMITIVE_TRIANGLE;
+    }
+
+    private static float[] randomRay(Random random) {
+        return new float[]{
+                random.nextFloat() * 4f - 2f, random.nextFloat() * 4f - 2f, 0f,
+                random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, -1f};
+    }
+
+    // count cubes, spheres and triangles in front of a camera in the origin looking down -z
+    private static TraceScene randomScene(Random random, int count) {
+        List<Cube> cubeList = new ArrayList<>();
+        List<Sphere> sphereList = new ArrayList<>();
+        float[] positions = new float[count * 9];
+        int[] indices = new int[count * 3];
+
+        for (int i = 0; i < count; i++) {
+            Vector min = randomPoint(random);
+            float size = random.nextFloat() + 0.2f;
+            cubeList.add(new Cube(min, new Vector(min.x + size, min.y + size, min.z + size), randomColor(random), Cube.Material.values()[i % 3], 0.5f));
+            sphereList.add(new Sphere(randomPoint(random), random.nextFloat() * 0.6f + 0.1f, randomColor(random), Sphere.Material.values()[i % 3], 0.5f));
+
+            Vector corner = randomPoint(random);
+            for (int k = 0; k < 9; k++) {
+                positions[i * 9 + k] = (k % 3 == 0 ? corner.x : k % 3 == 1 ? corner.y : corner.z) + random.nextFloat();
+            }
+            indices[i * 3] = i * 3;
+            indices[i * 3 + 1] = i * 3 + 1;
+            indices[i * 3 + 2] = i * 3 + 2;
+        }
+
+        List<Mesh> meshList = new ArrayList<>();
+        meshList.add(new Mesh(new TriangleMesh(count * 3, positions, new float[0], new float[0], count, indices), randomColor(random), Mesh.Material.DIFFUSE, 0.5f));
+        return new TraceScene(cubeList, sphereList, meshList);
+    }
+
+    private static Vector randomPoint(Random random) {
+        return new Vector(random.nextFloat() * 8f - 4f, random.nextFloat() * 8f - 4f, -4f - random.nextFloat() * 8f);
+    }
+
+    private static Vector randomColor(Random random) {
+        return new Vector(random.nextFloat(), random.nextFloat(), random.nextFloat());
+    }
+}
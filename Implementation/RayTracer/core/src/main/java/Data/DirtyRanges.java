@@ -0,0 +1,77 @@
+package Data;
+
+/**
+ * Sorted set of byte ranges [start, end) of a buffer that changed since the last upload.
+ * Overlapping and touching ranges are merged so that every range is one glBufferSubData call.
+ */
+
+public class DirtyRanges {
+
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int count;
+
+    public void add(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+
+        // Skip all ranges that end before the new one starts (touching ranges get merged)
+        int first = 0;
+        while (first < count && ends[first] < start) {
+            first++;
+        }
+
+        // Swallow all ranges that start before the new one ends
+        int last = first;
+        int mergedStart = start;
+        int mergedEnd = end;
+        while (last < count && starts[last] <= end) {
+            mergedStart = Math.min(mergedStart, starts[last]);
+            mergedEnd = Math.max(mergedEnd, ends[last]);
+            last++;
+        }
+
+        final int merged = last - first;
+        if (merged == 0) {
+            if (count == starts.length) {
+                final int[] newStarts = new int[count * 2];
+                final int[] newEnds = new int[count * 2];
+                System.arraycopy(starts, 0, newStarts, 0, count);
+                System.arraycopy(ends, 0, newEnds, 0, count);
+                starts = newStarts;
+                ends = newEnds;
+            }
+            System.arraycopy(starts, first, starts, first + 1, count - first);
+            System.arraycopy(ends, first, ends, first + 1, count - first);
+            count++;
+        } else if (merged > 1) {
+            System.arraycopy(starts, last, starts, first + 1, count - last);
+            System.arraycopy(ends, last, ends, first + 1, count - last);
+            count -= merged - 1;
+        }
+
+        starts[first] = mergedStart;
+        ends[first] = mergedEnd;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+}
@@ -0,0 +1,692 @@
+package Data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming loader for Wavefront OBJ and PLY (ascii, binary little and big endian) meshes.
+ * The bytes are parsed in place (memory-mapped files or a read buffer), numbers go straight into
+ * growing primitive arrays, so there is no allocation per line or per vertex.
+ *
+ * OBJ faces reference position, texture coordinate and normal separately. Every combination that is used
+ * becomes one vertex of the mesh, combinations that were already used are found through a chain of duplicates
+ * per position (the same scheme as the old Data.Vertex, but with int indices in arrays).
+ * Polygons with more than three corners are split into a triangle fan.
+ */
+
+public class MeshLoader {
+
+    public static final String OBJ_EXTENSION = ".obj";
+    public static final String PLY_EXTENSION = ".ply";
+
+    private static final int NO_INDEX = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    // Ply scalar types
+    private static final int TYPE_INT8 = 0;
+    private static final int TYPE_UINT8 = 1;
+    private static final int TYPE_INT16 = 2;
+    private static final int TYPE_UINT16 = 3;
+    private static final int TYPE_INT32 = 4;
+    private static final int TYPE_UINT32 = 5;
+    private static final int TYPE_FLOAT32 = 6;
+    private static final int TYPE_FLOAT64 = 7;
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    // Maps the file and picks the format by the extension
+    public static TriangleMesh load(File file) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            FileChannel channel = inputStream.getChannel();
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.getName());
+        }
+    }
+
+    // For sources that can't be mapped (e.g. compressed assets), the whole stream is read into one buffer first
+    public static TriangleMesh read(InputStream inputStream, String name) throws IOException {
+        byte[] bytes = new byte[64 * 1024];
+        int length = 0;
+        int read;
+        while ((read = inputStream.read(bytes, length, bytes.length - length)) != -1) {
+            length += read;
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+        }
+        return read(ByteBuffer.wrap(bytes, 0, length), name);
+    }
+
+    public static TriangleMesh read(ByteBuffer buffer, String name) throws IOException {
+        if (name.endsWith(OBJ_EXTENSION)) {
+            return readObj(buffer);
+        } else if (name.endsWith(PLY_EXTENSION)) {
+            return readPly(buffer);
+        }
+        throw new IOException("Unknown mesh format: " + name);
+    }
+
+    public static TriangleMesh readObj(ByteBuffer buffer) throws IOException {
+        Cursor cursor = new Cursor(buffer);
+
+        // As they are in the file
+        FloatArray filePositions = new FloatArray();
+        FloatArray fileTextureCoordinates = new FloatArray();
+        FloatArray fileNormals = new FloatArray();
+
+        // Vertices of the mesh: the indices of their position, texture coordinate and normal
+        IntArray vertexPositions = new IntArray();
+        IntArray vertexTextureCoordinates = new IntArray();
+        IntArray vertexNormals = new IntArray();
+        // First mesh vertex of every file position and the next vertex with the same position
+        IntArray firstVertices = new IntArray();
+        IntArray duplicateVertices = new IntArray();
+
+        IntArray indices = new IntArray();
+        IntArray polygon = new IntArray();
+
+        while (!cursor.atEnd()) {
+            cursor.skipSpaces();
+            final int c = cursor.peek(0);
+            final int next = cursor.peek(1);
+
+            if (c == 'v' && isSpace(next)) {
+                cursor.skip(1);
+                filePositions.add(cursor.parseFloat());
+                filePositions.add(cursor.parseFloat());
+                filePositions.add(cursor.parseFloat());
+                firstVertices.add(NO_INDEX);
+            } else if (c == 'v' && next == 't' && isSpace(cursor.peek(2))) {
+                cursor.skip(2);
+                fileTextureCoordinates.add(cursor.parseFloat());
+                // The v coordinate is optional
+                cursor.skipSpaces();
+                fileTextureCoordinates.add(cursor.atLineEnd() ? 0.0f : cursor.parseFloat());
+            } else if (c == 'v' && next == 'n' && isSpace(cursor.peek(2))) {
+                cursor.skip(2);
+                fileNormals.add(cursor.parseFloat());
+                fileNormals.add(cursor.parseFloat());
+                fileNormals.add(cursor.parseFloat());
+            } else if (c == 'f' && isSpace(next)) {
+                cursor.skip(1);
+                polygon.clear();
+
+                while (true) {
+                    cursor.skipSpaces();
+                    if (cursor.atLineEnd()) {
+                        break;
+                    }
+
+                    final int position = resolve(cursor, cursor.parseInt(), filePositions.size / 3);
+                    int textureCoordinate = NO_INDEX;
+                    int normal = NO_INDEX;
+                    if (cursor.peek(0) == '/') {
+                        cursor.skip(1);
+                        if (cursor.peek(0) != '/') {
+                            textureCoordinate = resolve(cursor, cursor.parseInt(), fileTextureCoordinates.size / 2);
+                        }
+                        if (cursor.peek(0) == '/') {
+                            cursor.skip(1);
+                            normal = resolve(cursor, cursor.parseInt(), fileNormals.size / 3);
+                        }
+                    }
+
+                    // Find the vertex with the same combination or add a new one
+                    int vertex = firstVertices.data[position];
+                    while (vertex != NO_INDEX && (vertexTextureCoordinates.data[vertex] != textureCoordinate || vertexNormals.data[vertex] != normal)) {
+                        vertex = duplicateVertices.data[vertex];
+                    }
+                    if (vertex == NO_INDEX) {
+                        vertex = vertexPositions.size;
+                        vertexPositions.add(position);
+                        vertexTextureCoordinates.add(textureCoordinate);
+                        vertexNormals.add(normal);
+                        duplicateVertices.add(firstVertices.data[position]);
+                        firstVertices.data[position] = vertex;
+                    }
+                    polygon.add(vertex);
+                }
+
+                if (polygon.size < 3) {
+                    throw cursor.error("A face needs at least 3 vertices");
+                }
+                for (int i = 2; i < polygon.size; i++) {
+                    indices.add(polygon.data[0]);
+                    indices.add(polygon.data[i - 1]);
+                    indices.add(polygon.data[i]);
+                }
+            }
+            // Everything else (groups, materials, smoothing groups, comments) is ignored
+            cursor.skipLine();
+        }
+
+        final int vertexCount = vertexPositions.size;
+        final float[] positions = new float[vertexCount * 3];
+        final float[] normals = fileNormals.size > 0 ? new float[vertexCount * 3] : new float[0];
+        final float[] textureCoordinates = fileTextureCoordinates.size > 0 ? new float[vertexCount * 2] : new float[0];
+
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            System.arraycopy(filePositions.data, vertexPositions.data[vertex] * 3, positions, vertex * 3, 3);
+            if (normals.length > 0 && vertexNormals.data[vertex] != NO_INDEX) {
+                System.arraycopy(fileNormals.data, vertexNormals.data[vertex] * 3, normals, vertex * 3, 3);
+            }
+            if (textureCoordinates.length > 0 && vertexTextureCoordinates.data[vertex] != NO_INDEX) {
+                System.arraycopy(fileTextureCoordinates.data, vertexTextureCoordinates.data[vertex] * 2, textureCoordinates, vertex * 2, 2);
+            }
+        }
+
+        return new TriangleMesh(vertexCount, positions, normals, textureCoordinates, indices.size / 3, indices.toArray());
+    }
+
+    // OBJ indices start at 1, negative ones count back from the last element
+    private static int resolve(Cursor cursor, int index, int count) throws IOException {
+        final int resolved = index < 0 ? count + index : index - 1;
+        if (resolved < 0 || resolved >= count) {
+            throw cursor.error("Index " + index + " out of range");
+        }
+        return resolved;
+    }
+
+    public static TriangleMesh readPly(ByteBuffer buffer) throws IOException {
+        Cursor cursor = new Cursor(buffer);
+        List<Element> elements = new ArrayList<>();
+        ByteOrder order = null;
+
+        // The header is small, so it is read as text
+        if (!cursor.readLine().equals("ply")) {
+            throw cursor.error("Not a ply file");
+        }
+        while (true) {
+            if (cursor.atEnd()) {
+                throw cursor.error("The header has no end");
+            }
+            String[] tokens = cursor.readLine().trim().split("\\s+");
+            if (tokens[0].equals("end_header")) {
+                break;
+            }
+
+            if (tokens[0].equals("format") && tokens.length >= 2) {
+                switch (tokens[1]) {
+                    case "ascii":
+                        order = null;
+                        break;
+                    case "binary_little_endian":
+                        order = ByteOrder.LITTLE_ENDIAN;
+                        break;
+                    case "binary_big_endian":
+                        order = ByteOrder.BIG_ENDIAN;
+                        break;
+                    default:
+                        throw cursor.error("Unknown format " + tokens[1]);
+                }
+            } else if (tokens[0].equals("element") && tokens.length == 3) {
+                elements.add(new Element(tokens[1], Integer.parseInt(tokens[2])));
+            } else if (tokens[0].equals("property") && !elements.isEmpty()) {
+                Element element = elements.get(elements.size() - 1);
+                if (tokens.length == 5 && tokens[1].equals("list")) {
+                    element.properties.add(new Property(tokens[4], type(cursor, tokens[3]), type(cursor, tokens[2])));
+                } else if (tokens.length == 3) {
+                    element.properties.add(new Property(tokens[2], type(cursor, tokens[1]), NO_INDEX));
+                } else {
+                    throw cursor.error("Invalid property");
+                }
+            }
+            // comment and obj_info lines are ignored
+        }
+
+        if (order != null) {
+            buffer.order(order);
+        }
+
+        int vertexCount = 0;
+        float[] positions = new float[0];
+        float[] normals = new float[0];
+        float[] textureCoordinates = new float[0];
+        IntArray indices = new IntArray();
+
+        for (Element element : elements) {
+            if (element.name.equals("vertex")) {
+                vertexCount = element.count;
+                // Property index of every component or -1
+                int[] positionProperties = element.find("x", "y", "z");
+                int[] normalProperties = element.find("nx", "ny", "nz");
+                int[] textureProperties = element.find("u", "v");
+                if (textureProperties[0] == NO_INDEX) {
+                    textureProperties = element.find("s", "t");
+                }
+                if (positionProperties[0] == NO_INDEX || positionProperties[1] == NO_INDEX || positionProperties[2] == NO_INDEX) {
+                    throw cursor.error("Vertices without x, y, z");
+                }
+
+                positions = new float[vertexCount * 3];
+                normals = normalProperties[0] != NO_INDEX ? new float[vertexCount * 3] : new float[0];
+                textureCoordinates = textureProperties[0] != NO_INDEX ? new float[vertexCount * 2] : new float[0];
+                final int propertyCount = element.properties.size();
+                final double[] values = new double[propertyCount];
+
+                for (int vertex = 0; vertex < vertexCount; vertex++) {
+                    for (int p = 0; p < propertyCount; p++) {
+                        Property property = element.properties.get(p);
+                        if (property.countType != NO_INDEX) {
+                            // Lists of vertices are not used, they are only skipped
+                            final int count = (int) cursor.readValue(property.countType, order);
+                            for (int i = 0; i < count; i++) {
+                                cursor.readValue(property.type, order);
+                            }
+                        } else {
+                            values[p] = cursor.readValue(property.type, order);
+                        }
+                    }
+                    gather(values, positionProperties, positions, vertex * 3);
+                    gather(values, normalProperties, normals, vertex * 3);
+                    gather(values, textureProperties, textureCoordinates, vertex * 2);
+                    cursor.endItem(order);
+                }
+            } else if (element.name.equals("face")) {
+                int listProperty = element.find("vertex_indices")[0];
+                if (listProperty == NO_INDEX) {
+                    listProperty = element.find("vertex_index")[0];
+                }
+                if (listProperty == NO_INDEX || element.properties.get(listProperty).countType == NO_INDEX) {
+                    throw cursor.error("Faces without a vertex_indices list");
+                }
+
+                for (int face = 0; face < element.count; face++) {
+                    for (int p = 0; p < element.properties.size(); p++) {
+                        Property property = element.properties.get(p);
+                        if (p != listProperty) {
+                            cursor.skipProperty(property, order);
+                            continue;
+                        }
+
+                        final int count = (int) cursor.readValue(property.countType, order);
+                        if (count < 3) {
+                            throw cursor.error("A face needs at least 3 vertices");
+                        }
+                        final int first = (int) cursor.readValue(property.type, order);
+                        int previous = (int) cursor.readValue(property.type, order);
+                        for (int i = 2; i < count; i++) {
+                            final int current = (int) cursor.readValue(property.type, order);
+                            indices.add(first);
+                            indices.add(previous);
+                            indices.add(current);
+                            previous = current;
+                        }
+                    }
+                    cursor.endItem(order);
+                }
+            } else {
+                for (int item = 0; item < element.count; item++) {
+                    for (Property property : element.properties) {
+                        cursor.skipProperty(property, order);
+                    }
+                    cursor.endItem(order);
+                }
+            }
+        }
+
+        for (int i = 0; i < indices.size; i++) {
+            if (indices.data[i] < 0 || indices.data[i] >= vertexCount) {
+                throw new IOException("Vertex index " + indices.data[i] + " out of range");
+            }
+        }
+
+        return new TriangleMesh(vertexCount, positions, normals, textureCoordinates, indices.size / 3, indices.toArray());
+    }
+
+    private static void gather(double[] values, int[] properties, float[] target, int offset) {
+        if (target.length == 0) {
+            return;
+        }
+        for (int i = 0; i < properties.length; i++) {
+            target[offset + i] = properties[i] == NO_INDEX ? 0.0f : (float) values[properties[i]];
+        }
+    }
+
+    private static int type(Cursor cursor, String name) throws IOException {
+        switch (name) {
+            case "char":
+            case "int8":
+                return TYPE_INT8;
+            case "uchar":
+            case "uint8":
+                return TYPE_UINT8;
+            case "short":
+            case "int16":
+                return TYPE_INT16;
+            case "ushort":
+            case "uint16":
+                return TYPE_UINT16;
+            case "int":
+            case "int32":
+                return TYPE_INT32;
+            case "uint":
+            case "uint32":
+                return TYPE_UINT32;
+            case "float":
+            case "float32":
+                return TYPE_FLOAT32;
+            case "double":
+            case "float64":
+                return TYPE_FLOAT64;
+            default:
+                throw cursor.error("Unknown property type " + name);
+        }
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static final class Element {
+        final String name;
+        final int count;
+        final List<Property> properties = new ArrayList<>();
+
+        Element(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        int[] find(String... names) {
+            int[] found = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                found[i] = NO_INDEX;
+                for (int p = 0; p < properties.size(); p++) {
+                    if (properties.get(p).name.equals(names[i])) {
+                        found[i] = p;
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    private static final class Property {
+        final String name;
+        final int type;
+        // Type of the element count of a list, NO_INDEX for scalar properties
+        final int countType;
+
+        Property(String name, int type, int countType) {
+            this.name = name;
+            this.type = type;
+            this.countType = countType;
+        }
+    }
+
+    // Reads numbers and lines straight out of the buffer, keeps the line number for error messages
+    private static final class Cursor {
+        private final ByteBuffer buffer;
+        private final int limit;
+        private int position;
+        private int line = 1;
+
+        Cursor(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.position = buffer.position();
+            this.limit = buffer.limit();
+        }
+
+        boolean atEnd() {
+            return position >= limit;
+        }
+
+        int peek(int offset) {
+            return position + offset < limit ? buffer.get(position + offset) & 0xFF : -1;
+        }
+
+        void skip(int count) {
+            position += count;
+        }
+
+        void skipSpaces() {
+            int c;
+            while ((c = peek(0)) == ' ' || c == '\t' || c == '\r') {
+                position++;
+            }
+        }
+
+        boolean atLineEnd() {
+            final int c = peek(0);
+            return c == '\n' || c == '#' || c == -1;
+        }
+
+        void skipLine() {
+            while (position < limit && buffer.get(position) != '\n') {
+                position++;
+            }
+            if (position < limit) {
+                position++;
+                line++;
+            }
+        }
+
+        String readLine() {
+            final int start = position;
+            skipLine();
+            final byte[] bytes = new byte[position - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            return new String(bytes, US_ASCII).trim();
+        }
+
+        int parseInt() throws IOException {
+            skipSpaces();
+            boolean negative = false;
+            int c = peek(0);
+            if (c == '-' || c == '+') {
+                negative = c == '-';
+                position++;
+            }
+
+            long value = 0;
+            int digits = 0;
+            while ((c = peek(0)) >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > Integer.MAX_VALUE) {
+                    throw error("Number too big");
+                }
+                position++;
+                digits++;
+            }
+            if (digits == 0) {
+                throw error("Expected a number");
+            }
+            return (int) (negative ? -value : value);
+        }
+
+        // Decimal and scientific notation, the first 18 significant digits are used
+        float parseFloat() throws IOException {
+            skipSpaces();
+            boolean negative = false;
+            int c = peek(0);
+            if (c == '-' || c == '+') {
+                negative = c == '-';
+                position++;
+            }
+
+            long mantissa = 0;
+            int significantDigits = 0;
+            int exponent = 0;
+            boolean anyDigit = false;
+
+            while ((c = peek(0)) >= '0' && c <= '9') {
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                } else {
+                    exponent++;
+                }
+                position++;
+                anyDigit = true;
+            }
+            if (c == '.') {
+                position++;
+                while ((c = peek(0)) >= '0' && c <= '9') {
+                    if (significantDigits < 18) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        exponent--;
+                        if (mantissa != 0) {
+                            significantDigits++;
+                        }
+                    }
+                    position++;
+                    anyDigit = true;
+                }
+            }
+            if (!anyDigit) {
+                throw error("Expected a number");
+            }
+
+            if (c == 'e' || c == 'E') {
+                position++;
+                exponent += parseInt();
+            }
+
+            double value = mantissa;
+            if (exponent > 0) {
+                value *= powerOfTen(exponent);
+            } else if (exponent < 0) {
+                value /= powerOfTen(-exponent);
+            }
+            return (float) (negative ? -value : value);
+        }
+
+        double readValue(int type, ByteOrder order) throws IOException {
+            if (order == null) {
+                return type == TYPE_FLOAT32 || type == TYPE_FLOAT64 ? parseFloat() : parseInt();
+            }
+
+            if (position + size(type) > limit) {
+                throw error("Unexpected end of file");
+            }
+            double value;
+            switch (type) {
+                case TYPE_INT8:
+                    value = buffer.get(position);
+                    break;
+                case TYPE_UINT8:
+                    value = buffer.get(position) & 0xFF;
+                    break;
+                case TYPE_INT16:
+                    value = buffer.getShort(position);
+                    break;
+                case TYPE_UINT16:
+                    value = buffer.getShort(position) & 0xFFFF;
+                    break;
+                case TYPE_INT32:
+                    value = buffer.getInt(position);
+                    break;
+                case TYPE_UINT32:
+                    value = buffer.getInt(position) & 0xFFFFFFFFL;
+                    break;
+                case TYPE_FLOAT32:
+                    value = buffer.getFloat(position);
+                    break;
+                default:
+                    value = buffer.getDouble(position);
+                    break;
+            }
+            position += size(type);
+            return value;
+        }
+
+        void skipProperty(Property property, ByteOrder order) throws IOException {
+            if (property.countType == NO_INDEX) {
+                readValue(property.type, order);
+                return;
+            }
+            final int count = (int) readValue(property.countType, order);
+            if (order == null) {
+                for (int i = 0; i < count; i++) {
+                    readValue(property.type, order);
+                }
+            } else {
+                position += count * size(property.type);
+            }
+        }
+
+        // Every element of an ascii file is on its own line
+        void endItem(ByteOrder order) {
+            if (order == null) {
+                skipLine();
+            }
+        }
+
+        IOException error(String message) {
+            return new IOException("Line " + line + ": " + message);
+        }
+
+        private static int size(int type) {
+            switch (type) {
+                case TYPE_INT8:
+                case TYPE_UINT8:
+                    return 1;
+                case TYPE_INT16:
+                case TYPE_UINT16:
+                    return 2;
+                case TYPE_FLOAT64:
+                    return 8;
+                default:
+                    return 4;
+            }
+        }
+    }
+
+    // Exact up to 10^22
+    private static double powerOfTen(int exponent) {
+        return exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[exponent] : Math.pow(10.0, exponent);
+    }
+
+    private static final class FloatArray {
+        float[] data = new float[INITIAL_CAPACITY];
+        int size;
+
+        void add(float value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = value;
+        }
+    }
+
+    private static final class IntArray {
+        int[] data = new int[INITIAL_CAPACITY];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
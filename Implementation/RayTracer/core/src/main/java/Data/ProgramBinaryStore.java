@@ -0,0 +1,159 @@
+package Data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Stores linked program binaries (glGetProgramBinary) in a directory, one file per program.
+ * The key is a hash of the driver and the preprocessed sources (which contain the defines of the variant),
+ * so a driver update or a shader change never loads an old binary.
+ * File layout: magic, format version, key, binary format, length, crc32 of the binary, binary.
+ * Files that can't be read or don't match their key are treated as missing.
+ */
+
+public class ProgramBinaryStore {
+
+    public static final class ProgramBinary {
+        public final int format;
+        public final byte[] data;
+
+        public ProgramBinary(int format, byte[] data) {
+            this.format = format;
+            this.data = data;
+        }
+    }
+
+    // "RTPB"
+    private static final int MAGIC = 0x52545042;
+    private static final int FILE_VERSION = 1;
+    private static final String FILE_SUFFIX = ".bin";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+
+    public ProgramBinaryStore(File directory) {
+        this.directory = directory;
+    }
+
+    // Hex sha-256 of the driver (vendor, renderer, version) and all sources of the program
+    public static String key(String driver, String... sources) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(driver.getBytes(UTF_8));
+            for (String source : sources) {
+                // Separator, so that moving text from one source to the next changes the key
+                digest.update((byte) 0);
+                digest.update(source.getBytes(UTF_8));
+            }
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available.", e);
+        }
+    }
+
+    // Returns null if there is no valid binary for the key
+    public ProgramBinary load(String key) {
+        File file = fileOf(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            ProgramBinary binary = read(inputStream, key);
+            if (binary == null) {
+                file.delete();
+            }
+            return binary;
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    // Writes into a temporary file first, so that a crash never leaves a half written binary behind
+    public void store(String key, ProgramBinary binary) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("Could not create the program binary directory: " + directory);
+        }
+
+        File file = fileOf(key);
+        File temporaryFile = new File(directory, key + ".tmp");
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(temporaryFile))) {
+            write(outputStream, key, binary);
+        } catch (IOException e) {
+            temporaryFile.delete();
+            throw new RuntimeException("Could not write program binary: " + file, e);
+        }
+
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new RuntimeException("Could not write program binary: " + file);
+        }
+    }
+
+    // Called when the driver rejects a binary
+    public void remove(String key) {
+        fileOf(key).delete();
+    }
+
+    static void write(OutputStream outputStream, String key, ProgramBinary binary) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(binary.data, 0, binary.data.length);
+
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(MAGIC);
+        output.writeInt(FILE_VERSION);
+        output.writeUTF(key);
+        output.writeInt(binary.format);
+        output.writeInt(binary.data.length);
+        output.writeLong(crc.getValue());
+        output.write(binary.data);
+        output.flush();
+    }
+
+    // Returns null if the data is not a valid binary for the key
+    static ProgramBinary read(InputStream inputStream, String key) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        if (input.readInt() != MAGIC || input.readInt() != FILE_VERSION || !input.readUTF().equals(key)) {
+            return null;
+        }
+
+        int format = input.readInt();
+        int length = input.readInt();
+        long checksum = input.readLong();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] data = new byte[length];
+        input.readFully(data);
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if (crc.getValue() != checksum) {
+            return null;
+        }
+        return new ProgramBinary(format, data);
+    }
+
+    private File fileOf(String key) {
+        return new File(directory, key + FILE_SUFFIX);
+    }
+}
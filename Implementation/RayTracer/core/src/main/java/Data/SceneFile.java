@@ -0,0 +1,536 @@
+package Data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import Objects.Camera;
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Tracing.TraceScene;
+import Util.Geometry.Point;
+import Util.Geometry.Vector;
+
+/**
+ * A scene (camera, cubes, spheres and meshes) as packed arrays, read from or written to a scene file.
+ *
+ * Text form (.scene), one object per line, # starts a comment:
+ * camera   eyeX eyeY eyeZ   centerX centerY centerZ
+ * cube     minX minY minZ   maxX maxY maxZ   r g b   diffuse|metal|light   parameter0
+ * sphere   centerX centerY centerZ   radius   r g b   diffuse|metal|light   parameter0
+ * mesh     path   r g b   diffuse|metal|light   parameter0
+ * The path of a mesh (OBJ or PLY, see MeshLoader) is relative to the scene file and must not contain spaces,
+ * the meshes are only loaded on request.
+ *
+ * Binary form (.scnb), little endian:
+ * magic, version, cube count, sphere count, mesh count, camera eye (3 floats), camera center (3 floats),
+ * cube min, max, color (3 floats each), material (ints), parameter0 (floats),
+ * sphere center (3 floats each), radius, color (3 floats each), material (ints), parameter0 (floats),
+ * mesh color (3 floats each), material (ints), parameter0 (floats), paths (byte length and utf-8 bytes, padded to 4 bytes).
+ * Every block is a whole array, so the binary form is mapped into memory and copied into the arrays in bulk
+ * without creating an object per primitive.
+ */
+
+public class SceneFile {
+
+    public static final String TEXT_EXTENSION = ".scene";
+    public static final String BINARY_EXTENSION = ".scnb";
+
+    // "RTSC"
+    private static final int MAGIC = 0x52545343;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 5 * 4 + 6 * 4;
+    private static final int BYTES_PER_CUBE = 11 * 4;
+    private static final int BYTES_PER_SPHERE = 9 * 4;
+    // Without the path
+    private static final int BYTES_PER_MESH = 6 * 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public final float[] cameraEye;
+    public final float[] cameraCenter;
+
+    // Same layout as in TraceScene
+    public final int cubeCount;
+    public final float[] cubeMin;
+    public final float[] cubeMax;
+    public final float[] cubeColor;
+    public final int[] cubeMaterial;
+    public final float[] cubeParameter0;
+
+    public final int sphereCount;
+    public final float[] sphereCenter;
+    public final float[] sphereRadius;
+    public final float[] sphereColor;
+    public final int[] sphereMaterial;
+    public final float[] sphereParameter0;
+
+    public final int meshCount;
+    public final String[] meshPaths;
+    public final float[] meshColor;
+    public final int[] meshMaterial;
+    public final float[] meshParameter0;
+
+    public SceneFile(float[] cameraEye, float[] cameraCenter, int cubeCount, int sphereCount) {
+        this(cameraEye, cameraCenter, cubeCount, sphereCount, 0);
+    }
+
+    public SceneFile(float[] cameraEye, float[] cameraCenter, int cubeCount, int sphereCount, int meshCount) {
+        this.cameraEye = cameraEye;
+        this.cameraCenter = cameraCenter;
+
+        this.cubeCount = cubeCount;
+        cubeMin = new float[cubeCount * 3];
+        cubeMax = new float[cubeCount * 3];
+        cubeColor = new float[cubeCount * 3];
+        cubeMaterial = new int[cubeCount];
+        cubeParameter0 = new float[cubeCount];
+
+        this.sphereCount = sphereCount;
+        sphereCenter = new float[sphereCount * 3];
+        sphereRadius = new float[sphereCount];
+        sphereColor = new float[sphereCount * 3];
+        sphereMaterial = new int[sphereCount];
+        sphereParameter0 = new float[sphereCount];
+
+        this.meshCount = meshCount;
+        meshPaths = new String[meshCount];
+        meshColor = new float[meshCount * 3];
+        meshMaterial = new int[meshCount];
+        meshParameter0 = new float[meshCount];
+    }
+
+    // Snapshot of a scene that was built in code (without meshes, they have no file)
+    public SceneFile(Camera camera, List<Cube> cubeList, List<Sphere> sphereList) {
+        this(toArray(camera.getPosition()), toArray(camera.getViewCenterPosition()), cubeList.size(), sphereList.size());
+
+        TraceScene scene = new TraceScene(cubeList, sphereList);
+        System.arraycopy(scene.cubeMin, 0, cubeMin, 0, cubeMin.length);
+        System.arraycopy(scene.cubeMax, 0, cubeMax, 0, cubeMax.length);
+        System.arraycopy(scene.cubeColor, 0, cubeColor, 0, cubeColor.length);
+        System.arraycopy(scene.cubeMaterial, 0, cubeMaterial, 0, cubeMaterial.length);
+        System.arraycopy(scene.cubeParameter0, 0, cubeParameter0, 0, cubeParameter0.length);
+        System.arraycopy(scene.sphereCenter, 0, sphereCenter, 0, sphereCenter.length);
+        System.arraycopy(scene.sphereRadius, 0, sphereRadius, 0, sphereRadius.length);
+        System.arraycopy(scene.sphereColor, 0, sphereColor, 0, sphereColor.length);
+        System.arraycopy(scene.sphereMaterial, 0, sphereMaterial, 0, sphereMaterial.length);
+        System.arraycopy(scene.sphereParameter0, 0, sphereParameter0, 0, sphereParameter0.length);
+    }
+
+    // Picks the form by the file extension
+    public static SceneFile load(File file) throws IOException {
+        if (file.getName().endsWith(BINARY_EXTENSION)) {
+            try (FileInputStream inputStream = new FileInputStream(file)) {
+                FileChannel channel = inputStream.getChannel();
+                return readBinary(channel, 0, channel.size());
+            }
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
+            return readText(reader);
+        }
+    }
+
+    public void save(File file) throws IOException {
+        if (file.getName().endsWith(BINARY_EXTENSION)) {
+            try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                writeBinary(outputStream.getChannel());
+            }
+        } else {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+                writeText(writer);
+            }
+        }
+    }
+
+    public static SceneFile readText(Reader reader) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        float[] eye = null;
+        float[] center = null;
+        List<float[]> cubes = new ArrayList<>();
+        List<float[]> spheres = new ArrayList<>();
+        List<float[]> meshes = new ArrayList<>();
+        List<String> meshPaths = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] tokens = line.split("\\s+");
+            switch (tokens[0]) {
+                case "camera": {
+                    float[] values = parseValues(tokens, lineNumber, 6, -1);
+                    eye = new float[]{values[0], values[1], values[2]};
+                    center = new float[]{values[3], values[4], values[5]};
+                    break;
+                }
+                // The material is kept as its code in the slot of the material name
+                case "cube": {
+                    cubes.add(parseValues(tokens, lineNumber, 11, 9));
+                    break;
+                }
+                case "sphere": {
+                    spheres.add(parseValues(tokens, lineNumber, 9, 7));
+                    break;
+                }
+                // The path is the first token, the values follow it
+                case "mesh": {
+                    if (tokens.length < 2) {
+                        throw new IOException("Line " + lineNumber + ": mesh needs a path");
+                    }
+                    meshPaths.add(tokens[1]);
+                    meshes.add(parseValues(Arrays.copyOfRange(tokens, 1, tokens.length), lineNumber, 5, 3));
+                    break;
+                }
+                default:
+                    throw new IOException("Line " + lineNumber + ": unknown object '" + tokens[0] + "'");
+            }
+        }
+
+        if (eye == null) {
+            throw new IOException("The scene has no camera");
+        }
+
+        SceneFile scene = new SceneFile(eye, center, cubes.size(), spheres.size(), meshes.size());
+        for (int i = 0; i < scene.cubeCount; i++) {
+            float[] values = cubes.get(i);
+            System.arraycopy(values, 0, scene.cubeMin, i * 3, 3);
+            System.arraycopy(values, 3, scene.cubeMax, i * 3, 3);
+            System.arraycopy(values, 6, scene.cubeColor, i * 3, 3);
+            scene.cubeMaterial[i] = (int) values[9];
+            scene.cubeParameter0[i] = values[10];
+        }
+        for (int i = 0; i < scene.sphereCount; i++) {
+            float[] values = spheres.get(i);
+            System.arraycopy(values, 0, scene.sphereCenter, i * 3, 3);
+            scene.sphereRadius[i] = values[3];
+            System.arraycopy(values, 4, scene.sphereColor, i * 3, 3);
+            scene.sphereMaterial[i] = (int) values[7];
+            scene.sphereParameter0[i] = values[8];
+        }
+        for (int i = 0; i < scene.meshCount; i++) {
+            float[] values = meshes.get(i);
+            scene.meshPaths[i] = meshPaths.get(i);
+            System.arraycopy(values, 0, scene.meshColor, i * 3, 3);
+            scene.meshMaterial[i] = (int) values[3];
+            scene.meshParameter0[i] = values[4];
+        }
+        return scene;
+    }
+
+    public void writeText(Writer writer) throws IOException {
+        writer.write("# camera eye center\n");
+        writer.write("camera " + join(cameraEye, 0, 3) + "   " + join(cameraCenter, 0, 3) + "\n");
+
+        writer.write("\n# cube min max color material parameter0\n");
+        for (int i = 0; i < cubeCount; i++) {
+            writer.write("cube " + join(cubeMin, i * 3, 3) + "   " + join(cubeMax, i * 3, 3) + "   " + join(cubeColor, i * 3, 3)
+                    + "   " + materialName(cubeMaterial[i]) + " " + cubeParameter0[i] + "\n");
+        }
+
+        writer.write("\n# sphere center radius color material parameter0\n");
+        for (int i = 0; i < sphereCount; i++) {
+            writer.write("sphere " + join(sphereCenter, i * 3, 3) + "   " + sphereRadius[i] + "   " + join(sphereColor, i * 3, 3)
+                    + "   " + materialName(sphereMaterial[i]) + " " + sphereParameter0[i] + "\n");
+        }
+
+        if (meshCount > 0) {
+            writer.write("\n# mesh path color material parameter0\n");
+        }
+        for (int i = 0; i < meshCount; i++) {
+            writer.write("mesh " + meshPaths[i] + "   " + join(meshColor, i * 3, 3) + "   " + materialName(meshMaterial[i]) + " " + meshParameter0[i] + "\n");
+        }
+        writer.flush();
+    }
+
+    // Reads size bytes starting at position, which allows reading scenes that are part of a bigger file (e.g. an apk)
+    public static SceneFile readBinary(FileChannel channel, long position, long size) throws IOException {
+        if (size < HEADER_BYTES) {
+            throw new IOException("Scene file is too small: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a binary scene file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported scene file version " + version);
+        }
+
+        int cubeCount = buffer.getInt();
+        int sphereCount = buffer.getInt();
+        int meshCount = buffer.getInt();
+        // The paths of the meshes come on top
+        if (cubeCount < 0 || sphereCount < 0 || meshCount < 0
+                || size < HEADER_BYTES + (long) cubeCount * BYTES_PER_CUBE + (long) sphereCount * BYTES_PER_SPHERE + (long) meshCount * (BYTES_PER_MESH + 4)) {
+            throw new IOException("Scene file size doesn't match " + cubeCount + " cubes, " + sphereCount + " spheres and " + meshCount + " meshes");
+        }
+
+        SceneFile scene = new SceneFile(new float[3], new float[3], cubeCount, sphereCount, meshCount);
+        getFloats(buffer, scene.cameraEye);
+        getFloats(buffer, scene.cameraCenter);
+
+        getFloats(buffer, scene.cubeMin);
+        getFloats(buffer, scene.cubeMax);
+        getFloats(buffer, scene.cubeColor);
+        getInts(buffer, scene.cubeMaterial);
+        getFloats(buffer, scene.cubeParameter0);
+
+        getFloats(buffer, scene.sphereCenter);
+        getFloats(buffer, scene.sphereRadius);
+        getFloats(buffer, scene.sphereColor);
+        getInts(buffer, scene.sphereMaterial);
+        getFloats(buffer, scene.sphereParameter0);
+
+        getFloats(buffer, scene.meshColor);
+        getInts(buffer, scene.meshMaterial);
+        getFloats(buffer, scene.meshParameter0);
+        for (int i = 0; i < meshCount; i++) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("Invalid mesh path");
+            }
+            byte[] path = new byte[length];
+            buffer.get(path);
+            scene.meshPaths[i] = new String(path, UTF_8);
+            buffer.position(buffer.position() + padding(length));
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Scene file has " + buffer.remaining() + " bytes too many");
+        }
+
+        checkMaterials(scene.cubeMaterial);
+        checkMaterials(scene.sphereMaterial);
+        checkMaterials(scene.meshMaterial);
+        return scene;
+    }
+
+    public void writeBinary(WritableByteChannel channel) throws IOException {
+        byte[][] paths = new byte[meshCount][];
+        int pathBytes = 0;
+        for (int i = 0; i < meshCount; i++) {
+            paths[i] = meshPaths[i].getBytes(UTF_8);
+            pathBytes += 4 + paths[i].length + padding(paths[i].length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + cubeCount * BYTES_PER_CUBE + sphereCount * BYTES_PER_SPHERE + meshCount * BYTES_PER_MESH + pathBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(cubeCount).putInt(sphereCount).putInt(meshCount);
+        putFloats(buffer, cameraEye);
+        putFloats(buffer, cameraCenter);
+
+        putFloats(buffer, cubeMin);
+        putFloats(buffer, cubeMax);
+        putFloats(buffer, cubeColor);
+        putInts(buffer, cubeMaterial);
+        putFloats(buffer, cubeParameter0);
+
+        putFloats(buffer, sphereCenter);
+        putFloats(buffer, sphereRadius);
+        putFloats(buffer, sphereColor);
+        putInts(buffer, sphereMaterial);
+        putFloats(buffer, sphereParameter0);
+
+        putFloats(buffer, meshColor);
+        putInts(buffer, meshMaterial);
+        putFloats(buffer, meshParameter0);
+        for (byte[] path : paths) {
+            buffer.putInt(path.length).put(path);
+            buffer.position(buffer.position() + padding(path.length));
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public Camera createCamera() {
+        return new Camera(new Point(cameraEye[0], cameraEye[1], cameraEye[2]), new Point(cameraCenter[0], cameraCenter[1], cameraCenter[2]));
+    }
+
+    // The objects for the gpu path, which packs them with the ScenePacker
+    public ArrayList<Cube> createCubes() {
+        ArrayList<Cube> cubeList = new ArrayList<>(cubeCount);
+        for (int i = 0; i < cubeCount; i++) {
+            cubeList.add(new Cube(vector(cubeMin, i), vector(cubeMax, i), vector(cubeColor, i), cubeMaterialOf(cubeMaterial[i]), cubeParameter0[i]));
+        }
+        return cubeList;
+    }
+
+    public ArrayList<Sphere> createSpheres() {
+        ArrayList<Sphere> sphereList = new ArrayList<>(sphereCount);
+        for (int i = 0; i < sphereCount; i++) {
+            sphereList.add(new Sphere(vector(sphereCenter, i), sphereRadius[i], vector(sphereColor, i), sphereMaterialOf(sphereMaterial[i]), sphereParameter0[i]));
+        }
+        return sphereList;
+    }
+
+    // Loads the meshes with the paths relative to directory (the directory of the scene file)
+    public ArrayList<Mesh> loadMeshes(File directory) throws IOException {
+        ArrayList<Mesh> meshList = new ArrayList<>(meshCount);
+        for (int i = 0; i < meshCount; i++) {
+            meshList.add(createMesh(i, MeshLoader.load(new File(directory, meshPaths[i]))));
+        }
+        return meshList;
+    }
+
+    // The mesh with index i of the file, made of triangles that were loaded from its path
+    public Mesh createMesh(int i, TriangleMesh triangles) {
+        return new Mesh(triangles, vector(meshColor, i), meshMaterialOf(meshMaterial[i]), meshParameter0[i]);
+    }
+
+    // Checks the count and parses the floats, the token at materialIndex is a material name
+    private static float[] parseValues(String[] tokens, int lineNumber, int count, int materialIndex) throws IOException {
+        if (tokens.length != count + 1) {
+            throw new IOException("Line " + lineNumber + ": " + tokens[0] + " needs " + count + " values but has " + (tokens.length - 1));
+        }
+
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            String token = tokens[i + 1];
+            if (i == materialIndex) {
+                values[i] = materialCode(token, lineNumber);
+                continue;
+            }
+            try {
+                values[i] = Float.parseFloat(token);
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": '" + token + "' is not a number");
+            }
+        }
+        return values;
+    }
+
+    private static int materialCode(String name, int lineNumber) throws IOException {
+        switch (name) {
+            case "diffuse":
+                return TraceScene.MATERIAL_DIFFUSE;
+            case "metal":
+                return TraceScene.MATERIAL_METAL;
+            case "light":
+                return TraceScene.MATERIAL_LIGHT;
+            default:
+                throw new IOException("Line " + lineNumber + ": unknown material '" + name + "'");
+        }
+    }
+
+    private static String materialName(int code) {
+        switch (code) {
+            case TraceScene.MATERIAL_DIFFUSE:
+                return "diffuse";
+            case TraceScene.MATERIAL_METAL:
+                return "metal";
+            default:
+                return "light";
+        }
+    }
+
+    private static void checkMaterials(int[] materials) throws IOException {
+        for (int material : materials) {
+            if (material < TraceScene.MATERIAL_DIFFUSE || material > TraceScene.MATERIAL_LIGHT) {
+                throw new IOException("Unknown material code " + material);
+            }
+        }
+    }
+
+    private static Cube.Material cubeMaterialOf(int code) {
+        switch (code) {
+            case TraceScene.MATERIAL_DIFFUSE:
+                return Cube.Material.DIFFUSE;
+            case TraceScene.MATERIAL_METAL:
+                return Cube.Material.METAL;
+            default:
+                return Cube.Material.LIGHT;
+        }
+    }
+
+    private static Sphere.Material sphereMaterialOf(int code) {
+        switch (code) {
+            case TraceScene.MATERIAL_DIFFUSE:
+                return Sphere.Material.DIFFUSE;
+            case TraceScene.MATERIAL_METAL:
+                return Sphere.Material.METAL;
+            default:
+                return Sphere.Material.LIGHT;
+        }
+    }
+
+    private static Mesh.Material meshMaterialOf(int code) {
+        switch (code) {
+            case TraceScene.MATERIAL_DIFFUSE:
+                return Mesh.Material.DIFFUSE;
+            case TraceScene.MATERIAL_METAL:
+                return Mesh.Material.METAL;
+            default:
+                return Mesh.Material.LIGHT;
+        }
+    }
+
+    private static int padding(int length) {
+        return (4 - length % 4) % 4;
+    }
+
+    private static Vector vector(float[] array, int index) {
+        return new Vector(array[index * 3], array[index * 3 + 1], array[index * 3 + 2]);
+    }
+
+    private static float[] toArray(Point point) {
+        return new float[]{point.x, point.y, point.z};
+    }
+
+    private static String join(float[] array, int offset, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = offset; i < offset + count; i++) {
+            if (i > offset) {
+                builder.append(' ');
+            }
+            builder.append(array[i]);
+        }
+        return builder.toString();
+    }
+
+    // Bulk copies that move the position of the buffer past the copied values
+    private static void getFloats(ByteBuffer buffer, float[] array) {
+        buffer.asFloatBuffer().get(array);
+        buffer.position(buffer.position() + array.length * 4);
+    }
+
+    private static void getInts(ByteBuffer buffer, int[] array) {
+        buffer.asIntBuffer().get(array);
+        buffer.position(buffer.position() + array.length * 4);
+    }
+
+    private static void putFloats(ByteBuffer buffer, float[] array) {
+        buffer.asFloatBuffer().put(array);
+        buffer.position(buffer.position() + array.length * 4);
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] array) {
+        buffer.asIntBuffer().put(array);
+        buffer.position(buffer.position() + array.length * 4);
+    }
+}
@@ -0,0 +1,392 @@
+package Data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Tracing.TraceScene;
+import Util.Geometry.Vector;
+
+/**
+ * Packs the cubes, spheres, mesh triangles and their materials into direct ByteBuffers in the std430 layout
+ * of the cube, sphere, vertex, triangle and material structs in compute_shader.glsl.
+ * The buffers are reused between frames, only objects whose version changed are packed again
+ * and only bytes that really changed end up in the dirty ranges that have to be uploaded.
+ *
+ * Layouts (32 bytes each):
+ * cube: boundsMin (3 floats), materialIndex (int), boundsMax (3 floats), padding
+ * sphere: center (3 floats), radius (float), materialIndex (int), padding
+ * material: color (3 floats), type (int), parameter0 (float), padding
+ * vertex: position (3 floats), padding, normal (3 floats), padding
+ * triangle (16 bytes): vertexIndices (3 ints), materialIndex (int)
+ * The materials of the cubes come first, followed by the materials of the spheres and one material per mesh.
+ * The vertices and triangles of all meshes share one buffer each, the vertex indices point into the whole buffer.
+ */
+
+public class ScenePacker {
+
+    public static final int BYTES_PER_CUBE = 32;
+    public static final int BYTES_PER_SPHERE = 32;
+    public static final int BYTES_PER_MATERIAL = 32;
+    public static final int BYTES_PER_VERTEX = 32;
+    public static final int BYTES_PER_TRIANGLE = 16;
+
+    private static final int INITIAL_OBJECT_CAPACITY = 16;
+
+    private ByteBuffer cubeData = allocate(INITIAL_OBJECT_CAPACITY * BYTES_PER_CUBE);
+    private ByteBuffer sphereData = allocate(INITIAL_OBJECT_CAPACITY * BYTES_PER_SPHERE);
+    private ByteBuffer materialData = allocate(INITIAL_OBJECT_CAPACITY * BYTES_PER_MATERIAL);
+    private ByteBuffer vertexData = allocate(INITIAL_OBJECT_CAPACITY * BYTES_PER_VERTEX);
+    private ByteBuffer triangleData = allocate(INITIAL_OBJECT_CAPACITY * BYTES_PER_TRIANGLE);
+
+    private final DirtyRanges cubeRanges = new DirtyRanges();
+    private final DirtyRanges sphereRanges = new DirtyRanges();
+    private final DirtyRanges materialRanges = new DirtyRanges();
+    private final DirtyRanges vertexRanges = new DirtyRanges();
+    private final DirtyRanges triangleRanges = new DirtyRanges();
+
+    // The objects and their versions at the time they were packed
+    private Cube[] packedCubes = new Cube[INITIAL_OBJECT_CAPACITY];
+    private int[] packedCubeVersions = new int[INITIAL_OBJECT_CAPACITY];
+    private Sphere[] packedSpheres = new Sphere[INITIAL_OBJECT_CAPACITY];
+    private int[] packedSphereVersions = new int[INITIAL_OBJECT_CAPACITY];
+    private Mesh[] packedMeshes = new Mesh[INITIAL_OBJECT_CAPACITY];
+    private int[] packedMeshVersions = new int[INITIAL_OBJECT_CAPACITY];
+
+    private int cubeCount;
+    private int sphereCount;
+    private int meshCount;
+    private int vertexCount;
+    private int triangleCount;
+    private boolean geometryChanged = true;
+    private boolean topologyChanged = true;
+
+    public void pack(List<Cube> cubeList, List<Sphere> sphereList) {
+        pack(cubeList, sphereList, Collections.<Mesh>emptyList());
+    }
+
+    public void pack(List<Cube> cubeList, List<Sphere> sphereList, List<Mesh> meshList) {
+        final int newCubeCount = cubeList.size();
+        final int newSphereCount = sphereList.size();
+        final int newMeshCount = meshList.size();
+
+        if (newCubeCount != cubeCount || newSphereCount != sphereCount) {
+            geometryChanged = true;
+            topologyChanged = true;
+        }
+        // The sphere materials follow the cube materials, so they all move when the cube count changes
+        final boolean sphereMaterialsMoved = newCubeCount != cubeCount;
+
+        // The triangles of a mesh never change, so only a different set of meshes requires repacking them
+        boolean meshesReplaced = newMeshCount != meshCount;
+        for (int i = 0; i < newMeshCount && !meshesReplaced; i++) {
+            meshesReplaced = packedMeshes[i] != meshList.get(i);
+        }
+        final boolean meshMaterialsMoved = newCubeCount + newSphereCount != cubeCount + sphereCount;
+
+        ensureCapacity(newCubeCount, newSphereCount, newMeshCount);
+
+        for (int i = 0; i < newCubeCount; i++) {
+            final Cube cube = cubeList.get(i);
+            if (i >= cubeCount || packedCubes[i] != cube || packedCubeVersions[i] != cube.getVersion()) {
+                packCube(i, cube);
+                packedCubes[i] = cube;
+                packedCubeVersions[i] = cube.getVersion();
+            }
+        }
+
+        for (int i = 0; i < newSphereCount; i++) {
+            final Sphere sphere = sphereList.get(i);
+            if (sphereMaterialsMoved || i >= sphereCount || packedSpheres[i] != sphere || packedSphereVersions[i] != sphere.getVersion()) {
+                packSphere(i, newCubeCount + i, sphere);
+                packedSpheres[i] = sphere;
+                packedSphereVersions[i] = sphere.getVersion();
+            }
+        }
+
+        final int firstMeshMaterial = newCubeCount + newSphereCount;
+        for (int i = 0; i < newMeshCount; i++) {
+            final Mesh mesh = meshList.get(i);
+            if (meshesReplaced || meshMaterialsMoved || packedMeshVersions[i] != mesh.getVersion()) {
+                packMaterial(firstMeshMaterial + i, mesh.getColor(), TraceScene.materialCode(mesh.getMaterial()), mesh.getParameter0());
+                packedMeshVersions[i] = mesh.getVersion();
+            }
+        }
+        if (meshesReplaced) {
+            topologyChanged = true;
+        }
+        if (meshesReplaced || meshMaterialsMoved) {
+            packTriangles(meshList, firstMeshMaterial);
+        }
+
+        // Removed objects must not be kept alive
+        if (newMeshCount < meshCount) {
+            Arrays.fill(packedMeshes, newMeshCount, meshCount, null);
+        }
+        for (int i = 0; i < newMeshCount; i++) {
+            packedMeshes[i] = meshList.get(i);
+        }
+        if (newCubeCount < cubeCount) {
+            Arrays.fill(packedCubes, newCubeCount, cubeCount, null);
+        }
+        if (newSphereCount < sphereCount) {
+            Arrays.fill(packedSpheres, newSphereCount, sphereCount, null);
+        }
+
+        cubeCount = newCubeCount;
+        sphereCount = newSphereCount;
+        meshCount = newMeshCount;
+    }
+
+    private void packCube(int index, Cube cube) {
+        final int offset = index * BYTES_PER_CUBE;
+
+        boolean boundsChanged = putVector(cubeData, offset, cube.getMin());
+        boundsChanged |= putVector(cubeData, offset + 16, cube.getMax());
+        final boolean changed = putInt(cubeData, offset + 12, index) | boundsChanged;
+
+        if (changed) {
+            cubeRanges.add(offset, offset + BYTES_PER_CUBE);
+        }
+        geometryChanged |= boundsChanged;
+
+        packMaterial(index, cube.getColor(), TraceScene.materialCode(cube.getMaterial()), cube.getParameter0());
+    }
+
+    private void packSphere(int index, int materialIndex, Sphere sphere) {
+        final int offset = index * BYTES_PER_SPHERE;
+
+        boolean boundsChanged = putVector(sphereData, offset, sphere.getCenter());
+        boundsChanged |= putFloat(sphereData, offset + 12, sphere.getRadius());
+        final boolean changed = putInt(sphereData, offset + 16, materialIndex) | boundsChanged;
+
+        if (changed) {
+            sphereRanges.add(offset, offset + BYTES_PER_SPHERE);
+        }
+        geometryChanged |= boundsChanged;
+
+        packMaterial(materialIndex, sphere.getColor(), TraceScene.materialCode(sphere.getMaterial()), sphere.getParameter0());
+    }
+
+    // Packs the vertices and triangles of all meshes, unchanged bytes are not marked dirty
+    private void packTriangles(List<Mesh> meshList, int firstMeshMaterial) {
+        int newVertexCount = 0;
+        int newTriangleCount = 0;
+        for (int i = 0; i < meshList.size(); i++) {
+            newVertexCount += meshList.get(i).getTriangles().vertexCount;
+            newTriangleCount += meshList.get(i).getTriangles().triangleCount;
+        }
+        if (newVertexCount * BYTES_PER_VERTEX > vertexData.capacity()) {
+            vertexData = grow(vertexData, Math.max(newVertexCount * BYTES_PER_VERTEX, vertexData.capacity() * 2));
+        }
+        if (newTriangleCount * BYTES_PER_TRIANGLE > triangleData.capacity()) {
+            triangleData = grow(triangleData, Math.max(newTriangleCount * BYTES_PER_TRIANGLE, triangleData.capacity() * 2));
+        }
+
+        int firstVertex = 0;
+        int firstTriangle = 0;
+        for (int i = 0; i < meshList.size(); i++) {
+            final TriangleMesh triangles = meshList.get(i).getTriangles();
+
+            for (int vertex = 0; vertex < triangles.vertexCount; vertex++) {
+                final int offset = (firstVertex + vertex) * BYTES_PER_VERTEX;
+                boolean changed = false;
+                for (int k = 0; k < 3; k++) {
+                    changed |= putFloat(vertexData, offset + k * 4, triangles.positions[vertex * 3 + k]);
+                    // Meshes without normals get (0, 0, 0), the shader uses the face normal then
+                    changed |= putFloat(vertexData, offset + 16 + k * 4, triangles.hasNormals() ? triangles.normals[vertex * 3 + k] : 0.0f);
+                }
+                if (changed) {
+                    vertexRanges.add(offset, offset + BYTES_PER_VERTEX);
+                    geometryChanged = true;
+                }
+            }
+
+            for (int triangle = 0; triangle < triangles.triangleCount; triangle++) {
+                final int offset = (firstTriangle + triangle) * BYTES_PER_TRIANGLE;
+                boolean changed = false;
+                for (int k = 0; k < 3; k++) {
+                    changed |= putInt(triangleData, offset + k * 4, firstVertex + triangles.indices[triangle * 3 + k]);
+                }
+                geometryChanged |= changed;
+                changed |= putInt(triangleData, offset + 12, firstMeshMaterial + i);
+                if (changed) {
+                    triangleRanges.add(offset, offset + BYTES_PER_TRIANGLE);
+                }
+            }
+
+            firstVertex += triangles.vertexCount;
+            firstTriangle += triangles.triangleCount;
+        }
+
+        if (newVertexCount != vertexCount || newTriangleCount != triangleCount) {
+            geometryChanged = true;
+        }
+        vertexCount = newVertexCount;
+        triangleCount = newTriangleCount;
+    }
+
+    private void packMaterial(int index, Vector color, int type, float parameter0) {
+        final int offset = index * BYTES_PER_MATERIAL;
+
+        boolean changed = putVector(materialData, offset, color);
+        changed |= putInt(materialData, offset + 12, type);
+        changed |= putFloat(materialData, offset + 16, parameter0);
+
+        if (changed) {
+            materialRanges.add(offset, offset + BYTES_PER_MATERIAL);
+        }
+    }
+
+    private void ensureCapacity(int newCubeCount, int newSphereCount, int newMeshCount) {
+        if (newCubeCount > packedCubes.length) {
+            final int capacity = Math.max(newCubeCount, packedCubes.length * 2);
+            packedCubes = Arrays.copyOf(packedCubes, capacity);
+            packedCubeVersions = Arrays.copyOf(packedCubeVersions, capacity);
+            cubeData = grow(cubeData, capacity * BYTES_PER_CUBE);
+        }
+
+        if (newSphereCount > packedSpheres.length) {
+            final int capacity = Math.max(newSphereCount, packedSpheres.length * 2);
+            packedSpheres = Arrays.copyOf(packedSpheres, capacity);
+            packedSphereVersions = Arrays.copyOf(packedSphereVersions, capacity);
+            sphereData = grow(sphereData, capacity * BYTES_PER_SPHERE);
+        }
+
+        if (newMeshCount > packedMeshes.length) {
+            final int capacity = Math.max(newMeshCount, packedMeshes.length * 2);
+            packedMeshes = Arrays.copyOf(packedMeshes, capacity);
+            packedMeshVersions = Arrays.copyOf(packedMeshVersions, capacity);
+        }
+
+        final int materialCount = newCubeCount + newSphereCount + newMeshCount;
+        if (materialCount * BYTES_PER_MATERIAL > materialData.capacity()) {
+            materialData = grow(materialData, Math.max(materialCount * BYTES_PER_MATERIAL, materialData.capacity() * 2));
+        }
+    }
+
+    // Called once the dirty ranges were uploaded
+    public void clearDirty() {
+        cubeRanges.clear();
+        sphereRanges.clear();
+        materialRanges.clear();
+        vertexRanges.clear();
+        triangleRanges.clear();
+        geometryChanged = false;
+        topologyChanged = false;
+    }
+
+    // True if anything has to be uploaded, which means that previously rendered images are outdated
+    public boolean isChanged() {
+        return geometryChanged || !cubeRanges.isEmpty() || !sphereRanges.isEmpty() || !materialRanges.isEmpty()
+                || !vertexRanges.isEmpty() || !triangleRanges.isEmpty();
+    }
+
+    // True if bounds were changed or objects were added or removed, which means that the bvh is outdated
+    public boolean isGeometryChanged() {
+        return geometryChanged;
+    }
+
+    // True if objects were added, removed or replaced, the bvh has to be rebuilt (moved objects only need a refit)
+    public boolean isTopologyChanged() {
+        return topologyChanged;
+    }
+
+    public ByteBuffer getCubeData() {
+        return cubeData;
+    }
+
+    public ByteBuffer getSphereData() {
+        return sphereData;
+    }
+
+    public ByteBuffer getMaterialData() {
+        return materialData;
+    }
+
+    public ByteBuffer getVertexData() {
+        return vertexData;
+    }
+
+    public ByteBuffer getTriangleData() {
+        return triangleData;
+    }
+
+    public DirtyRanges getCubeRanges() {
+        return cubeRanges;
+    }
+
+    public DirtyRanges getSphereRanges() {
+        return sphereRanges;
+    }
+
+    public DirtyRanges getMaterialRanges() {
+        return materialRanges;
+    }
+
+    public DirtyRanges getVertexRanges() {
+        return vertexRanges;
+    }
+
+    public DirtyRanges getTriangleRanges() {
+        return triangleRanges;
+    }
+
+    public int getCubeCount() {
+        return cubeCount;
+    }
+
+    public int getSphereCount() {
+        return sphereCount;
+    }
+
+    public int getMeshCount() {
+        return meshCount;
+    }
+
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    // The old contents are kept, the gpu side notices the bigger capacity and uploads everything again
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        final ByteBuffer grown = allocate(capacity);
+        buffer.clear();
+        grown.put(buffer);
+        grown.clear();
+        return grown;
+    }
+
+    // The following functions only write if the value differs and return whether they did
+    private static boolean putVector(ByteBuffer buffer, int offset, Vector vector) {
+        boolean changed = putFloat(buffer, offset, vector.x);
+        changed |= putFloat(buffer, offset + 4, vector.y);
+        changed |= putFloat(buffer, offset + 8, vector.z);
+        return changed;
+    }
+
+    private static boolean putFloat(ByteBuffer buffer, int offset, float value) {
+        if (Float.floatToRawIntBits(buffer.getFloat(offset)) == Float.floatToRawIntBits(value)) {
+            return false;
+        }
+        buffer.putFloat(offset, value);
+        return true;
+    }
+
+    private static boolean putInt(ByteBuffer buffer, int offset, int value) {
+        if (buffer.getInt(offset) == value) {
+            return false;
+        }
+        buffer.putInt(offset, value);
+        return true;
+    }
+}
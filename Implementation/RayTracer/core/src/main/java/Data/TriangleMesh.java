@@ -0,0 +1,40 @@
+package Data;
+
+/**
+ * Indexed triangle mesh as packed arrays, every vertex is unique (see MeshLoader).
+ * Normals and texture coordinates are optional, their arrays are empty if the file had none.
+ * A vertex without a normal in a mesh that has normals gets (0, 0, 0), the tracer then uses the face normal.
+ */
+
+public class TriangleMesh {
+
+    public final int vertexCount;
+    public final float[] positions; // 3 floats per vertex
+    public final float[] normals; // 3 floats per vertex or empty
+    public final float[] textureCoordinates; // 2 floats per vertex or empty
+
+    public final int triangleCount;
+    public final int[] indices; // 3 vertex indices per triangle
+
+    public TriangleMesh(int vertexCount, float[] positions, float[] normals, float[] textureCoordinates, int triangleCount, int[] indices) {
+        if (positions.length < vertexCount * 3 || indices.length < triangleCount * 3
+                || (normals.length != 0 && normals.length < vertexCount * 3)
+                || (textureCoordinates.length != 0 && textureCoordinates.length < vertexCount * 2)) {
+            throw new IllegalArgumentException("Arrays too small for " + vertexCount + " vertices and " + triangleCount + " triangles");
+        }
+        this.vertexCount = vertexCount;
+        this.positions = positions;
+        this.normals = normals;
+        this.textureCoordinates = textureCoordinates;
+        this.triangleCount = triangleCount;
+        this.indices = indices;
+    }
+
+    public boolean hasNormals() {
+        return normals.length != 0;
+    }
+
+    public boolean hasTextureCoordinates() {
+        return textureCoordinates.length != 0;
+    }
+}
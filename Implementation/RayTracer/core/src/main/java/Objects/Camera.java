@@ -0,0 +1,117 @@
+package Objects;
+
+import Util.Geometry;
+import Util.Geometry.Point;
+
+import static Util.MatrixMath.rotateM;
+import static Util.MatrixMath.scaleM;
+import static Util.MatrixMath.setLookAtM;
+import static Util.MatrixMath.translateM;
+
+/**
+ * The positions are kept as floats so that moving the camera every frame doesn't create any garbage.
+ */
+
+public class Camera {
+
+    private final float[] mOriginalMatrix;
+    private final float[] viewMatrix;
+    // Camera properties
+    private float positionX, positionY, positionZ;
+    private float viewCenterX, viewCenterY, viewCenterZ;
+
+    public Camera(Point position, Point viewCenterPosition) {
+        viewMatrix = new float[16];
+        mOriginalMatrix = new float[16];
+        positionX = position.x;
+        positionY = position.y;
+        positionZ = position.z;
+        viewCenterX = viewCenterPosition.x;
+        viewCenterY = viewCenterPosition.y;
+        viewCenterZ = viewCenterPosition.z;
+        updateViewMatrix();
+    }
+
+    public void translateX(float distance) {
+        viewCenterX += distance;
+        positionX += distance;
+        //updateViewMatrix();
+    }
+
+    public void translateY(float distance) {
+        viewCenterY += distance;
+        positionY += distance;
+        //updateViewMatrix();
+    }
+
+    public void translateZ(float distance) {
+        viewCenterZ += distance;
+        positionZ += distance;
+        updateViewMatrix();
+    }
+
+    public void translate(float x,float y){
+        translateM(viewMatrix,0,x,y,0);
+        translateM(mOriginalMatrix,0,x,y,0);
+    }
+
+    public void rotate(Geometry.Rotation rotation) {
+        rotate(rotation.angle, rotation.x, rotation.y, rotation.z);
+    }
+
+    public void rotate(float angle, float x, float y, float z) {
+        rotateM(viewMatrix, 0, angle, x, y, z);
+        rotateM(mOriginalMatrix, 0, angle, x, y, z);
+    }
+
+    private void updateViewMatrix() {
+        setLookAtM(viewMatrix, 0, positionX, positionY, positionZ, viewCenterX, viewCenterY, viewCenterZ, 0f, 1f, 0f);
+        setLookAtM(mOriginalMatrix, 0, positionX, positionY, positionZ, viewCenterX, viewCenterY, viewCenterZ, 0f, 1f, 0f);
+    }
+
+    public void scale(float scaleFactor) {
+        scaleM(viewMatrix,
+                0,
+                mOriginalMatrix,
+                0,
+                scaleFactor,
+                scaleFactor,
+                scaleFactor);
+    }
+
+    public Point getViewCenterPosition() {
+        return new Point(viewCenterX, viewCenterY, viewCenterZ);
+    }
+
+    // Sets the focal point position
+    public void setViewCenterPosition(Point viewCenterPosition) {
+        setViewCenter(viewCenterPosition.x, viewCenterPosition.y, viewCenterPosition.z);
+    }
+
+    public void setViewCenter(float x, float y, float z) {
+        viewCenterX = x;
+        viewCenterY = y;
+        viewCenterZ = z;
+        updateViewMatrix();
+    }
+
+    public Point getPosition() {
+        return new Point(positionX, positionY, positionZ);
+    }
+
+    // Sets the view point position
+    public void setPosition(Point position) {
+        setPosition(position.x, position.y, position.z);
+    }
+
+    public void setPosition(float x, float y, float z) {
+        positionX = x;
+        positionY = y;
+        positionZ = z;
+        updateViewMatrix();
+    }
+
+    public float[] getViewMatrix() {
+        return viewMatrix;
+    }
+}
@@ -15,6 +15,8 @@ public class Cube {
     private Vector color;
     private Material material;
     private float parameter0;
+    // Incremented by every setter so that renderers can tell when the scene data is outdated
+    private int version;
 
     public Cube(Vector min, Vector max, Vector color, Material material, float parameter0) {
         this.min = min;
@@ -30,6 +32,7 @@ public class Cube {
 
     public void setMin(Vector min) {
         this.min = min;
+        version++;
     }
 
     public Vector getMax() {
@@ -38,6 +41,7 @@ public class Cube {
 
     public void setMax(Vector max) {
         this.max = max;
+        version++;
     }
 
     public Vector getColor() {
@@ -46,6 +50,7 @@ public class Cube {
 
     public void setColor(Vector color) {
         this.color = color;
+        version++;
     }
 
     public Material getMaterial() {
@@ -54,6 +59,7 @@ public class Cube {
 
     public void setMaterial(Material material) {
         this.material = material;
+        version++;
     }
 
     public float getParameter0() {
@@ -62,5 +68,10 @@ public class Cube {
 
     public void setParameter0(float parameter0) {
         this.parameter0 = parameter0;
+        version++;
+    }
+
+    public int getVersion() {
+        return version;
     }
 }
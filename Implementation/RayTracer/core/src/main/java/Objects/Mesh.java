@@ -0,0 +1,67 @@
+package Objects;
+
+import Data.TriangleMesh;
+import Util.Geometry.Vector;
+
+/**
+ * Triangle mesh with one material for all of its triangles.
+ * The triangles are shared and never changed, only the material can be set.
+ */
+
+public class Mesh {
+
+    public enum Material {
+        DIFFUSE,
+        METAL,
+        LIGHT
+    }
+
+    private final TriangleMesh triangles;
+    private Vector color;
+    private Material material;
+    private float parameter0;
+    // Incremented by every setter so that renderers can tell when the scene data is outdated
+    private int version;
+
+    public Mesh(TriangleMesh triangles, Vector color, Material material, float parameter0) {
+        this.triangles = triangles;
+        this.color = color;
+        this.material = material;
+        this.parameter0 = parameter0; // Diffuse: Attenuation - Metal: Reflectivity
+    }
+
+    public TriangleMesh getTriangles() {
+        return triangles;
+    }
+
+    public Vector getColor() {
+        return color;
+    }
+
+    public void setColor(Vector color) {
+        this.color = color;
+        version++;
+    }
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    public void setMaterial(Material material) {
+        this.material = material;
+        version++;
+    }
+
+    public float getParameter0() {
+        return parameter0;
+    }
+
+    public void setParameter0(float parameter0) {
+        this.parameter0 = parameter0;
+        version++;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+}
@@ -1,6 +1,5 @@
 package Objects;
 
-import Programs.ShaderProgram;
 import Util.Geometry.Vector;
 
 public class Sphere {
@@ -16,6 +15,8 @@ public class Sphere {
     private Vector color;
     private Material material;
     private float parameter0;
+    // Incremented by every setter so that renderers can tell when the scene data is outdated
+    private int version;
 
     public Sphere(Vector center, float radius, Vector color, Material material, float parameter0) {
         this.center = center;
@@ -31,6 +32,7 @@ public class Sphere {
 
     public void setCenter(Vector center) {
         this.center = center;
+        version++;
     }
 
     public float getRadius() {
@@ -39,6 +41,7 @@ public class Sphere {
 
     public void setRadius(float radius) {
         this.radius = radius;
+        version++;
     }
 
     public Vector getColor() {
@@ -47,6 +50,7 @@ public class Sphere {
 
     public void setColor(Vector color) {
         this.color = color;
+        version++;
     }
 
     public Material getMaterial() {
@@ -55,6 +59,7 @@ public class Sphere {
 
     public void setMaterial(Material material) {
         this.material = material;
+        version++;
     }
 
     public float getParameter0() {
@@ -63,5 +68,10 @@ public class Sphere {
 
     public void setParameter0(float parameter0) {
         this.parameter0 = parameter0;
+        version++;
+    }
+
+    public int getVersion() {
+        return version;
     }
 }
@@ -0,0 +1,137 @@
+package PostProcessingPipeLine;
+
+import Tracing.GuideBuffer;
+
+/**
+ * CPU reference of the edge avoiding a-trous wavelet filter in atrous_denoise.glsl (Dammertz et al. 2010).
+ * Every iteration blurs with a 5x5 B3 spline kernel whose taps are 2^iteration pixels apart,
+ * taps whose color, normal, depth or albedo differ from the center pixel are weighted down so that edges stay sharp.
+ * The blur also flattens real detail like contact shadows, so the more samples were averaged the fewer iterations run,
+ * from MAX_ITERATIONS at 1 spp down to none once the average has MAX_DENOISED_SAMPLES samples.
+ */
+
+public class AtrousDenoiser {
+
+    // The following constants are injected into the shader by DenoisePostEffect
+    public static final int MAX_ITERATIONS = 5;
+    public static final int MAX_DENOISED_SAMPLES = 1 << MAX_ITERATIONS;
+    // Tolerated squared color difference of a single sample, halved every iteration
+    public static final float COLOR_PHI = 8.0f;
+    // Exponent of the normal similarity (dot product of the normals)
+    public static final float NORMAL_PHI = 64.0f;
+    // Tolerated depth difference relative to the depth of the center pixel, per pixel of tap distance
+    public static final float DEPTH_PHI = 0.005f;
+    // Tolerated squared albedo difference
+    public static final float ALBEDO_PHI = 0.02f;
+
+    // 1D B3 spline weights of the taps at distance 0, 1 and 2 (the 2D kernel is their product)
+    private static final float[] KERNEL = {3.0f / 8.0f, 1.0f / 4.0f, 1.0f / 16.0f};
+
+    private final int width;
+    private final int height;
+    // The iterations alternate between the two buffers (the ping pong textures of the gl pass)
+    private final float[][] pingPong;
+
+    public AtrousDenoiser(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pingPong = new float[][]{new float[width * height * 4], new float[width * height * 4]};
+    }
+
+    // Filters color (rgba, layout of the frame buffer) into result, result may be color itself
+    // sampleCount is the number of samples per pixel that were averaged into color
+    public void denoise(float[] color, GuideBuffer guides, int sampleCount, float[] result) {
+        if (guides.width != width || guides.height != height) {
+            throw new IllegalArgumentException("Guide buffer is " + guides.width + "x" + guides.height + " but the denoiser is " + width + "x" + height);
+        }
+
+        final int iterations = iterations(sampleCount);
+        if (iterations == 0 && result != color) {
+            System.arraycopy(color, 0, result, 0, width * height * 4);
+        }
+
+        float[] input = color;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            float[] output = iteration == iterations - 1 ? result : pingPong[iteration % 2];
+            filterPass(input, output, guides, width, height, 1 << iteration, colorPhi(sampleCount, iteration));
+            input = output;
+        }
+    }
+
+    // One iteration less for every doubling of the sample count
+    public static int iterations(int sampleCount) {
+        return Math.max(0, MAX_ITERATIONS - log2(Math.max(1, sampleCount)));
+    }
+
+    // The color tolerance of an iteration: the variance of the average falls with the sample count,
+    // and every iteration works on an already smoother image
+    public static float colorPhi(int sampleCount, int iteration) {
+        return COLOR_PHI / (float) Math.max(1, sampleCount) / (float) (1 << iteration);
+    }
+
+    private static int log2(int value) {
+        return 31 - Integer.numberOfLeadingZeros(value);
+    }
+
+    // One iteration, the same as one dispatch of atrous_denoise.glsl
+    static void filterPass(float[] input, float[] output, GuideBuffer guides, int width, int height, int stepSize, float colorPhi) {
+        final float[] normalDepth = guides.normalDepth;
+        final float[] albedo = guides.albedo;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int center = (y * width + x) * 4;
+                final float colorR = input[center], colorG = input[center + 1], colorB = input[center + 2];
+                final float normalX = normalDepth[center], normalY = normalDepth[center + 1], normalZ = normalDepth[center + 2];
+                final float depthTolerance = DEPTH_PHI * normalDepth[center + 3] * (float) stepSize;
+                final float albedoR = albedo[center], albedoG = albedo[center + 1], albedoB = albedo[center + 2];
+
+                float sumR = 0.0f, sumG = 0.0f, sumB = 0.0f;
+                float weightSum = 0.0f;
+
+                for (int dy = -2; dy <= 2; dy++) {
+                    final int tapY = y + dy * stepSize;
+                    if (tapY < 0 || tapY >= height) {
+                        continue;
+                    }
+                    for (int dx = -2; dx <= 2; dx++) {
+                        final int tapX = x + dx * stepSize;
+                        if (tapX < 0 || tapX >= width) {
+                            continue;
+                        }
+                        final int tap = (tapY * width + tapX) * 4;
+
+                        final float deltaR = input[tap] - colorR, deltaG = input[tap + 1] - colorG, deltaB = input[tap + 2] - colorB;
+                        final float colorWeight = (float) Math.exp(-(deltaR * deltaR + deltaG * deltaG + deltaB * deltaB) / colorPhi);
+
+                        final float normalDot = normalX * normalDepth[tap] + normalY * normalDepth[tap + 1] + normalZ * normalDepth[tap + 2];
+                        final float normalWeight = (float) Math.pow(Math.max(0.0f, normalDot), NORMAL_PHI);
+
+                        final float depthWeight = (float) Math.exp(-Math.abs(normalDepth[tap + 3] - normalDepth[center + 3]) / depthTolerance);
+
+                        final float albedoDeltaR = albedo[tap] - albedoR, albedoDeltaG = albedo[tap + 1] - albedoG, albedoDeltaB = albedo[tap + 2] - albedoB;
+                        final float albedoWeight = (float) Math.exp(-(albedoDeltaR * albedoDeltaR + albedoDeltaG * albedoDeltaG + albedoDeltaB * albedoDeltaB) / ALBEDO_PHI);
+
+                        final float weight = KERNEL[Math.abs(dx)] * KERNEL[Math.abs(dy)] * colorWeight * normalWeight * depthWeight * albedoWeight;
+                        sumR += input[tap] * weight;
+                        sumG += input[tap + 1] * weight;
+                        sumB += input[tap + 2] * weight;
+                        weightSum += weight;
+                    }
+                }
+
+                // The sky has no normal, its pixels (and pixels without similar neighbours) keep their color
+                if (weightSum > 0.0f) {
+                    output[center] = sumR / weightSum;
+                    output[center + 1] = sumG / weightSum;
+                    output[center + 2] = sumB / weightSum;
+                } else {
+                    output[center] = colorR;
+                    output[center + 1] = colorG;
+                    output[center + 2] = colorB;
+                }
+                output[center + 3] = 1.0f;
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package Tracing;
+
+/**
+ * Keeps track of how many frames were blended into the running average of a progressive render.
+ * The average is thrown away (frame index 0) as soon as the camera, the projection,
+ * the image size or the scene changes, otherwise every frame adds its samples to it.
+ * If only the camera changed, the first frame of the new average may reproject the old one (see Reprojection).
+ */
+
+public class Accumulation {
+
+    private final float[] lastInvertedViewProjectionMatrix = new float[16];
+    private int lastWidth = -1;
+    private int lastHeight = -1;
+    private int frameIndex = -1;
+    private boolean reprojectable;
+
+    // Returns the index of the frame that is about to be rendered, 0 means that the average starts over
+    public int nextFrame(float[] invertedViewProjectionMatrix, int width, int height, boolean sceneChanged) {
+        boolean reset = sceneChanged || frameIndex < 0 || width != lastWidth || height != lastHeight;
+        boolean cameraChanged = false;
+
+        for (int i = 0; i < 16; i++) {
+            if (lastInvertedViewProjectionMatrix[i] != invertedViewProjectionMatrix[i]) {
+                lastInvertedViewProjectionMatrix[i] = invertedViewProjectionMatrix[i];
+                cameraChanged = true;
+            }
+        }
+
+        // The old average still shows the same scene in the same size, only from somewhere else
+        reprojectable = cameraChanged && !reset;
+        reset |= cameraChanged;
+
+        lastWidth = width;
+        lastHeight = height;
+        frameIndex = reset ? 0 : frameIndex + 1;
+        return frameIndex;
+    }
+
+    // Returns true if the next frame would start a new average (scene changes are not known here)
+    public boolean isOutdated(float[] invertedViewProjectionMatrix, int width, int height) {
+        if (frameIndex < 0 || width != lastWidth || height != lastHeight) {
+            return true;
+        }
+        for (int i = 0; i < 16; i++) {
+            if (lastInvertedViewProjectionMatrix[i] != invertedViewProjectionMatrix[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // True if the current frame started a new average only because the camera changed, the previous average can be reprojected
+    public boolean isReprojectable() {
+        return reprojectable;
+    }
+
+    // Forces the next frame to start a new average
+    public void reset() {
+        frameIndex = -1;
+    }
+
+    // Weight of the newest frame in the running average
+    public static float blendFactor(int frameIndex) {
+        return 1.0f / (float) (frameIndex + 1);
+    }
+
+    public int getFrameIndex() {
+        return frameIndex;
+    }
+}
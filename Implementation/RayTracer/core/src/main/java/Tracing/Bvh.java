@@ -0,0 +1,436 @@
+package Tracing;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import Objects.Cube;
+import Objects.Sphere;
+import Util.Geometry.Vector;
+
+/**
+ * Bounding volume hierarchy over all cubes, spheres and triangles of a TraceScene, built with the
+ * surface area heuristic (binned) and flattened into a compact node array in depth-first order.
+ *
+ * Node layout (also the std430 layout of the BvhNode struct in compute_shader.glsl):
+ * boundsMin (3 floats), leftOrFirst (int), boundsMax (3 floats), count (int)
+ * Interior nodes have count == 0, their left child is the next node and leftOrFirst is the right child.
+ * Leaf nodes reference count primitives starting at leftOrFirst in the primitive reference array.
+ * A primitive reference is (index << PRIMITIVE_TYPE_BITS) | type with type being PRIMITIVE_CUBE, PRIMITIVE_SPHERE or PRIMITIVE_TRIANGLE.
+ * Moved cubes and spheres are handled by refitting the node bounds, only added or removed primitives need a new build.
+ */
+
+public class Bvh {
+
+    // The following constants have to have the same value in the shader
+    public static final int PRIMITIVE_CUBE = 0;
+    public static final int PRIMITIVE_SPHERE = 1;
+    public static final int PRIMITIVE_TRIANGLE = 2;
+    public static final int PRIMITIVE_TYPE_BITS = 2;
+    public static final int STACK_SIZE = 32;
+
+    public static final int BYTES_PER_NODE = 32;
+    public static final int BYTES_PER_PRIMITIVE_REFERENCE = 4;
+
+    // Leaves never get deeper than this so that the traversal stack can't overflow
+    public static final int MAX_DEPTH = STACK_SIZE - 2;
+
+    private static final int BIN_COUNT = 12;
+    private static final int MAX_LEAF_SIZE = 4;
+    private static final float TRAVERSAL_COST = 1.0f;
+    private static final float INTERSECTION_COST = 1.0f;
+    private static final float EMPTY_BOUNDS = 1e30f;
+    private static final int PRIMITIVE_TYPE_MASK = (1 << PRIMITIVE_TYPE_BITS) - 1;
+
+    private final float[] nodeBounds; // 6 floats per node: min x, y, z, max x, y, z
+    private final int[] nodeData; // 2 ints per node: leftOrFirst, count
+    private final int[] primitiveReferences;
+    private final int cubeCount;
+    private final int sphereCount;
+    private int nodeCount;
+    private int depth;
+
+    // Build state (the bounds and the order are kept for refitting)
+    private final float[] primitiveBounds;
+    private final float[] primitiveCentroids;
+    private final int[] order;
+    private final float[] binBounds = new float[BIN_COUNT * 6];
+    private final int[] binCounts = new int[BIN_COUNT];
+    private final float[] rightAreas = new float[BIN_COUNT];
+
+    private Bvh(int cubeCount, int sphereCount, int primitiveCount) {
+        this.cubeCount = cubeCount;
+        this.sphereCount = sphereCount;
+        // A binary tree with at most one primitive per leaf has less than 2n nodes
+        final int maxNodes = Math.max(1, 2 * primitiveCount - 1);
+        nodeBounds = new float[maxNodes * 6];
+        nodeData = new int[maxNodes * 2];
+        primitiveReferences = new int[primitiveCount];
+        primitiveBounds = new float[primitiveCount * 6];
+        primitiveCentroids = new float[primitiveCount * 3];
+        order = new int[primitiveCount];
+    }
+
+    public static Bvh build(TraceScene scene) {
+        final int primitiveCount = scene.cubeCount + scene.sphereCount + scene.triangleCount;
+        final Bvh bvh = new Bvh(scene.cubeCount, scene.sphereCount, primitiveCount);
+
+        for (int i = 0; i < scene.cubeCount; i++) {
+            final int v = i * 3;
+            bvh.setCubeBounds(i, scene.cubeMin[v], scene.cubeMin[v + 1], scene.cubeMin[v + 2], scene.cubeMax[v], scene.cubeMax[v + 1], scene.cubeMax[v + 2]);
+        }
+
+        for (int i = 0; i < scene.sphereCount; i++) {
+            final int v = i * 3;
+            bvh.setSphereBounds(scene.cubeCount + i, scene.sphereCenter[v], scene.sphereCenter[v + 1], scene.sphereCenter[v + 2], scene.sphereRadius[i]);
+        }
+
+        for (int i = 0; i < scene.triangleCount; i++) {
+            final int primitive = scene.cubeCount + scene.sphereCount + i;
+            final int a = scene.triangleIndices[i * 3] * 3;
+            final int b = scene.triangleIndices[i * 3 + 1] * 3;
+            final int c = scene.triangleIndices[i * 3 + 2] * 3;
+            final float[] positions = scene.vertexPositions;
+            for (int axis = 0; axis < 3; axis++) {
+                bvh.primitiveBounds[primitive * 6 + axis] = Math.min(positions[a + axis], Math.min(positions[b + axis], positions[c + axis]));
+                bvh.primitiveBounds[primitive * 6 + 3 + axis] = Math.max(positions[a + axis], Math.max(positions[b + axis], positions[c + axis]));
+            }
+        }
+
+        for (int primitive = 0; primitive < primitiveCount; primitive++) {
+            for (int axis = 0; axis < 3; axis++) {
+                bvh.primitiveCentroids[primitive * 3 + axis] = (bvh.primitiveBounds[primitive * 6 + axis] + bvh.primitiveBounds[primitive * 6 + 3 + axis]) * 0.5f;
+            }
+            bvh.order[primitive] = primitive;
+        }
+
+        bvh.nodeCount = 1;
+        bvh.buildNode(0, 0, primitiveCount, 1);
+
+        for (int i = 0; i < primitiveCount; i++) {
+            final int primitive = bvh.order[i];
+            if (primitive < scene.cubeCount) {
+                bvh.primitiveReferences[i] = primitiveReference(primitive, PRIMITIVE_CUBE);
+            } else if (primitive < scene.cubeCount + scene.sphereCount) {
+                bvh.primitiveReferences[i] = primitiveReference(primitive - scene.cubeCount, PRIMITIVE_SPHERE);
+            } else {
+                bvh.primitiveReferences[i] = primitiveReference(primitive - scene.cubeCount - scene.sphereCount, PRIMITIVE_TRIANGLE);
+            }
+        }
+
+        return bvh;
+    }
+
+    // Updates the bounds of all nodes to the current cubes and spheres, the tree itself stays the same.
+    // Only valid for the primitives the bvh was built with, the traversal gets slower the further they moved since the build
+    public void refit(List<Cube> cubeList, List<Sphere> sphereList) {
+        if (cubeList.size() != cubeCount || sphereList.size() != sphereCount) {
+            throw new IllegalArgumentException("The bvh was built for " + cubeCount + " cubes and " + sphereCount
+                    + " spheres, not for " + cubeList.size() + " and " + sphereList.size() + ".");
+        }
+
+        for (int i = 0; i < cubeCount; i++) {
+            final Vector min = cubeList.get(i).getMin();
+            final Vector max = cubeList.get(i).getMax();
+            setCubeBounds(i, min.x, min.y, min.z, max.x, max.y, max.z);
+        }
+        for (int i = 0; i < sphereCount; i++) {
+            final Vector center = sphereList.get(i).getCenter();
+            setSphereBounds(cubeCount + i, center.x, center.y, center.z, sphereList.get(i).getRadius());
+        }
+
+        // The root of an empty scene is an empty leaf
+        if (primitiveReferences.length == 0) {
+            return;
+        }
+
+        // Children always come after their parent, so going backwards updates them first
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            final int count = nodeData[node * 2 + 1];
+            if (count > 0) {
+                computeBounds(node, nodeData[node * 2], count);
+            } else {
+                final int b = node * 6;
+                final int left = (node + 1) * 6;
+                final int right = nodeData[node * 2] * 6;
+                for (int axis = 0; axis < 3; axis++) {
+                    nodeBounds[b + axis] = Math.min(nodeBounds[left + axis], nodeBounds[right + axis]);
+                    nodeBounds[b + 3 + axis] = Math.max(nodeBounds[left + 3 + axis], nodeBounds[right + 3 + axis]);
+                }
+            }
+        }
+    }
+
+    // Cubes can be defined with min > max, the intersection handles that so the bounds have to as well
+    private void setCubeBounds(int primitive, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        final int p = primitive * 6;
+        primitiveBounds[p] = Math.min(minX, maxX);
+        primitiveBounds[p + 1] = Math.min(minY, maxY);
+        primitiveBounds[p + 2] = Math.min(minZ, maxZ);
+        primitiveBounds[p + 3] = Math.max(minX, maxX);
+        primitiveBounds[p + 4] = Math.max(minY, maxY);
+        primitiveBounds[p + 5] = Math.max(minZ, maxZ);
+    }
+
+    private void setSphereBounds(int primitive, float x, float y, float z, float radius) {
+        final int p = primitive * 6;
+        final float r = Math.abs(radius);
+        primitiveBounds[p] = x - r;
+        primitiveBounds[p + 1] = y - r;
+        primitiveBounds[p + 2] = z - r;
+        primitiveBounds[p + 3] = x + r;
+        primitiveBounds[p + 4] = y + r;
+        primitiveBounds[p + 5] = z + r;
+    }
+
+    public static int primitiveReference(int index, int type) {
+        return (index << PRIMITIVE_TYPE_BITS) | type;
+    }
+
+    public static int primitiveIndex(int reference) {
+        return reference >>> PRIMITIVE_TYPE_BITS;
+    }
+
+    public static int primitiveType(int reference) {
+        return reference & PRIMITIVE_TYPE_MASK;
+    }
+
+    private void buildNode(int node, int first, int count, int nodeDepth) {
+        depth = Math.max(depth, nodeDepth);
+        computeBounds(node, first, count);
+
+        if (count <= 1 || nodeDepth >= MAX_DEPTH) {
+            makeLeaf(node, first, count);
+            return;
+        }
+
+        // Bounds of the centroids decide the bin placement
+        float centroidMinX = Float.MAX_VALUE, centroidMinY = Float.MAX_VALUE, centroidMinZ = Float.MAX_VALUE;
+        float centroidMaxX = -Float.MAX_VALUE, centroidMaxY = -Float.MAX_VALUE, centroidMaxZ = -Float.MAX_VALUE;
+        for (int i = first; i < first + count; i++) {
+            final int c = order[i] * 3;
+            centroidMinX = Math.min(centroidMinX, primitiveCentroids[c]);
+            centroidMinY = Math.min(centroidMinY, primitiveCentroids[c + 1]);
+            centroidMinZ = Math.min(centroidMinZ, primitiveCentroids[c + 2]);
+            centroidMaxX = Math.max(centroidMaxX, primitiveCentroids[c]);
+            centroidMaxY = Math.max(centroidMaxY, primitiveCentroids[c + 1]);
+            centroidMaxZ = Math.max(centroidMaxZ, primitiveCentroids[c + 2]);
+        }
+        final float[] centroidMin = {centroidMinX, centroidMinY, centroidMinZ};
+        final float[] centroidExtent = {centroidMaxX - centroidMinX, centroidMaxY - centroidMinY, centroidMaxZ - centroidMinZ};
+
+        // Find the cheapest split plane over all axes and bin borders
+        float bestCost = Float.MAX_VALUE;
+        int bestAxis = -1;
+        int bestBin = -1;
+
+        for (int axis = 0; axis < 3; axis++) {
+            if (centroidExtent[axis] <= 0.0f) {
+                continue;
+            }
+
+            fillBins(first, count, axis, centroidMin[axis], centroidExtent[axis]);
+
+            // Sweep from the right to get the area and count right of every border
+            float minX = EMPTY_BOUNDS, minY = EMPTY_BOUNDS, minZ = EMPTY_BOUNDS;
+            float maxX = -EMPTY_BOUNDS, maxY = -EMPTY_BOUNDS, maxZ = -EMPTY_BOUNDS;
+            for (int bin = BIN_COUNT - 1; bin > 0; bin--) {
+                final int b = bin * 6;
+                if (binCounts[bin] > 0) {
+                    minX = Math.min(minX, binBounds[b]);
+                    minY = Math.min(minY, binBounds[b + 1]);
+                    minZ = Math.min(minZ, binBounds[b + 2]);
+                    maxX = Math.max(maxX, binBounds[b + 3]);
+                    maxY = Math.max(maxY, binBounds[b + 4]);
+                    maxZ = Math.max(maxZ, binBounds[b + 5]);
+                }
+                rightAreas[bin] = surfaceArea(minX, minY, minZ, maxX, maxY, maxZ);
+            }
+
+            // Sweep from the left and evaluate the sah for every border
+            minX = EMPTY_BOUNDS; minY = EMPTY_BOUNDS; minZ = EMPTY_BOUNDS;
+            maxX = -EMPTY_BOUNDS; maxY = -EMPTY_BOUNDS; maxZ = -EMPTY_BOUNDS;
+            int leftCount = 0;
+            for (int bin = 0; bin < BIN_COUNT - 1; bin++) {
+                final int b = bin * 6;
+                if (binCounts[bin] > 0) {
+                    minX = Math.min(minX, binBounds[b]);
+                    minY = Math.min(minY, binBounds[b + 1]);
+                    minZ = Math.min(minZ, binBounds[b + 2]);
+                    maxX = Math.max(maxX, binBounds[b + 3]);
+                    maxY = Math.max(maxY, binBounds[b + 4]);
+                    maxZ = Math.max(maxZ, binBounds[b + 5]);
+                }
+                leftCount += binCounts[bin];
+                final int rightCount = count - leftCount;
+                if (leftCount == 0 || rightCount == 0) {
+                    continue;
+                }
+
+                final float cost = surfaceArea(minX, minY, minZ, maxX, maxY, maxZ) * leftCount + rightAreas[bin + 1] * rightCount;
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestBin = bin;
+                }
+            }
+        }
+
+        // All centroids in one spot, no plane can separate them
+        if (bestAxis == -1) {
+            if (count <= MAX_LEAF_SIZE) {
+                makeLeaf(node, first, count);
+            } else {
+                splitNode(node, first, count, count / 2, nodeDepth);
+            }
+            return;
+        }
+
+        final int b = node * 6;
+        final float parentArea = surfaceArea(nodeBounds[b], nodeBounds[b + 1], nodeBounds[b + 2], nodeBounds[b + 3], nodeBounds[b + 4], nodeBounds[b + 5]);
+        final float splitCost = TRAVERSAL_COST + INTERSECTION_COST * bestCost / parentArea;
+        final float leafCost = INTERSECTION_COST * count;
+
+        if (splitCost >= leafCost && count <= MAX_LEAF_SIZE) {
+            makeLeaf(node, first, count);
+            return;
+        }
+
+        // Partition the primitives in place by their bin
+        final float binScale = BIN_COUNT / centroidExtent[bestAxis];
+        int left = first;
+        int right = first + count - 1;
+        while (left <= right) {
+            if (binIndex(primitiveCentroids[order[left] * 3 + bestAxis], centroidMin[bestAxis], binScale) <= bestBin) {
+                left++;
+            } else {
+                final int swap = order[left];
+                order[left] = order[right];
+                order[right] = swap;
+                right--;
+            }
+        }
+
+        splitNode(node, first, count, left - first, nodeDepth);
+    }
+
+    // Depth-first layout: the left child directly follows its parent, the right child follows the whole left subtree
+    private void splitNode(int node, int first, int count, int leftCount, int nodeDepth) {
+        final int leftChild = nodeCount++;
+        buildNode(leftChild, first, leftCount, nodeDepth + 1);
+
+        final int rightChild = nodeCount++;
+        buildNode(rightChild, first + leftCount, count - leftCount, nodeDepth + 1);
+
+        nodeData[node * 2] = rightChild;
+        nodeData[node * 2 + 1] = 0;
+    }
+
+    private void makeLeaf(int node, int first, int count) {
+        nodeData[node * 2] = first;
+        nodeData[node * 2 + 1] = count;
+    }
+
+    private void computeBounds(int node, int first, int count) {
+        final int b = node * 6;
+        nodeBounds[b] = EMPTY_BOUNDS;
+        nodeBounds[b + 1] = EMPTY_BOUNDS;
+        nodeBounds[b + 2] = EMPTY_BOUNDS;
+        nodeBounds[b + 3] = -EMPTY_BOUNDS;
+        nodeBounds[b + 4] = -EMPTY_BOUNDS;
+        nodeBounds[b + 5] = -EMPTY_BOUNDS;
+
+        for (int i = first; i < first + count; i++) {
+            final int p = order[i] * 6;
+            for (int axis = 0; axis < 3; axis++) {
+                nodeBounds[b + axis] = Math.min(nodeBounds[b + axis], primitiveBounds[p + axis]);
+                nodeBounds[b + 3 + axis] = Math.max(nodeBounds[b + 3 + axis], primitiveBounds[p + 3 + axis]);
+            }
+        }
+    }
+
+    private void fillBins(int first, int count, int axis, float centroidMin, float centroidExtent) {
+        for (int bin = 0; bin < BIN_COUNT; bin++) {
+            binCounts[bin] = 0;
+            final int b = bin * 6;
+            binBounds[b] = EMPTY_BOUNDS;
+            binBounds[b + 1] = EMPTY_BOUNDS;
+            binBounds[b + 2] = EMPTY_BOUNDS;
+            binBounds[b + 3] = -EMPTY_BOUNDS;
+            binBounds[b + 4] = -EMPTY_BOUNDS;
+            binBounds[b + 5] = -EMPTY_BOUNDS;
+        }
+
+        final float binScale = BIN_COUNT / centroidExtent;
+        for (int i = first; i < first + count; i++) {
+            final int primitive = order[i];
+            final int bin = binIndex(primitiveCentroids[primitive * 3 + axis], centroidMin, binScale);
+            binCounts[bin]++;
+
+            final int b = bin * 6;
+            final int p = primitive * 6;
+            for (int k = 0; k < 3; k++) {
+                binBounds[b + k] = Math.min(binBounds[b + k], primitiveBounds[p + k]);
+                binBounds[b + 3 + k] = Math.max(binBounds[b + 3 + k], primitiveBounds[p + 3 + k]);
+            }
+        }
+    }
+
+    private static int binIndex(float centroid, float centroidMin, float binScale) {
+        return Math.min(BIN_COUNT - 1, (int) ((centroid - centroidMin) * binScale));
+    }
+
+    private static float surfaceArea(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        final float x = maxX - minX;
+        final float y = maxY - minY;
+        final float z = maxZ - minZ;
+        if (x < 0.0f || y < 0.0f || z < 0.0f) {
+            return 0.0f;
+        }
+        return 2.0f * (x * y + y * z + z * x);
+    }
+
+    // Writes all nodes in the std430 layout of the BvhNode struct
+    public void writeNodes(ByteBuffer buffer) {
+        for (int node = 0; node < nodeCount; node++) {
+            final int b = node * 6;
+            buffer.putFloat(nodeBounds[b]);
+            buffer.putFloat(nodeBounds[b + 1]);
+            buffer.putFloat(nodeBounds[b + 2]);
+            buffer.putInt(nodeData[node * 2]);
+            buffer.putFloat(nodeBounds[b + 3]);
+            buffer.putFloat(nodeBounds[b + 4]);
+            buffer.putFloat(nodeBounds[b + 5]);
+            buffer.putInt(nodeData[node * 2 + 1]);
+        }
+    }
+
+    public void writePrimitiveReferences(ByteBuffer buffer) {
+        for (int reference : primitiveReferences) {
+            buffer.putInt(reference);
+        }
+    }
+
+    public float[] getNodeBounds() {
+        return nodeBounds;
+    }
+
+    public int[] getNodeData() {
+        return nodeData;
+    }
+
+    public int[] getPrimitiveReferences() {
+        return primitiveReferences;
+    }
+
+    public int getPrimitiveCount() {
+        return primitiveReferences.length;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+}
@@ -0,0 +1,248 @@
+package Tracing;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+
+import static Util.MatrixMath.multiplyMV;
+
+/**
+ * Multithreaded CPU reference implementation of the compute shader path.
+ * The image is split into tiles which are traced in parallel on a ForkJoinPool,
+ * every pixel is traced exactly like one shader invocation of compute_shader.glsl.
+ * The camera rays of a tile row are intersected in packets, the PacketIntersector decides whether that happens with SIMD.
+ */
+
+public class CpuRaytracer {
+
+    public static final int DEFAULT_TILE_SIZE = 16;
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+    private final PacketIntersector.Factory packetIntersectors;
+    // Rays traced by all renders so far, for throughput measurements
+    private final AtomicLong tracedRays = new AtomicLong();
+    private int rouletteMinBounces = PathTracer.ROULETTE_MIN_BOUNCES;
+
+    public CpuRaytracer() {
+        this(ForkJoinPool.commonPool(), DEFAULT_TILE_SIZE);
+    }
+
+    public CpuRaytracer(ForkJoinPool pool, int tileSize) {
+        this(pool, tileSize, ScalarPacketIntersector.FACTORY);
+    }
+
+    public CpuRaytracer(ForkJoinPool pool, int tileSize, PacketIntersector.Factory packetIntersectors) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size has to be at least 1 but was " + tileSize);
+        }
+        this.pool = pool;
+        this.tileSize = tileSize;
+        this.packetIntersectors = packetIntersectors;
+    }
+
+    // Renders the scene into frameBuffer (rgba floats, row 0 is the bottom row just like in the gl texture)
+    // The matrices are the same ones that are passed to ComputeShaderProgram.setUniforms
+    public void render(float[] frameBuffer, int width, int height, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, List<Cube> cubeList, List<Sphere> sphereList) {
+        render(frameBuffer, width, height, invertedViewProjectionMatrix, invertedViewMatrix, cubeList, sphereList, 0);
+    }
+
+    // Progressive version: frame 0 overwrites frameBuffer, later frames are blended into the running average it holds
+    public void render(float[] frameBuffer, int width, int height, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, List<Cube> cubeList, List<Sphere> sphereList, int frameIndex) {
+        render(frameBuffer, width, height, invertedViewProjectionMatrix, invertedViewMatrix, cubeList, sphereList, Collections.<Mesh>emptyList(), frameIndex);
+    }
+
+    public void render(float[] frameBuffer, int width, int height, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, List<Cube> cubeList, List<Sphere> sphereList, List<Mesh> meshList, int frameIndex) {
+        render(frameBuffer, width, height, invertedViewProjectionMatrix, invertedViewMatrix, new TraceScene(cubeList, sphereList, meshList), frameIndex);
+    }
+
+    // Renders a scene that was already taken apart, e.g. one loaded from a scene file
+    public void render(float[] frameBuffer, int width, int height, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, TraceScene scene, int frameIndex) {
+        render(frameBuffer, width, height, invertedViewProjectionMatrix, invertedViewMatrix, scene, Bvh.build(scene), frameIndex);
+    }
+
+    // The bvh has to be built from scene, renders of a static scene can share it between frames
+    public void render(float[] frameBuffer, int width, int height, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, TraceScene scene, Bvh bvh, int frameIndex) {
+        render(frameBuffer, null, width, height, invertedViewProjectionMatrix, invertedViewMatrix, scene, bvh, frameIndex);
+    }
+
+    // Also writes the primary hits of this frame into guides (if not null), the input of the AtrousDenoiser
+    public void render(float[] frameBuffer, GuideBuffer guides, int width, int height, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, TraceScene scene, Bvh bvh, int frameIndex) {
+        if (frameBuffer.length < width * height * 4) {
+            throw new IllegalArgumentException("Frame buffer too small for " + width + "x" + height + " rgba pixels");
+        }
+        if (guides != null && (guides.width != width || guides.height != height)) {
+            throw new IllegalArgumentException("Guide buffer is " + guides.width + "x" + guides.height + " but the frame is " + width + "x" + height);
+        }
+
+        Frame frame = new Frame(frameBuffer, guides, width, height, scene, bvh, frameIndex);
+        frame.setCamera(invertedViewProjectionMatrix, invertedViewMatrix);
+
+        pool.invoke(new TileTask(frame, 0, 0, width, height));
+    }
+
+    // Bounces before russian roulette may end a path, PathTracer.MAX_BOUNCES turns it off (applies to the next render)
+    public void setRouletteMinBounces(int rouletteMinBounces) {
+        if (rouletteMinBounces < 1) {
+            throw new IllegalArgumentException("Paths need at least 1 bounce before the roulette but got " + rouletteMinBounces);
+        }
+        this.rouletteMinBounces = rouletteMinBounces;
+    }
+
+    public long getTracedRays() {
+        return tracedRays.get();
+    }
+
+    // Everything that stays the same for all tiles of one frame
+    private static final class Frame {
+        final float[] frameBuffer;
+        final GuideBuffer guides;
+        final int width;
+        final int height;
+        final TraceScene scene;
+        final Bvh bvh;
+        final int frameIndex;
+
+        final float[] cameraPosition = new float[4];
+        // The four corner rays (left bottom, right bottom, left top, right top) as 4 floats each
+        final float[] cornerRays = new float[16];
+
+        Frame(float[] frameBuffer, GuideBuffer guides, int width, int height, TraceScene scene, Bvh bvh, int frameIndex) {
+            this.frameBuffer = frameBuffer;
+            this.guides = guides;
+            this.width = width;
+            this.height = height;
+            this.scene = scene;
+            this.bvh = bvh;
+            this.frameIndex = frameIndex;
+        }
+
+        void setCamera(float[] invertedViewProjectionMatrix, float[] invertedViewMatrix) {
+            CpuRaytracer.setCamera(invertedViewProjectionMatrix, invertedViewMatrix, cameraPosition, cornerRays);
+        }
+    }
+
+    // Same camera and corner ray calculation as ComputeShaderProgram.setUniforms
+    // cornerRays gets the four corner rays (left bottom, right bottom, left top, right top) as 4 floats each
+    static void setCamera(float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, float[] cameraPosition, float[] cornerRays) {
+        multiplyMV(cameraPosition, 0, invertedViewMatrix, 0, new float[]{0f, 0f, 0f, 1f}, 0);
+
+        final float[] corners = new float[]{
+                -1, -1, 0, 1,// left, bottom
+                +1, -1, 0, 1,// right, bottom
+                -1, +1, 0, 1,// left, top
+                +1, +1, 0, 1 // right, top
+        };
+
+        // From clipping (device/screen) space to world space
+        for (int offset = 0; offset < corners.length; offset += 4) {
+            multiplyMV(cornerRays, offset, invertedViewProjectionMatrix, 0, corners, offset);
+            cornerRays[offset] = (cornerRays[offset] / cornerRays[offset + 3]) - cameraPosition[0];
+            cornerRays[offset + 1] = (cornerRays[offset + 1] / cornerRays[offset + 3]) - cameraPosition[1];
+            cornerRays[offset + 2] = (cornerRays[offset + 2] / cornerRays[offset + 3]) - cameraPosition[2];
+            cornerRays[offset + 3] = 1f;
+        }
+    }
+
+    // Splits its region until it is no bigger than one tile and traces the tile
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Frame frame;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+
+        TileTask(Frame frame, int x, int y, int width, int height) {
+            this.frame = frame;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        protected void compute() {
+            if (width > tileSize || height > tileSize) {
+                // Split the longer side on a tile border
+                if (width >= height) {
+                    final int split = Math.max(tileSize, (width / 2) / tileSize * tileSize);
+                    invokeAll(new TileTask(frame, x, y, split, height), new TileTask(frame, x + split, y, width - split, height));
+                } else {
+                    final int split = Math.max(tileSize, (height / 2) / tileSize * tileSize);
+                    invokeAll(new TileTask(frame, x, y, width, split), new TileTask(frame, x, y + split, width, height - split));
+                }
+                return;
+            }
+
+            traceTile();
+        }
+
+        private void traceTile() {
+            final PathTracer tracer = new PathTracer(frame.scene, frame.bvh);
+            tracer.setFrameIndex(frame.frameIndex);
+            tracer.setRouletteMinBounces(rouletteMinBounces);
+            final PacketIntersector intersector = packetIntersectors.create(frame.scene, frame.bvh);
+            final RayPacket packet = new RayPacket(intersector.getPacketSize());
+            final float[] rays = frame.cornerRays;
+            final float[] pixel = new float[4];
+            final float jitterX = PathTracer.jitterX(frame.frameIndex);
+            final float jitterY = PathTracer.jitterY(frame.frameIndex);
+
+            for (int pixelY = y; pixelY < y + height; pixelY++) {
+                final float positionY = ((float) pixelY + jitterY) / (float) frame.height;
+
+                // mix(u_Ray00, u_Ray01, position.y) and mix(u_Ray10, u_Ray11, position.y)
+                final float leftX = rays[0] * (1.0f - positionY) + rays[8] * positionY;
+                final float leftY = rays[1] * (1.0f - positionY) + rays[9] * positionY;
+                final float leftZ = rays[2] * (1.0f - positionY) + rays[10] * positionY;
+                final float rightX = rays[4] * (1.0f - positionY) + rays[12] * positionY;
+                final float rightY = rays[5] * (1.0f - positionY) + rays[13] * positionY;
+                final float rightZ = rays[6] * (1.0f - positionY) + rays[14] * positionY;
+
+                for (int packetX = x; packetX < x + width; packetX += packet.capacity) {
+                    final int packetEnd = Math.min(packetX + packet.capacity, x + width);
+
+                    packet.clear();
+                    for (int pixelX = packetX; pixelX < packetEnd; pixelX++) {
+                        final float positionX = ((float) pixelX + jitterX) / (float) frame.width;
+
+                        packet.add(frame.cameraPosition[0], frame.cameraPosition[1], frame.cameraPosition[2],
+                                leftX * (1.0f - positionX) + rightX * positionX,
+                                leftY * (1.0f - positionX) + rightY * positionX,
+                                leftZ * (1.0f - positionX) + rightZ * positionX);
+                    }
+                    intersector.intersect(packet);
+
+                    for (int pixelX = packetX; pixelX < packetEnd; pixelX++) {
+                        tracer.setPixel(pixelX, pixelY);
+                        tracer.tracePixel(packet, pixelX - packetX, pixel, 0);
+
+                        // mix(average, color, 1 / (history + 1)), frame 0 replaces whatever was in the buffer
+                        // The alpha channel counts the frames of the average (see Reprojection), without reprojection history == frameIndex
+                        final int offset = (pixelY * frame.width + pixelX) * 4;
+                        final float history = frame.frameIndex == 0 ? 0.0f : frame.frameBuffer[offset + 3];
+                        final float blendFactor = 1.0f / (history + 1.0f);
+                        for (int channel = 0; channel < 3; channel++) {
+                            frame.frameBuffer[offset + channel] = frame.frameIndex == 0
+                                    ? pixel[channel]
+                                    : frame.frameBuffer[offset + channel] * (1.0f - blendFactor) + pixel[channel] * blendFactor;
+                        }
+                        frame.frameBuffer[offset + 3] = history + 1.0f;
+                        if (frame.guides != null) {
+                            tracer.writeGuides(frame.guides, offset);
+                        }
+                    }
+                }
+            }
+
+            tracedRays.addAndGet(tracer.getRayCount());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package Tracing;
+
+/**
+ * Per pixel information about the primary hit that guides the denoiser (the u_NormalDepth and u_Albedo images of the shader).
+ * Both buffers are rgba floats in the layout of the frame buffer (row 0 is the bottom row):
+ * normalDepth holds the surface normal and the distance from the camera, albedo the color of the hit material.
+ * Pixels that see the sky have a zero normal, the distance MAX_SCENE_BOUNDS and the sky color as albedo.
+ */
+
+public class GuideBuffer {
+
+    public final int width;
+    public final int height;
+    public final float[] normalDepth;
+    public final float[] albedo;
+
+    public GuideBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.normalDepth = new float[width * height * 4];
+        this.albedo = new float[width * height * 4];
+    }
+}
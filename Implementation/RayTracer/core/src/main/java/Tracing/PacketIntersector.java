@@ -0,0 +1,21 @@
+package Tracing;
+
+/**
+ * Finds the primary hits of all rays of a RayPacket at once. The nearest hit of every ray has to be exactly the one
+ * PathTracer.intersectScene finds for the ray on its own so that packet and per pixel renders give the same image
+ * (hits of the other kinds behind it can differ, nodes behind the nearest hit are skipped in traversal order).
+ * One instance holds per thread scratch data and must not be shared between threads.
+ */
+
+public interface PacketIntersector {
+
+    // Creates the intersectors of the render threads, the bvh is built from the scene
+    interface Factory {
+        PacketIntersector create(TraceScene scene, Bvh bvh);
+    }
+
+    // Number of rays the intersector handles best, packets should have this capacity
+    int getPacketSize();
+
+    void intersect(RayPacket packet);
+}
@@ -0,0 +1,39 @@
+package Tracing;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a body over the indices [from, to) on a ForkJoinPool, the range is halved until the pieces are no bigger than grain.
+ */
+
+final class ParallelRange extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    interface Body {
+        void run(int from, int to);
+    }
+
+    private final Body body;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    ParallelRange(Body body, int from, int to, int grain) {
+        this.body = body;
+        this.from = from;
+        this.to = to;
+        this.grain = Math.max(1, grain);
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= grain) {
+            body.run(from, to);
+            return;
+        }
+
+        final int middle = (from + to) >>> 1;
+        invokeAll(new ParallelRange(body, from, middle, grain), new ParallelRange(body, middle, to, grain));
+    }
+}
@@ -0,0 +1,734 @@
+package Tracing;
+
+/**
+ * Java twin of compute_shader.glsl. The functions have the same names and do the same
+ * calculations as their glsl counterparts so that both paths produce the same images.
+ * One instance holds the per thread scratch data and must not be shared between threads.
+ */
+
+public class PathTracer {
+
+    // The following constants have to have the same value in the shader
+    public static final float MAX_SCENE_BOUNDS = 1000.0f;
+    public static final int MAX_BOUNCES = 10;
+    // Bounces that every path makes before russian roulette may end it (MAX_BOUNCES turns it off)
+    public static final int ROULETTE_MIN_BOUNCES = 3;
+    public static final float SPRAY_CONTROL = 1.0f;
+    public static final int MULTI_SAMPLING_COUNT = 5;
+    // Guards against parallel rays and self intersections after a bounce
+    public static final float TRIANGLE_EPSILON = 0.000001f;
+
+    static final float PRIMARY_SKY_R = 1.0f, PRIMARY_SKY_G = 1.0f, PRIMARY_SKY_B = 1.0f;
+    static final float SECONDARY_SKY_R = 0.1f, SECONDARY_SKY_G = 0.5f, SECONDARY_SKY_B = 0.8f;
+
+    // Intersection hit information of hit objects (same as the hitInfo struct in the shader)
+    static final class HitInfo {
+        int arrayIndex;
+        float t;
+        float pX, pY, pZ;
+        float normalX, normalY, normalZ;
+    }
+
+    private final TraceScene scene;
+    private final float[] nodeBounds;
+    private final int[] nodeData;
+    private final int[] primitiveReferences;
+
+    private final HitInfo cubeHitInfo = new HitInfo();
+    private final HitInfo sphereHitInfo = new HitInfo();
+    private final HitInfo triangleHitInfo = new HitInfo();
+    // The camera ray is the same for all samples of a pixel, so its hits are only searched once
+    private final HitInfo primaryCubeHitInfo = new HitInfo();
+    private final HitInfo primarySphereHitInfo = new HitInfo();
+    private final HitInfo primaryTriangleHitInfo = new HitInfo();
+    private boolean primaryHit;
+    private float primaryDirectionX, primaryDirectionY, primaryDirectionZ;
+    private final float[] randomPoint = new float[3];
+    // Generator state of the pixel (see Sampler), reset for every sample
+    private final int[] rngState = new int[1];
+    private int pixelSeed = Sampler.pixelSeed(0, 0);
+    // Generator of the russian roulette decisions, seeded per sample so that they don't correlate with the scattered rays
+    private final int[] rouletteState = new int[1];
+    private int rouletteMinBounces = ROULETTE_MIN_BOUNCES;
+    private final float[] sampleColor = new float[3];
+    private final int[] nodeStack = new int[Bvh.STACK_SIZE];
+    private final float[] nodeStackT = new float[Bvh.STACK_SIZE];
+    private int frameIndex;
+    // Number of rays that were intersected with the scene (camera rays and bounces)
+    private long rayCount;
+
+    public PathTracer(TraceScene scene) {
+        this(scene, Bvh.build(scene));
+    }
+
+    // The bvh has to be built from the same scene, it can be shared between tracers of different threads
+    public PathTracer(TraceScene scene, Bvh bvh) {
+        this.scene = scene;
+        this.nodeBounds = bvh.getNodeBounds();
+        this.nodeData = bvh.getNodeData();
+        this.primitiveReferences = bvh.getPrimitiveReferences();
+    }
+
+    // Frames of a progressive render use different random numbers (u_FrameIndex in the shader)
+    public void setFrameIndex(int frameIndex) {
+        this.frameIndex = frameIndex;
+    }
+
+    // ROULETTE_MIN_BOUNCES in the shader
+    public void setRouletteMinBounces(int rouletteMinBounces) {
+        this.rouletteMinBounces = rouletteMinBounces;
+    }
+
+    // The pixel seeds the random numbers of the scattered rays (gl_GlobalInvocationID in the shader)
+    public void setPixel(int pixelX, int pixelY) {
+        pixelSeed = Sampler.pixelSeed(pixelX, pixelY);
+    }
+
+    public long getRayCount() {
+        return rayCount;
+    }
+
+    // Equivalent of the shaders main(): averages MULTI_SAMPLING_COUNT traces and writes rgba into result
+    public void tracePixel(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float[] result, int offset) {
+        final boolean primaryHit = intersectScene(originX, originY, originZ, directionX, directionY, directionZ, primaryCubeHitInfo, primarySphereHitInfo, primaryTriangleHitInfo);
+        tracePixel(originX, originY, originZ, directionX, directionY, directionZ, primaryHit, result, offset);
+    }
+
+    // Same as above for one ray of a packet whose hits were already found by a PacketIntersector
+    public void tracePixel(RayPacket packet, int lane, float[] result, int offset) {
+        final float originX = packet.originX[lane], originY = packet.originY[lane], originZ = packet.originZ[lane];
+        final float directionX = packet.directionX[lane], directionY = packet.directionY[lane], directionZ = packet.directionZ[lane];
+
+        primaryCubeHitInfo.t = packet.cubeT[lane];
+        primaryCubeHitInfo.arrayIndex = packet.cubeIndex[lane];
+        primarySphereHitInfo.t = packet.sphereT[lane];
+        primarySphereHitInfo.arrayIndex = packet.sphereIndex[lane];
+        primaryTriangleHitInfo.t = packet.triangleT[lane];
+        primaryTriangleHitInfo.arrayIndex = packet.triangleIndex[lane];
+        rayCount++;
+
+        final boolean primaryHit = setHitPoints(originX, originY, originZ, directionX, directionY, directionZ, primaryCubeHitInfo, primarySphereHitInfo, primaryTriangleHitInfo);
+        tracePixel(originX, originY, originZ, directionX, directionY, directionZ, primaryHit, result, offset);
+    }
+
+    private void tracePixel(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, boolean primaryHit, float[] result, int offset) {
+        this.primaryHit = primaryHit;
+        primaryDirectionX = directionX;
+        primaryDirectionY = directionY;
+        primaryDirectionZ = directionZ;
+
+        float r = 0.0f;
+        float g = 0.0f;
+        float b = 0.0f;
+
+        for (int i = 0; i < MULTI_SAMPLING_COUNT; i++) {
+            trace(originX, originY, originZ, directionX, directionY, directionZ, i, primaryHit, sampleColor);
+            r += sampleColor[0];
+            g += sampleColor[1];
+            b += sampleColor[2];
+        }
+
+        result[offset] = r / (float) MULTI_SAMPLING_COUNT;
+        result[offset + 1] = g / (float) MULTI_SAMPLING_COUNT;
+        result[offset + 2] = b / (float) MULTI_SAMPLING_COUNT;
+        result[offset + 3] = 1.0f;
+    }
+
+    // Writes the primary hit of the last tracePixel into the guides of the denoiser (see the end of main() in the shader)
+    public void writeGuides(GuideBuffer guides, int offset) {
+        final float[] normalDepth = guides.normalDepth;
+        final float[] albedo = guides.albedo;
+        final float cubeT = primaryCubeHitInfo.t;
+        final float sphereT = primarySphereHitInfo.t;
+        final float triangleT = primaryTriangleHitInfo.t;
+        final float directionLength = length(primaryDirectionX, primaryDirectionY, primaryDirectionZ);
+
+        HitInfo hit = null;
+        float[] objectColors = null;
+        int index = 0;
+        if (primaryHit) {
+            if (cubeT < sphereT && cubeT < triangleT) {
+                hit = primaryCubeHitInfo;
+                index = hit.arrayIndex;
+                objectColors = scene.cubeColor;
+            } else if (sphereT < cubeT && sphereT < triangleT) {
+                hit = primarySphereHitInfo;
+                index = hit.arrayIndex;
+                objectColors = scene.sphereColor;
+            } else if (triangleT < cubeT && triangleT < sphereT) {
+                hit = primaryTriangleHitInfo;
+                index = scene.triangleMesh[hit.arrayIndex];
+                objectColors = scene.meshColor;
+            }
+        }
+
+        if (hit == null) {
+            // Sky, or a tie between two kinds which the shader skips without a color
+            final float unitY = primaryDirectionY / directionLength;
+            final boolean sky = !primaryHit;
+            normalDepth[offset] = 0.0f;
+            normalDepth[offset + 1] = 0.0f;
+            normalDepth[offset + 2] = 0.0f;
+            normalDepth[offset + 3] = MAX_SCENE_BOUNDS;
+            albedo[offset] = sky ? (1.0f - unitY) * PRIMARY_SKY_R + unitY * SECONDARY_SKY_R : 0.0f;
+            albedo[offset + 1] = sky ? (1.0f - unitY) * PRIMARY_SKY_G + unitY * SECONDARY_SKY_G : 0.0f;
+            albedo[offset + 2] = sky ? (1.0f - unitY) * PRIMARY_SKY_B + unitY * SECONDARY_SKY_B : 0.0f;
+        } else {
+            normalDepth[offset] = hit.normalX;
+            normalDepth[offset + 1] = hit.normalY;
+            normalDepth[offset + 2] = hit.normalZ;
+            normalDepth[offset + 3] = hit.t * directionLength;
+            albedo[offset] = objectColors[index * 3];
+            albedo[offset + 1] = objectColors[index * 3 + 1];
+            albedo[offset + 2] = objectColors[index * 3 + 2];
+        }
+        albedo[offset + 3] = 1.0f;
+    }
+
+    // Computes the amount of light that the camera ray contributes (see trace() in the shader)
+    public void trace(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, int sampleIndex, float[] color) {
+        final boolean primaryHit = intersectScene(originX, originY, originZ, directionX, directionY, directionZ, primaryCubeHitInfo, primarySphereHitInfo, primaryTriangleHitInfo);
+        trace(originX, originY, originZ, directionX, directionY, directionZ, sampleIndex, primaryHit, color);
+    }
+
+    // The first bounce uses the primary hit infos, the ones of the later bounces are searched here
+    // After rouletteMinBounces a path survives each bounce with a probability that follows its value (russian roulette).
+    // A path is worth colour * attenuation of its last bounce, so the estimate sums up how that value changed per bounce,
+    // the changes after a survived roulette are divided by the survival probability to keep the average unbiased
+    private void trace(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, int sampleIndex, boolean primaryHit, float[] color) {
+        float colorR = 0.0f;
+        float colorG = 0.0f;
+        float colorB = 0.0f;
+        // The shader uses a vec3 but only ever multiplies it with scalars
+        float attenuation = 1.0f;
+
+        float estimateR = 0.0f;
+        float estimateG = 0.0f;
+        float estimateB = 0.0f;
+        float valueR = 0.0f;
+        float valueG = 0.0f;
+        float valueB = 0.0f;
+        float rouletteWeight = 1.0f;
+        rouletteState[0] = Sampler.pcgHash(pixelSeed ^ Sampler.pcgHash(frameIndex * MULTI_SAMPLING_COUNT + sampleIndex));
+
+        // Starts with the camera ray but continues with the scattered rays
+        float rayOriginX = originX, rayOriginY = originY, rayOriginZ = originZ;
+        float rayDirectionX = directionX, rayDirectionY = directionY, rayDirectionZ = directionZ;
+
+        float previousParameter0 = -1.0f;
+
+        HitInfo cubeInfo = primaryCubeHitInfo;
+        HitInfo sphereInfo = primarySphereHitInfo;
+        HitInfo triangleInfo = primaryTriangleHitInfo;
+        boolean hitSomething = primaryHit;
+        rngState[0] = pixelSeed;
+
+        for (int bounce = 0; bounce < MAX_BOUNCES; bounce++) {
+            // Every bounce gets its own scramble of the sample sequence, the same one for all samples of the pixel
+            final int scrambleX = Sampler.nextRandom(rngState);
+            final int scrambleY = Sampler.nextRandom(rngState);
+            final int scrambleZ = Sampler.nextRandom(rngState);
+
+            if (bounce > 0) {
+                cubeInfo = cubeHitInfo;
+                sphereInfo = sphereHitInfo;
+                triangleInfo = triangleHitInfo;
+                hitSomething = intersectScene(rayOriginX, rayOriginY, rayOriginZ, rayDirectionX, rayDirectionY, rayDirectionZ, cubeInfo, sphereInfo, triangleInfo);
+            }
+
+            if (hitSomething) {
+                // Missed kinds have t = MAX_SCENE_BOUNDS, so the nearest hit is the smallest t
+                final float cubeT = cubeInfo.t;
+                final float sphereT = sphereInfo.t;
+                final float triangleT = triangleInfo.t;
+
+                // Same as in the shader: the hit picks the arrays, the shading is the same for all kinds
+                HitInfo hit;
+                float[] objectColors;
+                int[] objectMaterials;
+                float[] objectParameters0;
+                int index;
+
+                if (cubeT < sphereT && cubeT < triangleT) {
+                    hit = cubeInfo;
+                    index = hit.arrayIndex;
+                    objectColors = scene.cubeColor;
+                    objectMaterials = scene.cubeMaterial;
+                    objectParameters0 = scene.cubeParameter0;
+                } else if (sphereT < cubeT && sphereT < triangleT) {
+                    hit = sphereInfo;
+                    index = hit.arrayIndex;
+                    objectColors = scene.sphereColor;
+                    objectMaterials = scene.sphereMaterial;
+                    objectParameters0 = scene.sphereParameter0;
+                } else if (triangleT < cubeT && triangleT < sphereT) {
+                    // Triangles use the material of their mesh
+                    hit = triangleInfo;
+                    index = scene.triangleMesh[hit.arrayIndex];
+                    objectColors = scene.meshColor;
+                    objectMaterials = scene.meshMaterial;
+                    objectParameters0 = scene.meshParameter0;
+                } else {
+                    // Two hits are exactly the same distance away, the shader leaves the ray untouched
+                    continue;
+                }
+
+                final int material = objectMaterials[index];
+                final float parameter0 = objectParameters0[index];
+                final float objectR = objectColors[index * 3];
+                final float objectG = objectColors[index * 3 + 1];
+                final float objectB = objectColors[index * 3 + 2];
+
+                // First hit / color
+                if (bounce == 0) {
+                    colorR = objectR;
+                    colorG = objectG;
+                    colorB = objectB;
+                    if (material == TraceScene.MATERIAL_METAL) {
+                        previousParameter0 = parameter0;
+                    }
+                } else if (material == TraceScene.MATERIAL_DIFFUSE) {
+                    if (previousParameter0 != -1.0f) {
+                        colorR = colorR * (1.0f - previousParameter0) + objectR * previousParameter0;
+                        colorG = colorG * (1.0f - previousParameter0) + objectG * previousParameter0;
+                        colorB = colorB * (1.0f - previousParameter0) + objectB * previousParameter0;
+                        attenuation *= 1.0f - parameter0;
+                        previousParameter0 = -1.0f;
+                    } else {
+                        attenuation *= parameter0;
+                    }
+                } else if (material == TraceScene.MATERIAL_METAL) {
+                    if (previousParameter0 != -1.0f) {
+                        colorR = colorR * (1.0f - previousParameter0) + objectR * previousParameter0;
+                        colorG = colorG * (1.0f - previousParameter0) + objectG * previousParameter0;
+                        colorB = colorB * (1.0f - previousParameter0) + objectB * previousParameter0;
+                        previousParameter0 *= parameter0;
+                    }
+                }
+
+                if (material == TraceScene.MATERIAL_DIFFUSE) {
+                    getRandomPoint(sampleIndex, frameIndex, scrambleX, scrambleY, scrambleZ, randomPoint);
+                    final float scatteredPointX = hit.pX + hit.normalX + randomPoint[0];
+                    final float scatteredPointY = hit.pY + hit.normalY + randomPoint[1];
+                    final float scatteredPointZ = hit.pZ + hit.normalZ + randomPoint[2];
+                    rayDirectionX = scatteredPointX - hit.pX;
+                    rayDirectionY = scatteredPointY - hit.pY;
+                    rayDirectionZ = scatteredPointZ - hit.pZ;
+                    rayOriginX = hit.pX;
+                    rayOriginY = hit.pY;
+                    rayOriginZ = hit.pZ;
+                } else if (material == TraceScene.MATERIAL_METAL) {
+                    final float incomingX = hit.pX - rayOriginX;
+                    final float incomingY = hit.pY - rayOriginY;
+                    final float incomingZ = hit.pZ - rayOriginZ;
+                    final float dot2 = 2.0f * (incomingX * hit.normalX + incomingY * hit.normalY + incomingZ * hit.normalZ);
+                    rayDirectionX = incomingX - dot2 * hit.normalX;
+                    rayDirectionY = incomingY - dot2 * hit.normalY;
+                    rayDirectionZ = incomingZ - dot2 * hit.normalZ;
+                    rayOriginX = hit.pX;
+                    rayOriginY = hit.pY;
+                    rayOriginZ = hit.pZ;
+                }
+
+                if (bounce + 1 >= rouletteMinBounces && bounce + 1 < MAX_BOUNCES) {
+                    estimateR += rouletteWeight * (colorR * attenuation - valueR);
+                    estimateG += rouletteWeight * (colorG * attenuation - valueG);
+                    estimateB += rouletteWeight * (colorB * attenuation - valueB);
+                    valueR = colorR * attenuation;
+                    valueG = colorG * attenuation;
+                    valueB = colorB * attenuation;
+
+                    // The next bounces can't change the value by more than the value itself or the pending blend of a metal hit,
+                    // weighted like the changes so that a survivor never adds more than about 1 to the estimate
+                    final float survival = Math.min(1.0f, rouletteWeight * Math.max(Math.max(valueR, Math.max(valueG, valueB)), previousParameter0 * attenuation));
+                    if (Sampler.toUnitFloat(Sampler.nextRandom(rouletteState)) >= survival) {
+                        color[0] = estimateR;
+                        color[1] = estimateG;
+                        color[2] = estimateB;
+                        return;
+                    }
+                    rouletteWeight /= survival;
+                }
+            } else {
+                // Sky was hit
+                if (bounce == 0) {
+                    final float unitY = directionY / length(directionX, directionY, directionZ);
+                    color[0] = (1.0f - unitY) * PRIMARY_SKY_R + unitY * SECONDARY_SKY_R;
+                    color[1] = (1.0f - unitY) * PRIMARY_SKY_G + unitY * SECONDARY_SKY_G;
+                    color[2] = (1.0f - unitY) * PRIMARY_SKY_B + unitY * SECONDARY_SKY_B;
+                    return;
+                } else if (previousParameter0 != -1.0f) { // Metal was hit before this sky hit
+                    final float unitY = rayDirectionY / length(rayDirectionX, rayDirectionY, rayDirectionZ);
+                    final float skyR = (1.0f - unitY) * PRIMARY_SKY_R + unitY * SECONDARY_SKY_R;
+                    final float skyG = (1.0f - unitY) * PRIMARY_SKY_G + unitY * SECONDARY_SKY_G;
+                    final float skyB = (1.0f - unitY) * PRIMARY_SKY_B + unitY * SECONDARY_SKY_B;
+
+                    colorR = colorR * (1.0f - previousParameter0) + skyR * previousParameter0;
+                    colorG = colorG * (1.0f - previousParameter0) + skyG * previousParameter0;
+                    colorB = colorB * (1.0f - previousParameter0) + skyB * previousParameter0;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        color[0] = estimateR + rouletteWeight * (colorR * attenuation - valueR);
+        color[1] = estimateG + rouletteWeight * (colorG * attenuation - valueG);
+        color[2] = estimateB + rouletteWeight * (colorB * attenuation - valueB);
+    }
+
+    // Computes the nearest cube, sphere and triangle intersection by traversing the bvh (see intersectScene in the shader)
+    // Subtrees behind the nearest hit of any kind are skipped, a missed kind keeps t = MAX_SCENE_BOUNDS
+    boolean intersectScene(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, HitInfo cubeInfo, HitInfo sphereInfo, HitInfo triangleInfo) {
+        cubeInfo.t = MAX_SCENE_BOUNDS;
+        sphereInfo.t = MAX_SCENE_BOUNDS;
+        triangleInfo.t = MAX_SCENE_BOUNDS;
+        rayCount++;
+
+        if (primitiveReferences.length == 0) {
+            return false;
+        }
+
+        final float inverseDirectionX = 1.0f / directionX;
+        final float inverseDirectionY = 1.0f / directionY;
+        final float inverseDirectionZ = 1.0f / directionZ;
+
+        int stackSize = 0;
+        final float rootT = intersectNode(originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ, 0, MAX_SCENE_BOUNDS);
+        if (rootT < MAX_SCENE_BOUNDS) {
+            nodeStack[stackSize] = 0;
+            nodeStackT[stackSize++] = rootT;
+        }
+
+        while (stackSize > 0) {
+            final int node = nodeStack[--stackSize];
+            final float closestT = Math.min(Math.min(cubeInfo.t, sphereInfo.t), triangleInfo.t);
+
+            // A closer hit was found after the node was pushed
+            if (nodeStackT[stackSize] >= closestT) {
+                continue;
+            }
+
+            final int leftOrFirst = nodeData[node * 2];
+            final int count = nodeData[node * 2 + 1];
+
+            if (count > 0) {
+                for (int i = leftOrFirst; i < leftOrFirst + count; i++) {
+                    final int reference = primitiveReferences[i];
+                    final int index = Bvh.primitiveIndex(reference);
+                    final int type = Bvh.primitiveType(reference);
+
+                    if (type == Bvh.PRIMITIVE_CUBE) {
+                        final float tNear = intersectCube(originX, originY, originZ, directionX, directionY, directionZ, index, cubeInfo.t);
+                        if (tNear != -1.0f) {
+                            cubeInfo.arrayIndex = index;
+                            cubeInfo.t = tNear;
+                        }
+                    } else if (type == Bvh.PRIMITIVE_TRIANGLE) {
+                        final float t = intersectTriangle(originX, originY, originZ, directionX, directionY, directionZ, index, triangleInfo.t);
+                        if (t != -1.0f) {
+                            triangleInfo.arrayIndex = index;
+                            triangleInfo.t = t;
+                        }
+                    } else {
+                        final float hitDistance = intersectSphere(originX, originY, originZ, directionX, directionY, directionZ, index);
+                        if (hitDistance > 0.0f && hitDistance < sphereInfo.t) {
+                            sphereInfo.arrayIndex = index;
+                            sphereInfo.t = hitDistance;
+                        }
+                    }
+                }
+            } else {
+                final int leftChild = node + 1;
+                final int rightChild = leftOrFirst;
+                final float leftT = intersectNode(originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ, leftChild, closestT);
+                final float rightT = intersectNode(originX, originY, originZ, inverseDirectionX, inverseDirectionY, inverseDirectionZ, rightChild, closestT);
+
+                // The farther child is pushed first so that the nearer one is visited first
+                final boolean leftFirst = leftT <= rightT;
+                final int nearChild = leftFirst ? leftChild : rightChild;
+                final int farChild = leftFirst ? rightChild : leftChild;
+                final float nearT = leftFirst ? leftT : rightT;
+                final float farT = leftFirst ? rightT : leftT;
+
+                if (farT < MAX_SCENE_BOUNDS) {
+                    nodeStack[stackSize] = farChild;
+                    nodeStackT[stackSize++] = farT;
+                }
+                if (nearT < MAX_SCENE_BOUNDS) {
+                    nodeStack[stackSize] = nearChild;
+                    nodeStackT[stackSize++] = nearT;
+                }
+            }
+        }
+
+        return setHitPoints(originX, originY, originZ, directionX, directionY, directionZ, cubeInfo, sphereInfo, triangleInfo);
+    }
+
+    // Computes the hit points and normals of the kinds that were hit (t < MAX_SCENE_BOUNDS), returns whether anything was hit
+    private boolean setHitPoints(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, HitInfo cubeInfo, HitInfo sphereInfo, HitInfo triangleInfo) {
+        final boolean cubeFound = cubeInfo.t < MAX_SCENE_BOUNDS;
+        final boolean sphereFound = sphereInfo.t < MAX_SCENE_BOUNDS;
+        final boolean triangleFound = triangleInfo.t < MAX_SCENE_BOUNDS;
+
+        if (cubeFound) {
+            setPointFromRay(originX, originY, originZ, directionX, directionY, directionZ, cubeInfo);
+            setCubeNormal(cubeInfo);
+        }
+
+        if (sphereFound) {
+            setPointFromRay(originX, originY, originZ, directionX, directionY, directionZ, sphereInfo);
+            final int v = sphereInfo.arrayIndex * 3;
+            final float radius = scene.sphereRadius[sphereInfo.arrayIndex];
+            sphereInfo.normalX = (sphereInfo.pX - scene.sphereCenter[v]) / radius;
+            sphereInfo.normalY = (sphereInfo.pY - scene.sphereCenter[v + 1]) / radius;
+            sphereInfo.normalZ = (sphereInfo.pZ - scene.sphereCenter[v + 2]) / radius;
+        }
+
+        if (triangleFound) {
+            setPointFromRay(originX, originY, originZ, directionX, directionY, directionZ, triangleInfo);
+            setTriangleNormal(triangleInfo, directionX, directionY, directionZ);
+        }
+
+        return cubeFound || sphereFound || triangleFound;
+    }
+
+    // Slab test against the bounds of a node, returns the entry distance or MAX_SCENE_BOUNDS if the node is missed or behind closestT
+    private float intersectNode(float originX, float originY, float originZ, float inverseDirectionX, float inverseDirectionY, float inverseDirectionZ, int node, float closestT) {
+        final int b = node * 6;
+        final float tMinX = (nodeBounds[b] - originX) * inverseDirectionX;
+        final float tMinY = (nodeBounds[b + 1] - originY) * inverseDirectionY;
+        final float tMinZ = (nodeBounds[b + 2] - originZ) * inverseDirectionZ;
+        final float tMaxX = (nodeBounds[b + 3] - originX) * inverseDirectionX;
+        final float tMaxY = (nodeBounds[b + 4] - originY) * inverseDirectionY;
+        final float tMaxZ = (nodeBounds[b + 5] - originZ) * inverseDirectionZ;
+
+        final float tNear = Math.max(Math.max(Math.min(tMinX, tMaxX), Math.min(tMinY, tMaxY)), Math.min(tMinZ, tMaxZ));
+        final float tFar = Math.min(Math.min(Math.max(tMinX, tMaxX), Math.max(tMinY, tMaxY)), Math.max(tMinZ, tMaxZ));
+
+        if (tFar < Math.max(tNear, 0.0f) || tNear >= closestT) {
+            return MAX_SCENE_BOUNDS;
+        }
+        return tNear;
+    }
+
+    // Returns the distance at which the ray enters cube i if that is in front of the origin and closer than closestT, -1 otherwise
+    float intersectCube(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, int i, float closestT) {
+        final int v = i * 3;
+        final float tMinX = (scene.cubeMin[v] - originX) / directionX;
+        final float tMinY = (scene.cubeMin[v + 1] - originY) / directionY;
+        final float tMinZ = (scene.cubeMin[v + 2] - originZ) / directionZ;
+        final float tMaxX = (scene.cubeMax[v] - originX) / directionX;
+        final float tMaxY = (scene.cubeMax[v + 1] - originY) / directionY;
+        final float tMaxZ = (scene.cubeMax[v + 2] - originZ) / directionZ;
+
+        final float tNear = Math.max(Math.max(Math.min(tMinX, tMaxX), Math.min(tMinY, tMaxY)), Math.min(tMinZ, tMaxZ));
+        final float tFar = Math.min(Math.min(Math.max(tMinX, tMaxX), Math.max(tMinY, tMaxY)), Math.max(tMinZ, tMaxZ));
+
+        if (tNear > 0.0f && tNear < tFar && tNear < closestT) {
+            return tNear;
+        }
+        return -1.0f;
+    }
+
+    // Normal calculation of the shader, the planes are checked in the same order so that edges get the same normal
+    private void setCubeNormal(HitInfo info) {
+        final int v = info.arrayIndex * 3;
+        final float minX = scene.cubeMin[v], minY = scene.cubeMin[v + 1], minZ = scene.cubeMin[v + 2];
+        final float maxX = scene.cubeMax[v], maxY = scene.cubeMax[v + 1], maxZ = scene.cubeMax[v + 2];
+
+        final float posHitPointX = info.pX - (minX + maxX) / 2.0f;
+        final float posHitPointY = info.pY - (minY + maxY) / 2.0f;
+        final float posHitPointZ = info.pZ - (minZ + maxZ) / 2.0f;
+
+        final float delta = 0.0001f;
+
+        info.normalX = 0.0f;
+        info.normalY = 0.0f;
+        info.normalZ = 0.0f;
+
+        final float posXPlane = (maxX - minX) / 2.0f;
+        if (posHitPointX >= posXPlane + delta || posHitPointX >= posXPlane - delta) {
+            setNormal(info, 1.0f, 0.0f, 0.0f);
+        }
+        if (posHitPointX <= -posXPlane + delta || posHitPointX <= -posXPlane - delta) {
+            setNormal(info, -1.0f, 0.0f, 0.0f);
+        }
+
+        final float posYPlane = (maxY - minY) / 2.0f;
+        if (posHitPointY >= posYPlane + delta || posHitPointY >= posYPlane - delta) {
+            setNormal(info, 0.0f, 1.0f, 0.0f);
+        }
+        if (posHitPointY <= -posYPlane + delta || posHitPointY <= -posYPlane - delta) {
+            setNormal(info, 0.0f, -1.0f, 0.0f);
+        }
+
+        final float posZPlane = (maxZ - minZ) / 2.0f;
+        if (posHitPointZ >= posZPlane + delta || posHitPointZ >= posZPlane - delta) {
+            setNormal(info, 0.0f, 0.0f, 1.0f);
+        }
+        if (posHitPointZ <= -posZPlane + delta || posHitPointZ <= -posZPlane - delta) {
+            setNormal(info, 0.0f, 0.0f, -1.0f);
+        }
+    }
+
+    // Returns the distance at which the ray enters the sphere or -1 if it misses (can return other negative values)
+    float intersectSphere(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, int i) {
+        final int v = i * 3;
+        final float toOriginX = originX - scene.sphereCenter[v];
+        final float toOriginY = originY - scene.sphereCenter[v + 1];
+        final float toOriginZ = originZ - scene.sphereCenter[v + 2];
+        final float radius = scene.sphereRadius[i];
+
+        final float a = directionX * directionX + directionY * directionY + directionZ * directionZ;
+        final float b = 2.0f * (toOriginX * directionX + toOriginY * directionY + toOriginZ * directionZ);
+        final float c = (toOriginX * toOriginX + toOriginY * toOriginY + toOriginZ * toOriginZ) - radius * radius;
+        final float discriminant = (b * b) - (4.0f * a * c);
+
+        if (discriminant < 0.0f) {
+            return -1.0f;
+        } else {
+            return (-b - (float) Math.sqrt(discriminant)) / (2.0f * a);
+        }
+    }
+
+    // Moeller-Trumbore, returns the distance to triangle i if it is in front of the origin and closer than closestT, -1 otherwise
+    // Both sides of a triangle are hit
+    float intersectTriangle(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, int i, float closestT) {
+        final float[] positions = scene.vertexPositions;
+        final int a = scene.triangleIndices[i * 3] * 3;
+        final int b = scene.triangleIndices[i * 3 + 1] * 3;
+        final int c = scene.triangleIndices[i * 3 + 2] * 3;
+
+        final float edge1X = positions[b] - positions[a];
+        final float edge1Y = positions[b + 1] - positions[a + 1];
+        final float edge1Z = positions[b + 2] - positions[a + 2];
+        final float edge2X = positions[c] - positions[a];
+        final float edge2Y = positions[c + 1] - positions[a + 1];
+        final float edge2Z = positions[c + 2] - positions[a + 2];
+
+        // p = direction x edge2
+        final float pX = directionY * edge2Z - directionZ * edge2Y;
+        final float pY = directionZ * edge2X - directionX * edge2Z;
+        final float pZ = directionX * edge2Y - directionY * edge2X;
+        final float determinant = edge1X * pX + edge1Y * pY + edge1Z * pZ;
+
+        // The ray is parallel to the triangle
+        if (Math.abs(determinant) < TRIANGLE_EPSILON) {
+            return -1.0f;
+        }
+        final float inverseDeterminant = 1.0f / determinant;
+
+        final float toOriginX = originX - positions[a];
+        final float toOriginY = originY - positions[a + 1];
+        final float toOriginZ = originZ - positions[a + 2];
+        final float u = (toOriginX * pX + toOriginY * pY + toOriginZ * pZ) * inverseDeterminant;
+        if (u < 0.0f || u > 1.0f) {
+            return -1.0f;
+        }
+
+        // q = toOrigin x edge1
+        final float qX = toOriginY * edge1Z - toOriginZ * edge1Y;
+        final float qY = toOriginZ * edge1X - toOriginX * edge1Z;
+        final float qZ = toOriginX * edge1Y - toOriginY * edge1X;
+        final float v = (directionX * qX + directionY * qY + directionZ * qZ) * inverseDeterminant;
+        if (v < 0.0f || u + v > 1.0f) {
+            return -1.0f;
+        }
+
+        final float t = (edge2X * qX + edge2Y * qY + edge2Z * qZ) * inverseDeterminant;
+        if (t > TRIANGLE_EPSILON && t < closestT) {
+            return t;
+        }
+        return -1.0f;
+    }
+
+    // Interpolated vertex normal at the hit point (face normal if the mesh has none), always facing the ray
+    private void setTriangleNormal(HitInfo info, float directionX, float directionY, float directionZ) {
+        final float[] positions = scene.vertexPositions;
+        final float[] normals = scene.vertexNormals;
+        final int a = scene.triangleIndices[info.arrayIndex * 3] * 3;
+        final int b = scene.triangleIndices[info.arrayIndex * 3 + 1] * 3;
+        final int c = scene.triangleIndices[info.arrayIndex * 3 + 2] * 3;
+
+        final float edge1X = positions[b] - positions[a];
+        final float edge1Y = positions[b + 1] - positions[a + 1];
+        final float edge1Z = positions[b + 2] - positions[a + 2];
+        final float edge2X = positions[c] - positions[a];
+        final float edge2Y = positions[c + 1] - positions[a + 1];
+        final float edge2Z = positions[c + 2] - positions[a + 2];
+        final float toPointX = info.pX - positions[a];
+        final float toPointY = info.pY - positions[a + 1];
+        final float toPointZ = info.pZ - positions[a + 2];
+
+        // Barycentric coordinates of the hit point
+        final float d00 = edge1X * edge1X + edge1Y * edge1Y + edge1Z * edge1Z;
+        final float d01 = edge1X * edge2X + edge1Y * edge2Y + edge1Z * edge2Z;
+        final float d11 = edge2X * edge2X + edge2Y * edge2Y + edge2Z * edge2Z;
+        final float d20 = toPointX * edge1X + toPointY * edge1Y + toPointZ * edge1Z;
+        final float d21 = toPointX * edge2X + toPointY * edge2Y + toPointZ * edge2Z;
+        final float denominator = d00 * d11 - d01 * d01;
+        final float v = (d11 * d20 - d01 * d21) / denominator;
+        final float w = (d00 * d21 - d01 * d20) / denominator;
+        final float u = 1.0f - v - w;
+
+        float normalX = normals[a] * u + normals[b] * v + normals[c] * w;
+        float normalY = normals[a + 1] * u + normals[b + 1] * v + normals[c + 1] * w;
+        float normalZ = normals[a + 2] * u + normals[b + 2] * v + normals[c + 2] * w;
+        float normalLength = length(normalX, normalY, normalZ);
+
+        if (normalLength < TRIANGLE_EPSILON) {
+            normalX = edge1Y * edge2Z - edge1Z * edge2Y;
+            normalY = edge1Z * edge2X - edge1X * edge2Z;
+            normalZ = edge1X * edge2Y - edge1Y * edge2X;
+            normalLength = length(normalX, normalY, normalZ);
+        }
+
+        final float sign = normalX * directionX + normalY * directionY + normalZ * directionZ > 0.0f ? -1.0f : 1.0f;
+        setNormal(info, sign * normalX / normalLength, sign * normalY / normalLength, sign * normalZ / normalLength);
+    }
+
+    // Returns a random point with a length <= 1 (see getRandomPoint in the shader)
+    // Sample sampleIndex of frame frameIndex is point frameIndex * MULTI_SAMPLING_COUNT + sampleIndex of the scrambled sobol sequence
+    static void getRandomPoint(int sampleIndex, int frameIndex, int scrambleX, int scrambleY, int scrambleZ, float[] result) {
+        final int sequenceIndex = frameIndex * MULTI_SAMPLING_COUNT + sampleIndex;
+        Sampler.sampleUnitBall(
+                Sampler.toUnitFloat(Sampler.sobol(sequenceIndex, 0, scrambleX)),
+                Sampler.toUnitFloat(Sampler.sobol(sequenceIndex, 1, scrambleY)),
+                Sampler.toUnitFloat(Sampler.sobol(sequenceIndex, 2, scrambleZ)),
+                result);
+
+        result[0] *= SPRAY_CONTROL;
+        result[1] *= SPRAY_CONTROL;
+        result[2] *= SPRAY_CONTROL;
+    }
+
+    // Sub pixel offsets of the camera rays of a frame (R2 sequence), frame 0 traces through the pixel corner
+    static float jitterX(int frameIndex) {
+        return fract((float) frameIndex * 0.7548776662f);
+    }
+
+    static float jitterY(int frameIndex) {
+        return fract((float) frameIndex * 0.5698402910f);
+    }
+
+    private static float fract(float value) {
+        return value - (float) Math.floor(value);
+    }
+
+    static float length(float x, float y, float z) {
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+
+    private static void setPointFromRay(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, HitInfo info) {
+        info.pX = originX + info.t * directionX;
+        info.pY = originY + info.t * directionY;
+        info.pZ = originZ + info.t * directionZ;
+    }
+
+    private static void setNormal(HitInfo info, float x, float y, float z) {
+        info.normalX = x;
+        info.normalY = y;
+        info.normalZ = z;
+    }
+}
@@ -0,0 +1,100 @@
+package Tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * How much a traced image loses when it is stored in a TraceFormat, to pick the format per device.
+ * The image is rgba with the history length in alpha (like the frame buffer of the CpuRaytracer), only rgb is compared.
+ * The PSNR is measured on the displayed range [0, 1], the relative error on the linear values.
+ */
+
+public final class QuantizationReport {
+
+    // Values darker than this count against it in the relative error, so that black pixels don't dominate it
+    private static final float RELATIVE_ERROR_FLOOR = 1e-3f;
+
+    private final TraceFormat format;
+    private final int pixelCount;
+    private final float maxError;
+    private final double meanRelativeError;
+    private final double psnr;
+
+    private QuantizationReport(TraceFormat format, int pixelCount, float maxError, double meanRelativeError, double psnr) {
+        this.format = format;
+        this.pixelCount = pixelCount;
+        this.maxError = maxError;
+        this.meanRelativeError = meanRelativeError;
+        this.psnr = psnr;
+    }
+
+    public static QuantizationReport measure(TraceFormat format, float[] image, int pixelCount) {
+        if (image.length < pixelCount * 4) {
+            throw new IllegalArgumentException("The image holds less than " + pixelCount + " rgba pixels");
+        }
+
+        float maxError = 0f;
+        double relativeErrorSum = 0.0;
+        double squaredErrorSum = 0.0;
+        for (int pixel = 0; pixel < pixelCount; pixel++) {
+            for (int channel = 0; channel < 3; channel++) {
+                float value = image[pixel * 4 + channel];
+                float quantized = format.quantize(value, channel);
+                float error = Math.abs(quantized - value);
+
+                maxError = Math.max(maxError, error);
+                relativeErrorSum += error / Math.max(Math.abs(value), RELATIVE_ERROR_FLOOR);
+                double displayedError = clamp(quantized) - clamp(value);
+                squaredErrorSum += displayedError * displayedError;
+            }
+        }
+
+        int samples = Math.max(pixelCount * 3, 1);
+        double meanSquaredError = squaredErrorSum / samples;
+        double psnr = meanSquaredError == 0.0 ? Double.POSITIVE_INFINITY : -10.0 * Math.log10(meanSquaredError);
+        return new QuantizationReport(format, pixelCount, maxError, relativeErrorSum / samples, psnr);
+    }
+
+    // One report per format, from the largest to the smallest one
+    public static List<QuantizationReport> measureAll(float[] image, int pixelCount) {
+        List<QuantizationReport> reports = new ArrayList<>();
+        for (TraceFormat format : TraceFormat.values()) {
+            reports.add(measure(format, image, pixelCount));
+        }
+        return reports;
+    }
+
+    public TraceFormat getFormat() {
+        return format;
+    }
+
+    // Every frame reads the previous average and writes the new one
+    public long getBytesPerFrame() {
+        return 2L * pixelCount * format.getBytesPerPixel();
+    }
+
+    public float getMaxError() {
+        return maxError;
+    }
+
+    public double getMeanRelativeError() {
+        return meanRelativeError;
+    }
+
+    // Infinite if the format stores the image without loss
+    public double getPsnr() {
+        return psnr;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%-10s %2d B/px, %7.2f MB/frame, max error %.3g, mean relative error %.3g, PSNR %s dB, converges for %d frames",
+                format, format.getBytesPerPixel(), getBytesPerFrame() / 1e6, maxError, meanRelativeError,
+                Double.isInfinite(psnr) ? "inf" : String.format(Locale.ROOT, "%.1f", psnr), format.getConvergenceLimit());
+    }
+
+    private static double clamp(float value) {
+        return Math.min(Math.max(value, 0f), 1f);
+    }
+}
@@ -0,0 +1,86 @@
+package Tracing;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parallel stream compaction of path queues with prefix sums.
+ * The input queue is cut into chunks, every chunk counts its entries per key in parallel, an exclusive prefix sum over
+ * the chunk counts gives every chunk its offset in each output queue, then all chunks scatter their entries in parallel.
+ * Entries keep their order, so the compacted queues are the same for any number of threads.
+ * The compute shader does the same per work group in shared memory (see compactQueue in compute_shader.glsl).
+ */
+
+public class QueueCompactor {
+
+    // Entries per chunk, the prefix sum over the chunks is done on one thread
+    public static final int CHUNK_SIZE = 2048;
+
+    private final ForkJoinPool pool;
+    // Count (and after the prefix sum the offset) of every key in every chunk, chunk major
+    private int[] chunkOffsets = new int[0];
+
+    public QueueCompactor(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Distributes the entries input[0, count) to queues[keys[entry]] and returns the length of every queue in counts
+    // Entries whose key is not the index of a queue (e.g. finished paths) are dropped
+    public void partition(final int[] input, final int count, final byte[] keys, final int[][] queues, final int[] counts) {
+        final int queueCount = queues.length;
+        final int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (chunkOffsets.length < chunks * queueCount) {
+            chunkOffsets = new int[chunks * queueCount];
+        }
+        final int[] offsets = chunkOffsets;
+
+        // Count the entries of every chunk per key
+        pool.invoke(new ParallelRange(new ParallelRange.Body() {
+            @Override
+            public void run(int from, int to) {
+                for (int chunk = from; chunk < to; chunk++) {
+                    final int base = chunk * queueCount;
+                    for (int queue = 0; queue < queueCount; queue++) {
+                        offsets[base + queue] = 0;
+                    }
+                    final int end = Math.min(count, (chunk + 1) * CHUNK_SIZE);
+                    for (int entry = chunk * CHUNK_SIZE; entry < end; entry++) {
+                        final int key = keys[input[entry]];
+                        if (key < queueCount) {
+                            offsets[base + key]++;
+                        }
+                    }
+                }
+            }
+        }, 0, chunks, 1));
+
+        // Exclusive prefix sum over the chunks, separately for every key
+        for (int queue = 0; queue < queueCount; queue++) {
+            int sum = 0;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                final int chunkCount = offsets[chunk * queueCount + queue];
+                offsets[chunk * queueCount + queue] = sum;
+                sum += chunkCount;
+            }
+            counts[queue] = sum;
+        }
+
+        // Every chunk writes its entries from its offsets on
+        pool.invoke(new ParallelRange(new ParallelRange.Body() {
+            @Override
+            public void run(int from, int to) {
+                final int[] positions = new int[queueCount];
+                for (int chunk = from; chunk < to; chunk++) {
+                    System.arraycopy(offsets, chunk * queueCount, positions, 0, queueCount);
+                    final int end = Math.min(count, (chunk + 1) * CHUNK_SIZE);
+                    for (int entry = chunk * CHUNK_SIZE; entry < end; entry++) {
+                        final int value = input[entry];
+                        final int key = keys[value];
+                        if (key < queueCount) {
+                            queues[key][positions[key]++] = value;
+                        }
+                    }
+                }
+            }
+        }, 0, chunks, 1));
+    }
+}
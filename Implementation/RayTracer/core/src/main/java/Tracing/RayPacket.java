@@ -0,0 +1,65 @@
+package Tracing;
+
+/**
+ * A group of coherent primary rays (neighbouring pixels of one row) and their nearest hits, stored as struct of arrays
+ * so that a PacketIntersector can load the same component of all rays at once.
+ * The hits have the meaning of the HitInfos of PathTracer.intersectScene: the nearest cube, sphere and triangle per ray,
+ * a missed kind keeps t = MAX_SCENE_BOUNDS.
+ */
+
+public final class RayPacket {
+
+    public final int capacity;
+    int size;
+
+    final float[] originX, originY, originZ;
+    final float[] directionX, directionY, directionZ;
+
+    final float[] cubeT, sphereT, triangleT;
+    final int[] cubeIndex, sphereIndex, triangleIndex;
+
+    public RayPacket(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("A packet needs at least one ray but the capacity was " + capacity);
+        }
+        this.capacity = capacity;
+        originX = new float[capacity];
+        originY = new float[capacity];
+        originZ = new float[capacity];
+        directionX = new float[capacity];
+        directionY = new float[capacity];
+        directionZ = new float[capacity];
+        cubeT = new float[capacity];
+        sphereT = new float[capacity];
+        triangleT = new float[capacity];
+        cubeIndex = new int[capacity];
+        sphereIndex = new int[capacity];
+        triangleIndex = new int[capacity];
+    }
+
+    // Removes all rays, the following calls of add fill the packet from the first lane
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(float originX, float originY, float originZ, float directionX, float directionY, float directionZ) {
+        if (size == capacity) {
+            throw new IllegalStateException("The packet is full (" + capacity + " rays)");
+        }
+        this.originX[size] = originX;
+        this.originY[size] = originY;
+        this.originZ[size] = originZ;
+        this.directionX[size] = directionX;
+        this.directionY[size] = directionY;
+        this.directionZ[size] = directionZ;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+}
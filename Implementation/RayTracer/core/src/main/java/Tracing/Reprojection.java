@@ -0,0 +1,145 @@
+package Tracing;
+
+import static Util.MatrixMath.invertM;
+import static Util.MatrixMath.multiplyMV;
+
+/**
+ * Temporal reprojection: the first frame after a camera move reuses the average of the previous camera instead of starting from nothing.
+ * The primary hit of every pixel is projected into the previous image, if the pixel there saw the same surface
+ * (nearly the same plane and a similar normal) its average becomes the history of the new one.
+ * Reprojected history is capped at MAX_HISTORY frames and weighted down by the depth error (an adaptive blend factor),
+ * so the blur of the nearest neighbour lookup and view dependent shading like reflections fade out after a few frames.
+ * Disoccluded pixels, the sky and pixels that were outside of the previous image start over with the new samples.
+ *
+ * The alpha channel of an average holds the number of frames it contains, so that the history length is known per pixel.
+ * This is the CPU twin of reproject() in compute_shader.glsl.
+ */
+
+public class Reprojection {
+
+    // The following constants have to have the same value in the shader (they are injected by ComputeShaderProgram)
+    // Frames of history a reprojected pixel keeps at most
+    public static final float MAX_HISTORY = 8.0f;
+    // Tolerated distance between the point and the surface that the previous pixel saw, along the normal and relative to the distance from the camera
+    // Measuring along the normal keeps surfaces at grazing angles, whose depth changes a lot from pixel to pixel
+    // The size of one pixel is added on top of it, since the point may lie anywhere in the previous pixel
+    public static final float DEPTH_TOLERANCE = 0.01f;
+    // Smallest tolerated cosine between the current and the previous normal
+    public static final float MIN_NORMAL_DOT = 0.9f;
+
+    private final float[] previousViewProjectionMatrix = new float[16];
+    private final float[] previousCameraPosition = new float[3];
+    // Length of the y row of the previous view projection matrix (1 / tan of half the field of view)
+    private float previousFocalLength;
+    private final float[] clip = new float[4];
+    private final float[] point = new float[4];
+
+    // Remembers the camera of the frame that was just started, the frames of the next camera are reprojected into it
+    public void setPreviousCamera(float[] invertedViewProjectionMatrix, float[] cameraPosition) {
+        if (!invertM(previousViewProjectionMatrix, 0, invertedViewProjectionMatrix, 0)) {
+            throw new IllegalArgumentException("The view projection matrix can't be inverted");
+        }
+        previousCameraPosition[0] = cameraPosition[0];
+        previousCameraPosition[1] = cameraPosition[1];
+        previousCameraPosition[2] = cameraPosition[2];
+        previousFocalLength = (float) Math.sqrt(previousViewProjectionMatrix[1] * previousViewProjectionMatrix[1]
+                + previousViewProjectionMatrix[5] * previousViewProjectionMatrix[5] + previousViewProjectionMatrix[9] * previousViewProjectionMatrix[9]);
+    }
+
+    public float[] getPreviousViewProjectionMatrix() {
+        return previousViewProjectionMatrix;
+    }
+
+    public float[] getPreviousCameraPosition() {
+        return previousCameraPosition;
+    }
+
+    // Looks up the hit point (with its normal) in the previous average, writes the rgb of the history into history
+    // Returns the number of frames the history is worth (0 = no history)
+    public float reproject(float pointX, float pointY, float pointZ, float normalX, float normalY, float normalZ,
+                           float[] previousAverage, float[] previousNormalDepth, int width, int height, float[] history) {
+        point[0] = pointX;
+        point[1] = pointY;
+        point[2] = pointZ;
+        point[3] = 1.0f;
+        multiplyMV(clip, 0, previousViewProjectionMatrix, 0, point, 0);
+        if (clip[3] <= 0.0f) {
+            return 0.0f;
+        }
+
+        // The previous pixel whose samples cover the point (their jitter is spread over the whole pixel)
+        final float x = (clip[0] / clip[3] * 0.5f + 0.5f) * (float) width;
+        final float y = (clip[1] / clip[3] * 0.5f + 0.5f) * (float) height;
+        if (!(x >= 0.0f && y >= 0.0f && x < (float) width && y < (float) height)) {
+            return 0.0f;
+        }
+        final int offset = ((int) y * width + (int) x) * 4;
+
+        final float deltaX = pointX - previousCameraPosition[0];
+        final float deltaY = pointY - previousCameraPosition[1];
+        final float deltaZ = pointZ - previousCameraPosition[2];
+        final float distance = (float) Math.sqrt(deltaX * deltaX + deltaY * deltaY + deltaZ * deltaZ);
+        final float cosine = Math.abs(deltaX * normalX + deltaY * normalY + deltaZ * normalZ) / distance;
+        final float depthError = Math.abs(previousNormalDepth[offset + 3] - distance) * cosine / distance;
+        final float tolerance = DEPTH_TOLERANCE + 2.0f / ((float) height * previousFocalLength);
+        if (depthError > tolerance) {
+            return 0.0f;
+        }
+
+        final float normalDot = normalX * previousNormalDepth[offset] + normalY * previousNormalDepth[offset + 1] + normalZ * previousNormalDepth[offset + 2];
+        if (normalDot < MIN_NORMAL_DOT) {
+            return 0.0f;
+        }
+
+        history[0] = previousAverage[offset];
+        history[1] = previousAverage[offset + 1];
+        history[2] = previousAverage[offset + 2];
+        return Math.min(previousAverage[offset + 3], MAX_HISTORY) * (1.0f - depthError / tolerance);
+    }
+
+    // Blends the reprojected history into frameBuffer, which holds the first frame of a new camera traced by the CpuRaytracer
+    // guides have to be the guides of that frame, previousAverage and previousGuides are the last ones of the previous camera
+    public void apply(float[] frameBuffer, GuideBuffer guides, float[] previousAverage, GuideBuffer previousGuides,
+                      float[] invertedViewProjectionMatrix, float[] cameraPosition, int frameIndex) {
+        final int width = guides.width;
+        final int height = guides.height;
+        final float jitterX = PathTracer.jitterX(frameIndex);
+        final float jitterY = PathTracer.jitterY(frameIndex);
+        final float[] corner = new float[4];
+        final float[] ray = new float[4];
+        final float[] history = new float[3];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int offset = (y * width + x) * 4;
+                final float distance = guides.normalDepth[offset + 3];
+                // The sky has no noise, it doesn't need any history
+                if (distance >= PathTracer.MAX_SCENE_BOUNDS) {
+                    continue;
+                }
+
+                // The camera ray of the pixel, the same one as the interpolated corner rays of the shader
+                corner[0] = ((float) x + jitterX) / (float) width * 2.0f - 1.0f;
+                corner[1] = ((float) y + jitterY) / (float) height * 2.0f - 1.0f;
+                corner[2] = 0.0f;
+                corner[3] = 1.0f;
+                multiplyMV(ray, 0, invertedViewProjectionMatrix, 0, corner, 0);
+                final float directionX = ray[0] / ray[3] - cameraPosition[0];
+                final float directionY = ray[1] / ray[3] - cameraPosition[1];
+                final float directionZ = ray[2] / ray[3] - cameraPosition[2];
+                final float scale = distance / (float) Math.sqrt(directionX * directionX + directionY * directionY + directionZ * directionZ);
+
+                final float historyLength = reproject(cameraPosition[0] + directionX * scale, cameraPosition[1] + directionY * scale, cameraPosition[2] + directionZ * scale,
+                        guides.normalDepth[offset], guides.normalDepth[offset + 1], guides.normalDepth[offset + 2],
+                        previousAverage, previousGuides.normalDepth, width, height, history);
+                if (historyLength > 0.0f) {
+                    final float blendFactor = 1.0f / (historyLength + frameBuffer[offset + 3]);
+                    for (int channel = 0; channel < 3; channel++) {
+                        frameBuffer[offset + channel] = history[channel] * (1.0f - blendFactor) + frameBuffer[offset + channel] * blendFactor;
+                    }
+                    frameBuffer[offset + 3] += historyLength;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package Tracing;
+
+/**
+ * Picks the resolution that is traced (as a scale of the surface size) from the measured frame times.
+ * The tracing cost grows with the number of pixels, so the scale is lowered by the square root
+ * of the overshoot as soon as the smoothed frame time is clearly above the target.
+ * It is only raised by one step if the predicted frame time of the bigger size still fits into the target,
+ * which keeps the scale from jumping back and forth (every change starts the accumulation over).
+ */
+
+public class ResolutionController {
+
+    // The scale only takes multiples of this step, so that small changes don't resize the render targets
+    public static final float SCALE_STEP = 0.125f;
+    public static final float MIN_SCALE = 0.25f;
+    public static final float MAX_SCALE = 1.0f;
+
+    // Frames have to be this much slower than the target before the scale is lowered
+    private static final double DOWNSCALE_THRESHOLD = 1.1;
+    // The predicted frame time after raising the scale has to be this much faster than the target
+    private static final double UPSCALE_THRESHOLD = 0.9;
+    // Weight of the newest measurement in the smoothed frame time
+    private static final double SMOOTHING = 0.3;
+    // Measurements that are taken after a change before the next decision
+    private static final int SETTLE_FRAMES = 3;
+    // Consecutive fast measurements that are needed before the scale is raised
+    private static final int UPSCALE_FRAMES = 10;
+
+    private final long targetFrameNanos;
+    private float scale = MAX_SCALE;
+    private double smoothedNanos;
+    private int measurements;
+    private int fastMeasurements;
+
+    public ResolutionController(long targetFrameNanos) {
+        this.targetFrameNanos = targetFrameNanos;
+    }
+
+    // Feeds the time of the last frame into the controller, returns true if the scale changed
+    public boolean update(long frameNanos) {
+        smoothedNanos = measurements == 0 ? frameNanos : smoothedNanos + SMOOTHING * (frameNanos - smoothedNanos);
+        measurements++;
+        if (measurements < SETTLE_FRAMES) {
+            return false;
+        }
+
+        if (smoothedNanos > targetFrameNanos * DOWNSCALE_THRESHOLD && scale > MIN_SCALE) {
+            // Cost ~ pixels ~ scale^2, rounded down and at least one step
+            float newScale = quantize((float) (scale * Math.sqrt(targetFrameNanos / smoothedNanos)));
+            return setScale(Math.min(newScale, scale - SCALE_STEP));
+        }
+
+        float biggerScale = scale + SCALE_STEP;
+        double predictedNanos = smoothedNanos * (biggerScale * biggerScale) / (scale * scale);
+        if (biggerScale <= MAX_SCALE && predictedNanos < targetFrameNanos * UPSCALE_THRESHOLD) {
+            fastMeasurements++;
+            if (fastMeasurements >= UPSCALE_FRAMES) {
+                return setScale(biggerScale);
+            }
+        } else {
+            fastMeasurements = 0;
+        }
+        return false;
+    }
+
+    // Size of the traced image for a surface side
+    public int scaleSize(int surfaceSize) {
+        return Math.max(1, Math.round(surfaceSize * scale));
+    }
+
+    public void reset() {
+        scale = MAX_SCALE;
+        measurements = 0;
+        fastMeasurements = 0;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    private boolean setScale(float newScale) {
+        newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, newScale));
+        measurements = 0;
+        fastMeasurements = 0;
+        if (newScale == scale) {
+            return false;
+        }
+        scale = newScale;
+        return true;
+    }
+
+    private static float quantize(float scale) {
+        return (float) Math.floor(scale / SCALE_STEP) * SCALE_STEP;
+    }
+}
@@ -0,0 +1,88 @@
+package Tracing;
+
+/**
+ * Java twin of the random number functions of compute_shader.glsl (same names, same uint arithmetic on ints).
+ *
+ * Every pixel seeds a PCG generator with pixelSeed. At the start of every bounce the generator draws a random
+ * digital shift (scramble) for each of the three dimensions of a Sobol sequence, the same shifts for all samples
+ * of the pixel. Sample s of frame f uses point f * MULTI_SAMPLING_COUNT + s of the scrambled sequence, so the
+ * samples of a progressive render stay stratified across frames while neighbouring pixels are decorrelated.
+ */
+
+public final class Sampler {
+
+    // 1 / 2^24, turns the upper 24 bits of a uint into a float in [0, 1) without rounding
+    private static final float UNIT_FLOAT = 1.0f / 16777216.0f;
+    private static final float TWO_PI = 6.28318530718f;
+    // Constants of the 32 bit PCG generator, 2891336453 as int
+    private static final int PCG_MULTIPLIER = 747796405;
+    private static final int PCG_INCREMENT = 0xAC564B05;
+
+    private Sampler() {
+    }
+
+    // PCG hash of a 32 bit value (one step of the generator, see Jarzynski and Olano, "Hash Functions for GPU Rendering")
+    public static int pcgHash(int value) {
+        return pcgOutput(value * PCG_MULTIPLIER + PCG_INCREMENT);
+    }
+
+    // Seed of the generator of the pixel, independent of the frame (the frame picks the points of the sequence)
+    public static int pixelSeed(int pixelX, int pixelY) {
+        return pcgHash(pixelX ^ pcgHash(pixelY));
+    }
+
+    // Advances the generator and returns the next uint, the shader keeps the state in an inout uint
+    public static int nextRandom(int[] state) {
+        state[0] = state[0] * PCG_MULTIPLIER + PCG_INCREMENT;
+        return pcgOutput(state[0]);
+    }
+
+    // Component dimension (0, 1 or 2) of Sobol point index, xored with scramble
+    // Dimension 0 is the van der Corput sequence, 1 and 2 use the direction numbers of Joe and Kuo (x + 1 and x^2 + x + 1)
+    public static int sobol(int index, int dimension, int scramble) {
+        int result = scramble;
+        // Direction numbers v_k and v_(k+1) (only dimension 2 needs both)
+        int direction = 0x80000000;
+        int nextDirection = 0xC0000000;
+
+        for (int bits = index; bits != 0; bits >>>= 1) {
+            if ((bits & 1) != 0) {
+                result ^= direction;
+            }
+            if (dimension == 0) {
+                direction >>>= 1;
+            } else if (dimension == 1) {
+                direction ^= direction >>> 1;
+            } else {
+                final int following = nextDirection ^ direction ^ (direction >>> 2);
+                direction = nextDirection;
+                nextDirection = following;
+            }
+        }
+        return result;
+    }
+
+    // RXS-M-XS output permutation of the state
+    private static int pcgOutput(int state) {
+        final int word = ((state >>> ((state >>> 28) + 4)) ^ state) * 277803737;
+        return (word >>> 22) ^ word;
+    }
+
+    // Upper 24 bits as a float in [0, 1)
+    public static float toUnitFloat(int bits) {
+        return (float) (bits >>> 8) * UNIT_FLOAT;
+    }
+
+    // Uniformly distributed point in the unit ball (length <= 1) from three uniform numbers in [0, 1), no rejection needed:
+    // a direction on the sphere (z and the angle around it) scaled by the cube root of the third number
+    public static void sampleUnitBall(float u0, float u1, float u2, float[] result) {
+        final float z = 1.0f - 2.0f * u0;
+        final float ring = (float) Math.sqrt(Math.max(0.0f, 1.0f - z * z));
+        final float angle = TWO_PI * u1;
+        final float radius = (float) Math.cbrt(u2);
+
+        result[0] = radius * ring * (float) Math.cos(angle);
+        result[1] = radius * ring * (float) Math.sin(angle);
+        result[2] = radius * z;
+    }
+}
@@ -0,0 +1,45 @@
+package Tracing;
+
+/**
+ * Fallback that intersects the rays of a packet one after the other, used where no SIMD implementation is available (e.g. on Android).
+ */
+
+public class ScalarPacketIntersector implements PacketIntersector {
+
+    public static final int PACKET_SIZE = 8;
+
+    public static final Factory FACTORY = new Factory() {
+        @Override
+        public PacketIntersector create(TraceScene scene, Bvh bvh) {
+            return new ScalarPacketIntersector(scene, bvh);
+        }
+    };
+
+    private final PathTracer tracer;
+    private final PathTracer.HitInfo cubeInfo = new PathTracer.HitInfo();
+    private final PathTracer.HitInfo sphereInfo = new PathTracer.HitInfo();
+    private final PathTracer.HitInfo triangleInfo = new PathTracer.HitInfo();
+
+    public ScalarPacketIntersector(TraceScene scene, Bvh bvh) {
+        tracer = new PathTracer(scene, bvh);
+    }
+
+    @Override
+    public int getPacketSize() {
+        return PACKET_SIZE;
+    }
+
+    @Override
+    public void intersect(RayPacket packet) {
+        for (int lane = 0; lane < packet.size; lane++) {
+            tracer.intersectScene(packet.originX[lane], packet.originY[lane], packet.originZ[lane],
+                    packet.directionX[lane], packet.directionY[lane], packet.directionZ[lane], cubeInfo, sphereInfo, triangleInfo);
+            packet.cubeT[lane] = cubeInfo.t;
+            packet.cubeIndex[lane] = cubeInfo.arrayIndex;
+            packet.sphereT[lane] = sphereInfo.t;
+            packet.sphereIndex[lane] = sphereInfo.arrayIndex;
+            packet.triangleT[lane] = triangleInfo.t;
+            packet.triangleIndex[lane] = triangleInfo.arrayIndex;
+        }
+    }
+}
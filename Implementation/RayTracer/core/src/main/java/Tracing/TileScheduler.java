@@ -0,0 +1,148 @@
+package Tracing;
+
+/**
+ * Splits a frame into square tiles that are traced one dispatch at a time.
+ * Tiles at the right and bottom border are cut to the image size, so sizes that are not a multiple
+ * of the tile (or work group) size are covered completely.
+ * Only as many tiles as fit into the time budget are handed out per draw call,
+ * the cost of a tile is estimated from the gpu time of earlier draw calls. Those times arrive a frame or more late,
+ * the gl thread never waits for them. Without gpu times the count follows whether the gpu kept up with the last draw call.
+ * The same estimates give the gpu time of a complete image, which the traced resolution is scaled with.
+ */
+
+public class TileScheduler {
+
+    // Has to be a multiple of the work group size of the compute shader (8)
+    public static final int DEFAULT_TILE_SIZE = 128;
+    public static final float DEFAULT_BUDGET_MILLISECONDS = 8f;
+
+    // Weight of the newest measurement in the cost estimate
+    private static final double COST_SMOOTHING = 0.25;
+
+    private final int tileSize;
+    private float budgetMilliseconds;
+
+    private int width;
+    private int height;
+    private int tilesX;
+    private int tileCount;
+    private int nextTile;
+
+    // Estimated cost of tracing one pixel (< 0 = nothing was measured yet)
+    private double nanosPerPixel = -1.0;
+    // Tiles per draw call as long as nothing was measured
+    private int unmeasuredTiles = 1;
+    // True once the gpu reported whether it kept up (only used without gpu times)
+    private boolean gpuBusyRecorded;
+
+    public TileScheduler() {
+        this(DEFAULT_TILE_SIZE, DEFAULT_BUDGET_MILLISECONDS);
+    }
+
+    public TileScheduler(int tileSize, float budgetMilliseconds) {
+        if (tileSize <= 0) {
+            throw new RuntimeException("Tile size has to be positive: " + tileSize);
+        }
+        this.tileSize = tileSize;
+        this.budgetMilliseconds = budgetMilliseconds;
+    }
+
+    // Starts handing out the tiles of a new frame
+    public void startFrame(int width, int height) {
+        this.width = width;
+        this.height = height;
+        tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+        tileCount = tilesX * tilesY;
+        nextTile = 0;
+    }
+
+    public boolean isFrameComplete() {
+        return nextTile >= tileCount;
+    }
+
+    // Number of tiles that fit into the budget, at least one so that every frame finishes eventually
+    public int getTilesForBudget() {
+        int remaining = tileCount - nextTile;
+        if (remaining <= 0) {
+            return 0;
+        }
+        // Without a measurement the count is only steered by whether the gpu keeps up
+        if (nanosPerPixel < 0.0) {
+            return Math.min(unmeasuredTiles, remaining);
+        }
+
+        double nanosPerTile = nanosPerPixel * tileSize * tileSize;
+        int tiles = (int) (budgetMilliseconds * 1_000_000.0 / Math.max(nanosPerTile, 1.0));
+        return Math.max(1, Math.min(tiles, remaining));
+    }
+
+    // Returns the index of the next tile of the frame
+    public int nextTile() {
+        if (isFrameComplete()) {
+            throw new RuntimeException("All tiles of the frame were already handed out.");
+        }
+        return nextTile++;
+    }
+
+    // Feeds the measured gpu time of an earlier draw call into the cost estimate
+    public void recordTime(int pixels, long nanos) {
+        if (pixels <= 0) {
+            return;
+        }
+
+        double measured = (double) nanos / pixels;
+        nanosPerPixel = nanosPerPixel < 0.0 ? measured : nanosPerPixel + COST_SMOOTHING * (measured - nanosPerPixel);
+    }
+
+    // For gpus without timers: busy means the previous draw call wasn't finished when the next one started,
+    // its tiles didn't fit into a frame. The count backs off quickly and grows by one tile while the gpu keeps up
+    public void recordGpuBusy(boolean busy) {
+        unmeasuredTiles = busy ? Math.max(1, unmeasuredTiles / 2) : unmeasuredTiles + 1;
+        gpuBusyRecorded = true;
+    }
+
+    // Gpu time of all tiles of the current frame size, < 0 as long as nothing was measured.
+    // Without gpu times the tiles that the gpu keeps up with are assumed to take one interval between draw calls
+    public long getImageNanos(long drawCallIntervalNanos) {
+        if (nanosPerPixel >= 0.0) {
+            return (long) (nanosPerPixel * width * height);
+        }
+        if (!gpuBusyRecorded) {
+            return -1;
+        }
+        return drawCallIntervalNanos * tileCount / unmeasuredTiles;
+    }
+
+    public int getTileX(int tile) {
+        return (tile % tilesX) * tileSize;
+    }
+
+    public int getTileY(int tile) {
+        return (tile / tilesX) * tileSize;
+    }
+
+    public int getTileWidth(int tile) {
+        return Math.min(tileSize, width - getTileX(tile));
+    }
+
+    public int getTileHeight(int tile) {
+        return Math.min(tileSize, height - getTileY(tile));
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public float getBudgetMilliseconds() {
+        return budgetMilliseconds;
+    }
+
+    public void setBudgetMilliseconds(float budgetMilliseconds) {
+        this.budgetMilliseconds = budgetMilliseconds;
+    }
+}
@@ -0,0 +1,96 @@
+package Tracing;
+
+/**
+ * Storage formats of the traced image and its running average. The smaller formats halve or quarter the bytes that
+ * every frame writes and reads back, at the cost of precision (see QuantizationReport).
+ * R11G11B10F has no alpha, so the history length of its pixels is the frame index instead of a per pixel count
+ * (a reprojected pixel counts as MAX_HISTORY frames). GLES 3.1 can't store that format from a compute shader,
+ * so the shaders pack it into an r32ui image themselves: the three channels are half floats without sign and with
+ * 6, 6 and 5 bits of mantissa. The shaders round through a half float, so their results can differ in the last bit.
+ * The order of the constants matches the FORMAT_ defines of the shaders.
+ */
+
+public enum TraceFormat {
+    RGBA32F(16, false, 23, 23, 23, 23),
+    RGBA16F(8, false, 10, 10, 10, 10),
+    R11G11B10F(4, true, 6, 6, 5);
+
+    // Exponent range of the half float based formats
+    private static final int MAX_EXPONENT = 15;
+    private static final int MIN_EXPONENT = -14;
+
+    private final int bytesPerPixel;
+    private final boolean packed;
+    private final int[] mantissaBits;
+
+    TraceFormat(int bytesPerPixel, boolean packed, int... mantissaBits) {
+        this.bytesPerPixel = bytesPerPixel;
+        this.packed = packed;
+        this.mantissaBits = mantissaBits;
+    }
+
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+
+    // Packed formats have no alpha, the history length of their pixels isn't stored
+    public boolean isPacked() {
+        return packed;
+    }
+
+    public int getChannelCount() {
+        return mantissaBits.length;
+    }
+
+    public int getMantissaBits(int channel) {
+        checkChannel(channel);
+        return mantissaBits[channel];
+    }
+
+    // Returns the value that the format stores for the value (rounded to nearest even)
+    // Half floats overflow to infinity, the packed format has no sign and clamps to its largest value like the shaders
+    public float quantize(float value, int channel) {
+        checkChannel(channel);
+        if (this == RGBA32F) {
+            return value;
+        }
+
+        int bits = mantissaBits[channel];
+        float max = Math.scalb(2f - Math.scalb(1f, -bits), MAX_EXPONENT);
+        if (packed) {
+            return value > 0f ? Math.min(round(value, bits), max) : 0f;
+        }
+
+        float rounded = round(value, bits);
+        return Math.abs(rounded) > max ? Math.copySign(Float.POSITIVE_INFINITY, rounded) : rounded;
+    }
+
+    // Frames after which the running average stops converging: a new sample as large as the average itself
+    // changes it by less than half of its last bit, so the average of pixels with that much noise freezes
+    public int getConvergenceLimit() {
+        int bits = Integer.MAX_VALUE;
+        for (int channel = 0; channel < 3; channel++) {
+            bits = Math.min(bits, mantissaBits[channel]);
+        }
+        return 1 << (bits + 1);
+    }
+
+    private void checkChannel(int channel) {
+        if (channel < 0 || channel >= mantissaBits.length) {
+            throw new IllegalArgumentException(this + " has no channel " + channel);
+        }
+    }
+
+    // Rounds to a float with the given mantissa bits and the exponent range of a half float, denormals included
+    private static float round(float value, int mantissaBits) {
+        float magnitude = Math.abs(value);
+        if (magnitude == 0f || Float.isNaN(value) || Float.isInfinite(value)) {
+            return value;
+        }
+
+        // Scaling by powers of two is exact, so only rint rounds
+        int exponent = Math.max(Math.getExponent(magnitude), MIN_EXPONENT);
+        float ulp = Math.scalb(1f, exponent - mantissaBits);
+        return Math.copySign((float) (Math.rint(magnitude / ulp) * ulp), value);
+    }
+}
@@ -0,0 +1,61 @@
+package Tracing;
+
+/**
+ * Picks the TraceFormat of a device. A format is only picked on its own if its average still converges within the frames
+ * that an image is accumulated for, so R11G11B10F (64 frames) has to be asked for. Of those the most precise one whose
+ * two accumulation textures fit into the memory budget of the device wins, if none fits the smallest one.
+ * A preference (e.g. from the launch intent) always wins.
+ */
+
+public final class TraceFormatPolicy {
+
+    // Part of the memory class of the app that the accumulation textures may take
+    public static final int MEMORY_BUDGET_DIVISOR = 4;
+    // The accumulation buffer holds the new and the old average
+    private static final int ACCUMULATION_TEXTURES = 2;
+
+    private TraceFormatPolicy() {
+    }
+
+    // preference may be null, pixels is the size of the traced image, convergedFrameCount the frames an image is averaged for
+    public static TraceFormat choose(TraceFormat preference, long pixels, long memoryBudgetBytes, int convergedFrameCount) {
+        if (preference != null) {
+            return preference;
+        }
+
+        // The formats are ordered from the most to the least precise
+        TraceFormat smallest = TraceFormat.RGBA32F;
+        for (TraceFormat format : TraceFormat.values()) {
+            if (format.getConvergenceLimit() < convergedFrameCount) {
+                continue;
+            }
+            if (getAccumulationBytes(format, pixels) <= memoryBudgetBytes) {
+                return format;
+            }
+            smallest = format;
+        }
+        return smallest;
+    }
+
+    // Budget of a device with the given memory class (ActivityManager.getMemoryClass, in megabytes)
+    public static long getMemoryBudget(int memoryClassMegabytes) {
+        return (long) memoryClassMegabytes * 1024 * 1024 / MEMORY_BUDGET_DIVISOR;
+    }
+
+    public static long getAccumulationBytes(TraceFormat format, long pixels) {
+        return ACCUMULATION_TEXTURES * pixels * format.getBytesPerPixel();
+    }
+
+    // Name of a TraceFormat, null and an empty name mean no preference
+    public static TraceFormat parsePreference(String name) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        for (TraceFormat format : TraceFormat.values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown trace format: " + name);
+    }
+}
@@ -0,0 +1,227 @@
+package Tracing;
+
+import java.util.Collections;
+import java.util.List;
+
+import Data.SceneFile;
+import Data.TriangleMesh;
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Util.Geometry.Vector;
+
+/**
+ * Snapshot of the cube, sphere and mesh lists as struct-of-arrays for the cpu tracer and the bvh builder.
+ * Taking the snapshot once per frame keeps the getter calls out of the per ray code.
+ * Scenes loaded from a scene file already have this layout and are used without the objects.
+ * The triangles of all meshes share one vertex array, their indices point into it.
+ */
+
+public class TraceScene {
+
+    // Material codes, have to have the same value in the shader
+    public static final int MATERIAL_DIFFUSE = 0;
+    public static final int MATERIAL_METAL = 1;
+    public static final int MATERIAL_LIGHT = 2;
+
+    public final int cubeCount;
+    public final float[] cubeMin;
+    public final float[] cubeMax;
+    public final float[] cubeColor;
+    public final int[] cubeMaterial;
+    public final float[] cubeParameter0;
+
+    public final int sphereCount;
+    public final float[] sphereCenter;
+    public final float[] sphereRadius;
+    public final float[] sphereColor;
+    public final int[] sphereMaterial;
+    public final float[] sphereParameter0;
+
+    public final int meshCount;
+    public final float[] meshColor;
+    public final int[] meshMaterial;
+    public final float[] meshParameter0;
+
+    public final int vertexCount;
+    public final float[] vertexPositions;
+    // (0, 0, 0) for vertices without a normal, the face normal is used for them
+    public final float[] vertexNormals;
+
+    public final int triangleCount;
+    public final int[] triangleIndices;
+    // Index of the mesh (and therefore the material) of every triangle
+    public final int[] triangleMesh;
+
+    public TraceScene(List<Cube> cubeList, List<Sphere> sphereList) {
+        this(cubeList, sphereList, Collections.<Mesh>emptyList());
+    }
+
+    public TraceScene(List<Cube> cubeList, List<Sphere> sphereList, List<Mesh> meshList) {
+        cubeCount = cubeList.size();
+        cubeMin = new float[cubeCount * 3];
+        cubeMax = new float[cubeCount * 3];
+        cubeColor = new float[cubeCount * 3];
+        cubeMaterial = new int[cubeCount];
+        cubeParameter0 = new float[cubeCount];
+
+        for (int i = 0; i < cubeCount; i++) {
+            Cube cube = cubeList.get(i);
+            put(cubeMin, i, cube.getMin());
+            put(cubeMax, i, cube.getMax());
+            put(cubeColor, i, cube.getColor());
+            cubeMaterial[i] = materialCode(cube.getMaterial());
+            cubeParameter0[i] = cube.getParameter0();
+        }
+
+        sphereCount = sphereList.size();
+        sphereCenter = new float[sphereCount * 3];
+        sphereRadius = new float[sphereCount];
+        sphereColor = new float[sphereCount * 3];
+        sphereMaterial = new int[sphereCount];
+        sphereParameter0 = new float[sphereCount];
+
+        for (int i = 0; i < sphereCount; i++) {
+            Sphere sphere = sphereList.get(i);
+            put(sphereCenter, i, sphere.getCenter());
+            sphereRadius[i] = sphere.getRadius();
+            put(sphereColor, i, sphere.getColor());
+            sphereMaterial[i] = materialCode(sphere.getMaterial());
+            sphereParameter0[i] = sphere.getParameter0();
+        }
+
+        Triangles triangles = new Triangles(meshList);
+        meshCount = triangles.meshCount;
+        meshColor = triangles.meshColor;
+        meshMaterial = triangles.meshMaterial;
+        meshParameter0 = triangles.meshParameter0;
+        vertexCount = triangles.vertexCount;
+        vertexPositions = triangles.vertexPositions;
+        vertexNormals = triangles.vertexNormals;
+        triangleCount = triangles.triangleCount;
+        triangleIndices = triangles.triangleIndices;
+        triangleMesh = triangles.triangleMesh;
+    }
+
+    // Uses the cube and sphere arrays of the scene file as they are, nothing is copied
+    // The meshes of the scene file are loaded by the caller (see SceneFile.createMesh)
+    public TraceScene(SceneFile sceneFile, List<Mesh> meshList) {
+        cubeCount = sceneFile.cubeCount;
+        cubeMin = sceneFile.cubeMin;
+        cubeMax = sceneFile.cubeMax;
+        cubeColor = sceneFile.cubeColor;
+        cubeMaterial = sceneFile.cubeMaterial;
+        cubeParameter0 = sceneFile.cubeParameter0;
+
+        sphereCount = sceneFile.sphereCount;
+        sphereCenter = sceneFile.sphereCenter;
+        sphereRadius = sceneFile.sphereRadius;
+        sphereColor = sceneFile.sphereColor;
+        sphereMaterial = sceneFile.sphereMaterial;
+        sphereParameter0 = sceneFile.sphereParameter0;
+
+        Triangles triangles = new Triangles(meshList);
+        meshCount = triangles.meshCount;
+        meshColor = triangles.meshColor;
+        meshMaterial = triangles.meshMaterial;
+        meshParameter0 = triangles.meshParameter0;
+        vertexCount = triangles.vertexCount;
+        vertexPositions = triangles.vertexPositions;
+        vertexNormals = triangles.vertexNormals;
+        triangleCount = triangles.triangleCount;
+        triangleIndices = triangles.triangleIndices;
+        triangleMesh = triangles.triangleMesh;
+    }
+
+    public static int materialCode(Cube.Material material) {
+        switch (material) {
+            case DIFFUSE:
+                return MATERIAL_DIFFUSE;
+            case METAL:
+                return MATERIAL_METAL;
+            default:
+                return MATERIAL_LIGHT;
+        }
+    }
+
+    public static int materialCode(Sphere.Material material) {
+        switch (material) {
+            case DIFFUSE:
+                return MATERIAL_DIFFUSE;
+            case METAL:
+                return MATERIAL_METAL;
+            default:
+                return MATERIAL_LIGHT;
+        }
+    }
+
+    public static int materialCode(Mesh.Material material) {
+        switch (material) {
+            case DIFFUSE:
+                return MATERIAL_DIFFUSE;
+            case METAL:
+                return MATERIAL_METAL;
+            default:
+                return MATERIAL_LIGHT;
+        }
+    }
+
+    private static void put(float[] array, int index, Vector vector) {
+        array[index * 3] = vector.x;
+        array[index * 3 + 1] = vector.y;
+        array[index * 3 + 2] = vector.z;
+    }
+
+    // The triangles of all meshes in one vertex and one index array
+    private static final class Triangles {
+        final int meshCount;
+        final float[] meshColor;
+        final int[] meshMaterial;
+        final float[] meshParameter0;
+        int vertexCount;
+        final float[] vertexPositions;
+        final float[] vertexNormals;
+        int triangleCount;
+        final int[] triangleIndices;
+        final int[] triangleMesh;
+
+        Triangles(List<Mesh> meshList) {
+            meshCount = meshList.size();
+            meshColor = new float[meshCount * 3];
+            meshMaterial = new int[meshCount];
+            meshParameter0 = new float[meshCount];
+
+            int totalVertices = 0;
+            int totalTriangles = 0;
+            for (int i = 0; i < meshCount; i++) {
+                totalVertices += meshList.get(i).getTriangles().vertexCount;
+                totalTriangles += meshList.get(i).getTriangles().triangleCount;
+            }
+            vertexPositions = new float[totalVertices * 3];
+            vertexNormals = new float[totalVertices * 3];
+            triangleIndices = new int[totalTriangles * 3];
+            triangleMesh = new int[totalTriangles];
+
+            for (int i = 0; i < meshCount; i++) {
+                Mesh mesh = meshList.get(i);
+                TriangleMesh triangles = mesh.getTriangles();
+                put(meshColor, i, mesh.getColor());
+                meshMaterial[i] = materialCode(mesh.getMaterial());
+                meshParameter0[i] = mesh.getParameter0();
+
+                System.arraycopy(triangles.positions, 0, vertexPositions, vertexCount * 3, triangles.vertexCount * 3);
+                if (triangles.hasNormals()) {
+                    System.arraycopy(triangles.normals, 0, vertexNormals, vertexCount * 3, triangles.vertexCount * 3);
+                }
+                for (int t = 0; t < triangles.triangleCount; t++) {
+                    triangleIndices[(triangleCount + t) * 3] = vertexCount + triangles.indices[t * 3];
+                    triangleIndices[(triangleCount + t) * 3 + 1] = vertexCount + triangles.indices[t * 3 + 1];
+                    triangleIndices[(triangleCount + t) * 3 + 2] = vertexCount + triangles.indices[t * 3 + 2];
+                    triangleMesh[triangleCount + t] = i;
+                }
+                vertexCount += triangles.vertexCount;
+                triangleCount += triangles.triangleCount;
+            }
+        }
+    }
+}
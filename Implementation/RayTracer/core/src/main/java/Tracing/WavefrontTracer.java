@@ -0,0 +1,696 @@
+package Tracing;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static Tracing.PathTracer.MAX_BOUNCES;
+import static Tracing.PathTracer.MULTI_SAMPLING_COUNT;
+
+/**
+ * Wavefront (stream) version of the CpuRaytracer. Instead of following every path from the camera to its end in one loop
+ * (the megakernel of compute_shader.glsl), all paths of a tile go through a graph of stages, each stage does one step for a whole queue:
+ *
+ * generate -> extend -> shade diffuse + shade metal -> extend -> ... -> accumulate
+ *
+ * Generate creates MULTI_SAMPLING_COUNT paths per pixel, extend intersects the rays of the ray queue and sorts the hits into
+ * one queue per material (the sky, lights and ties end the path right there), the shade stages only ever run the code of
+ * their material and hand the surviving paths back to extend. Finished paths are dropped from the queues by prefix sum
+ * stream compaction (QueueCompactor) between the stages. Accumulate averages the samples and blends them into the frame.
+ *
+ * The steps are the ones of PathTracer, so both give the same images. The stages are the same as the wavefront kernels
+ * of compute_shader.glsl, Statistics compares the SIMD lane occupancy of both architectures.
+ * Renders of one instance must not overlap.
+ */
+
+public class WavefrontTracer {
+
+    // Stages of the graph
+    public enum Stage {
+        GENERATE, EXTEND, SHADE_DIFFUSE, SHADE_METAL, ACCUMULATE
+    }
+
+    // Lanes of one GPU wave (warp), the unit in which the occupancy is counted
+    public static final int WAVE_SIZE = 32;
+
+    // Smallest piece of a queue that one thread works on
+    private static final int GRAIN = 256;
+
+    // Queue keys of a path, after extend (the material queues) and after shading (the next ray queue)
+    private static final byte KEY_DIFFUSE = 0;
+    private static final byte KEY_METAL = 1;
+    private static final byte KEY_ALIVE = 0;
+    private static final byte KEY_FINISHED = 2;
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+    private final QueueCompactor compactor;
+    private final Statistics statistics = new Statistics();
+    private final AtomicLong tracedRays = new AtomicLong();
+    private int rouletteMinBounces = PathTracer.ROULETTE_MIN_BOUNCES;
+
+    // Path state, one slot per path (pixel of the tile * MULTI_SAMPLING_COUNT + sample)
+    private final int capacity;
+    private final float[] originX, originY, originZ;
+    private final float[] directionX, directionY, directionZ;
+    private final float[] colorR, colorG, colorB;
+    private final float[] attenuation;
+    private final float[] previousParameter0;
+    private final float[] estimateR, estimateG, estimateB;
+    private final float[] valueR, valueG, valueB;
+    private final float[] rouletteWeight;
+    private final int[] rngState;
+    private final int[] rouletteState;
+    // Hit of the last extend
+    private final float[] hitX, hitY, hitZ;
+    private final float[] normalX, normalY, normalZ;
+    private final float[] objectR, objectG, objectB;
+    private final float[] parameter0;
+    // Color of finished paths
+    private final float[] resultR, resultG, resultB;
+    private final byte[] keys;
+
+    // Queues of path slots
+    private final int[] allSlots;
+    private int[] rayQueue;
+    private int[] nextRayQueue;
+    private final int[] diffuseQueue;
+    private final int[] metalQueue;
+    private final int[][] materialQueues;
+    private final int[] queueCounts = new int[2];
+    private int rayCount;
+
+    // Guides of the pixels of the tile (primary hits)
+    private final float[] tileNormalDepth;
+    private final float[] tileAlbedo;
+
+    // The frame that is traced
+    private TraceScene scene;
+    private Bvh bvh;
+    private int frameIndex;
+    private int bounce;
+    private int width;
+    private int height;
+    private final float[] cameraPosition = new float[4];
+    private final float[] cornerRays = new float[16];
+    // The tile that is traced
+    private int tileX;
+    private int tileY;
+    private int tileWidth;
+
+    public WavefrontTracer(ForkJoinPool pool, int tileSize) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size has to be at least 1 but was " + tileSize);
+        }
+        this.pool = pool;
+        this.tileSize = tileSize;
+        this.compactor = new QueueCompactor(pool);
+
+        capacity = tileSize * tileSize * MULTI_SAMPLING_COUNT;
+        originX = new float[capacity];
+        originY = new float[capacity];
+        originZ = new float[capacity];
+        directionX = new float[capacity];
+        directionY = new float[capacity];
+        directionZ = new float[capacity];
+        colorR = new float[capacity];
+        colorG = new float[capacity];
+        colorB = new float[capacity];
+        attenuation = new float[capacity];
+        previousParameter0 = new float[capacity];
+        estimateR = new float[capacity];
+        estimateG = new float[capacity];
+        estimateB = new float[capacity];
+        valueR = new float[capacity];
+        valueG = new float[capacity];
+        valueB = new float[capacity];
+        rouletteWeight = new float[capacity];
+        rngState = new int[capacity];
+        rouletteState = new int[capacity];
+        hitX = new float[capacity];
+        hitY = new float[capacity];
+        hitZ = new float[capacity];
+        normalX = new float[capacity];
+        normalY = new float[capacity];
+        normalZ = new float[capacity];
+        objectR = new float[capacity];
+        objectG = new float[capacity];
+        objectB = new float[capacity];
+        parameter0 = new float[capacity];
+        resultR = new float[capacity];
+        resultG = new float[capacity];
+        resultB = new float[capacity];
+        keys = new byte[capacity];
+
+        allSlots = new int[capacity];
+        for (int slot = 0; slot < capacity; slot++) {
+            allSlots[slot] = slot;
+        }
+        rayQueue = new int[capacity];
+        nextRayQueue = new int[capacity];
+        diffuseQueue = new int[capacity];
+        metalQueue = new int[capacity];
+        materialQueues = new int[][]{diffuseQueue, metalQueue};
+
+        tileNormalDepth = new float[tileSize * tileSize * 4];
+        tileAlbedo = new float[tileSize * tileSize * 4];
+    }
+
+    // Bounces before russian roulette may end a path, PathTracer.MAX_BOUNCES turns it off (see CpuRaytracer)
+    public void setRouletteMinBounces(int rouletteMinBounces) {
+        if (rouletteMinBounces < 1) {
+            throw new IllegalArgumentException("Paths need at least 1 bounce before the roulette but got " + rouletteMinBounces);
+        }
+        this.rouletteMinBounces = rouletteMinBounces;
+    }
+
+    // Same as CpuRaytracer.render, guides may be null
+    public void render(float[] frameBuffer, GuideBuffer guides, int width, int height, float[] invertedViewProjectionMatrix, float[] invertedViewMatrix, TraceScene scene, Bvh bvh, int frameIndex) {
+        if (frameBuffer.length < width * height * 4) {
+            throw new IllegalArgumentException("Frame buffer too small for " + width + "x" + height + " rgba pixels");
+        }
+        if (guides != null && (guides.width != width || guides.height != height)) {
+            throw new IllegalArgumentException("Guide buffer is " + guides.width + "x" + guides.height + " but the frame is " + width + "x" + height);
+        }
+
+        this.scene = scene;
+        this.bvh = bvh;
+        this.frameIndex = frameIndex;
+        this.width = width;
+        this.height = height;
+        CpuRaytracer.setCamera(invertedViewProjectionMatrix, invertedViewMatrix, cameraPosition, cornerRays);
+
+        for (int y = 0; y < height; y += tileSize) {
+            for (int x = 0; x < width; x += tileSize) {
+                traceTile(frameBuffer, guides, x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+            }
+        }
+    }
+
+    public long getTracedRays() {
+        return tracedRays.get();
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    private void traceTile(float[] frameBuffer, GuideBuffer guides, int x, int y, int tileWidth, int tileHeight) {
+        tileX = x;
+        tileY = y;
+        this.tileWidth = tileWidth;
+        final int pixels = tileWidth * tileHeight;
+        final int slots = pixels * MULTI_SAMPLING_COUNT;
+
+        // All samples of a pixel share the camera ray, so its hit is only searched once (like in PathTracer)
+        run(Stage.GENERATE, pixels, new ParallelRange.Body() {
+            @Override
+            public void run(int from, int to) {
+                generate(from, to);
+            }
+        });
+
+        for (bounce = 0; bounce < MAX_BOUNCES; bounce++) {
+            final int[] extended = bounce == 0 ? allSlots : rayQueue;
+            final int extendedCount = bounce == 0 ? slots : rayCount;
+            if (extendedCount == 0) {
+                break;
+            }
+
+            run(Stage.EXTEND, bounce == 0 ? pixels : rayCount, new ParallelRange.Body() {
+                @Override
+                public void run(int from, int to) {
+                    extend(from, to);
+                }
+            });
+            compactor.partition(extended, extendedCount, keys, materialQueues, queueCounts);
+            final int diffuseCount = queueCounts[0];
+            final int metalCount = queueCounts[1];
+            statistics.addBounce(extended, extendedCount, keys, diffuseCount, metalCount);
+
+            run(Stage.SHADE_DIFFUSE, diffuseCount, new ParallelRange.Body() {
+                @Override
+                public void run(int from, int to) {
+                    shade(diffuseQueue, from, to, false);
+                }
+            });
+            run(Stage.SHADE_METAL, metalCount, new ParallelRange.Body() {
+                @Override
+                public void run(int from, int to) {
+                    shade(metalQueue, from, to, true);
+                }
+            });
+
+            // The surviving paths of both materials are the rays of the next bounce
+            compactor.partition(extended, extendedCount, keys, new int[][]{nextRayQueue}, queueCounts);
+            rayCount = queueCounts[0];
+            final int[] swap = rayQueue;
+            rayQueue = nextRayQueue;
+            nextRayQueue = swap;
+        }
+
+        final int frameWidth = width;
+        run(Stage.ACCUMULATE, pixels, new ParallelRange.Body() {
+            @Override
+            public void run(int from, int to) {
+                for (int pixel = from; pixel < to; pixel++) {
+                    accumulate(frameBuffer, guides, frameWidth, pixel);
+                }
+            }
+        });
+    }
+
+    private void run(Stage stage, int count, ParallelRange.Body body) {
+        statistics.stageItems[stage.ordinal()] += count;
+        if (count > 0) {
+            pool.invoke(new ParallelRange(body, 0, count, GRAIN));
+        }
+    }
+
+    // Camera rays of the pixels [from, to) of the tile, every sample gets its own path
+    private void generate(int from, int to) {
+        final float[] rays = cornerRays;
+        final float jitterX = PathTracer.jitterX(frameIndex);
+        final float jitterY = PathTracer.jitterY(frameIndex);
+
+        for (int pixel = from; pixel < to; pixel++) {
+            final int pixelX = tileX + pixel % tileWidth;
+            final int pixelY = tileY + pixel / tileWidth;
+
+            // The same interpolation of the corner rays as in CpuRaytracer
+            final float positionY = ((float) pixelY + jitterY) / (float) height;
+            final float leftX = rays[0] * (1.0f - positionY) + rays[8] * positionY;
+            final float leftY = rays[1] * (1.0f - positionY) + rays[9] * positionY;
+            final float leftZ = rays[2] * (1.0f - positionY) + rays[10] * positionY;
+            final float rightX = rays[4] * (1.0f - positionY) + rays[12] * positionY;
+            final float rightY = rays[5] * (1.0f - positionY) + rays[13] * positionY;
+            final float rightZ = rays[6] * (1.0f - positionY) + rays[14] * positionY;
+            final float positionX = ((float) pixelX + jitterX) / (float) width;
+            final float rayX = leftX * (1.0f - positionX) + rightX * positionX;
+            final float rayY = leftY * (1.0f - positionX) + rightY * positionX;
+            final float rayZ = leftZ * (1.0f - positionX) + rightZ * positionX;
+            final int pixelSeed = Sampler.pixelSeed(pixelX, pixelY);
+
+            for (int sample = 0; sample < MULTI_SAMPLING_COUNT; sample++) {
+                final int slot = pixel * MULTI_SAMPLING_COUNT + sample;
+                originX[slot] = cameraPosition[0];
+                originY[slot] = cameraPosition[1];
+                originZ[slot] = cameraPosition[2];
+                directionX[slot] = rayX;
+                directionY[slot] = rayY;
+                directionZ[slot] = rayZ;
+                colorR[slot] = 0.0f;
+                colorG[slot] = 0.0f;
+                colorB[slot] = 0.0f;
+                attenuation[slot] = 1.0f;
+                previousParameter0[slot] = -1.0f;
+                estimateR[slot] = 0.0f;
+                estimateG[slot] = 0.0f;
+                estimateB[slot] = 0.0f;
+                valueR[slot] = 0.0f;
+                valueG[slot] = 0.0f;
+                valueB[slot] = 0.0f;
+                rouletteWeight[slot] = 1.0f;
+                rngState[slot] = pixelSeed;
+                rouletteState[slot] = Sampler.pcgHash(pixelSeed ^ Sampler.pcgHash(frameIndex * MULTI_SAMPLING_COUNT + sample));
+            }
+        }
+    }
+
+    // Intersects the rays of the queue entries [from, to) and sorts the paths by the material they hit
+    // In the first bounce the entries are pixels, their hit is shared by all samples
+    private void extend(int from, int to) {
+        final PathTracer tracer = new PathTracer(scene, bvh);
+        final PathTracer.HitInfo cubeInfo = new PathTracer.HitInfo();
+        final PathTracer.HitInfo sphereInfo = new PathTracer.HitInfo();
+        final PathTracer.HitInfo triangleInfo = new PathTracer.HitInfo();
+        final int paths = bounce == 0 ? MULTI_SAMPLING_COUNT : 1;
+
+        for (int entry = from; entry < to; entry++) {
+            final int first = bounce == 0 ? entry * MULTI_SAMPLING_COUNT : rayQueue[entry];
+            final boolean hitSomething = tracer.intersectScene(originX[first], originY[first], originZ[first],
+                    directionX[first], directionY[first], directionZ[first], cubeInfo, sphereInfo, triangleInfo);
+
+            // Missed kinds have t = MAX_SCENE_BOUNDS, so the nearest hit is the smallest t
+            PathTracer.HitInfo hit = null;
+            float[] objectColors = null;
+            int[] objectMaterials = null;
+            float[] objectParameters0 = null;
+            int index = 0;
+            if (hitSomething) {
+                final float cubeT = cubeInfo.t;
+                final float sphereT = sphereInfo.t;
+                final float triangleT = triangleInfo.t;
+                if (cubeT < sphereT && cubeT < triangleT) {
+                    hit = cubeInfo;
+                    index = hit.arrayIndex;
+                    objectColors = scene.cubeColor;
+                    objectMaterials = scene.cubeMaterial;
+                    objectParameters0 = scene.cubeParameter0;
+                } else if (sphereT < cubeT && sphereT < triangleT) {
+                    hit = sphereInfo;
+                    index = hit.arrayIndex;
+                    objectColors = scene.sphereColor;
+                    objectMaterials = scene.sphereMaterial;
+                    objectParameters0 = scene.sphereParameter0;
+                } else if (triangleT < cubeT && triangleT < sphereT) {
+                    hit = triangleInfo;
+                    index = scene.triangleMesh[hit.arrayIndex];
+                    objectColors = scene.meshColor;
+                    objectMaterials = scene.meshMaterial;
+                    objectParameters0 = scene.meshParameter0;
+                }
+            }
+            if (bounce == 0) {
+                writeTileGuides(first / MULTI_SAMPLING_COUNT, hitSomething, hit, objectColors, index);
+            }
+
+            for (int slot = first; slot < first + paths; slot++) {
+                if (!hitSomething) {
+                    finishInSky(slot);
+                } else if (hit == null) {
+                    // Two hits are exactly the same distance away, the megakernel leaves the ray untouched until the bounces run out
+                    finish(slot);
+                } else {
+                    final int material = objectMaterials[index];
+                    hitX[slot] = hit.pX;
+                    hitY[slot] = hit.pY;
+                    hitZ[slot] = hit.pZ;
+                    normalX[slot] = hit.normalX;
+                    normalY[slot] = hit.normalY;
+                    normalZ[slot] = hit.normalZ;
+                    objectR[slot] = objectColors[index * 3];
+                    objectG[slot] = objectColors[index * 3 + 1];
+                    objectB[slot] = objectColors[index * 3 + 2];
+                    parameter0[slot] = objectParameters0[index];
+
+                    if (material == TraceScene.MATERIAL_DIFFUSE) {
+                        keys[slot] = KEY_DIFFUSE;
+                    } else if (material == TraceScene.MATERIAL_METAL) {
+                        keys[slot] = KEY_METAL;
+                    } else {
+                        // Other materials don't scatter, the megakernel hits them again and again without changing the path
+                        if (bounce == 0) {
+                            colorR[slot] = objectR[slot];
+                            colorG[slot] = objectG[slot];
+                            colorB[slot] = objectB[slot];
+                        }
+                        finish(slot);
+                    }
+                }
+            }
+        }
+
+        tracedRays.addAndGet(tracer.getRayCount());
+    }
+
+    // The shading and scattering of PathTracer.trace for the diffuse or the metal paths of the queue entries [from, to)
+    private void shade(int[] queue, int from, int to, boolean metal) {
+        final int[] state = new int[1];
+        final float[] randomPoint = new float[3];
+
+        for (int entry = from; entry < to; entry++) {
+            final int slot = queue[entry];
+
+            // Every bounce gets its own scramble of the sample sequence, the same one for all samples of the pixel
+            state[0] = rngState[slot];
+            final int scrambleX = Sampler.nextRandom(state);
+            final int scrambleY = Sampler.nextRandom(state);
+            final int scrambleZ = Sampler.nextRandom(state);
+            rngState[slot] = state[0];
+
+            float colorR = this.colorR[slot];
+            float colorG = this.colorG[slot];
+            float colorB = this.colorB[slot];
+            float attenuation = this.attenuation[slot];
+            float previousParameter0 = this.previousParameter0[slot];
+            final float objectR = this.objectR[slot];
+            final float objectG = this.objectG[slot];
+            final float objectB = this.objectB[slot];
+            final float parameter0 = this.parameter0[slot];
+            final float pX = hitX[slot], pY = hitY[slot], pZ = hitZ[slot];
+            final float normalX = this.normalX[slot], normalY = this.normalY[slot], normalZ = this.normalZ[slot];
+
+            if (bounce == 0) {
+                colorR = objectR;
+                colorG = objectG;
+                colorB = objectB;
+                if (metal) {
+                    previousParameter0 = parameter0;
+                }
+            } else if (!metal) {
+                if (previousParameter0 != -1.0f) {
+                    colorR = colorR * (1.0f - previousParameter0) + objectR * previousParameter0;
+                    colorG = colorG * (1.0f - previousParameter0) + objectG * previousParameter0;
+                    colorB = colorB * (1.0f - previousParameter0) + objectB * previousParameter0;
+                    attenuation *= 1.0f - parameter0;
+                    previousParameter0 = -1.0f;
+                } else {
+                    attenuation *= parameter0;
+                }
+            } else if (previousParameter0 != -1.0f) {
+                colorR = colorR * (1.0f - previousParameter0) + objectR * previousParameter0;
+                colorG = colorG * (1.0f - previousParameter0) + objectG * previousParameter0;
+                colorB = colorB * (1.0f - previousParameter0) + objectB * previousParameter0;
+                previousParameter0 *= parameter0;
+            }
+
+            if (!metal) {
+                PathTracer.getRandomPoint(slot % MULTI_SAMPLING_COUNT, frameIndex, scrambleX, scrambleY, scrambleZ, randomPoint);
+                final float scatteredPointX = pX + normalX + randomPoint[0];
+                final float scatteredPointY = pY + normalY + randomPoint[1];
+                final float scatteredPointZ = pZ + normalZ + randomPoint[2];
+                directionX[slot] = scatteredPointX - pX;
+                directionY[slot] = scatteredPointY - pY;
+                directionZ[slot] = scatteredPointZ - pZ;
+            } else {
+                final float incomingX = pX - originX[slot];
+                final float incomingY = pY - originY[slot];
+                final float incomingZ = pZ - originZ[slot];
+                final float dot2 = 2.0f * (incomingX * normalX + incomingY * normalY + incomingZ * normalZ);
+                directionX[slot] = incomingX - dot2 * normalX;
+                directionY[slot] = incomingY - dot2 * normalY;
+                directionZ[slot] = incomingZ - dot2 * normalZ;
+            }
+            originX[slot] = pX;
+            originY[slot] = pY;
+            originZ[slot] = pZ;
+
+            this.colorR[slot] = colorR;
+            this.colorG[slot] = colorG;
+            this.colorB[slot] = colorB;
+            this.attenuation[slot] = attenuation;
+            this.previousParameter0[slot] = previousParameter0;
+            keys[slot] = KEY_ALIVE;
+
+            if (bounce + 1 >= rouletteMinBounces && bounce + 1 < MAX_BOUNCES) {
+                estimateR[slot] += rouletteWeight[slot] * (colorR * attenuation - valueR[slot]);
+                estimateG[slot] += rouletteWeight[slot] * (colorG * attenuation - valueG[slot]);
+                estimateB[slot] += rouletteWeight[slot] * (colorB * attenuation - valueB[slot]);
+                final float valueR = colorR * attenuation;
+                final float valueG = colorG * attenuation;
+                final float valueB = colorB * attenuation;
+                this.valueR[slot] = valueR;
+                this.valueG[slot] = valueG;
+                this.valueB[slot] = valueB;
+
+                final float survival = Math.min(1.0f, rouletteWeight[slot] * Math.max(Math.max(valueR, Math.max(valueG, valueB)), previousParameter0 * attenuation));
+                state[0] = rouletteState[slot];
+                final float random = Sampler.toUnitFloat(Sampler.nextRandom(state));
+                rouletteState[slot] = state[0];
+                if (random >= survival) {
+                    resultR[slot] = estimateR[slot];
+                    resultG[slot] = estimateG[slot];
+                    resultB[slot] = estimateB[slot];
+                    keys[slot] = KEY_FINISHED;
+                    continue;
+                }
+                rouletteWeight[slot] /= survival;
+            }
+
+            // The path ran out of bounces
+            if (bounce + 1 == MAX_BOUNCES) {
+                finish(slot);
+            }
+        }
+    }
+
+    // The path left the scene: the sky in the first bounce, otherwise the end of the path
+    private void finishInSky(int slot) {
+        final float unitY = directionY[slot] / PathTracer.length(directionX[slot], directionY[slot], directionZ[slot]);
+        final float skyR = (1.0f - unitY) * PathTracer.PRIMARY_SKY_R + unitY * PathTracer.SECONDARY_SKY_R;
+        final float skyG = (1.0f - unitY) * PathTracer.PRIMARY_SKY_G + unitY * PathTracer.SECONDARY_SKY_G;
+        final float skyB = (1.0f - unitY) * PathTracer.PRIMARY_SKY_B + unitY * PathTracer.SECONDARY_SKY_B;
+
+        if (bounce == 0) {
+            resultR[slot] = skyR;
+            resultG[slot] = skyG;
+            resultB[slot] = skyB;
+            keys[slot] = KEY_FINISHED;
+            return;
+        }
+
+        // Metal was hit before, the megakernel misses the sky again in every remaining bounce and blends it in every time
+        final float previousParameter0 = this.previousParameter0[slot];
+        if (previousParameter0 != -1.0f) {
+            for (int remaining = bounce; remaining < MAX_BOUNCES; remaining++) {
+                colorR[slot] = colorR[slot] * (1.0f - previousParameter0) + skyR * previousParameter0;
+                colorG[slot] = colorG[slot] * (1.0f - previousParameter0) + skyG * previousParameter0;
+                colorB[slot] = colorB[slot] * (1.0f - previousParameter0) + skyB * previousParameter0;
+            }
+        }
+        finish(slot);
+    }
+
+    private void finish(int slot) {
+        resultR[slot] = estimateR[slot] + rouletteWeight[slot] * (colorR[slot] * attenuation[slot] - valueR[slot]);
+        resultG[slot] = estimateG[slot] + rouletteWeight[slot] * (colorG[slot] * attenuation[slot] - valueG[slot]);
+        resultB[slot] = estimateB[slot] + rouletteWeight[slot] * (colorB[slot] * attenuation[slot] - valueB[slot]);
+        keys[slot] = KEY_FINISHED;
+    }
+
+    // Same guides as PathTracer.writeGuides
+    private void writeTileGuides(int pixel, boolean hitSomething, PathTracer.HitInfo hit, float[] objectColors, int index) {
+        final int offset = pixel * 4;
+        final int slot = pixel * MULTI_SAMPLING_COUNT;
+        final float directionLength = PathTracer.length(directionX[slot], directionY[slot], directionZ[slot]);
+
+        if (hit == null) {
+            // Sky, or a tie between two kinds which the shader skips without a color
+            final float unitY = directionY[slot] / directionLength;
+            final boolean sky = !hitSomething;
+            tileNormalDepth[offset] = 0.0f;
+            tileNormalDepth[offset + 1] = 0.0f;
+            tileNormalDepth[offset + 2] = 0.0f;
+            tileNormalDepth[offset + 3] = PathTracer.MAX_SCENE_BOUNDS;
+            tileAlbedo[offset] = sky ? (1.0f - unitY) * PathTracer.PRIMARY_SKY_R + unitY * PathTracer.SECONDARY_SKY_R : 0.0f;
+            tileAlbedo[offset + 1] = sky ? (1.0f - unitY) * PathTracer.PRIMARY_SKY_G + unitY * PathTracer.SECONDARY_SKY_G : 0.0f;
+            tileAlbedo[offset + 2] = sky ? (1.0f - unitY) * PathTracer.PRIMARY_SKY_B + unitY * PathTracer.SECONDARY_SKY_B : 0.0f;
+        } else {
+            tileNormalDepth[offset] = hit.normalX;
+            tileNormalDepth[offset + 1] = hit.normalY;
+            tileNormalDepth[offset + 2] = hit.normalZ;
+            tileNormalDepth[offset + 3] = hit.t * directionLength;
+            tileAlbedo[offset] = objectColors[index * 3];
+            tileAlbedo[offset + 1] = objectColors[index * 3 + 1];
+            tileAlbedo[offset + 2] = objectColors[index * 3 + 2];
+        }
+        tileAlbedo[offset + 3] = 1.0f;
+    }
+
+    // Averages the samples of a pixel of the tile and blends them into the frame like CpuRaytracer
+    private void accumulate(float[] frameBuffer, GuideBuffer guides, int frameWidth, int pixel) {
+        float r = 0.0f;
+        float g = 0.0f;
+        float b = 0.0f;
+        for (int slot = pixel * MULTI_SAMPLING_COUNT; slot < (pixel + 1) * MULTI_SAMPLING_COUNT; slot++) {
+            r += resultR[slot];
+            g += resultG[slot];
+            b += resultB[slot];
+        }
+        r /= (float) MULTI_SAMPLING_COUNT;
+        g /= (float) MULTI_SAMPLING_COUNT;
+        b /= (float) MULTI_SAMPLING_COUNT;
+
+        final int pixelX = tileX + pixel % tileWidth;
+        final int pixelY = tileY + pixel / tileWidth;
+        final int offset = (pixelY * frameWidth + pixelX) * 4;
+        if (frameIndex == 0) {
+            frameBuffer[offset] = r;
+            frameBuffer[offset + 1] = g;
+            frameBuffer[offset + 2] = b;
+            frameBuffer[offset + 3] = 1.0f;
+        } else {
+            final float history = frameBuffer[offset + 3];
+            final float blendFactor = 1.0f / (history + 1.0f);
+            frameBuffer[offset] = frameBuffer[offset] * (1.0f - blendFactor) + r * blendFactor;
+            frameBuffer[offset + 1] = frameBuffer[offset + 1] * (1.0f - blendFactor) + g * blendFactor;
+            frameBuffer[offset + 2] = frameBuffer[offset + 2] * (1.0f - blendFactor) + b * blendFactor;
+            frameBuffer[offset + 3] = history + 1.0f;
+        }
+
+        if (guides != null) {
+            System.arraycopy(tileNormalDepth, pixel * 4, guides.normalDepth, offset, 4);
+            System.arraycopy(tileAlbedo, pixel * 4, guides.albedo, offset, 4);
+        }
+    }
+
+    /**
+     * Work of the stages and the SIMD lane occupancy of the extend and shade work, for the wavefront stages and for a
+     * megakernel that traces the same paths. A megakernel wave of WAVE_SIZE paths runs a bounce as long as one of its lanes
+     * is still alive, and runs the code of every material that one of its lanes hit. A wavefront stage runs its compacted
+     * queue in full waves, only the last wave of a queue is partly empty.
+     */
+    public static final class Statistics {
+        private final long[] stageItems = new long[Stage.values().length];
+        private long megakernelLanes;
+        private long megakernelActiveLanes;
+        private long wavefrontLanes;
+        private long wavefrontActiveLanes;
+        private int[] waveCounts = new int[0];
+
+        // Paths (or pixels for generate, accumulate and the first extend) that went through the stage
+        public long getItems(Stage stage) {
+            return stageItems[stage.ordinal()];
+        }
+
+        // Fraction of the lanes that did useful work
+        public double getMegakernelOccupancy() {
+            return megakernelLanes == 0 ? 0.0 : (double) megakernelActiveLanes / (double) megakernelLanes;
+        }
+
+        public double getWavefrontOccupancy() {
+            return wavefrontLanes == 0 ? 0.0 : (double) wavefrontActiveLanes / (double) wavefrontLanes;
+        }
+
+        public void reset() {
+            Arrays.fill(stageItems, 0L);
+            megakernelLanes = 0;
+            megakernelActiveLanes = 0;
+            wavefrontLanes = 0;
+            wavefrontActiveLanes = 0;
+        }
+
+        // The paths of one bounce after extend sorted them, the waves of the megakernel are consecutive slots
+        void addBounce(int[] extended, int extendedCount, byte[] keys, int diffuseCount, int metalCount) {
+            final int waves = (extended.length + WAVE_SIZE - 1) / WAVE_SIZE;
+            if (waveCounts.length < waves * 3) {
+                waveCounts = new int[waves * 3];
+            }
+            Arrays.fill(waveCounts, 0, waves * 3, 0);
+            for (int entry = 0; entry < extendedCount; entry++) {
+                final int slot = extended[entry];
+                final int wave = slot / WAVE_SIZE;
+                waveCounts[wave * 3]++;
+                if (keys[slot] == KEY_DIFFUSE) {
+                    waveCounts[wave * 3 + 1]++;
+                } else if (keys[slot] == KEY_METAL) {
+                    waveCounts[wave * 3 + 2]++;
+                }
+            }
+
+            for (int wave = 0; wave < waves; wave++) {
+                final int alive = waveCounts[wave * 3];
+                final int diffuse = waveCounts[wave * 3 + 1];
+                final int metal = waveCounts[wave * 3 + 2];
+                if (alive > 0) {
+                    megakernelLanes += WAVE_SIZE;
+                }
+                if (diffuse > 0) {
+                    megakernelLanes += WAVE_SIZE;
+                }
+                if (metal > 0) {
+                    megakernelLanes += WAVE_SIZE;
+                }
+                megakernelActiveLanes += alive + diffuse + metal;
+            }
+
+            wavefrontLanes += fullWaves(extendedCount) + fullWaves(diffuseCount) + fullWaves(metalCount);
+            wavefrontActiveLanes += extendedCount + diffuseCount + metalCount;
+        }
+
+        private static long fullWaves(int count) {
+            return (long) (count + WAVE_SIZE - 1) / WAVE_SIZE * WAVE_SIZE;
+        }
+    }
+}
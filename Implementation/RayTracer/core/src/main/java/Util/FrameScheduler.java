@@ -0,0 +1,98 @@
+package Util;
+
+/**
+ * Decides on which vsync a frame is rendered and when rendering can stop altogether.
+ * Frames are rendered on every vsync that is at least one target frame interval after the last one,
+ * until the progressive image has converged and nothing is animated anymore.
+ * Any change (camera, scene, surface) marks the scheduler dirty, which wakes the rendering up again.
+ * A change that comes in while a frame is drawn isn't part of that frame, so it keeps the scheduler dirty.
+ * The methods are called from the ui thread (vsync) and the gl thread (frames), so they are synchronized.
+ */
+
+public class FrameScheduler {
+
+    // Number of accumulated frames after which the image counts as converged
+    public static final int CONVERGED_FRAME_COUNT = 256;
+    // Vsync timestamps jitter a little, a vsync this much early still counts as on time
+    private static final long VSYNC_TOLERANCE_NANOS = 2_000_000L;
+
+    private final long frameIntervalNanos;
+    private final int convergedFrameCount;
+
+    // Called when the scheduler leaves the idle state, so that the vsync callbacks can be started again
+    private Runnable wakeUpListener;
+
+    private boolean dirty = true;
+    // Counts the markDirty calls, a frame only clears dirty if none came in after it started
+    private long dirtyGeneration;
+    private long frameGeneration;
+    private boolean converged;
+    private long lastVsyncNanos = -1;
+
+    public FrameScheduler(long frameIntervalNanos) {
+        this(frameIntervalNanos, CONVERGED_FRAME_COUNT);
+    }
+
+    public FrameScheduler(long frameIntervalNanos, int convergedFrameCount) {
+        this.frameIntervalNanos = frameIntervalNanos;
+        this.convergedFrameCount = convergedFrameCount;
+    }
+
+    public synchronized void setWakeUpListener(Runnable wakeUpListener) {
+        this.wakeUpListener = wakeUpListener;
+    }
+
+    // Something on the screen changed, frames are rendered until the image has converged again
+    public void markDirty() {
+        Runnable listener;
+        synchronized (this) {
+            boolean wasIdle = isIdleLocked();
+            dirty = true;
+            dirtyGeneration++;
+            converged = false;
+            listener = wasIdle ? wakeUpListener : null;
+        }
+        // Outside of the lock, the listener might post to another thread
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    // Called before a draw call reads the scene (input, camera), later changes need another frame
+    public synchronized void onFrameStarted() {
+        frameGeneration = dirtyGeneration;
+    }
+
+    // Called after every draw call with the state of the progressive image, animating is true while anything
+    // (timers, input that wasn't applied yet) will change the image, it doesn't converge then
+    public synchronized void onFrameRendered(boolean frameComplete, int frameIndex, boolean animating) {
+        if (dirtyGeneration == frameGeneration) {
+            dirty = false;
+        }
+        converged = !animating && frameComplete && frameIndex + 1 >= convergedFrameCount;
+    }
+
+    // Called on every vsync with its timestamp, returns true if a frame should be rendered for it
+    public synchronized boolean onVsync(long vsyncNanos) {
+        if (isIdleLocked()) {
+            return false;
+        }
+
+        // Displays that refresh faster than the target skip vsyncs
+        if (lastVsyncNanos >= 0 && vsyncNanos - lastVsyncNanos < frameIntervalNanos - VSYNC_TOLERANCE_NANOS) {
+            return false;
+        }
+
+        lastVsyncNanos = vsyncNanos;
+        return true;
+    }
+
+    // True if no frames have to be rendered until the next change
+    public synchronized boolean isIdle() {
+        return isIdleLocked();
+    }
+
+    private boolean isIdleLocked() {
+        return converged && !dirty;
+    }
+}
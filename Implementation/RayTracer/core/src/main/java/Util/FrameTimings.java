@@ -0,0 +1,80 @@
+package Util;
+
+import java.util.Locale;
+
+/**
+ * Cpu and gpu time histograms of the stages of a frame.
+ * Cpu times are the time the calls of a stage took on the gl thread, gpu times the time the gpu spent on them.
+ */
+
+public class FrameTimings {
+
+    public enum Stage {
+        // Camera, scene and bvh upload
+        UPLOAD,
+        // Compute shader dispatches
+        DISPATCH,
+        // Memory barrier after the dispatches
+        BARRIER,
+        // Denoising the traced image
+        DENOISE,
+        // Drawing the traced image to the screen
+        POST_TO_SCREEN
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final Histogram[] cpuHistograms = new Histogram[STAGES.length];
+    private final Histogram[] gpuHistograms = new Histogram[STAGES.length];
+
+    public FrameTimings() {
+        for (int i = 0; i < STAGES.length; i++) {
+            cpuHistograms[i] = new Histogram();
+            gpuHistograms[i] = new Histogram();
+        }
+    }
+
+    public void recordCpu(Stage stage, long nanos) {
+        cpuHistograms[stage.ordinal()].record(nanos);
+    }
+
+    public void recordGpu(Stage stage, long nanos) {
+        gpuHistograms[stage.ordinal()].record(nanos);
+    }
+
+    public Histogram getCpuHistogram(Stage stage) {
+        return cpuHistograms[stage.ordinal()];
+    }
+
+    public Histogram getGpuHistogram(Stage stage) {
+        return gpuHistograms[stage.ordinal()];
+    }
+
+    public void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            cpuHistograms[i].reset();
+            gpuHistograms[i].reset();
+        }
+    }
+
+    // One line per stage with p50/p95/p99 in milliseconds, stages without gpu samples only show the cpu times
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        for (Stage stage : STAGES) {
+            builder.append(stage.name().toLowerCase(Locale.ROOT));
+            append(builder, " cpu", cpuHistograms[stage.ordinal()]);
+            if (gpuHistograms[stage.ordinal()].getTotalCount() > 0) {
+                append(builder, " gpu", gpuHistograms[stage.ordinal()]);
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, String name, Histogram histogram) {
+        builder.append(String.format(Locale.ROOT, "%s p50=%.3f p95=%.3f p99=%.3f ms", name,
+                histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(95) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6));
+    }
+}
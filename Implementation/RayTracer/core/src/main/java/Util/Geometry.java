@@ -1,10 +1,6 @@
 package Util;
 
-import android.graphics.Rect;
-import android.opengl.Matrix;
-import android.util.Log;
-
-import static android.opengl.Matrix.multiplyMV;
+import static Util.MatrixMath.multiplyMV;
 
 /**
  * Created by Andreas on 25.04.2020.
@@ -288,14 +284,11 @@ public class Geometry {
             return new Vector(this.x, this.y, z);
         }
 
+        // See VectorMath for an allocation free version
         public Vector rotate(float angle, float x, float y, float z) {
-            float[] resultVector = new float[4];
-            float[] rotationMatrix = new float[16];
-
-            Matrix.setRotateM(rotationMatrix, 0, angle, x, y, z);
-            Matrix.multiplyMV(resultVector, 0, rotationMatrix, 0, new float[]{this.x, this.y, this.z, 1}, 0);
-
-            return new Vector(resultVector[0], resultVector[1], resultVector[2]);
+            final float[] vector = {this.x, this.y, this.z};
+            VectorMath.rotate(vector, 0, vector, 0, angle, x, y, z);
+            return new Vector(vector[0], vector[1], vector[2]);
         }
     }
 
@@ -0,0 +1,95 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of positive long values (e.g. nanoseconds) with a fixed relative precision, like HdrHistogram.
+ * Values below 32 get their own bucket, bigger values share a bucket with all values that have the same
+ * 5 highest bits, so a percentile is at most 1/16 (6.25%) off. Recording is a single atomic increment,
+ * so the gl thread can record while another thread reads percentiles.
+ */
+
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    // Bigger values (about 18 minutes in nanoseconds) are recorded as this value
+    public static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        value = Math.max(0, Math.min(value, MAX_VALUE));
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    // Returns the value that percentile percent of all recorded values are smaller or equal to (0 if empty)
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        // Records that came in while counting
+        return max.get();
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // Not atomic with concurrent records, those may partially survive the reset
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // Shift that brings the value into [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >> shift);
+    }
+
+    static long lowestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        return (long) (index - shift * SUB_BUCKET_HALF_COUNT) << shift;
+    }
+
+    static long highestValueOf(int index) {
+        return lowestValueOf(index + 1) - 1;
+    }
+}
@@ -4,10 +4,10 @@ import Util.Geometry.Point;
 import Util.Geometry.Vector;
 import Util.Geometry.Rotation;
 
-import static android.opengl.Matrix.rotateM;
-import static android.opengl.Matrix.scaleM;
-import static android.opengl.Matrix.setIdentityM;
-import static android.opengl.Matrix.translateM;
+import static Util.MatrixMath.rotateM;
+import static Util.MatrixMath.scaleM;
+import static Util.MatrixMath.setIdentityM;
+import static Util.MatrixMath.translateM;
 
 /**
  * Created by Andreas on 24.04.2020.
@@ -46,20 +46,30 @@ public class MatrixHelper {
 
     public static float[] createTransformationMatrix(Vector translation, Vector scale) {
         float[] matrix = new float[16];
+        setTransformationMatrix(matrix, translation, scale);
+        return matrix;
+    }
+
+    // Writes into an existing matrix instead of allocating a new one
+    public static void setTransformationMatrix(float[] matrix, Vector translation, Vector scale) {
         setIdentityM(matrix, 0);
         translateM(matrix, 0, translation.x, translation.y, translation.z);
-        scaleM(matrix, 0, scale.x, scale.y, scale.z);
-        return matrix;
+        scaleM(matrix, 0, matrix, 0, scale.x, scale.y, scale.z);
     }
 
     public static float[] createTransformationMatrix(Point translation, float scale, Rotation rotation) {
         float[] matrix = new float[16];
+        setTransformationMatrix(matrix, translation, scale, rotation);
+        return matrix;
+    }
+
+    // Writes into an existing matrix instead of allocating a new one
+    public static void setTransformationMatrix(float[] matrix, Point translation, float scale, Rotation rotation) {
         setIdentityM(matrix, 0);
         translateM(matrix, 0, translation.x, translation.y, translation.z);
         if(rotation.angle!=0) {
             rotateM(matrix, 0, rotation.angle, rotation.x, rotation.y, rotation.z);
         }
-        scaleM(matrix, 0, scale, scale, scale);
-        return matrix;
+        scaleM(matrix, 0, matrix, 0, scale, scale, scale);
     }
 }
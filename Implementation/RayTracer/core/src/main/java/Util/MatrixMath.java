@@ -0,0 +1,233 @@
+package Util;
+
+/**
+ * Platform independent versions of the android.opengl.Matrix functions that the
+ * core module needs. Matrices are column-major float[16] arrays, exactly like
+ * the ones used by android.opengl.Matrix, so the results can be mixed freely.
+ */
+
+public class MatrixMath {
+
+    // result = lhs * rhs (result must not overlap lhs or rhs)
+    public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        for (int column = 0; column < 4; column++) {
+            final float r0 = rhs[rhsOffset + column * 4];
+            final float r1 = rhs[rhsOffset + column * 4 + 1];
+            final float r2 = rhs[rhsOffset + column * 4 + 2];
+            final float r3 = rhs[rhsOffset + column * 4 + 3];
+
+            for (int row = 0; row < 4; row++) {
+                result[resultOffset + column * 4 + row] = lhs[lhsOffset + row] * r0
+                        + lhs[lhsOffset + 4 + row] * r1
+                        + lhs[lhsOffset + 8 + row] * r2
+                        + lhs[lhsOffset + 12 + row] * r3;
+            }
+        }
+    }
+
+    // result = lhs * rhs (the vector is read before it is written, so result and rhs may be the same array)
+    public static void multiplyMV(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        final float x = rhs[rhsOffset];
+        final float y = rhs[rhsOffset + 1];
+        final float z = rhs[rhsOffset + 2];
+        final float w = rhs[rhsOffset + 3];
+
+        for (int row = 0; row < 4; row++) {
+            result[resultOffset + row] = lhs[lhsOffset + row] * x
+                    + lhs[lhsOffset + 4 + row] * y
+                    + lhs[lhsOffset + 8 + row] * z
+                    + lhs[lhsOffset + 12 + row] * w;
+        }
+    }
+
+    // Inverts the matrix using cofactors, returns false if the matrix is not invertible
+    public static boolean invertM(float[] inverse, int inverseOffset, float[] m, int mOffset) {
+        final float m0 = m[mOffset], m1 = m[mOffset + 1], m2 = m[mOffset + 2], m3 = m[mOffset + 3];
+        final float m4 = m[mOffset + 4], m5 = m[mOffset + 5], m6 = m[mOffset + 6], m7 = m[mOffset + 7];
+        final float m8 = m[mOffset + 8], m9 = m[mOffset + 9], m10 = m[mOffset + 10], m11 = m[mOffset + 11];
+        final float m12 = m[mOffset + 12], m13 = m[mOffset + 13], m14 = m[mOffset + 14], m15 = m[mOffset + 15];
+
+        final float i0 = m5 * m10 * m15 - m5 * m11 * m14 - m9 * m6 * m15 + m9 * m7 * m14 + m13 * m6 * m11 - m13 * m7 * m10;
+        final float i4 = -m4 * m10 * m15 + m4 * m11 * m14 + m8 * m6 * m15 - m8 * m7 * m14 - m12 * m6 * m11 + m12 * m7 * m10;
+        final float i8 = m4 * m9 * m15 - m4 * m11 * m13 - m8 * m5 * m15 + m8 * m7 * m13 + m12 * m5 * m11 - m12 * m7 * m9;
+        final float i12 = -m4 * m9 * m14 + m4 * m10 * m13 + m8 * m5 * m14 - m8 * m6 * m13 - m12 * m5 * m10 + m12 * m6 * m9;
+
+        final float determinant = m0 * i0 + m1 * i4 + m2 * i8 + m3 * i12;
+        if (determinant == 0.0f) {
+            return false;
+        }
+
+        final float i1 = -m1 * m10 * m15 + m1 * m11 * m14 + m9 * m2 * m15 - m9 * m3 * m14 - m13 * m2 * m11 + m13 * m3 * m10;
+        final float i5 = m0 * m10 * m15 - m0 * m11 * m14 - m8 * m2 * m15 + m8 * m3 * m14 + m12 * m2 * m11 - m12 * m3 * m10;
+        final float i9 = -m0 * m9 * m15 + m0 * m11 * m13 + m8 * m1 * m15 - m8 * m3 * m13 - m12 * m1 * m11 + m12 * m3 * m9;
+        final float i13 = m0 * m9 * m14 - m0 * m10 * m13 - m8 * m1 * m14 + m8 * m2 * m13 + m12 * m1 * m10 - m12 * m2 * m9;
+        final float i2 = m1 * m6 * m15 - m1 * m7 * m14 - m5 * m2 * m15 + m5 * m3 * m14 + m13 * m2 * m7 - m13 * m3 * m6;
+        final float i6 = -m0 * m6 * m15 + m0 * m7 * m14 + m4 * m2 * m15 - m4 * m3 * m14 - m12 * m2 * m7 + m12 * m3 * m6;
+        final float i10 = m0 * m5 * m15 - m0 * m7 * m13 - m4 * m1 * m15 + m4 * m3 * m13 + m12 * m1 * m7 - m12 * m3 * m5;
+        final float i14 = -m0 * m5 * m14 + m0 * m6 * m13 + m4 * m1 * m14 - m4 * m2 * m13 - m12 * m1 * m6 + m12 * m2 * m5;
+        final float i3 = -m1 * m6 * m11 + m1 * m7 * m10 + m5 * m2 * m11 - m5 * m3 * m10 - m9 * m2 * m7 + m9 * m3 * m6;
+        final float i7 = m0 * m6 * m11 - m0 * m7 * m10 - m4 * m2 * m11 + m4 * m3 * m10 + m8 * m2 * m7 - m8 * m3 * m6;
+        final float i11 = -m0 * m5 * m11 + m0 * m7 * m9 + m4 * m1 * m11 - m4 * m3 * m9 - m8 * m1 * m7 + m8 * m3 * m5;
+        final float i15 = m0 * m5 * m10 - m0 * m6 * m9 - m4 * m1 * m10 + m4 * m2 * m9 + m8 * m1 * m6 - m8 * m2 * m5;
+
+        final float invDeterminant = 1.0f / determinant;
+        inverse[inverseOffset] = i0 * invDeterminant;
+        inverse[inverseOffset + 1] = i1 * invDeterminant;
+        inverse[inverseOffset + 2] = i2 * invDeterminant;
+        inverse[inverseOffset + 3] = i3 * invDeterminant;
+        inverse[inverseOffset + 4] = i4 * invDeterminant;
+        inverse[inverseOffset + 5] = i5 * invDeterminant;
+        inverse[inverseOffset + 6] = i6 * invDeterminant;
+        inverse[inverseOffset + 7] = i7 * invDeterminant;
+        inverse[inverseOffset + 8] = i8 * invDeterminant;
+        inverse[inverseOffset + 9] = i9 * invDeterminant;
+        inverse[inverseOffset + 10] = i10 * invDeterminant;
+        inverse[inverseOffset + 11] = i11 * invDeterminant;
+        inverse[inverseOffset + 12] = i12 * invDeterminant;
+        inverse[inverseOffset + 13] = i13 * invDeterminant;
+        inverse[inverseOffset + 14] = i14 * invDeterminant;
+        inverse[inverseOffset + 15] = i15 * invDeterminant;
+        return true;
+    }
+
+    // Sets the matrix to a rotation of angle degrees around the axis (x, y, z)
+    public static void setRotateM(float[] rm, int rmOffset, float angle, float x, float y, float z) {
+        final float radians = (float) Math.toRadians(angle);
+        final float s = (float) Math.sin(radians);
+        final float c = (float) Math.cos(radians);
+
+        final float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length != 1.0f) {
+            x /= length;
+            y /= length;
+            z /= length;
+        }
+
+        final float nc = 1.0f - c;
+        rm[rmOffset] = x * x * nc + c;
+        rm[rmOffset + 1] = x * y * nc + z * s;
+        rm[rmOffset + 2] = z * x * nc - y * s;
+        rm[rmOffset + 3] = 0.0f;
+        rm[rmOffset + 4] = x * y * nc - z * s;
+        rm[rmOffset + 5] = y * y * nc + c;
+        rm[rmOffset + 6] = y * z * nc + x * s;
+        rm[rmOffset + 7] = 0.0f;
+        rm[rmOffset + 8] = z * x * nc + y * s;
+        rm[rmOffset + 9] = y * z * nc - x * s;
+        rm[rmOffset + 10] = z * z * nc + c;
+        rm[rmOffset + 11] = 0.0f;
+        rm[rmOffset + 12] = 0.0f;
+        rm[rmOffset + 13] = 0.0f;
+        rm[rmOffset + 14] = 0.0f;
+        rm[rmOffset + 15] = 1.0f;
+    }
+
+    public static void setIdentityM(float[] sm, int smOffset) {
+        for (int i = 0; i < 16; i++) {
+            sm[smOffset + i] = 0.0f;
+        }
+        for (int i = 0; i < 16; i += 5) {
+            sm[smOffset + i] = 1.0f;
+        }
+    }
+
+    // m = m * translation(x, y, z)
+    public static void translateM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            final int mi = mOffset + i;
+            m[12 + mi] += m[mi] * x + m[4 + mi] * y + m[8 + mi] * z;
+        }
+    }
+
+    // sm = m * scale(x, y, z) (sm may be m)
+    public static void scaleM(float[] sm, int smOffset, float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            sm[smOffset + i] = m[mOffset + i] * x;
+            sm[smOffset + 4 + i] = m[mOffset + 4 + i] * y;
+            sm[smOffset + 8 + i] = m[mOffset + 8 + i] * z;
+            sm[smOffset + 12 + i] = m[mOffset + 12 + i];
+        }
+    }
+
+    // m = m * rotation(angle, x, y, z), unlike android.opengl.Matrix without temporary arrays
+    public static void rotateM(float[] m, int mOffset, float angle, float x, float y, float z) {
+        final float radians = (float) Math.toRadians(angle);
+        final float s = (float) Math.sin(radians);
+        final float c = (float) Math.cos(radians);
+
+        final float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length != 1.0f) {
+            x /= length;
+            y /= length;
+            z /= length;
+        }
+
+        // Upper 3x3 of the rotation matrix (row, column), the rest is the identity
+        final float nc = 1.0f - c;
+        final float r00 = x * x * nc + c, r01 = x * y * nc - z * s, r02 = z * x * nc + y * s;
+        final float r10 = x * y * nc + z * s, r11 = y * y * nc + c, r12 = y * z * nc - x * s;
+        final float r20 = z * x * nc - y * s, r21 = y * z * nc + x * s, r22 = z * z * nc + c;
+
+        for (int i = 0; i < 4; i++) {
+            final int mi = mOffset + i;
+            final float a = m[mi];
+            final float b = m[4 + mi];
+            final float d = m[8 + mi];
+            m[mi] = a * r00 + b * r10 + d * r20;
+            m[4 + mi] = a * r01 + b * r11 + d * r21;
+            m[8 + mi] = a * r02 + b * r12 + d * r22;
+        }
+    }
+
+    // View matrix of an eye looking at center, same as android.opengl.Matrix.setLookAtM
+    public static void setLookAtM(float[] rm, int rmOffset, float eyeX, float eyeY, float eyeZ,
+                                  float centerX, float centerY, float centerZ, float upX, float upY, float upZ) {
+        float fx = centerX - eyeX;
+        float fy = centerY - eyeY;
+        float fz = centerZ - eyeZ;
+
+        // Normalize f
+        final float rlf = 1.0f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        fx *= rlf;
+        fy *= rlf;
+        fz *= rlf;
+
+        // s = f x up
+        float sx = fy * upZ - fz * upY;
+        float sy = fz * upX - fx * upZ;
+        float sz = fx * upY - fy * upX;
+
+        // Normalize s
+        final float rls = 1.0f / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+        sx *= rls;
+        sy *= rls;
+        sz *= rls;
+
+        // u = s x f
+        final float ux = sy * fz - sz * fy;
+        final float uy = sz * fx - sx * fz;
+        final float uz = sx * fy - sy * fx;
+
+        rm[rmOffset] = sx;
+        rm[rmOffset + 1] = ux;
+        rm[rmOffset + 2] = -fx;
+        rm[rmOffset + 3] = 0.0f;
+
+        rm[rmOffset + 4] = sy;
+        rm[rmOffset + 5] = uy;
+        rm[rmOffset + 6] = -fy;
+        rm[rmOffset + 7] = 0.0f;
+
+        rm[rmOffset + 8] = sz;
+        rm[rmOffset + 9] = uz;
+        rm[rmOffset + 10] = -fz;
+        rm[rmOffset + 11] = 0.0f;
+
+        rm[rmOffset + 12] = 0.0f;
+        rm[rmOffset + 13] = 0.0f;
+        rm[rmOffset + 14] = 0.0f;
+        rm[rmOffset + 15] = 1.0f;
+
+        translateM(rm, rmOffset, -eyeX, -eyeY, -eyeZ);
+    }
+}
@@ -0,0 +1,73 @@
+package Util;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Injects #defines into shader sources, so that constants like the bounce count or the work group size
+ * come from java instead of being kept in sync by hand.
+ * A define that already exists in the source gets the injected value (the source value is the default),
+ * all others are added right after the #version line.
+ * Every set of defines is a variant of the shader, its key identifies the compiled program.
+ */
+
+public class ShaderPreprocessor {
+
+    private static final Pattern DEFINE = Pattern.compile("^(\\s*#define\\s+)(\\w+)(\\s.*)?$");
+    private static final String VERSION = "#version";
+
+    public static String process(String source, Map<String, ?> defines) {
+        if (defines.isEmpty()) {
+            return source;
+        }
+
+        StringBuilder result = new StringBuilder(source.length() + defines.size() * 32);
+        Set<String> replaced = new HashSet<>();
+        int versionEnd = -1;
+
+        for (String line : source.split("\n", -1)) {
+            Matcher matcher = DEFINE.matcher(line);
+            if (matcher.matches() && defines.containsKey(matcher.group(2))) {
+                result.append(matcher.group(1)).append(matcher.group(2)).append(' ').append(defines.get(matcher.group(2)));
+                replaced.add(matcher.group(2));
+            } else {
+                result.append(line);
+            }
+            result.append('\n');
+
+            if (versionEnd < 0 && line.trim().startsWith(VERSION)) {
+                versionEnd = result.length();
+            }
+        }
+        // split keeps the text after the last line break, so one line break too many was added
+        result.setLength(result.length() - 1);
+
+        // #version has to stay the first line, the new defines go right after it
+        StringBuilder injected = new StringBuilder();
+        for (Map.Entry<String, ?> define : new TreeMap<>(defines).entrySet()) {
+            if (!replaced.contains(define.getKey())) {
+                injected.append("#define ").append(define.getKey()).append(' ').append(define.getValue()).append('\n');
+            }
+        }
+        if (versionEnd < 0) {
+            result.insert(0, injected);
+        } else {
+            result.insert(versionEnd, injected);
+        }
+
+        return result.toString();
+    }
+
+    // Key of a shader variant, the same name and defines always give the same key
+    public static String variantKey(String name, Map<String, ?> defines) {
+        StringBuilder key = new StringBuilder(name);
+        for (Map.Entry<String, ?> define : new TreeMap<>(defines).entrySet()) {
+            key.append(';').append(define.getKey()).append('=').append(define.getValue());
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,96 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the camera input of the touch events until the gl thread picks it up once per frame.
+ * The ui thread adds pan and rotation deltas and sets the zoom, the gl thread drains all of it into one camera update,
+ * so a fast gesture can't queue up more work than one frame. Lock free and allocation free: the floats are kept
+ * as bits in atomic ints, adding is a compare and set loop and draining takes every value with getAndSet.
+ * There may be one writer and one reader thread.
+ */
+
+public class TouchAccumulator {
+
+    // Marks a zoom that wasn't set since the last drain
+    private static final int NO_SCALE = Float.floatToRawIntBits(Float.NaN);
+
+    /**
+     * Input of one drain, reused by the gl thread. The scale is the absolute zoom, NaN if it didn't change.
+     */
+    public static final class Deltas {
+        public float panX;
+        public float panY;
+        public float rotateX;
+        public float rotateY;
+        public float scale;
+
+        public boolean hasScale() {
+            return !Float.isNaN(scale);
+        }
+    }
+
+    private final AtomicInteger panX = new AtomicInteger();
+    private final AtomicInteger panY = new AtomicInteger();
+    private final AtomicInteger rotateX = new AtomicInteger();
+    private final AtomicInteger rotateY = new AtomicInteger();
+    private final AtomicInteger scale = new AtomicInteger(NO_SCALE);
+    private final AtomicBoolean pending = new AtomicBoolean();
+
+    // The add methods return true if the accumulator was empty before, the caller then has to wake the rendering up
+    public boolean addPan(float x, float y) {
+        add(panX, x);
+        add(panY, y);
+        return markPending();
+    }
+
+    // Degrees around the x and the y axis
+    public boolean addRotation(float x, float y) {
+        add(rotateX, x);
+        add(rotateY, y);
+        return markPending();
+    }
+
+    // Zoom is absolute, the latest value wins
+    public boolean setScale(float scaleFactor) {
+        scale.set(Float.floatToRawIntBits(scaleFactor));
+        return markPending();
+    }
+
+    // Moves everything that was added since the last drain into deltas, returns false if there was nothing
+    public boolean drain(Deltas deltas) {
+        // Cleared first: input that arrives while draining marks the accumulator pending again and is picked up next time
+        if (!pending.getAndSet(false)) {
+            return false;
+        }
+
+        deltas.panX = Float.intBitsToFloat(panX.getAndSet(0));
+        deltas.panY = Float.intBitsToFloat(panY.getAndSet(0));
+        deltas.rotateX = Float.intBitsToFloat(rotateX.getAndSet(0));
+        deltas.rotateY = Float.intBitsToFloat(rotateY.getAndSet(0));
+        deltas.scale = Float.intBitsToFloat(scale.getAndSet(NO_SCALE));
+        return true;
+    }
+
+    public boolean isPending() {
+        return pending.get();
+    }
+
+    private boolean markPending() {
+        return !pending.getAndSet(true);
+    }
+
+    private static void add(AtomicInteger bits, float delta) {
+        if (delta == 0f) {
+            return;
+        }
+
+        int current;
+        int next;
+        do {
+            current = bits.get();
+            next = Float.floatToRawIntBits(Float.intBitsToFloat(current) + delta);
+        } while (!bits.compareAndSet(current, next));
+    }
+}
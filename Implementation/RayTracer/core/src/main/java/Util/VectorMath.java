@@ -0,0 +1,145 @@
+package Util;
+
+/**
+ * Allocation free vector math on float arrays, the counterpart of Geometry.Vector for hot paths.
+ * Vectors are 3 consecutive floats at an offset (like the matrices of MatrixMath),
+ * the result may be one of the inputs, every function reads its inputs before it writes.
+ * The batch functions work on struct of arrays data (one array per component).
+ */
+
+public class VectorMath {
+
+    public static void set(float[] result, int resultOffset, float x, float y, float z) {
+        result[resultOffset] = x;
+        result[resultOffset + 1] = y;
+        result[resultOffset + 2] = z;
+    }
+
+    public static void add(float[] result, int resultOffset, float[] a, int aOffset, float[] b, int bOffset) {
+        result[resultOffset] = a[aOffset] + b[bOffset];
+        result[resultOffset + 1] = a[aOffset + 1] + b[bOffset + 1];
+        result[resultOffset + 2] = a[aOffset + 2] + b[bOffset + 2];
+    }
+
+    public static void subtract(float[] result, int resultOffset, float[] a, int aOffset, float[] b, int bOffset) {
+        result[resultOffset] = a[aOffset] - b[bOffset];
+        result[resultOffset + 1] = a[aOffset + 1] - b[bOffset + 1];
+        result[resultOffset + 2] = a[aOffset + 2] - b[bOffset + 2];
+    }
+
+    public static void scale(float[] result, int resultOffset, float[] a, int aOffset, float f) {
+        result[resultOffset] = a[aOffset] * f;
+        result[resultOffset + 1] = a[aOffset + 1] * f;
+        result[resultOffset + 2] = a[aOffset + 2] * f;
+    }
+
+    // result = a + b * f
+    public static void addScaled(float[] result, int resultOffset, float[] a, int aOffset, float[] b, int bOffset, float f) {
+        result[resultOffset] = a[aOffset] + b[bOffset] * f;
+        result[resultOffset + 1] = a[aOffset + 1] + b[bOffset + 1] * f;
+        result[resultOffset + 2] = a[aOffset + 2] + b[bOffset + 2] * f;
+    }
+
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset) {
+        return a[aOffset] * b[bOffset] + a[aOffset + 1] * b[bOffset + 1] + a[aOffset + 2] * b[bOffset + 2];
+    }
+
+    public static float length(float[] a, int aOffset) {
+        return (float) Math.sqrt(dot(a, aOffset, a, aOffset));
+    }
+
+    public static void normalize(float[] result, int resultOffset, float[] a, int aOffset) {
+        scale(result, resultOffset, a, aOffset, 1 / length(a, aOffset));
+    }
+
+    public static void cross(float[] result, int resultOffset, float[] a, int aOffset, float[] b, int bOffset) {
+        final float x = a[aOffset + 1] * b[bOffset + 2] - a[aOffset + 2] * b[bOffset + 1];
+        final float y = a[aOffset + 2] * b[bOffset] - a[aOffset] * b[bOffset + 2];
+        final float z = a[aOffset] * b[bOffset + 1] - a[aOffset + 1] * b[bOffset];
+        set(result, resultOffset, x, y, z);
+    }
+
+    // Rotates by angle degrees around the axis (x, y, z), same result as MatrixMath.setRotateM and multiplyMV
+    public static void rotate(float[] result, int resultOffset, float[] a, int aOffset, float angle, float x, float y, float z) {
+        final float radians = (float) Math.toRadians(angle);
+        final float s = (float) Math.sin(radians);
+        final float c = (float) Math.cos(radians);
+
+        final float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length != 1.0f) {
+            x /= length;
+            y /= length;
+            z /= length;
+        }
+
+        final float nc = 1.0f - c;
+        final float vx = a[aOffset];
+        final float vy = a[aOffset + 1];
+        final float vz = a[aOffset + 2];
+        result[resultOffset] = (x * x * nc + c) * vx + (x * y * nc - z * s) * vy + (z * x * nc + y * s) * vz;
+        result[resultOffset + 1] = (x * y * nc + z * s) * vx + (y * y * nc + c) * vy + (y * z * nc - x * s) * vz;
+        result[resultOffset + 2] = (z * x * nc - y * s) * vx + (y * z * nc + x * s) * vy + (z * z * nc + c) * vz;
+    }
+
+    // ----- BATCH (struct of arrays) -----
+
+    public static void translate(float[] xs, float[] ys, float[] zs, int offset, int count, float x, float y, float z) {
+        for (int i = offset; i < offset + count; i++) {
+            xs[i] += x;
+            ys[i] += y;
+            zs[i] += z;
+        }
+    }
+
+    public static void scale(float[] xs, float[] ys, float[] zs, int offset, int count, float f) {
+        for (int i = offset; i < offset + count; i++) {
+            xs[i] *= f;
+            ys[i] *= f;
+            zs[i] *= f;
+        }
+    }
+
+    public static void normalize(float[] xs, float[] ys, float[] zs, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            final float f = 1 / (float) Math.sqrt(xs[i] * xs[i] + ys[i] * ys[i] + zs[i] * zs[i]);
+            xs[i] *= f;
+            ys[i] *= f;
+            zs[i] *= f;
+        }
+    }
+
+    // result[i] = (xs[i], ys[i], zs[i]) . (x, y, z)
+    public static void dot(float[] result, int resultOffset, float[] xs, float[] ys, float[] zs, int offset, int count, float x, float y, float z) {
+        for (int i = 0; i < count; i++) {
+            result[resultOffset + i] = xs[offset + i] * x + ys[offset + i] * y + zs[offset + i] * z;
+        }
+    }
+
+    // The rotation is only set up once for all vectors
+    public static void rotate(float[] xs, float[] ys, float[] zs, int offset, int count, float angle, float x, float y, float z) {
+        final float radians = (float) Math.toRadians(angle);
+        final float s = (float) Math.sin(radians);
+        final float c = (float) Math.cos(radians);
+
+        final float length = (float) Math.sqrt(x * x + y * y + z * z);
+        if (length != 1.0f) {
+            x /= length;
+            y /= length;
+            z /= length;
+        }
+
+        final float nc = 1.0f - c;
+        final float m00 = x * x * nc + c, m01 = x * y * nc - z * s, m02 = z * x * nc + y * s;
+        final float m10 = x * y * nc + z * s, m11 = y * y * nc + c, m12 = y * z * nc - x * s;
+        final float m20 = z * x * nc - y * s, m21 = y * z * nc + x * s, m22 = z * z * nc + c;
+
+        for (int i = offset; i < offset + count; i++) {
+            final float vx = xs[i];
+            final float vy = ys[i];
+            final float vz = zs[i];
+            xs[i] = m00 * vx + m01 * vy + m02 * vz;
+            ys[i] = m10 * vx + m11 * vy + m12 * vz;
+            zs[i] = m20 * vx + m21 * vy + m22 * vz;
+        }
+    }
+}
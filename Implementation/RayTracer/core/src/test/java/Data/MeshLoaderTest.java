@@ -0,0 +1,120 @@
+package Data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class MeshLoaderTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    // Unit quad, both triangles share the diagonal
+    private static final String QUAD = "# quad\n"
+            + "v 0 0 0\n"
+            + "v 1 0 0\n"
+            + "v 1 1 0\n"
+            + "v 0 1 0\n"
+            + "vn 0 0 1\n"
+            + "f 1//1 2//1 3//1\n"
+            + "f 1//1 3//1 4//1\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void objVerticesAreSharedBetweenFaces() throws IOException {
+        TriangleMesh mesh = MeshLoader.readObj(ascii(QUAD));
+
+        assertEquals(4, mesh.vertexCount);
+        assertEquals(2, mesh.triangleCount);
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3}, mesh.indices);
+        assertTrue(mesh.hasNormals());
+        assertFalse(mesh.hasTextureCoordinates());
+        assertEquals(1.0f, mesh.normals[2], 0f);
+        assertEquals(1.0f, mesh.positions[2 * 3 + 1], 0f);
+    }
+
+    @Test
+    public void objPolygonsAreFannedAndNegativeIndicesCountBack() throws IOException {
+        // The same quad as one polygon with relative indices, the texture coordinates split the first corner
+        TriangleMesh mesh = MeshLoader.readObj(ascii("v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\nvt 0 0\nvt 1 1\n"
+                + "f -4/-2 -3/-2 -2/-2 -1/-2\n"
+                + "f -4/-1 -3/-2 -2/-2\n"));
+
+        assertEquals(3, mesh.triangleCount);
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3, 4, 1, 2}, Arrays.copyOf(mesh.indices, 9));
+        // Corner 1 with texture coordinate 2 is a new vertex at the same position
+        assertEquals(5, mesh.vertexCount);
+        assertEquals(mesh.positions[0], mesh.positions[4 * 3], 0f);
+        assertEquals(1.0f, mesh.textureCoordinates[4 * 2], 0f);
+        assertFalse(mesh.hasNormals());
+    }
+
+    @Test
+    public void asciiAndBinaryPlyGiveTheSameMesh() throws IOException {
+        String header = "element vertex 4\n"
+                + "property float x\nproperty float y\nproperty float z\n"
+                + "property uchar red\n"
+                + "element face 1\n"
+                + "property list uchar int vertex_indices\n"
+                + "end_header\n";
+        TriangleMesh ascii = MeshLoader.readPly(ascii("ply\nformat ascii 1.0\ncomment quad\n" + header
+                + "0 0 0 255\n1 0 0 255\n1 1 0 255\n0 1 0 255\n"
+                + "4 0 1 2 3\n"));
+
+        byte[] headerBytes = ("ply\nformat binary_little_endian 1.0\n" + header).getBytes(US_ASCII);
+        ByteBuffer binary = ByteBuffer.allocate(headerBytes.length + 4 * 13 + 1 + 4 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        binary.put(headerBytes);
+        float[][] corners = {{0, 0, 0}, {1, 0, 0}, {1, 1, 0}, {0, 1, 0}};
+        for (float[] corner : corners) {
+            binary.putFloat(corner[0]).putFloat(corner[1]).putFloat(corner[2]).put((byte) 255);
+        }
+        binary.put((byte) 4).putInt(0).putInt(1).putInt(2).putInt(3);
+        binary.flip();
+
+        File file = new File(folder.getRoot(), "quad" + MeshLoader.PLY_EXTENSION);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.getChannel().write(binary);
+        }
+        TriangleMesh mapped = MeshLoader.load(file);
+
+        assertEquals(4, ascii.vertexCount);
+        assertEquals(2, ascii.triangleCount);
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3}, ascii.indices);
+        assertEquals(ascii.vertexCount, mapped.vertexCount);
+        assertEquals(ascii.triangleCount, mapped.triangleCount);
+        assertArrayEquals(Arrays.copyOf(ascii.positions, 12), Arrays.copyOf(mapped.positions, 12), 0f);
+        assertArrayEquals(Arrays.copyOf(ascii.indices, 6), Arrays.copyOf(mapped.indices, 6));
+    }
+
+    @Test
+    public void brokenFilesAreRejected() {
+        assertRejected("quad.obj", "v 0 0 0\nv 1 0 0\nf 1 2 3\n");
+        assertRejected("quad.obj", "v 0 0 zero\n");
+        assertRejected("quad.ply", "ply\nformat ascii 1.0\nelement vertex 1\nproperty float x\nproperty float y\nproperty float z\n"
+                + "element face 1\nproperty list uchar int vertex_indices\nend_header\n0 0 0\n3 0 1 2\n");
+        assertRejected("quad.stl", QUAD);
+    }
+
+    private static void assertRejected(String name, String text) {
+        try {
+            MeshLoader.read(ascii(text), name);
+            fail("Mesh was loaded: " + text);
+        } catch (IOException expected) {
+        }
+    }
+
+    private static ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(US_ASCII));
+    }
+}
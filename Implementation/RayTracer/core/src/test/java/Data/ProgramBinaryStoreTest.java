@@ -0,0 +1,84 @@
+package Data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import Data.ProgramBinaryStore.ProgramBinary;
+
+import static org.junit.Assert.*;
+
+public class ProgramBinaryStoreTest {
+
+    private static final String DRIVER = "Qualcomm|Adreno (TM) 640|OpenGL ES 3.2 V@415.0";
+    private static final String SOURCE = "#version 310 es\n#define MAX_BOUNCES 4\nvoid main() {}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keysChangeWithDriverAndSources() {
+        String key = ProgramBinaryStore.key(DRIVER, SOURCE);
+
+        assertEquals(key, ProgramBinaryStore.key(DRIVER, SOURCE));
+        assertEquals(64, key.length());
+        assertNotEquals(key, ProgramBinaryStore.key(DRIVER + "1", SOURCE));
+        assertNotEquals(key, ProgramBinaryStore.key(DRIVER, SOURCE.replace("MAX_BOUNCES 4", "MAX_BOUNCES 5")));
+        // Moving text between vertex and fragment shader is another program
+        assertNotEquals(ProgramBinaryStore.key(DRIVER, "ab", "c"), ProgramBinaryStore.key(DRIVER, "a", "bc"));
+    }
+
+    @Test
+    public void fileFormatRoundTrips() throws IOException {
+        String key = ProgramBinaryStore.key(DRIVER, SOURCE);
+        byte[] data = {1, 2, 3, 4, 5, -1};
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ProgramBinaryStore.write(output, key, new ProgramBinary(0x8740, data));
+        byte[] file = output.toByteArray();
+
+        ProgramBinary binary = ProgramBinaryStore.read(new ByteArrayInputStream(file), key);
+        assertNotNull(binary);
+        assertEquals(0x8740, binary.format);
+        assertArrayEquals(data, binary.data);
+
+        // Another key
+        assertNull(ProgramBinaryStore.read(new ByteArrayInputStream(file), ProgramBinaryStore.key(DRIVER, "")));
+
+        // A flipped bit in the binary
+        file[file.length - 2] ^= 1;
+        assertNull(ProgramBinaryStore.read(new ByteArrayInputStream(file), key));
+    }
+
+    @Test
+    public void storedBinariesAreLoadedAndBrokenFilesAreDeleted() throws IOException {
+        File directory = new File(folder.getRoot(), "program_binaries");
+        ProgramBinaryStore store = new ProgramBinaryStore(directory);
+        String key = ProgramBinaryStore.key(DRIVER, SOURCE);
+
+        assertNull(store.load(key));
+
+        store.store(key, new ProgramBinary(7, new byte[]{9, 8, 7}));
+        ProgramBinary binary = new ProgramBinaryStore(directory).load(key);
+        assertNotNull(binary);
+        assertEquals(7, binary.format);
+        assertArrayEquals(new byte[]{9, 8, 7}, binary.data);
+
+        store.remove(key);
+        assertNull(store.load(key));
+
+        // A truncated file
+        File file = new File(directory, key + ".bin");
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(new byte[]{0x52, 0x54});
+        }
+        assertNull(store.load(key));
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,184 @@
+package Data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Tracing.TraceScene;
+
+import static org.junit.Assert.*;
+
+public class SceneFileTest {
+
+    private static final String SCENE = "# Test scene\n"
+            + "camera 3.0 2.0 7.0   0.0 0.5 0.0\n"
+            + "\n"
+            + "cube -5.0 -0.1 -5.0   5.0 0.0 5.0   0.9 0.9 0.9   diffuse 0.5  # floor\n"
+            + "cube 2.0 0.0 -2.0   3.0 4.0 2.0   0.1 0.6 0.6   metal 1.0\n"
+            + "sphere -0.5 0.75 -2.0   0.75   1.0 1.0 0.0   light 0.5\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void textIsParsedIntoPackedArrays() throws IOException {
+        SceneFile scene = SceneFile.readText(new StringReader(SCENE));
+
+        assertArrayEquals(new float[]{3.0f, 2.0f, 7.0f}, scene.cameraEye, 0f);
+        assertArrayEquals(new float[]{0.0f, 0.5f, 0.0f}, scene.cameraCenter, 0f);
+        assertEquals(2, scene.cubeCount);
+        assertArrayEquals(new float[]{-5.0f, -0.1f, -5.0f, 2.0f, 0.0f, -2.0f}, scene.cubeMin, 0f);
+        assertArrayEquals(new int[]{TraceScene.MATERIAL_DIFFUSE, TraceScene.MATERIAL_METAL}, scene.cubeMaterial);
+        assertEquals(1, scene.sphereCount);
+        assertEquals(0.75f, scene.sphereRadius[0], 0f);
+        assertEquals(TraceScene.MATERIAL_LIGHT, scene.sphereMaterial[0]);
+
+        List<Cube> cubeList = scene.createCubes();
+        List<Sphere> sphereList = scene.createSpheres();
+        assertEquals(Cube.Material.METAL, cubeList.get(1).getMaterial());
+        assertEquals(4.0f, cubeList.get(1).getMax().y, 0f);
+        assertEquals(Sphere.Material.LIGHT, sphereList.get(0).getMaterial());
+
+        // The objects pack into the same arrays again
+        assertSameScene(scene, new SceneFile(scene.createCamera(), cubeList, sphereList));
+    }
+
+    @Test
+    public void textAndBinaryFormsRoundTrip() throws IOException {
+        SceneFile scene = randomScene(50, 70);
+
+        StringWriter text = new StringWriter();
+        scene.writeText(text);
+        assertSameScene(scene, SceneFile.readText(new StringReader(text.toString())));
+
+        File binary = new File(folder.getRoot(), "random" + SceneFile.BINARY_EXTENSION);
+        scene.save(binary);
+        assertSameScene(scene, SceneFile.load(binary));
+    }
+
+    @Test
+    public void bigBinaryScenesLoad() throws IOException {
+        SceneFile scene = randomScene(20_000, 20_000);
+        File binary = new File(folder.getRoot(), "big" + SceneFile.BINARY_EXTENSION);
+        scene.save(binary);
+
+        SceneFile loaded = SceneFile.load(binary);
+        assertSameScene(scene, loaded);
+        assertEquals(scene.sphereCount, new TraceScene(loaded, loaded.loadMeshes(folder.getRoot())).sphereCount);
+    }
+
+    @Test
+    public void meshesAreLoadedRelativeToTheSceneFile() throws IOException {
+        SceneFile scene = SceneFile.readText(new StringReader(SCENE + "mesh models/triangle.obj   1.0 0.0 0.0   metal 0.5\n"));
+        assertEquals(1, scene.meshCount);
+        assertEquals("models/triangle.obj", scene.meshPaths[0]);
+        assertEquals(TraceScene.MATERIAL_METAL, scene.meshMaterial[0]);
+
+        // Both forms keep the mesh
+        File binary = new File(folder.getRoot(), "meshes" + SceneFile.BINARY_EXTENSION);
+        scene.save(binary);
+        SceneFile loaded = SceneFile.load(binary);
+        assertEquals("models/triangle.obj", loaded.meshPaths[0]);
+        assertArrayEquals(scene.meshColor, loaded.meshColor, 0f);
+        StringWriter text = new StringWriter();
+        loaded.writeText(text);
+        assertEquals("models/triangle.obj", SceneFile.readText(new StringReader(text.toString())).meshPaths[0]);
+
+        File models = new File(folder.getRoot(), "models");
+        assertTrue(models.mkdir());
+        try (FileOutputStream outputStream = new FileOutputStream(new File(models, "triangle.obj"))) {
+            outputStream.write("v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 3\n".getBytes("US-ASCII"));
+        }
+        List<Mesh> meshList = loaded.loadMeshes(folder.getRoot());
+        assertEquals(Mesh.Material.METAL, meshList.get(0).getMaterial());
+        assertEquals(1, new TraceScene(loaded, meshList).triangleCount);
+    }
+
+    @Test
+    public void brokenFilesAreRejected() throws IOException {
+        assertRejected("camera 0 0 0 0 0\n");
+        assertRejected("camera 0 0 0 0 0 1\ncube 0 0 0 1 1 1 1 1 1 glass 0.5\n");
+        assertRejected("camera 0 0 0 0 0 1\ntorus 1 2\n");
+        assertRejected("cube 0 0 0 1 1 1 1 1 1 metal 0.5\n");
+
+        // A binary file that lost its last sphere
+        File binary = new File(folder.getRoot(), "broken" + SceneFile.BINARY_EXTENSION);
+        randomScene(3, 3).save(binary);
+        try (FileOutputStream outputStream = new FileOutputStream(binary, true)) {
+            outputStream.getChannel().truncate(binary.length() - 4);
+        }
+        try {
+            SceneFile.load(binary);
+            fail("Truncated binary scene was loaded");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static void assertRejected(String text) {
+        try {
+            SceneFile.readText(new StringReader(text));
+            fail("Scene was loaded: " + text);
+        } catch (IOException expected) {
+        }
+    }
+
+    private static SceneFile randomScene(int cubeCount, int sphereCount) {
+        Random random = new Random(13);
+        SceneFile scene = new SceneFile(new float[]{1f, 2f, 3f}, new float[]{0f, 0.5f, 0f}, cubeCount, sphereCount);
+        fill(random, scene.cubeMin, scene.cubeMax, scene.cubeColor, scene.cubeParameter0,
+                scene.sphereCenter, scene.sphereRadius, scene.sphereColor, scene.sphereParameter0);
+        for (int i = 0; i < cubeCount; i++) {
+            scene.cubeMaterial[i] = random.nextInt(3);
+        }
+        for (int i = 0; i < sphereCount; i++) {
+            scene.sphereMaterial[i] = random.nextInt(3);
+        }
+        return scene;
+    }
+
+    private static void fill(Random random, float[]... arrays) {
+        for (float[] array : arrays) {
+            for (int i = 0; i < array.length; i++) {
+                array[i] = random.nextFloat() * 10f - 5f;
+            }
+        }
+    }
+
+    private static void assertSameScene(SceneFile expected, SceneFile actual) {
+        assertArrayEquals(expected.cameraEye, actual.cameraEye, 0f);
+        assertArrayEquals(expected.cameraCenter, actual.cameraCenter, 0f);
+
+        List<float[]> expectedArrays = floatArrays(expected);
+        List<float[]> actualArrays = floatArrays(actual);
+        for (int i = 0; i < expectedArrays.size(); i++) {
+            assertArrayEquals(expectedArrays.get(i), actualArrays.get(i), 0f);
+        }
+        assertArrayEquals(expected.cubeMaterial, actual.cubeMaterial);
+        assertArrayEquals(expected.sphereMaterial, actual.sphereMaterial);
+    }
+
+    private static List<float[]> floatArrays(SceneFile scene) {
+        List<float[]> arrays = new ArrayList<>();
+        arrays.add(scene.cubeMin);
+        arrays.add(scene.cubeMax);
+        arrays.add(scene.cubeColor);
+        arrays.add(scene.cubeParameter0);
+        arrays.add(scene.sphereCenter);
+        arrays.add(scene.sphereRadius);
+        arrays.add(scene.sphereColor);
+        arrays.add(scene.sphereParameter0);
+        return arrays;
+    }
+}
@@ -0,0 +1,172 @@
+package Data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Tracing.TraceScene;
+import Util.Geometry.Vector;
+
+import static org.junit.Assert.*;
+
+public class ScenePackerTest {
+
+    @Test
+    public void packsTheStd430Layout() {
+        List<Cube> cubeList = new ArrayList<>();
+        cubeList.add(new Cube(new Vector(1, 2, 3), new Vector(4, 5, 6), new Vector(0.1f, 0.2f, 0.3f), Cube.Material.METAL, 0.7f));
+        List<Sphere> sphereList = new ArrayList<>();
+        sphereList.add(new Sphere(new Vector(7, 8, 9), 1.5f, new Vector(0.4f, 0.5f, 0.6f), Sphere.Material.DIFFUSE, 0.25f));
+
+        ScenePacker packer = new ScenePacker();
+        packer.pack(cubeList, sphereList);
+
+        assertEquals(3.0f, packer.getCubeData().getFloat(8), 0.0f);
+        assertEquals(0, packer.getCubeData().getInt(12));
+        assertEquals(4.0f, packer.getCubeData().getFloat(16), 0.0f);
+
+        assertEquals(9.0f, packer.getSphereData().getFloat(8), 0.0f);
+        assertEquals(1.5f, packer.getSphereData().getFloat(12), 0.0f);
+        assertEquals(1, packer.getSphereData().getInt(16));
+
+        // Cube material first, then the sphere material
+        assertEquals(TraceScene.MATERIAL_METAL, packer.getMaterialData().getInt(12));
+        assertEquals(0.7f, packer.getMaterialData().getFloat(16), 0.0f);
+        assertEquals(0.4f, packer.getMaterialData().getFloat(ScenePacker.BYTES_PER_MATERIAL), 0.0f);
+        assertEquals(TraceScene.MATERIAL_DIFFUSE, packer.getMaterialData().getInt(ScenePacker.BYTES_PER_MATERIAL + 12));
+
+        assertTrue(packer.isGeometryChanged());
+        assertRange(packer.getCubeRanges(), 0, ScenePacker.BYTES_PER_CUBE);
+        assertRange(packer.getSphereRanges(), 0, ScenePacker.BYTES_PER_SPHERE);
+        assertRange(packer.getMaterialRanges(), 0, 2 * ScenePacker.BYTES_PER_MATERIAL);
+    }
+
+    @Test
+    public void onlyChangedObjectsBecomeDirty() {
+        List<Sphere> sphereList = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sphereList.add(new Sphere(new Vector(i, 0, 0), 1, new Vector(1, 1, 1), Sphere.Material.DIFFUSE, 0.5f));
+        }
+
+        ScenePacker packer = new ScenePacker();
+        packer.pack(new ArrayList<Cube>(), sphereList);
+        packer.clearDirty();
+
+        // Nothing changed
+        packer.pack(new ArrayList<Cube>(), sphereList);
+        assertFalse(packer.isGeometryChanged());
+        assertTrue(packer.getSphereRanges().isEmpty());
+        assertTrue(packer.getMaterialRanges().isEmpty());
+
+        // A color change only touches the material
+        sphereList.get(3).setColor(new Vector(0, 1, 0));
+        packer.pack(new ArrayList<Cube>(), sphereList);
+        assertFalse(packer.isGeometryChanged());
+        assertTrue(packer.getSphereRanges().isEmpty());
+        assertRange(packer.getMaterialRanges(), 3 * ScenePacker.BYTES_PER_MATERIAL, 4 * ScenePacker.BYTES_PER_MATERIAL);
+        packer.clearDirty();
+
+        // Setting the same value again doesn't upload anything
+        sphereList.get(5).setRadius(1);
+        packer.pack(new ArrayList<Cube>(), sphereList);
+        assertTrue(packer.getSphereRanges().isEmpty());
+
+        // Moving a sphere changes the geometry, but the same spheres are still there
+        sphereList.get(5).setCenter(new Vector(0, 5, 0));
+        packer.pack(new ArrayList<Cube>(), sphereList);
+        assertTrue(packer.isGeometryChanged());
+        assertFalse(packer.isTopologyChanged());
+        assertRange(packer.getSphereRanges(), 5 * ScenePacker.BYTES_PER_SPHERE, 6 * ScenePacker.BYTES_PER_SPHERE);
+        packer.clearDirty();
+
+        // Removing one doesn't
+        sphereList.remove(9);
+        packer.pack(new ArrayList<Cube>(), sphereList);
+        assertTrue(packer.isTopologyChanged());
+    }
+
+    @Test
+    public void buffersGrowAndKeepTheirContents() {
+        List<Cube> cubeList = new ArrayList<>();
+        ScenePacker packer = new ScenePacker();
+        int initialCapacity = packer.getCubeData().capacity();
+
+        for (int i = 0; i < 100; i++) {
+            cubeList.add(new Cube(new Vector(i, 0, 0), new Vector(i + 1, 1, 1), new Vector(1, 1, 1), Cube.Material.DIFFUSE, 0.5f));
+            packer.pack(cubeList, new ArrayList<Sphere>());
+        }
+
+        assertTrue(packer.getCubeData().capacity() > initialCapacity);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, packer.getCubeData().getFloat(i * ScenePacker.BYTES_PER_CUBE), 0.0f);
+        }
+    }
+
+    @Test
+    public void meshTrianglesShareOneVertexBuffer() {
+        List<Sphere> sphereList = new ArrayList<>();
+        sphereList.add(new Sphere(new Vector(0, 0, 0), 1, new Vector(1, 1, 1), Sphere.Material.DIFFUSE, 0.5f));
+        TriangleMesh triangle = new TriangleMesh(3, new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0}, new float[0], new float[0], 1, new int[]{0, 1, 2});
+        List<Mesh> meshList = new ArrayList<>();
+        meshList.add(new Mesh(triangle, new Vector(1, 0, 0), Mesh.Material.METAL, 0.5f));
+        meshList.add(new Mesh(triangle, new Vector(0, 1, 0), Mesh.Material.LIGHT, 0.5f));
+
+        ScenePacker packer = new ScenePacker();
+        packer.pack(new ArrayList<Cube>(), sphereList, meshList);
+        assertEquals(2, packer.getTriangleCount());
+
+        // The second mesh points at its own copy of the vertices and at the material after the first mesh
+        assertEquals(1.0f, packer.getVertexData().getFloat(4 * ScenePacker.BYTES_PER_VERTEX), 0.0f);
+        assertEquals(3, packer.getTriangleData().getInt(ScenePacker.BYTES_PER_TRIANGLE));
+        assertEquals(1, packer.getTriangleData().getInt(12));
+        assertEquals(2, packer.getTriangleData().getInt(ScenePacker.BYTES_PER_TRIANGLE + 12));
+        assertEquals(TraceScene.MATERIAL_LIGHT, packer.getMaterialData().getInt(2 * ScenePacker.BYTES_PER_MATERIAL + 12));
+        packer.clearDirty();
+
+        // A material change doesn't touch the triangles
+        meshList.get(0).setParameter0(0.9f);
+        packer.pack(new ArrayList<Cube>(), sphereList, meshList);
+        assertFalse(packer.isGeometryChanged());
+        assertTrue(packer.getTriangleRanges().isEmpty());
+        assertRange(packer.getMaterialRanges(), ScenePacker.BYTES_PER_MATERIAL, 2 * ScenePacker.BYTES_PER_MATERIAL);
+        packer.clearDirty();
+
+        // A removed sphere moves the mesh materials, the vertices stay the same
+        packer.pack(new ArrayList<Cube>(), new ArrayList<Sphere>(), meshList);
+        assertEquals(0, packer.getTriangleData().getInt(12));
+        assertTrue(packer.getVertexRanges().isEmpty());
+        assertRange(packer.getTriangleRanges(), 0, 2 * ScenePacker.BYTES_PER_TRIANGLE);
+    }
+
+    @Test
+    public void dirtyRangesMerge() {
+        DirtyRanges ranges = new DirtyRanges();
+        ranges.add(64, 96);
+        ranges.add(0, 32);
+        ranges.add(128, 160);
+        assertEquals(3, ranges.getCount());
+
+        // Touching ranges are merged
+        ranges.add(32, 64);
+        assertEquals(2, ranges.getCount());
+        assertEquals(0, ranges.getStart(0));
+        assertEquals(96, ranges.getEnd(0));
+
+        // A range covering everything swallows the rest
+        ranges.add(10, 200);
+        assertRange(ranges, 0, 200);
+
+        ranges.clear();
+        assertTrue(ranges.isEmpty());
+    }
+
+    private static void assertRange(DirtyRanges ranges, int start, int end) {
+        assertEquals(1, ranges.getCount());
+        assertEquals(start, ranges.getStart(0));
+        assertEquals(end, ranges.getEnd(0));
+    }
+}
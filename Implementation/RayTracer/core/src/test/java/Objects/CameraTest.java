@@ -0,0 +1,60 @@
+package Objects;
+
+import org.junit.Test;
+
+import Util.Allocations;
+import Util.Geometry.Point;
+import Util.MatrixMath;
+
+import static org.junit.Assert.*;
+
+public class CameraTest {
+
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void viewMatrixLooksFromThePositionToTheViewCenter() {
+        Camera camera = new Camera(new Point(3.0f, 2.0f, 7.0f), new Point(0.0f, 0.5f, 0.0f));
+        float[] result = new float[4];
+
+        // The eye ends up in the origin
+        MatrixMath.multiplyMV(result, 0, camera.getViewMatrix(), 0, new float[]{3.0f, 2.0f, 7.0f, 1f}, 0);
+        assertEquals(0f, result[0], EPSILON);
+        assertEquals(0f, result[1], EPSILON);
+        assertEquals(0f, result[2], EPSILON);
+
+        // The view center on the negative z axis
+        MatrixMath.multiplyMV(result, 0, camera.getViewMatrix(), 0, new float[]{0.0f, 0.5f, 0.0f, 1f}, 0);
+        assertEquals(0f, result[0], EPSILON);
+        assertEquals(0f, result[1], EPSILON);
+        assertTrue(result[2] < 0f);
+    }
+
+    @Test
+    public void rotateMMatchesMultiplyingWithARotationMatrix() {
+        Camera camera = new Camera(new Point(3.0f, 2.0f, 7.0f), new Point(0.0f, 0.5f, 0.0f));
+        float[] rotation = new float[16];
+        float[] expected = new float[16];
+        MatrixMath.setRotateM(rotation, 0, 5f, 1f, 0f, 0f);
+        MatrixMath.multiplyMM(expected, 0, camera.getViewMatrix(), 0, rotation, 0);
+
+        camera.rotate(5f, 1f, 0f, 0f);
+
+        assertArrayEquals(expected, camera.getViewMatrix(), EPSILON);
+    }
+
+    @Test
+    public void movingTheCameraDoesntAllocate() {
+        Camera camera = new Camera(new Point(3.0f, 2.0f, 7.0f), new Point(0.0f, 0.5f, 0.0f));
+
+        long bytes = Allocations.measure(10_000, () -> {
+            camera.translate(0.08f, 0f);
+            camera.rotate(5f, 0f, 1f, 0f);
+            camera.scale(1.01f);
+            camera.translateZ(0.001f);
+            camera.setPosition(3.0f, 2.0f, 7.0f);
+        });
+
+        assertTrue("Allocated " + bytes + " bytes", bytes < 1024);
+    }
+}
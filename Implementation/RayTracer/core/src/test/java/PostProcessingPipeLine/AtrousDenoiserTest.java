@@ -0,0 +1,125 @@
+package PostProcessingPipeLine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Tracing.Bvh;
+import Tracing.CpuRaytracer;
+import Tracing.GuideBuffer;
+import Tracing.PathTracer;
+import Tracing.TraceScene;
+import Util.Geometry.Vector;
+import Util.MatrixHelper;
+import Util.MatrixMath;
+
+import static org.junit.Assert.*;
+
+public class AtrousDenoiserTest {
+
+    private static final int WIDTH = 48;
+    private static final int HEIGHT = 32;
+
+    @Test
+    public void noiseIsSmoothedWithoutCrossingEdges() {
+        // Left half is a red wall facing the camera, right half a blue wall facing sideways, both with noisy lighting
+        GuideBuffer guides = new GuideBuffer(WIDTH, HEIGHT);
+        float[] clean = new float[WIDTH * HEIGHT * 4];
+        float[] noisy = new float[WIDTH * HEIGHT * 4];
+        Random random = new Random(7);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int offset = (y * WIDTH + x) * 4;
+                boolean left = x < WIDTH / 2;
+                guides.normalDepth[offset + (left ? 2 : 0)] = 1.0f;
+                guides.normalDepth[offset + 3] = 5.0f;
+                guides.albedo[offset] = left ? 0.8f : 0.1f;
+                guides.albedo[offset + 2] = left ? 0.1f : 0.8f;
+                for (int channel = 0; channel < 3; channel++) {
+                    clean[offset + channel] = guides.albedo[offset + channel] * 0.5f;
+                    noisy[offset + channel] = clean[offset + channel] + (float) random.nextGaussian() * 0.1f;
+                }
+                clean[offset + 3] = 1.0f;
+                noisy[offset + 3] = 1.0f;
+            }
+        }
+
+        float[] denoised = new float[noisy.length];
+        new AtrousDenoiser(WIDTH, HEIGHT).denoise(noisy, guides, 1, denoised);
+
+        assertTrue(rmse(denoised, clean) < rmse(noisy, clean) * 0.4);
+        // The columns next to the edge only average their own side
+        for (int y = 0; y < HEIGHT; y++) {
+            int left = (y * WIDTH + WIDTH / 2 - 1) * 4;
+            int right = left + 4;
+            assertTrue(denoised[left] > 0.3f && denoised[left + 2] < 0.15f);
+            assertTrue(denoised[right] < 0.15f && denoised[right + 2] > 0.3f);
+        }
+    }
+
+    @Test
+    public void convergedAveragesPassUnchanged() {
+        assertEquals(AtrousDenoiser.MAX_ITERATIONS, AtrousDenoiser.iterations(1));
+        assertEquals(AtrousDenoiser.MAX_ITERATIONS - 1, AtrousDenoiser.iterations(3));
+        assertEquals(0, AtrousDenoiser.iterations(AtrousDenoiser.MAX_DENOISED_SAMPLES));
+
+        float[] color = new float[WIDTH * HEIGHT * 4];
+        Random random = new Random(3);
+        for (int i = 0; i < color.length; i++) {
+            color[i] = random.nextFloat();
+        }
+        float[] result = new float[color.length];
+        new AtrousDenoiser(WIDTH, HEIGHT).denoise(color, new GuideBuffer(WIDTH, HEIGHT), AtrousDenoiser.MAX_DENOISED_SAMPLES, result);
+
+        assertArrayEquals(color, result, 0f);
+    }
+
+    @Test
+    public void denoisedFrameIsCloserToTheConvergedRender() {
+        // Diffuse floor and spheres, the reference is the average of many frames
+        ArrayList<Cube> cubeList = new ArrayList<>();
+        cubeList.add(new Cube(new Vector(-5.0f, -1.1f, -15.0f), new Vector(5.0f, -1.0f, 5.0f), new Vector(0.9f, 0.9f, 0.9f), Cube.Material.DIFFUSE, 0.5f));
+        ArrayList<Sphere> sphereList = new ArrayList<>();
+        sphereList.add(new Sphere(new Vector(-0.8f, -0.2f, -5.0f), 0.8f, new Vector(1.0f, 0.2f, 0.2f), Sphere.Material.DIFFUSE, 0.5f));
+        sphereList.add(new Sphere(new Vector(1.0f, -0.4f, -6.0f), 0.6f, new Vector(0.2f, 0.8f, 0.3f), Sphere.Material.DIFFUSE, 0.5f));
+        TraceScene scene = new TraceScene(cubeList, sphereList, new ArrayList<Mesh>());
+        Bvh bvh = Bvh.build(scene);
+
+        float[] projectionMatrix = new float[16];
+        float[] invertedViewProjectionMatrix = new float[16];
+        MatrixHelper.perspectiveM(projectionMatrix, 60, (float) WIDTH / (float) HEIGHT, 1f, 20f);
+        MatrixMath.invertM(invertedViewProjectionMatrix, 0, projectionMatrix, 0);
+        float[] identity = new float[16];
+        MatrixMath.setIdentityM(identity, 0);
+
+        CpuRaytracer raytracer = new CpuRaytracer(new ForkJoinPool(2), 16);
+        float[] reference = new float[WIDTH * HEIGHT * 4];
+        for (int frame = 0; frame < 64; frame++) {
+            raytracer.render(reference, WIDTH, HEIGHT, invertedViewProjectionMatrix, identity, scene, bvh, frame);
+        }
+
+        float[] noisy = new float[WIDTH * HEIGHT * 4];
+        GuideBuffer guides = new GuideBuffer(WIDTH, HEIGHT);
+        raytracer.render(noisy, guides, WIDTH, HEIGHT, invertedViewProjectionMatrix, identity, scene, bvh, 0);
+        float[] denoised = new float[noisy.length];
+        new AtrousDenoiser(WIDTH, HEIGHT).denoise(noisy, guides, PathTracer.MULTI_SAMPLING_COUNT, denoised);
+
+        assertTrue(rmse(denoised, reference) < rmse(noisy, reference));
+    }
+
+    private static double rmse(float[] image, float[] reference) {
+        double sum = 0.0;
+        for (int i = 0; i < image.length; i++) {
+            if (i % 4 != 3) {
+                double delta = image[i] - reference[i];
+                sum += delta * delta;
+            }
+        }
+        return Math.sqrt(sum / (image.length / 4 * 3));
+    }
+}
@@ -0,0 +1,103 @@
+package Tracing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import Objects.Cube;
+import Objects.Sphere;
+import Util.Geometry.Vector;
+import Util.MatrixMath;
+
+import static org.junit.Assert.*;
+
+public class AccumulationTest {
+
+    private static final int WIDTH = 24;
+    private static final int HEIGHT = 16;
+
+    @Test
+    public void frameIndexCountsUpUntilSomethingChanges() {
+        Accumulation accumulation = new Accumulation();
+        float[] matrix = identity();
+
+        assertEquals(0, accumulation.nextFrame(matrix, 64, 32, false));
+        assertEquals(1, accumulation.nextFrame(matrix, 64, 32, false));
+        assertEquals(2, accumulation.nextFrame(matrix, 64, 32, false));
+
+        assertFalse(accumulation.isReprojectable());
+
+        // Camera moved, the old average can be reprojected
+        matrix[12] = 0.08f;
+        assertEquals(0, accumulation.nextFrame(matrix, 64, 32, false));
+        assertTrue(accumulation.isReprojectable());
+        assertEquals(1, accumulation.nextFrame(matrix, 64, 32, false));
+        assertFalse(accumulation.isReprojectable());
+
+        // Scene changed
+        matrix[12] = 0.16f;
+        assertEquals(0, accumulation.nextFrame(matrix, 64, 32, true));
+        assertFalse(accumulation.isReprojectable());
+
+        // Surface resized
+        assertFalse(accumulation.isOutdated(matrix, 64, 32));
+        assertTrue(accumulation.isOutdated(matrix, 32, 32));
+        assertEquals(1, accumulation.nextFrame(matrix, 64, 32, false));
+        assertEquals(0, accumulation.nextFrame(matrix, 32, 32, false));
+
+        accumulation.reset();
+        assertEquals(0, accumulation.nextFrame(matrix, 32, 32, false));
+    }
+
+    @Test
+    public void accumulatedFramesConvergeTowardsTheReference() {
+        ArrayList<Cube> cubeList = new ArrayList<>();
+        cubeList.add(new Cube(new Vector(-5.0f, -1.1f, -15.0f), new Vector(5.0f, -1.0f, 5.0f), new Vector(0.9f, 0.9f, 0.9f), Cube.Material.DIFFUSE, 0.5f));
+        ArrayList<Sphere> sphereList = new ArrayList<>();
+        sphereList.add(new Sphere(new Vector(0.0f, -0.25f, -5.0f), 0.75f, new Vector(1.0f, 1.0f, 0.0f), Sphere.Material.DIFFUSE, 0.5f));
+
+        float[] reference = render(cubeList, sphereList, 64);
+        float[] oneFrame = render(cubeList, sphereList, 1);
+        float[] sixteenFrames = render(cubeList, sphereList, 16);
+
+        assertTrue(squaredError(sixteenFrames, reference) < squaredError(oneFrame, reference));
+    }
+
+    private static float[] render(ArrayList<Cube> cubeList, ArrayList<Sphere> sphereList, int frames) {
+        float[] invertedViewProjectionMatrix = new float[16];
+        MatrixMath.invertM(invertedViewProjectionMatrix, 0, perspective((float) WIDTH / HEIGHT), 0);
+
+        CpuRaytracer raytracer = new CpuRaytracer(new ForkJoinPool(2), 8);
+        float[] frameBuffer = new float[WIDTH * HEIGHT * 4];
+        for (int frame = 0; frame < frames; frame++) {
+            raytracer.render(frameBuffer, WIDTH, HEIGHT, invertedViewProjectionMatrix, identity(), cubeList, sphereList, frame);
+        }
+        return frameBuffer;
+    }
+
+    private static double squaredError(float[] image, float[] reference) {
+        double error = 0.0;
+        for (int i = 0; i < image.length; i++) {
+            error += (image[i] - reference[i]) * (image[i] - reference[i]);
+        }
+        return error;
+    }
+
+    private static float[] identity() {
+        float[] m = new float[16];
+        m[0] = m[5] = m[10] = m[15] = 1f;
+        return m;
+    }
+
+    private static float[] perspective(float aspect) {
+        float a = (float) (1.0 / Math.tan(Math.toRadians(60.0) / 2.0));
+        float[] m = new float[16];
+        m[0] = a / aspect;
+        m[5] = a;
+        m[10] = -21f / 19f;
+        m[11] = -1f;
+        m[14] = -40f / 19f;
+        return m;
+    }
+}
@@ -0,0 +1,192 @@
+package Tracing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import Data.TriangleMesh;
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Util.Geometry.Vector;
+
+import static org.junit.Assert.*;
+
+public class BvhTest {
+
+    @Test
+    public void everyPrimitiveIsReferencedByExactlyOneLeaf() {
+        TraceScene scene = randomScene(new Random(1), 40, 60);
+        Bvh bvh = Bvh.build(scene);
+
+        int[] seen = new int[scene.cubeCount + scene.sphereCount + scene.triangleCount];
+        for (int node = 0; node < bvh.getNodeCount(); node++) {
+            int count = bvh.getNodeData()[node * 2 + 1];
+            int first = bvh.getNodeData()[node * 2];
+            for (int i = first; i < first + count; i++) {
+                int reference = bvh.getPrimitiveReferences()[i];
+                int index = Bvh.primitiveIndex(reference);
+                int type = Bvh.primitiveType(reference);
+                seen[type == Bvh.PRIMITIVE_CUBE ? index : type == Bvh.PRIMITIVE_SPHERE ? scene.cubeCount + index : scene.cubeCount + scene.sphereCount + index]++;
+            }
+        }
+
+        for (int count : seen) {
+            assertEquals(1, count);
+        }
+        assertTrue(bvh.getDepth() <= Bvh.MAX_DEPTH);
+        assertTrue(bvh.getNodeCount() < 2 * seen.length);
+    }
+
+    @Test
+    public void traversalFindsTheSameHitsAsTestingEveryPrimitive() {
+        Random random = new Random(2);
+        TraceScene scene = randomScene(random, 30, 50);
+        assertNearestHits(scene, new PathTracer(scene), random);
+    }
+
+    @Test
+    public void refittedBvhFindsTheHitsOfTheMovedObjects() {
+        Random random = new Random(3);
+        List<Cube> cubeList = randomCubes(random, 30);
+        List<Sphere> sphereList = randomSpheres(random, 50);
+        List<Mesh> meshList = randomMesh(random, 30);
+        Bvh bvh = Bvh.build(new TraceScene(cubeList, sphereList, meshList));
+        int nodeCount = bvh.getNodeCount();
+        int[] references = bvh.getPrimitiveReferences().clone();
+
+        // Move some objects far away from where they were during the build
+        for (int i = 0; i < cubeList.size(); i += 3) {
+            Cube cube = cubeList.get(i);
+            cube.setMin(new Vector(cube.getMin().x + 12, cube.getMin().y, cube.getMin().z - 5));
+            cube.setMax(new Vector(cube.getMax().x + 12, cube.getMax().y, cube.getMax().z - 5));
+        }
+        for (int i = 0; i < sphereList.size(); i += 2) {
+            Sphere sphere = sphereList.get(i);
+            sphere.setCenter(new Vector(sphere.getCenter().y, sphere.getCenter().x - 9, sphere.getCenter().z));
+        }
+        bvh.refit(cubeList, sphereList);
+
+        // Same tree, new bounds
+        assertEquals(nodeCount, bvh.getNodeCount());
+        assertArrayEquals(references, bvh.getPrimitiveReferences());
+        TraceScene scene = new TraceScene(cubeList, sphereList, meshList);
+        assertNearestHits(scene, new PathTracer(scene, bvh), random);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refitNeedsTheSamePrimitives() {
+        Random random = new Random(4);
+        List<Cube> cubeList = randomCubes(random, 5);
+        List<Sphere> sphereList = randomSpheres(random, 5);
+        Bvh bvh = Bvh.build(new TraceScene(cubeList, sphereList));
+
+        sphereList.remove(0);
+        bvh.refit(cubeList, sphereList);
+    }
+
+    @Test
+    public void emptySceneHitsNothing() {
+        TraceScene scene = new TraceScene(new ArrayList<Cube>(), new ArrayList<Sphere>());
+        Bvh bvh = Bvh.build(scene);
+        PathTracer tracer = new PathTracer(scene, bvh);
+
+        assertEquals(1, bvh.getNodeCount());
+        assertFalse(tracer.intersectScene(0, 0, 0, 0, 0, -1, new PathTracer.HitInfo(), new PathTracer.HitInfo(), new PathTracer.HitInfo()));
+    }
+
+    // Compares the nearest hits of random rays through the bvh with testing every primitive
+    private static void assertNearestHits(TraceScene scene, PathTracer tracer, Random random) {
+        PathTracer.HitInfo cubeHit = new PathTracer.HitInfo();
+        PathTracer.HitInfo sphereHit = new PathTracer.HitInfo();
+        PathTracer.HitInfo triangleHit = new PathTracer.HitInfo();
+
+        for (int ray = 0; ray < 2000; ray++) {
+            float ox = random.nextFloat() * 20 - 10, oy = random.nextFloat() * 20 - 10, oz = random.nextFloat() * 20 - 10;
+            float dx = random.nextFloat() * 2 - 1, dy = random.nextFloat() * 2 - 1, dz = random.nextFloat() * 2 - 1;
+
+            boolean hit = tracer.intersectScene(ox, oy, oz, dx, dy, dz, cubeHit, sphereHit, triangleHit);
+
+            // Nearest hits of every kind by testing everything
+            float cubeT = PathTracer.MAX_SCENE_BOUNDS;
+            for (int i = 0; i < scene.cubeCount; i++) {
+                float t = tracer.intersectCube(ox, oy, oz, dx, dy, dz, i, cubeT);
+                if (t != -1.0f) {
+                    cubeT = t;
+                }
+            }
+            float sphereT = PathTracer.MAX_SCENE_BOUNDS;
+            for (int i = 0; i < scene.sphereCount; i++) {
+                float t = tracer.intersectSphere(ox, oy, oz, dx, dy, dz, i);
+                if (t > 0.0f && t < sphereT) {
+                    sphereT = t;
+                }
+            }
+
+            float triangleT = PathTracer.MAX_SCENE_BOUNDS;
+            for (int i = 0; i < scene.triangleCount; i++) {
+                float t = tracer.intersectTriangle(ox, oy, oz, dx, dy, dz, i, triangleT);
+                if (t != -1.0f) {
+                    triangleT = t;
+                }
+            }
+
+            // The traversal may skip the farther kinds, but the nearest hit has to be the same
+            float nearestT = Math.min(Math.min(cubeT, sphereT), triangleT);
+            assertEquals(nearestT < PathTracer.MAX_SCENE_BOUNDS, hit);
+            assertEquals(nearestT, Math.min(Math.min(cubeHit.t, sphereHit.t), triangleHit.t), 0.0f);
+            if (nearestT == cubeT) {
+                assertEquals(cubeT, cubeHit.t, 0.0f);
+            } else if (nearestT == sphereT) {
+                assertEquals(sphereT, sphereHit.t, 0.0f);
+            } else {
+                assertEquals(triangleT, triangleHit.t, 0.0f);
+            }
+        }
+    }
+
+    private static TraceScene randomScene(Random random, int cubeCount, int sphereCount) {
+        return new TraceScene(randomCubes(random, cubeCount), randomSpheres(random, sphereCount), randomMesh(random, cubeCount));
+    }
+
+    private static List<Cube> randomCubes(Random random, int cubeCount) {
+        List<Cube> cubeList = new ArrayList<>();
+        for (int i = 0; i < cubeCount; i++) {
+            Vector min = new Vector(random.nextFloat() * 16 - 8, random.nextFloat() * 16 - 8, random.nextFloat() * 16 - 8);
+            // Some cubes have min and max swapped, just like cubes in the scenes
+            float size = random.nextFloat() * 2 - 0.5f;
+            cubeList.add(new Cube(min, new Vector(min.x + size, min.y + size, min.z + size), new Vector(1, 1, 1), Cube.Material.DIFFUSE, 0.5f));
+        }
+        return cubeList;
+    }
+
+    private static List<Sphere> randomSpheres(Random random, int sphereCount) {
+        List<Sphere> sphereList = new ArrayList<>();
+        for (int i = 0; i < sphereCount; i++) {
+            Vector center = new Vector(random.nextFloat() * 16 - 8, random.nextFloat() * 16 - 8, random.nextFloat() * 16 - 8);
+            sphereList.add(new Sphere(center, random.nextFloat() + 0.1f, new Vector(1, 1, 1), Sphere.Material.METAL, 0.5f));
+        }
+        return sphereList;
+    }
+
+    // One mesh of loose triangles
+    private static List<Mesh> randomMesh(Random random, int triangleCount) {
+        float[] positions = new float[triangleCount * 9];
+        int[] indices = new int[triangleCount * 3];
+        for (int i = 0; i < triangleCount; i++) {
+            float x = random.nextFloat() * 16 - 8, y = random.nextFloat() * 16 - 8, z = random.nextFloat() * 16 - 8;
+            for (int k = 0; k < 9; k++) {
+                positions[i * 9 + k] = (k % 3 == 0 ? x : k % 3 == 1 ? y : z) + random.nextFloat() * 2 - 1;
+            }
+            indices[i * 3] = i * 3;
+            indices[i * 3 + 1] = i * 3 + 1;
+            indices[i * 3 + 2] = i * 3 + 2;
+        }
+        TriangleMesh triangles = new TriangleMesh(triangleCount * 3, positions, new float[0], new float[0], triangleCount, indices);
+        List<Mesh> meshList = new ArrayList<>();
+        meshList.add(new Mesh(triangles, new Vector(1, 1, 1), Mesh.Material.DIFFUSE, 0.5f));
+        return meshList;
+    }
+}
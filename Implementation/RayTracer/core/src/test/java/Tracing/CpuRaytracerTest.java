@@ -0,0 +1,164 @@
+package Tracing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import Data.TriangleMesh;
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Util.Geometry.Vector;
+import Util.MatrixMath;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CpuRaytracerTest {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    @Test
+    public void emptyScene_rendersSkyGradient() {
+        float[] frameBuffer = render(new ForkJoinPool(2), 8, new ArrayList<Cube>(), new ArrayList<Sphere>());
+
+        // The middle row looks straight ahead (direction.y == 0) and gets the primary sky color
+        int middle = ((HEIGHT / 2) * WIDTH + WIDTH / 2) * 4;
+        assertEquals(1.0f, frameBuffer[middle], 1e-5f);
+        assertEquals(1.0f, frameBuffer[middle + 1], 1e-5f);
+        assertEquals(1.0f, frameBuffer[middle + 2], 1e-5f);
+        assertEquals(1.0f, frameBuffer[middle + 3], 0f);
+
+        // Rows above the horizon blend towards the secondary (blue) sky color
+        int top = ((HEIGHT - 1) * WIDTH + WIDTH / 2) * 4;
+        assertTrue(frameBuffer[top] < frameBuffer[top + 2]);
+    }
+
+    @Test
+    public void objectsInFront_replaceTheSky() {
+        ArrayList<Sphere> sphereList = new ArrayList<>();
+        sphereList.add(new Sphere(new Vector(0f, 0f, -5f), 1f, new Vector(0f, 1f, 0f), Sphere.Material.METAL, 0.05f));
+
+        float[] frameBuffer = render(new ForkJoinPool(2), 8, new ArrayList<Cube>(), sphereList);
+
+        int middle = ((HEIGHT / 2) * WIDTH + WIDTH / 2) * 4;
+        assertTrue(frameBuffer[middle + 1] > frameBuffer[middle]);
+        assertTrue(frameBuffer[middle + 1] > frameBuffer[middle + 2]);
+    }
+
+    @Test
+    public void meshInFront_isShadedWithItsMaterial() {
+        // Quad of two triangles facing the camera
+        float[] positions = {-1f, -1f, -4f, 1f, -1f, -4f, 1f, 1f, -4f, -1f, 1f, -4f};
+        int[] indices = {0, 1, 2, 0, 2, 3};
+        ArrayList<Mesh> meshList = new ArrayList<>();
+        meshList.add(new Mesh(new TriangleMesh(4, positions, new float[0], new float[0], 2, indices), new Vector(1f, 0f, 0f), Mesh.Material.METAL, 0.05f));
+
+        float[] frameBuffer = new float[WIDTH * HEIGHT * 4];
+        new CpuRaytracer(new ForkJoinPool(2), 8).render(frameBuffer, WIDTH, HEIGHT, invertedViewProjectionMatrix(), identity(),
+                new ArrayList<Cube>(), new ArrayList<Sphere>(), meshList, 0);
+
+        int middle = ((HEIGHT / 2) * WIDTH + WIDTH / 2) * 4;
+        assertTrue(frameBuffer[middle] > frameBuffer[middle + 1]);
+        assertTrue(frameBuffer[middle] > frameBuffer[middle + 2]);
+
+        // The top corner still sees the blue sky
+        int topCorner = (HEIGHT - 1) * WIDTH * 4;
+        assertTrue(frameBuffer[topCorner + 2] > frameBuffer[topCorner]);
+    }
+
+    @Test
+    public void result_doesNotDependOnThreadsOrTileSize() {
+        ArrayList<Cube> cubeList = new ArrayList<>();
+        cubeList.add(new Cube(new Vector(-5.0f, -1.1f, -15.0f), new Vector(5.0f, -1.0f, 5.0f), new Vector(0.9f, 0.9f, 0.9f), Cube.Material.DIFFUSE, 0.5f));
+        cubeList.add(new Cube(new Vector(2.0f, -1.0f, -8.0f), new Vector(3.0f, 4.0f, -6.0f), new Vector(0.1f, 0.6f, 0.6f), Cube.Material.METAL, 1.0f));
+        ArrayList<Sphere> sphereList = new ArrayList<>();
+        sphereList.add(new Sphere(new Vector(-1.0f, -0.5f, -5.0f), 0.5f, new Vector(1.0f, 0.0f, 1.0f), Sphere.Material.METAL, 1.0f));
+        sphereList.add(new Sphere(new Vector(0.5f, -0.25f, -6.0f), 0.75f, new Vector(1.0f, 1.0f, 0.0f), Sphere.Material.DIFFUSE, 0.5f));
+
+        float[] single = render(new ForkJoinPool(1), WIDTH, cubeList, sphereList);
+        float[] tiled = render(new ForkJoinPool(4), 7, cubeList, sphereList);
+
+        assertArrayEquals(single, tiled, 0f);
+    }
+
+    @Test
+    public void russianRoulette_keepsTheAverageWithFewerBounces() {
+        // A closed room, without the roulette every path that doesn't hit the metal sphere makes all MAX_BOUNCES bounces
+        ArrayList<Cube> cubeList = new ArrayList<>();
+        Vector white = new Vector(0.9f, 0.9f, 0.9f);
+        float parameter0 = 0.8f;
+        cubeList.add(new Cube(new Vector(-3.1f, -2.0f, -8.0f), new Vector(-3.0f, 2.0f, 2.0f), new Vector(0.9f, 0.2f, 0.2f), Cube.Material.DIFFUSE, parameter0));
+        cubeList.add(new Cube(new Vector(3.0f, -2.0f, -8.0f), new Vector(3.1f, 2.0f, 2.0f), new Vector(0.2f, 0.9f, 0.2f), Cube.Material.DIFFUSE, parameter0));
+        cubeList.add(new Cube(new Vector(-3.0f, -2.1f, -8.0f), new Vector(3.0f, -2.0f, 2.0f), white, Cube.Material.DIFFUSE, parameter0));
+        cubeList.add(new Cube(new Vector(-3.0f, 2.0f, -8.0f), new Vector(3.0f, 2.1f, 2.0f), white, Cube.Material.DIFFUSE, parameter0));
+        cubeList.add(new Cube(new Vector(-3.0f, -2.0f, -8.1f), new Vector(3.0f, 2.0f, -8.0f), white, Cube.Material.DIFFUSE, parameter0));
+        cubeList.add(new Cube(new Vector(-3.0f, -2.0f, 2.0f), new Vector(3.0f, 2.0f, 2.1f), white, Cube.Material.DIFFUSE, parameter0));
+        ArrayList<Sphere> sphereList = new ArrayList<>();
+        sphereList.add(new Sphere(new Vector(0.5f, -1.0f, -5.0f), 1.0f, new Vector(0.2f, 0.2f, 1.0f), Sphere.Material.METAL, 0.5f));
+        TraceScene scene = new TraceScene(cubeList, sphereList, new ArrayList<Mesh>());
+        Bvh bvh = Bvh.build(scene);
+
+        CpuRaytracer reference = new CpuRaytracer(new ForkJoinPool(2), 8);
+        reference.setRouletteMinBounces(PathTracer.MAX_BOUNCES);
+        CpuRaytracer roulette = new CpuRaytracer(new ForkJoinPool(2), 8);
+        float[] referenceImage = new float[WIDTH * HEIGHT * 4];
+        float[] rouletteImage = new float[WIDTH * HEIGHT * 4];
+        for (int frame = 0; frame < 32; frame++) {
+            reference.render(referenceImage, WIDTH, HEIGHT, invertedViewProjectionMatrix(), identity(), scene, bvh, frame);
+            roulette.render(rouletteImage, WIDTH, HEIGHT, invertedViewProjectionMatrix(), identity(), scene, bvh, frame);
+        }
+
+        // The standard error of the mean difference is about 0.001 here (measured over 256 frames), 0.005 is 5 of them
+        double referenceMean = 0.0;
+        double rouletteMean = 0.0;
+        for (int i = 0; i < referenceImage.length; i++) {
+            if (i % 4 != 3) {
+                referenceMean += referenceImage[i];
+                rouletteMean += rouletteImage[i];
+            }
+        }
+        referenceMean /= WIDTH * HEIGHT * 3;
+        rouletteMean /= WIDTH * HEIGHT * 3;
+        assertEquals(referenceMean, rouletteMean, 0.005);
+
+        // The bounces are the rays after the camera ray
+        long cameraRays = 32L * WIDTH * HEIGHT;
+        long referenceBounces = reference.getTracedRays() - cameraRays;
+        long rouletteBounces = roulette.getTracedRays() - cameraRays;
+        assertTrue(rouletteBounces < referenceBounces * 0.6);
+    }
+
+    private static float[] render(ForkJoinPool pool, int tileSize, ArrayList<Cube> cubeList, ArrayList<Sphere> sphereList) {
+        float[] frameBuffer = new float[WIDTH * HEIGHT * 4];
+        new CpuRaytracer(pool, tileSize).render(frameBuffer, WIDTH, HEIGHT, invertedViewProjectionMatrix(), identity(), cubeList, sphereList);
+        return frameBuffer;
+    }
+
+    // Camera in the origin looking down -z
+    private static float[] identity() {
+        float[] matrix = new float[16];
+        matrix[0] = matrix[5] = matrix[10] = matrix[15] = 1f;
+        return matrix;
+    }
+
+    private static float[] invertedViewProjectionMatrix() {
+        float[] invertedViewProjectionMatrix = new float[16];
+        MatrixMath.invertM(invertedViewProjectionMatrix, 0, perspective(60f, (float) WIDTH / HEIGHT, 1f, 20f), 0);
+        return invertedViewProjectionMatrix;
+    }
+
+    private static float[] perspective(float yFovInDegrees, float aspect, float near, float far) {
+        float a = (float) (1.0 / Math.tan(Math.toRadians(yFovInDegrees) / 2.0));
+        float[] m = new float[16];
+        m[0] = a / aspect;
+        m[5] = a;
+        m[10] = -((far + near) / (far - near));
+        m[11] = -1f;
+        m[14] = -((2f * far * near) / (far - near));
+        return m;
+    }
+}
@@ -0,0 +1,46 @@
+package Tracing;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueueCompactorTest {
+
+    @Test
+    public void partitionIsStableAndDropsOtherKeys() {
+        // More than a few chunks, the last one only partly filled
+        int count = QueueCompactor.CHUNK_SIZE * 5 + 17;
+        int[] input = new int[count];
+        byte[] keys = new byte[count * 2];
+        Random random = new Random(7);
+        for (int i = 0; i < count; i++) {
+            input[i] = count * 2 - 1 - 2 * i;
+            keys[input[i]] = (byte) random.nextInt(3);
+        }
+
+        int[][] queues = {new int[count], new int[count]};
+        int[] counts = new int[2];
+        new QueueCompactor(new ForkJoinPool(4)).partition(input, count, keys, queues, counts);
+
+        // The same as one sequential pass over the input
+        int[] expectedCounts = new int[2];
+        for (int i = 0; i < count; i++) {
+            int key = keys[input[i]];
+            if (key < 2) {
+                assertEquals(input[i], queues[key][expectedCounts[key]++]);
+            }
+        }
+        assertEquals(expectedCounts[0], counts[0]);
+        assertEquals(expectedCounts[1], counts[1]);
+    }
+
+    @Test
+    public void emptyInputGivesEmptyQueues() {
+        int[] counts = {3};
+        new QueueCompactor(new ForkJoinPool(2)).partition(new int[0], 0, new byte[0], new int[][]{new int[0]}, counts);
+        assertEquals(0, counts[0]);
+    }
+}
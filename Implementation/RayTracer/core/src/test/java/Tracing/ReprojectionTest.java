@@ -0,0 +1,125 @@
+package Tracing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Util.Geometry.Vector;
+import Util.MatrixHelper;
+import Util.MatrixMath;
+
+import static org.junit.Assert.*;
+
+public class ReprojectionTest {
+
+    private static final int WIDTH = 48;
+    private static final int HEIGHT = 32;
+
+    @Test
+    public void onlyTheSameSurfaceIsReprojected() {
+        // The previous camera looked from the origin down -z, the center pixel saw a wall 5 units away
+        Reprojection reprojection = new Reprojection();
+        reprojection.setPreviousCamera(invertedViewProjectionMatrix(0f), new float[]{0f, 0f, 0f});
+        float[] previousAverage = new float[WIDTH * HEIGHT * 4];
+        float[] previousNormalDepth = new float[WIDTH * HEIGHT * 4];
+        int center = ((HEIGHT / 2) * WIDTH + WIDTH / 2) * 4;
+        previousAverage[center] = 0.25f;
+        previousAverage[center + 3] = 20f;
+        previousNormalDepth[center + 2] = 1f;
+        previousNormalDepth[center + 3] = 5f;
+        float[] history = new float[3];
+
+        // Long histories are capped
+        assertEquals(Reprojection.MAX_HISTORY, reprojection.reproject(0f, 0f, -5f, 0f, 0f, 1f, previousAverage, previousNormalDepth, WIDTH, HEIGHT, history), 1e-4f);
+        assertEquals(0.25f, history[0], 0f);
+        // A small depth error keeps only a part of the history
+        float partial = reprojection.reproject(0f, 0f, -5f * (1f - Reprojection.DEPTH_TOLERANCE), 0f, 0f, 1f,
+                previousAverage, previousNormalDepth, WIDTH, HEIGHT, history);
+        assertTrue(partial > 0f && partial < Reprojection.MAX_HISTORY);
+
+        // The point was hidden behind something nearer, faces the other way, or was behind the previous camera
+        assertEquals(0f, reprojection.reproject(0f, 0f, -6f, 0f, 0f, 1f, previousAverage, previousNormalDepth, WIDTH, HEIGHT, history), 0f);
+        assertEquals(0f, reprojection.reproject(0f, 0f, -5f, 1f, 0f, 0f, previousAverage, previousNormalDepth, WIDTH, HEIGHT, history), 0f);
+        assertEquals(0f, reprojection.reproject(0f, 0f, 5f, 0f, 0f, 1f, previousAverage, previousNormalDepth, WIDTH, HEIGHT, history), 0f);
+    }
+
+    @Test
+    public void reprojectedFrameIsCloserToTheConvergedRender() {
+        ArrayList<Cube> cubeList = new ArrayList<>();
+        cubeList.add(new Cube(new Vector(-5.0f, -1.1f, -15.0f), new Vector(5.0f, -1.0f, 5.0f), new Vector(0.9f, 0.9f, 0.9f), Cube.Material.DIFFUSE, 0.5f));
+        ArrayList<Sphere> sphereList = new ArrayList<>();
+        sphereList.add(new Sphere(new Vector(-0.8f, -0.2f, -5.0f), 0.8f, new Vector(1.0f, 0.2f, 0.2f), Sphere.Material.DIFFUSE, 0.5f));
+        sphereList.add(new Sphere(new Vector(1.0f, -0.4f, -6.0f), 0.6f, new Vector(0.2f, 0.8f, 0.3f), Sphere.Material.DIFFUSE, 0.5f));
+        TraceScene scene = new TraceScene(cubeList, sphereList, new ArrayList<Mesh>());
+        Bvh bvh = Bvh.build(scene);
+        CpuRaytracer raytracer = new CpuRaytracer(new ForkJoinPool(2), 16);
+
+        // Converged enough at the first camera position, then one touch step (0.08) to the side
+        // The sky is exact in both images, so the error only drops on the reprojected surfaces
+        float[] previousAverage = new float[WIDTH * HEIGHT * 4];
+        GuideBuffer previousGuides = new GuideBuffer(WIDTH, HEIGHT);
+        float[] previousMatrix = invertedViewProjectionMatrix(0f);
+        for (int frame = 0; frame < 16; frame++) {
+            raytracer.render(previousAverage, previousGuides, WIDTH, HEIGHT, previousMatrix, invertedViewMatrix(0f), scene, bvh, frame);
+        }
+        Reprojection reprojection = new Reprojection();
+        reprojection.setPreviousCamera(previousMatrix, new float[]{0f, 0f, 0f});
+
+        float[] matrix = invertedViewProjectionMatrix(0.08f);
+        float[] reference = new float[WIDTH * HEIGHT * 4];
+        for (int frame = 0; frame < 64; frame++) {
+            raytracer.render(reference, WIDTH, HEIGHT, matrix, invertedViewMatrix(0.08f), scene, bvh, frame);
+        }
+
+        float[] noisy = new float[WIDTH * HEIGHT * 4];
+        GuideBuffer guides = new GuideBuffer(WIDTH, HEIGHT);
+        raytracer.render(noisy, guides, WIDTH, HEIGHT, matrix, invertedViewMatrix(0.08f), scene, bvh, 0);
+        float[] reprojected = noisy.clone();
+        reprojection.apply(reprojected, guides, previousAverage, previousGuides, matrix, new float[]{0.08f, 0f, 0f}, 0);
+
+        assertTrue(rmse(reprojected, reference) < rmse(noisy, reference) * 0.85);
+
+        // Most pixels got history, the sky and the newly visible pixels at the border did not
+        int reprojectedPixels = 0;
+        for (int i = 3; i < reprojected.length; i += 4) {
+            if (reprojected[i] > 1f) {
+                reprojectedPixels++;
+            }
+        }
+        assertTrue(reprojectedPixels > WIDTH * HEIGHT / 3);
+        assertTrue(reprojectedPixels < WIDTH * HEIGHT);
+    }
+
+    // Camera at (x, 0, 0) looking down -z
+    private static float[] invertedViewMatrix(float x) {
+        float[] matrix = new float[16];
+        MatrixMath.setIdentityM(matrix, 0);
+        matrix[12] = x;
+        return matrix;
+    }
+
+    private static float[] invertedViewProjectionMatrix(float x) {
+        float[] projectionMatrix = new float[16];
+        float[] invertedProjectionMatrix = new float[16];
+        MatrixHelper.perspectiveM(projectionMatrix, 60, (float) WIDTH / (float) HEIGHT, 1f, 20f);
+        MatrixMath.invertM(invertedProjectionMatrix, 0, projectionMatrix, 0);
+        float[] matrix = new float[16];
+        MatrixMath.multiplyMM(matrix, 0, invertedViewMatrix(x), 0, invertedProjectionMatrix, 0);
+        return matrix;
+    }
+
+    private static double rmse(float[] image, float[] reference) {
+        double sum = 0.0;
+        for (int i = 0; i < image.length; i++) {
+            if (i % 4 != 3) {
+                double delta = image[i] - reference[i];
+                sum += delta * delta;
+            }
+        }
+        return Math.sqrt(sum / (image.length / 4 * 3));
+    }
+}
@@ -0,0 +1,74 @@
+package Tracing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ResolutionControllerTest {
+
+    private static final long TARGET = 16_666_667L;
+
+    @Test
+    public void lightLoadKeepsTheFullResolution() {
+        ResolutionController controller = new ResolutionController(TARGET);
+        for (int frame = 0; frame < 100; frame++) {
+            assertFalse(controller.update(5_000_000L));
+        }
+        assertEquals(1.0f, controller.getScale(), 0f);
+        assertEquals(1080, controller.scaleSize(1080));
+    }
+
+    @Test
+    public void heavyLoadSettlesBelowTheTarget() {
+        ResolutionController controller = new ResolutionController(TARGET);
+
+        // 40 ms at full resolution, the cost grows with the number of pixels
+        int changes = 0;
+        for (int frame = 0; frame < 300; frame++) {
+            if (controller.update(frameTime(40_000_000L, controller.getScale()))) {
+                changes++;
+            }
+        }
+
+        assertEquals(0.625f, controller.getScale(), 0f);
+        assertTrue(frameTime(40_000_000L, controller.getScale()) <= TARGET);
+        assertEquals(1, changes);
+    }
+
+    @Test
+    public void scaleRecoversWhenTheLoadDrops() {
+        ResolutionController controller = new ResolutionController(TARGET);
+        for (int frame = 0; frame < 50; frame++) {
+            controller.update(frameTime(400_000_000L, controller.getScale()));
+        }
+        assertEquals(ResolutionController.MIN_SCALE, controller.getScale(), 0f);
+
+        for (int frame = 0; frame < 300; frame++) {
+            controller.update(frameTime(8_000_000L, controller.getScale()));
+        }
+        assertEquals(1.0f, controller.getScale(), 0f);
+    }
+
+    @Test
+    public void noisyFrameTimesDontMakeTheScaleOscillate() {
+        ResolutionController controller = new ResolutionController(TARGET);
+        Random random = new Random(3);
+
+        int changes = 0;
+        for (int frame = 0; frame < 1000; frame++) {
+            double noise = 1.0 + (random.nextDouble() - 0.5) * 0.3;
+            if (controller.update((long) (frameTime(30_000_000L, controller.getScale()) * noise))) {
+                changes++;
+            }
+        }
+
+        assertTrue("Scale changed " + changes + " times", changes <= 3);
+        assertTrue(frameTime(30_000_000L, controller.getScale()) <= TARGET * 1.1);
+    }
+
+    private static long frameTime(long fullResolutionNanos, float scale) {
+        return (long) (fullResolutionNanos * scale * scale);
+    }
+}
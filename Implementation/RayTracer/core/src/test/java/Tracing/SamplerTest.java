@@ -0,0 +1,120 @@
+package Tracing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SamplerTest {
+
+    @Test
+    public void generator_isUniformAndUncorrelated() {
+        int bins = 16;
+        int count = 160000;
+        int[] histogram = new int[bins];
+        int[] state = {Sampler.pixelSeed(3, 5)};
+        double sumOfProducts = 0.0;
+        float previous = Sampler.toUnitFloat(Sampler.nextRandom(state));
+
+        for (int i = 0; i < count; i++) {
+            float value = Sampler.toUnitFloat(Sampler.nextRandom(state));
+            assertTrue(value >= 0.0f && value < 1.0f);
+            histogram[(int) (value * bins)]++;
+            sumOfProducts += (value - 0.5) * (previous - 0.5);
+            previous = value;
+        }
+
+        // Chi square with 15 degrees of freedom, 37.7 is the 0.1 % quantile
+        double expected = (double) count / bins;
+        double chiSquare = 0.0;
+        for (int bin : histogram) {
+            chiSquare += (bin - expected) * (bin - expected) / expected;
+        }
+        assertTrue("chi square " + chiSquare, chiSquare < 37.7);
+
+        // Correlation of consecutive numbers (variance of a uniform number is 1 / 12)
+        double correlation = sumOfProducts / count * 12.0;
+        assertEquals(0.0, correlation, 0.02);
+    }
+
+    @Test
+    public void neighbouringPixels_getDifferentSequences() {
+        int[] left = {Sampler.pixelSeed(10, 10)};
+        int[] right = {Sampler.pixelSeed(11, 10)};
+        int[] above = {Sampler.pixelSeed(10, 11)};
+
+        int equalBits = 0;
+        for (int i = 0; i < 1000; i++) {
+            int value = Sampler.nextRandom(left);
+            equalBits += 32 - Integer.bitCount(value ^ Sampler.nextRandom(right));
+            equalBits += 32 - Integer.bitCount(value ^ Sampler.nextRandom(above));
+        }
+        // Unrelated numbers share half of their bits
+        assertEquals(0.5, equalBits / (2.0 * 1000 * 32), 0.01);
+    }
+
+    @Test
+    public void scrambledSobolPoints_areStratified() {
+        int[] state = {Sampler.pixelSeed(7, 1)};
+        int[] scramble = {Sampler.nextRandom(state), Sampler.nextRandom(state), Sampler.nextRandom(state)};
+
+        for (int m = 1; m <= 10; m++) {
+            // Every dimension on its own puts one point into each interval of length 2^-m
+            for (int dimension = 0; dimension < 3; dimension++) {
+                assertNet(m, 0, scramble, dimension, dimension);
+            }
+            // The direction on the sphere (dimensions 0 and 1) is a (0, m, 2)-net: one point in every box of area 2^-m
+            assertNet(m, 0, scramble, 0, 1);
+            // The radius (dimension 2) shares its first direction numbers with dimension 1, which gives (1, m, 2)-nets
+            assertNet(m, 1, scramble, 0, 2);
+            assertNet(m, 1, scramble, 1, 2);
+        }
+    }
+
+    @Test
+    public void unitBallSamples_areUniform() {
+        int count = 1 << 14;
+        float[] point = new float[3];
+        double sumX = 0.0, sumY = 0.0, sumZ = 0.0;
+        int inner = 0;
+        int upper = 0;
+        int[] state = {Sampler.pixelSeed(0, 0)};
+        int scrambleX = Sampler.nextRandom(state), scrambleY = Sampler.nextRandom(state), scrambleZ = Sampler.nextRandom(state);
+
+        for (int i = 0; i < count; i++) {
+            PathTracer.getRandomPoint(i % PathTracer.MULTI_SAMPLING_COUNT, i / PathTracer.MULTI_SAMPLING_COUNT, scrambleX, scrambleY, scrambleZ, point);
+            float length = (float) Math.sqrt(point[0] * point[0] + point[1] * point[1] + point[2] * point[2]);
+            assertTrue(length <= 1.0f);
+            sumX += point[0];
+            sumY += point[1];
+            sumZ += point[2];
+            inner += length < 0.5f ? 1 : 0;
+            upper += point[2] > 0.0f ? 1 : 0;
+        }
+
+        assertEquals(0.0, sumX / count, 0.01);
+        assertEquals(0.0, sumY / count, 0.01);
+        assertEquals(0.0, sumZ / count, 0.01);
+        // The inner ball of radius 0.5 has an eighth of the volume
+        assertEquals(0.125, (double) inner / count, 0.01);
+        assertEquals(0.5, (double) upper / count, 0.01);
+    }
+
+    // (t, m, 2)-net: the first 2^m points put exactly 2^t points into every box of area 2^(t - m),
+    // no matter how the box is split between the two dimensions (first == second checks one dimension)
+    private static void assertNet(int m, int t, int[] scramble, int first, int second) {
+        int boxBits = m - t;
+        int maxFirstBits = first == second ? boxBits : 0;
+        for (int firstBits = maxFirstBits; firstBits <= boxBits; firstBits++) {
+            int secondBits = boxBits - firstBits;
+            int[] points = new int[1 << boxBits];
+            for (int i = 0; i < 1 << m; i++) {
+                int firstBox = firstBits == 0 ? 0 : Sampler.sobol(i, first, scramble[first]) >>> (32 - firstBits);
+                int secondBox = secondBits == 0 ? 0 : Sampler.sobol(i, second, scramble[second]) >>> (32 - secondBits);
+                points[(firstBox << secondBits) | secondBox]++;
+            }
+            for (int box = 0; box < points.length; box++) {
+                assertEquals("Box " + box + " of dimensions " + first + "/" + second + " (" + firstBits + "/" + secondBits + " bits)", 1 << t, points[box]);
+            }
+        }
+    }
+}
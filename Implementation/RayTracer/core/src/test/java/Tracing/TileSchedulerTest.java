@@ -0,0 +1,105 @@
+package Tracing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TileSchedulerTest {
+
+    @Test
+    public void tilesCoverEveryPixelExactlyOnce() {
+        int width = 100;
+        int height = 70;
+        TileScheduler scheduler = new TileScheduler(32, 8f);
+        scheduler.startFrame(width, height);
+
+        int[] covered = new int[width * height];
+        while (!scheduler.isFrameComplete()) {
+            int tile = scheduler.nextTile();
+            assertTrue(scheduler.getTileWidth(tile) > 0 && scheduler.getTileWidth(tile) <= 32);
+            assertTrue(scheduler.getTileHeight(tile) > 0 && scheduler.getTileHeight(tile) <= 32);
+            for (int y = 0; y < scheduler.getTileHeight(tile); y++) {
+                for (int x = 0; x < scheduler.getTileWidth(tile); x++) {
+                    covered[(scheduler.getTileY(tile) + y) * width + scheduler.getTileX(tile) + x]++;
+                }
+            }
+        }
+
+        assertEquals(4 * 3, scheduler.getTileCount());
+        for (int count : covered) {
+            assertEquals(1, count);
+        }
+    }
+
+    @Test
+    public void tileCountFollowsTheBudget() {
+        TileScheduler scheduler = new TileScheduler(10, 4f);
+        scheduler.startFrame(100, 100);
+
+        // Nothing measured yet
+        assertEquals(1, scheduler.getTilesForBudget());
+
+        // 100 pixels took 1 ms -> 4 tiles fit into 4 ms
+        scheduler.recordTime(100, 1_000_000L);
+        assertEquals(4, scheduler.getTilesForBudget());
+
+        // Slower tiles still issue at least one per draw call
+        scheduler.setBudgetMilliseconds(0.1f);
+        assertEquals(1, scheduler.getTilesForBudget());
+
+        // Never more than the remaining tiles
+        scheduler.setBudgetMilliseconds(1000f);
+        for (int i = 0; i < 98; i++) {
+            scheduler.nextTile();
+        }
+        assertEquals(2, scheduler.getTilesForBudget());
+        scheduler.nextTile();
+        scheduler.nextTile();
+        assertEquals(0, scheduler.getTilesForBudget());
+        assertTrue(scheduler.isFrameComplete());
+    }
+
+    @Test
+    public void withoutTimesTheCountFollowsWhetherTheGpuKeepsUp() {
+        TileScheduler scheduler = new TileScheduler(10, 4f);
+        scheduler.startFrame(100, 100);
+        assertEquals(1, scheduler.getTilesForBudget());
+
+        // Grows by one tile per draw call that the gpu finished in time
+        scheduler.recordGpuBusy(false);
+        scheduler.recordGpuBusy(false);
+        scheduler.recordGpuBusy(false);
+        assertEquals(4, scheduler.getTilesForBudget());
+
+        // Halves when the gpu fell behind, but never below one tile
+        scheduler.recordGpuBusy(true);
+        assertEquals(2, scheduler.getTilesForBudget());
+        scheduler.recordGpuBusy(true);
+        scheduler.recordGpuBusy(true);
+        assertEquals(1, scheduler.getTilesForBudget());
+
+        // A measured time takes over
+        scheduler.recordTime(100, 1_000_000L);
+        scheduler.recordGpuBusy(false);
+        assertEquals(4, scheduler.getTilesForBudget());
+    }
+
+    @Test
+    public void imageTimeComesFromTheGpuEstimates() {
+        TileScheduler scheduler = new TileScheduler(10, 4f);
+        scheduler.startFrame(100, 100);
+        assertEquals(-1, scheduler.getImageNanos(16_000_000L));
+
+        // Without gpu times: 2 of the 100 tiles fit into one draw call interval
+        scheduler.recordGpuBusy(false);
+        assertEquals(800_000_000L, scheduler.getImageNanos(16_000_000L));
+
+        // 100 pixels took 1 ms, the whole image 100 ms no matter how long the draw calls were apart
+        scheduler.recordTime(100, 1_000_000L);
+        assertEquals(100_000_000L, scheduler.getImageNanos(16_000_000L));
+
+        // A smaller trace size is estimated with the same cost per pixel
+        scheduler.startFrame(50, 50);
+        assertEquals(25_000_000L, scheduler.getImageNanos(16_000_000L));
+    }
+}
@@ -0,0 +1,42 @@
+package Tracing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TraceFormatPolicyTest {
+
+    private static final long FULL_HD = 1920L * 1080L;
+    private static final int CONVERGED_FRAME_COUNT = 256;
+
+    @Test
+    public void devicesWithEnoughMemoryKeepFullPrecision() {
+        // 512 MB memory class: 128 MB budget, rgba32f takes 2 * 16 bytes per pixel = 66 MB
+        long budget = TraceFormatPolicy.getMemoryBudget(512);
+        assertEquals(TraceFormat.RGBA32F, TraceFormatPolicy.choose(null, FULL_HD, budget, CONVERGED_FRAME_COUNT));
+    }
+
+    @Test
+    public void smallDevicesGetTheSmallestFormatThatStillConverges() {
+        // 128 MB memory class: 32 MB budget, rgba16f needs 2 * 8 bytes per pixel = 33.2 MB (of 33.5)
+        assertEquals(TraceFormat.RGBA16F, TraceFormatPolicy.choose(null, FULL_HD, TraceFormatPolicy.getMemoryBudget(128), CONVERGED_FRAME_COUNT));
+
+        // 64 MB memory class: nothing that converges fits, the packed format only averages 64 frames
+        long budget = TraceFormatPolicy.getMemoryBudget(64);
+        assertEquals(TraceFormat.RGBA16F, TraceFormatPolicy.choose(null, FULL_HD, budget, CONVERGED_FRAME_COUNT));
+        assertEquals(TraceFormat.R11G11B10F, TraceFormatPolicy.choose(null, FULL_HD, budget, 64));
+    }
+
+    @Test
+    public void preferenceWins() {
+        assertEquals(TraceFormat.R11G11B10F, TraceFormatPolicy.choose(TraceFormat.R11G11B10F, FULL_HD, Long.MAX_VALUE, CONVERGED_FRAME_COUNT));
+        assertEquals(TraceFormat.RGBA16F, TraceFormatPolicy.parsePreference("rgba16f"));
+        assertNull(TraceFormatPolicy.parsePreference(null));
+        assertNull(TraceFormatPolicy.parsePreference(""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownPreferencesAreRejected() {
+        TraceFormatPolicy.parsePreference("rgb565");
+    }
+}
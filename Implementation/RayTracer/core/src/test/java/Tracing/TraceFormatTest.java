@@ -0,0 +1,77 @@
+package Tracing;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TraceFormatTest {
+
+    @Test
+    public void halfFloatsRoundToNearestAndOverflowToInfinity() {
+        assertEquals(0.1f, TraceFormat.RGBA32F.quantize(0.1f, 0), 0f);
+
+        // 1/3 with 10 bits of mantissa
+        assertEquals(0.333251953125f, TraceFormat.RGBA16F.quantize(1f / 3f, 0), 0f);
+        assertEquals(-2.5f, TraceFormat.RGBA16F.quantize(-2.5f, 1), 0f);
+        assertEquals(65504f, TraceFormat.RGBA16F.quantize(65504f, 2), 0f);
+        assertEquals(Float.POSITIVE_INFINITY, TraceFormat.RGBA16F.quantize(70000f, 2), 0f);
+        // Denormals down to 2^-24, below that the value is lost
+        assertEquals(Math.scalb(1f, -20), TraceFormat.RGBA16F.quantize(Math.scalb(1f, -20), 3), 0f);
+        assertEquals(0f, TraceFormat.RGBA16F.quantize(1e-8f, 0), 0f);
+    }
+
+    @Test
+    public void packedFormatHasNoSignAndClamps() {
+        // 6 bits of mantissa for red and green, 5 for blue
+        assertEquals(0.33203125f, TraceFormat.R11G11B10F.quantize(1f / 3f, 0), 0f);
+        assertEquals(0.3359375f, TraceFormat.R11G11B10F.quantize(1f / 3f, 2), 0f);
+        assertEquals(0f, TraceFormat.R11G11B10F.quantize(-1f, 1), 0f);
+        assertEquals(65024f, TraceFormat.R11G11B10F.quantize(1e6f, 0), 0f);
+        assertEquals(64512f, TraceFormat.R11G11B10F.quantize(1e6f, 2), 0f);
+
+        assertTrue(TraceFormat.R11G11B10F.isPacked());
+        assertEquals(3, TraceFormat.R11G11B10F.getChannelCount());
+        try {
+            TraceFormat.R11G11B10F.quantize(1f, 3);
+            fail("The packed format has no alpha");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void smallerFormatsStopConvergingEarlier() {
+        assertEquals(1 << 24, TraceFormat.RGBA32F.getConvergenceLimit());
+        assertEquals(1 << 11, TraceFormat.RGBA16F.getConvergenceLimit());
+        assertEquals(1 << 6, TraceFormat.R11G11B10F.getConvergenceLimit());
+    }
+
+    @Test
+    public void reportOrdersTheFormatsByPrecision() {
+        Random random = new Random(3);
+        int pixelCount = 256;
+        float[] image = new float[pixelCount * 4];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = random.nextFloat() * 4f;
+        }
+
+        List<QuantizationReport> reports = QuantizationReport.measureAll(image, pixelCount);
+        assertEquals(TraceFormat.values().length, reports.size());
+
+        QuantizationReport full = reports.get(0);
+        assertEquals(0f, full.getMaxError(), 0f);
+        assertTrue(Double.isInfinite(full.getPsnr()));
+        assertEquals(2L * pixelCount * 16, full.getBytesPerFrame());
+
+        for (int i = 1; i < reports.size(); i++) {
+            assertTrue(reports.get(i).getMeanRelativeError() > reports.get(i - 1).getMeanRelativeError());
+            assertTrue(reports.get(i).getPsnr() < reports.get(i - 1).getPsnr());
+            assertTrue(reports.get(i).getBytesPerFrame() < reports.get(i - 1).getBytesPerFrame());
+        }
+        // Half of an ulp of the packed blue channel below 4 is the largest possible error
+        assertTrue(reports.get(2).getMaxError() <= 1f / 32f);
+        assertTrue(reports.get(2).toString().startsWith("R11G11B10F"));
+    }
+}
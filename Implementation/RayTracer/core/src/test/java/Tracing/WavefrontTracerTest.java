@@ -0,0 +1,116 @@
+package Tracing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import Data.TriangleMesh;
+import Objects.Cube;
+import Objects.Mesh;
+import Objects.Sphere;
+import Util.Geometry.Vector;
+import Util.MatrixMath;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WavefrontTracerTest {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    @Test
+    public void sameImageAndGuidesAsTheCpuRaytracer() {
+        TraceScene scene = mixedScene();
+        Bvh bvh = Bvh.build(scene);
+
+        // Tiles that don't divide the image, with and without the roulette
+        for (int rouletteMinBounces : new int[]{PathTracer.ROULETTE_MIN_BOUNCES, PathTracer.MAX_BOUNCES}) {
+            CpuRaytracer megakernel = new CpuRaytracer(new ForkJoinPool(2), 8);
+            megakernel.setRouletteMinBounces(rouletteMinBounces);
+            WavefrontTracer wavefront = new WavefrontTracer(new ForkJoinPool(3), 16);
+            wavefront.setRouletteMinBounces(rouletteMinBounces);
+
+            float[] expected = new float[WIDTH * HEIGHT * 4];
+            float[] actual = new float[WIDTH * HEIGHT * 4];
+            GuideBuffer expectedGuides = new GuideBuffer(WIDTH, HEIGHT);
+            GuideBuffer actualGuides = new GuideBuffer(WIDTH, HEIGHT);
+            for (int frame = 0; frame < 3; frame++) {
+                megakernel.render(expected, expectedGuides, WIDTH, HEIGHT, invertedViewProjectionMatrix(), identity(), scene, bvh, frame);
+                wavefront.render(actual, actualGuides, WIDTH, HEIGHT, invertedViewProjectionMatrix(), identity(), scene, bvh, frame);
+            }
+
+            assertArrayEquals(expected, actual, 0f);
+            assertArrayEquals(expectedGuides.normalDepth, actualGuides.normalDepth, 0f);
+            assertArrayEquals(expectedGuides.albedo, actualGuides.albedo, 0f);
+        }
+    }
+
+    @Test
+    public void stagesOnlyGetLivePaths() {
+        TraceScene scene = mixedScene();
+        WavefrontTracer wavefront = new WavefrontTracer(new ForkJoinPool(2), 64);
+        wavefront.render(new float[WIDTH * HEIGHT * 4], null, WIDTH, HEIGHT, invertedViewProjectionMatrix(), identity(), scene, Bvh.build(scene), 0);
+
+        WavefrontTracer.Statistics statistics = wavefront.getStatistics();
+        long pixels = WIDTH * HEIGHT;
+        assertEquals(pixels, statistics.getItems(WavefrontTracer.Stage.GENERATE));
+        assertEquals(pixels, statistics.getItems(WavefrontTracer.Stage.ACCUMULATE));
+        // The first extend is one ray per pixel, the later ones only the paths that weren't finished
+        long extended = statistics.getItems(WavefrontTracer.Stage.EXTEND);
+        assertTrue(extended > pixels);
+        assertTrue(extended < pixels + pixels * PathTracer.MULTI_SAMPLING_COUNT * (PathTracer.MAX_BOUNCES - 1));
+        assertTrue(statistics.getItems(WavefrontTracer.Stage.SHADE_DIFFUSE) > 0);
+        assertTrue(statistics.getItems(WavefrontTracer.Stage.SHADE_METAL) > 0);
+    }
+
+    @Test
+    public void compactedQueuesKeepTheLanesBusier() {
+        TraceScene scene = mixedScene();
+        WavefrontTracer wavefront = new WavefrontTracer(new ForkJoinPool(2), 64);
+        wavefront.render(new float[WIDTH * HEIGHT * 4], null, WIDTH, HEIGHT, invertedViewProjectionMatrix(), identity(), scene, Bvh.build(scene), 0);
+
+        // Sky pixels, finished paths and the split between diffuse and metal code leave megakernel lanes idle
+        WavefrontTracer.Statistics statistics = wavefront.getStatistics();
+        assertTrue(statistics.getWavefrontOccupancy() > 0.9);
+        assertTrue(statistics.getMegakernelOccupancy() < statistics.getWavefrontOccupancy() - 0.1);
+    }
+
+    // Diffuse and metal objects, a light, a mesh and a lot of sky
+    private static TraceScene mixedScene() {
+        ArrayList<Cube> cubeList = new ArrayList<>();
+        cubeList.add(new Cube(new Vector(-5.0f, -1.1f, -15.0f), new Vector(5.0f, -1.0f, 5.0f), new Vector(0.9f, 0.9f, 0.9f), Cube.Material.DIFFUSE, 0.5f));
+        cubeList.add(new Cube(new Vector(2.0f, -1.0f, -8.0f), new Vector(3.0f, 4.0f, -6.0f), new Vector(0.1f, 0.6f, 0.6f), Cube.Material.METAL, 1.0f));
+        cubeList.add(new Cube(new Vector(-3.0f, 1.5f, -7.0f), new Vector(-2.0f, 2.0f, -6.0f), new Vector(1.0f, 1.0f, 0.8f), Cube.Material.LIGHT, 1.0f));
+        ArrayList<Sphere> sphereList = new ArrayList<>();
+        sphereList.add(new Sphere(new Vector(-1.0f, -0.5f, -5.0f), 0.5f, new Vector(1.0f, 0.0f, 1.0f), Sphere.Material.METAL, 0.8f));
+        sphereList.add(new Sphere(new Vector(0.5f, -0.25f, -6.0f), 0.75f, new Vector(1.0f, 1.0f, 0.0f), Sphere.Material.DIFFUSE, 0.5f));
+        float[] positions = {-2.5f, -1f, -9f, -0.5f, -1f, -9f, -0.5f, 1f, -9f, -2.5f, 1f, -9f};
+        int[] indices = {0, 1, 2, 0, 2, 3};
+        ArrayList<Mesh> meshList = new ArrayList<>();
+        meshList.add(new Mesh(new TriangleMesh(4, positions, new float[0], new float[0], 2, indices), new Vector(0.3f, 0.3f, 1f), Mesh.Material.DIFFUSE, 0.6f));
+        return new TraceScene(cubeList, sphereList, meshList);
+    }
+
+    // Camera in the origin looking down -z
+    private static float[] identity() {
+        float[] matrix = new float[16];
+        MatrixMath.setIdentityM(matrix, 0);
+        return matrix;
+    }
+
+    private static float[] invertedViewProjectionMatrix() {
+        float a = (float) (1.0 / Math.tan(Math.toRadians(60.0) / 2.0));
+        float[] projectionMatrix = new float[16];
+        projectionMatrix[0] = a / ((float) WIDTH / HEIGHT);
+        projectionMatrix[5] = a;
+        projectionMatrix[10] = -(21f / 19f);
+        projectionMatrix[11] = -1f;
+        projectionMatrix[14] = -(40f / 19f);
+        float[] invertedViewProjectionMatrix = new float[16];
+        MatrixMath.invertM(invertedViewProjectionMatrix, 0, projectionMatrix, 0);
+        return invertedViewProjectionMatrix;
+    }
+}
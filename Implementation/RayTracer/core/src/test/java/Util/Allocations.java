@@ -0,0 +1,32 @@
+package Util;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes that the current thread allocates (HotSpot only).
+ */
+
+public class Allocations {
+
+    // Bytes allocated by running the action iterations times, after the same number of warm up runs
+    public static long measure(int iterations, Runnable action) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+        long after = threads.getThreadAllocatedBytes(thread);
+
+        // Reading the counter allocates a little by itself
+        long baseline = threads.getThreadAllocatedBytes(thread);
+        baseline = threads.getThreadAllocatedBytes(thread) - baseline;
+
+        return Math.max(0, after - before - baseline);
+    }
+}
@@ -0,0 +1,153 @@
+package Util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameSchedulerTest {
+
+    private static final long FRAME_INTERVAL = 16_666_667L;
+
+    // Hands out vsync timestamps of a display with the given refresh rate
+    private static class FakeClock {
+        final long vsyncInterval;
+        long now;
+
+        FakeClock(int refreshRate) {
+            vsyncInterval = 1_000_000_000L / refreshRate;
+        }
+
+        long nextVsync() {
+            now += vsyncInterval;
+            return now;
+        }
+    }
+
+    @Test
+    public void fasterDisplaysSkipVsyncs() {
+        FrameScheduler scheduler = new FrameScheduler(FRAME_INTERVAL);
+        FakeClock clock = new FakeClock(120);
+
+        int rendered = 0;
+        for (int vsync = 0; vsync < 120; vsync++) {
+            if (scheduler.onVsync(clock.nextVsync())) {
+                scheduler.onFrameStarted();
+                scheduler.onFrameRendered(true, rendered, false);
+                rendered++;
+            }
+        }
+        assertEquals(60, rendered);
+
+        // A 60 Hz display renders on every vsync
+        scheduler = new FrameScheduler(FRAME_INTERVAL);
+        clock = new FakeClock(60);
+        for (int vsync = 0; vsync < 10; vsync++) {
+            assertTrue(scheduler.onVsync(clock.nextVsync()));
+        }
+    }
+
+    @Test
+    public void renderingStopsAfterConvergenceAndWakesUpOnChanges() {
+        FrameScheduler scheduler = new FrameScheduler(FRAME_INTERVAL, 4);
+        FakeClock clock = new FakeClock(60);
+        int[] wakeUps = new int[1];
+        scheduler.setWakeUpListener(() -> wakeUps[0]++);
+
+        // An unfinished tiled frame doesn't count
+        assertTrue(scheduler.onVsync(clock.nextVsync()));
+        scheduler.onFrameStarted();
+        scheduler.onFrameRendered(false, 0, false);
+        for (int frame = 0; frame < 4; frame++) {
+            assertTrue(scheduler.onVsync(clock.nextVsync()));
+            scheduler.onFrameStarted();
+            scheduler.onFrameRendered(true, frame, false);
+        }
+        assertTrue(scheduler.isIdle());
+        assertFalse(scheduler.onVsync(clock.nextVsync()));
+
+        // Camera moved
+        scheduler.markDirty();
+        scheduler.markDirty();
+        assertEquals(1, wakeUps[0]);
+        assertFalse(scheduler.isIdle());
+        assertTrue(scheduler.onVsync(clock.nextVsync()));
+        scheduler.onFrameStarted();
+        scheduler.onFrameRendered(true, 0, false);
+        assertFalse(scheduler.isIdle());
+    }
+
+    @Test
+    public void animationsKeepRendering() {
+        FrameScheduler scheduler = new FrameScheduler(FRAME_INTERVAL, 1);
+        FakeClock clock = new FakeClock(60);
+
+        for (int frame = 0; frame < 10; frame++) {
+            assertTrue(scheduler.onVsync(clock.nextVsync()));
+            scheduler.onFrameStarted();
+            scheduler.onFrameRendered(true, 0, true);
+            assertFalse(scheduler.isIdle());
+        }
+
+        scheduler.onFrameStarted();
+        scheduler.onFrameRendered(true, 0, false);
+        assertTrue(scheduler.isIdle());
+    }
+
+    @Test
+    public void changesWhileAFrameIsDrawnAreNotLost() {
+        FrameScheduler scheduler = new FrameScheduler(FRAME_INTERVAL, 1);
+        FakeClock clock = new FakeClock(60);
+        int[] wakeUps = new int[1];
+        scheduler.setWakeUpListener(() -> wakeUps[0]++);
+
+        // The frame that converges already read the scene when the ui thread reports a change
+        assertTrue(scheduler.onVsync(clock.nextVsync()));
+        scheduler.onFrameStarted();
+        scheduler.markDirty();
+        scheduler.onFrameRendered(true, 0, false);
+
+        // The scheduler wasn't idle, so nothing wakes it up later: it has to keep rendering on its own
+        assertEquals(0, wakeUps[0]);
+        assertFalse(scheduler.isIdle());
+        assertTrue(scheduler.onVsync(clock.nextVsync()));
+        scheduler.onFrameStarted();
+        scheduler.onFrameRendered(true, 0, false);
+        assertTrue(scheduler.isIdle());
+    }
+
+    @Test
+    public void inputDuringTheConvergingFrameIsNotLost() {
+        FrameScheduler scheduler = new FrameScheduler(FRAME_INTERVAL, 1);
+        FakeClock clock = new FakeClock(60);
+        TouchAccumulator accumulator = new TouchAccumulator();
+        TouchAccumulator.Deltas deltas = new TouchAccumulator.Deltas();
+        int[] wakeUps = new int[1];
+        scheduler.setWakeUpListener(() -> wakeUps[0]++);
+
+        // Gl thread: the frame that converges drains before the finger moves
+        assertTrue(scheduler.onVsync(clock.nextVsync()));
+        scheduler.onFrameStarted();
+        assertFalse(accumulator.drain(deltas));
+
+        // Ui thread: only the first delta after a drain marks the scheduler dirty, it is still rendering
+        assertTrue(accumulator.addPan(1f, 0f));
+        scheduler.markDirty();
+        scheduler.onFrameRendered(true, 0, accumulator.isPending());
+        assertFalse(scheduler.isIdle());
+
+        // Further deltas only add up, the scheduler has to render them without another wake up
+        assertFalse(accumulator.addPan(1f, 0f));
+        assertTrue(scheduler.onVsync(clock.nextVsync()));
+        scheduler.onFrameStarted();
+        assertTrue(accumulator.drain(deltas));
+        assertEquals(2f, deltas.panX, 0f);
+        scheduler.onFrameRendered(true, 0, accumulator.isPending());
+        assertTrue(scheduler.isIdle());
+        assertEquals(0, wakeUps[0]);
+
+        // Once idle the next delta wakes it up again
+        assertTrue(accumulator.addPan(1f, 0f));
+        scheduler.markDirty();
+        assertEquals(1, wakeUps[0]);
+    }
+}
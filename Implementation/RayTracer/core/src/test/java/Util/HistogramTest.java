@@ -0,0 +1,80 @@
+package Util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsAreContinuous() {
+        for (long value = 0; value < 100_000; value++) {
+            int index = Histogram.indexOf(value);
+            assertTrue(Histogram.lowestValueOf(index) <= value);
+            assertTrue(Histogram.highestValueOf(index) >= value);
+        }
+        assertEquals(Histogram.indexOf(Histogram.MAX_VALUE), Histogram.indexOf(Histogram.MAX_VALUE - 1));
+    }
+
+    @Test
+    public void percentilesAreWithinThePrecision() {
+        Histogram histogram = new Histogram();
+        long[] values = new long[10_000];
+        Random random = new Random(5);
+        for (int i = 0; i < values.length; i++) {
+            // Frame times between 1 and 50 ms
+            values[i] = 1_000_000L + (long) (random.nextDouble() * 49_000_000L);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{50, 95, 99, 100}) {
+            long exact = values[(int) Math.ceil(percentile / 100.0 * values.length) - 1];
+            long approximated = histogram.getValueAtPercentile(percentile);
+            assertEquals(exact, approximated, exact / 16.0);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values.length, histogram.getTotalCount());
+
+        histogram.reset();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long value = (t + 1) * 1000L;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(value);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(200_000, histogram.getTotalCount());
+        assertEquals(4000, histogram.getMax());
+        assertEquals(2000, histogram.getValueAtPercentile(50), 2000 / 16.0);
+    }
+
+    @Test
+    public void timingsAreKeptPerStage() {
+        FrameTimings timings = new FrameTimings();
+        timings.recordCpu(FrameTimings.Stage.DISPATCH, 2_000_000L);
+        timings.recordGpu(FrameTimings.Stage.DISPATCH, 9_000_000L);
+
+        assertEquals(1, timings.getCpuHistogram(FrameTimings.Stage.DISPATCH).getTotalCount());
+        assertEquals(0, timings.getCpuHistogram(FrameTimings.Stage.UPLOAD).getTotalCount());
+        assertEquals(9_000_000L, timings.getGpuHistogram(FrameTimings.Stage.DISPATCH).getValueAtPercentile(99), 9_000_000 / 16.0);
+        assertTrue(timings.summary().contains("dispatch cpu p50=2.0"));
+        assertFalse(timings.summary().contains("upload cpu p50=0.000 p95=0.000 p99=0.000 ms gpu"));
+    }
+}
@@ -0,0 +1,55 @@
+package Util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ShaderPreprocessorTest {
+
+    private static final String SOURCE = "#version 310 es\n"
+            + "\n"
+            + "// Defining the maximum amount of bounces of the ray\n"
+            + "#define MAX_BOUNCES 10\n"
+            + "#define SPRAY_CONTROL 1.0\n"
+            + "layout (local_size_x = WORK_GROUP_SIZE, local_size_y = WORK_GROUP_SIZE) in;\n";
+
+    @Test
+    public void existingDefinesAreReplacedAndNewOnesFollowTheVersion() {
+        Map<String, Object> defines = new HashMap<>();
+        defines.put("MAX_BOUNCES", 4);
+        defines.put("WORK_GROUP_SIZE", 16);
+
+        String result = ShaderPreprocessor.process(SOURCE, defines);
+
+        assertEquals("#version 310 es\n"
+                + "#define WORK_GROUP_SIZE 16\n"
+                + "\n"
+                + "// Defining the maximum amount of bounces of the ray\n"
+                + "#define MAX_BOUNCES 4\n"
+                + "#define SPRAY_CONTROL 1.0\n"
+                + "layout (local_size_x = WORK_GROUP_SIZE, local_size_y = WORK_GROUP_SIZE) in;\n", result);
+
+        // Nothing to inject
+        assertSame(SOURCE, ShaderPreprocessor.process(SOURCE, new HashMap<String, Object>()));
+    }
+
+    @Test
+    public void variantKeysDontDependOnTheOrderOfTheDefines() {
+        Map<String, Object> a = new LinkedHashMap<>();
+        a.put("MAX_BOUNCES", 4);
+        a.put("MULTI_SAMPLING_COUNT", 1);
+        Map<String, Object> b = new LinkedHashMap<>();
+        b.put("MULTI_SAMPLING_COUNT", 1);
+        b.put("MAX_BOUNCES", 4);
+
+        assertEquals(ShaderPreprocessor.variantKey("compute_shader", a), ShaderPreprocessor.variantKey("compute_shader", b));
+        assertEquals("compute_shader;MAX_BOUNCES=4;MULTI_SAMPLING_COUNT=1", ShaderPreprocessor.variantKey("compute_shader", a));
+
+        b.put("MAX_BOUNCES", 5);
+        assertNotEquals(ShaderPreprocessor.variantKey("compute_shader", a), ShaderPreprocessor.variantKey("compute_shader", b));
+    }
+}
@@ -0,0 +1,86 @@
+package Util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TouchAccumulatorTest {
+
+    @Test
+    public void drainSumsTheDeltasSinceTheLastDrain() {
+        TouchAccumulator accumulator = new TouchAccumulator();
+        TouchAccumulator.Deltas deltas = new TouchAccumulator.Deltas();
+        assertFalse(accumulator.drain(deltas));
+
+        // Only the first input has to wake the rendering up
+        assertTrue(accumulator.addPan(1.5f, -2f));
+        assertFalse(accumulator.addPan(0.5f, 1f));
+        assertFalse(accumulator.addRotation(10f, 0f));
+        assertFalse(accumulator.setScale(1.2f));
+        assertFalse(accumulator.setScale(1.5f));
+
+        assertTrue(accumulator.drain(deltas));
+        assertEquals(2f, deltas.panX, 0f);
+        assertEquals(-1f, deltas.panY, 0f);
+        assertEquals(10f, deltas.rotateX, 0f);
+        assertEquals(0f, deltas.rotateY, 0f);
+        assertEquals(1.5f, deltas.scale, 0f);
+
+        // Everything was taken out
+        assertFalse(accumulator.isPending());
+        assertFalse(accumulator.drain(deltas));
+        assertTrue(accumulator.addRotation(0f, 3f));
+        assertTrue(accumulator.drain(deltas));
+        assertEquals(0f, deltas.panX, 0f);
+        assertEquals(3f, deltas.rotateY, 0f);
+        assertFalse(deltas.hasScale());
+    }
+
+    @Test
+    public void noInputIsLostWhileTheReaderDrains() throws InterruptedException {
+        TouchAccumulator accumulator = new TouchAccumulator();
+        int events = 200_000;
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < events; i++) {
+                accumulator.addPan(1f, 0f);
+                accumulator.addRotation(0f, 1f);
+            }
+        });
+        writer.start();
+
+        // Whole numbers below 2^24 are summed exactly
+        TouchAccumulator.Deltas deltas = new TouchAccumulator.Deltas();
+        float panX = 0f;
+        float rotateY = 0f;
+        while (writer.isAlive() || accumulator.isPending()) {
+            if (accumulator.drain(deltas)) {
+                panX += deltas.panX;
+                rotateY += deltas.rotateY;
+            }
+        }
+        writer.join();
+        if (accumulator.drain(deltas)) {
+            panX += deltas.panX;
+            rotateY += deltas.rotateY;
+        }
+
+        assertEquals(events, panX, 0f);
+        assertEquals(events, rotateY, 0f);
+    }
+
+    @Test
+    public void addingAndDrainingDoesntAllocate() {
+        TouchAccumulator accumulator = new TouchAccumulator();
+        TouchAccumulator.Deltas deltas = new TouchAccumulator.Deltas();
+
+        long bytes = Allocations.measure(10_000, () -> {
+            accumulator.addPan(0.25f, -0.5f);
+            accumulator.addRotation(1f, 2f);
+            accumulator.setScale(1.1f);
+            accumulator.drain(deltas);
+        });
+
+        assertTrue("Allocated " + bytes + " bytes", bytes < 1024);
+    }
+}
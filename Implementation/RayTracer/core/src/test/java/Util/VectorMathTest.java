@@ -0,0 +1,92 @@
+package Util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import Util.Geometry.Vector;
+
+import static org.junit.Assert.*;
+
+public class VectorMathTest {
+
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void resultsMatchGeometryVector() {
+        Vector a = new Vector(1.0f, -2.0f, 3.5f);
+        Vector b = new Vector(-0.5f, 4.0f, 2.0f);
+        float[] v = {1.0f, -2.0f, 3.5f, -0.5f, 4.0f, 2.0f};
+        float[] result = new float[3];
+
+        VectorMath.add(result, 0, v, 0, v, 3);
+        assertVector(Vector.add(a, b), result);
+
+        VectorMath.cross(result, 0, v, 0, v, 3);
+        assertVector(a.crossProduct(b), result);
+
+        VectorMath.normalize(result, 0, v, 0);
+        assertVector(a.normalize(), result);
+
+        assertEquals(a.dotProduct(b), VectorMath.dot(v, 0, v, 3), EPSILON);
+
+        // Rotating in place
+        VectorMath.rotate(v, 0, v, 0, 35f, 0.3f, 1f, -0.2f);
+        float[] rotationMatrix = new float[16];
+        float[] expected = new float[4];
+        MatrixMath.setRotateM(rotationMatrix, 0, 35f, 0.3f, 1f, -0.2f);
+        MatrixMath.multiplyMV(expected, 0, rotationMatrix, 0, new float[]{1.0f, -2.0f, 3.5f, 1f}, 0);
+        assertVector(new Vector(expected[0], expected[1], expected[2]), v);
+        assertVector(a.rotate(35f, 0.3f, 1f, -0.2f), v);
+    }
+
+    @Test
+    public void batchFunctionsMatchSingleVectors() {
+        float[] xs = {1f, 0f, -3f, 2f};
+        float[] ys = {2f, 1f, 0.5f, -1f};
+        float[] zs = {0f, 5f, 1f, 4f};
+        float[] single = new float[3];
+
+        VectorMath.rotate(xs, ys, zs, 1, 2, 80f, 0f, 0f, 1f);
+        VectorMath.normalize(xs, ys, zs, 1, 2);
+
+        for (int i = 1; i < 3; i++) {
+            float[] original = i == 1 ? new float[]{0f, 1f, 5f} : new float[]{-3f, 0.5f, 1f};
+            VectorMath.rotate(single, 0, original, 0, 80f, 0f, 0f, 1f);
+            VectorMath.normalize(single, 0, single, 0);
+            assertEquals(single[0], xs[i], EPSILON);
+            assertEquals(single[1], ys[i], EPSILON);
+            assertEquals(single[2], zs[i], EPSILON);
+        }
+
+        // Outside of the range nothing changed
+        assertEquals(1f, xs[0], 0f);
+        assertEquals(4f, zs[3], 0f);
+    }
+
+    @Test
+    public void inPlaceOperationsDontAllocate() {
+        float[] v = {1f, 2f, 3f, 0.5f, -1f, 2f};
+        float[] xs = new float[64];
+        float[] ys = new float[64];
+        float[] zs = new float[64];
+        Arrays.fill(xs, 1f);
+
+        long bytes = Allocations.measure(10_000, () -> {
+            VectorMath.addScaled(v, 0, v, 0, v, 3, 0.001f);
+            VectorMath.cross(v, 3, v, 0, v, 3);
+            VectorMath.normalize(v, 3, v, 3);
+            VectorMath.rotate(v, 0, v, 0, 1f, 0f, 1f, 0f);
+            VectorMath.rotate(xs, ys, zs, 0, 64, 1f, 0f, 1f, 0f);
+            VectorMath.translate(xs, ys, zs, 0, 64, 0f, 0.001f, 0f);
+        });
+
+        assertTrue("Allocated " + bytes + " bytes", bytes < 1024);
+    }
+
+    private static void assertVector(Vector expected, float[] actual) {
+        assertEquals(expected.x, actual[0], EPSILON);
+        assertEquals(expected.y, actual[1], EPSILON);
+        assertEquals(expected.z, actual[2], EPSILON);
+    }
+}